@@ -8,6 +8,8 @@ $listenerPrefix = "http://localhost:$port/"
 $scriptPath = $MyInvocation.MyCommand.Path
 $appDir = Split-Path $scriptPath
 $jarPath = Join-Path $appDir "ProctorApp.jar"
+# Present when the installer was built from the fast-startup package (trimmed runtime plus class archive).
+$bundledJava = Join-Path $appDir "runtime\bin\java.exe"
 
 # --- Main Logic ---
 try {
@@ -64,7 +66,12 @@ try {
 
     # Use Start-Process to launch the Java application in the background so it doesn't block the installer.
     # The -WindowStyle Hidden flag ensures the student doesn't see a black console window pop up.
-    Start-Process "java" -ArgumentList "-jar", "`"$jarPath`"", "`"$websocketUrl`"" -WindowStyle Hidden
+    # The class archive refers to the JAR by a relative path, so the bundled runtime is started from the app directory.
+    if (Test-Path $bundledJava) {
+        Start-Process $bundledJava -WorkingDirectory $appDir -ArgumentList "-XX:SharedArchiveFile=ProctorApp.jsa", "-Xshare:auto", "-jar", "ProctorApp.jar", "`"$websocketUrl`"" -WindowStyle Hidden
+    } else {
+        Start-Process "java" -ArgumentList "-jar", "`"$jarPath`"", "`"$websocketUrl`"" -WindowStyle Hidden
+    }
 
     # 6. Send a success (200 OK) response back to the browser's JavaScript to let it know the handshake worked.
     $context.Response.StatusCode = 200
@@ -9,6 +9,8 @@ APP_NAME="ProctorClient"
 VERSION="1.0"
 # Path to the "fat JAR" created by Maven, relative to the project root.
 JAVA_CLIENT_JAR_PATH="../java-client/target/java-client-1.0-SNAPSHOT-jar-with-dependencies.jar"
+# Output of 'mvn -P fast-startup package': the JAR plus a trimmed runtime and an AppCDS archive. Used when present.
+FAST_STARTUP_PATH="../java-client/target/app"
 # (Optional) You would need to create an Apple Icon Image file (.icns) for your app.
 ICON_FILE="icon.icns" 
 
@@ -71,8 +73,13 @@ cat > "$MACOS_PATH/launcher" <<EOL
 #!/bin/bash
 # Get the directory where this script is located.
 DIR=\$(cd "\$(dirname "\$0")"; pwd)
+RESOURCES="\$DIR/../Resources"
 # Launch the Java application, passing all command-line arguments (i.e., the proctor-session:// URL) to it.
-java -jar "\$DIR/../Resources/ProctorApp.jar" "\$@"
+if [ -x "\$RESOURCES/runtime/bin/java" ]; then
+    # Fast-startup build: the bundled runtime with the class archive, which refers to the JAR by a relative path.
+    cd "\$RESOURCES" && exec runtime/bin/java -XX:SharedArchiveFile=ProctorApp.jsa -Xshare:auto -jar ProctorApp.jar "\$@"
+fi
+java -jar "\$RESOURCES/ProctorApp.jar" "\$@"
 EOL
 
 # Make the launcher script executable.
@@ -81,7 +88,12 @@ chmod +x "$MACOS_PATH/launcher"
 # --- Copy Application Files ---
 echo "--- Copying application files ---"
 # Copy the main JAR file into the app's Resources folder.
-cp "$JAVA_CLIENT_JAR_PATH" "$RESOURCES_PATH/ProctorApp.jar"
+if [ -f "$FAST_STARTUP_PATH/ProctorApp.jsa" ]; then
+    # Timestamps must be kept: the class archive is only used with the exact JAR it was recorded from.
+    cp -Rp "$FAST_STARTUP_PATH/." "$RESOURCES_PATH/"
+else
+    cp "$JAVA_CLIENT_JAR_PATH" "$RESOURCES_PATH/ProctorApp.jar"
+fi
 
 # (Optional) Copy the icon file if it exists.
 if [ -f "$ICON_FILE" ]; then
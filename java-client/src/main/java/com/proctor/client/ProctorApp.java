@@ -1,16 +1,33 @@
 package com.proctor.client;
 
 import com.proctor.client.monitoring.*;
+import com.proctor.client.monitoring.signature.SignatureDatabase;
+import com.proctor.client.monitoring.window.ActiveWindowSampler;
 import com.proctor.client.process.PythonProcessManager;
+import com.proctor.client.scheduler.MonitorSchedule;
+import com.proctor.client.scheduler.MonitorScheduler;
+import com.proctor.client.scheduler.ScheduledMonitor;
+import com.proctor.client.summary.EventSummarizer;
+import com.proctor.client.telemetry.ClientTelemetry;
+import com.proctor.client.telemetry.StartupTimer;
 import com.proctor.client.ui.ConsoleUI;
 import com.proctor.client.websocket.WebSocketClientManager;
+import com.proctor.protocol.MessageTypes;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * The main entry point for the proctoring client application.
@@ -19,10 +36,37 @@ import java.util.concurrent.TimeUnit;
  */
 public class ProctorApp {
 
-    private final ExecutorService monitorExecutor = Executors.newCachedThreadPool();
-    private final BlockingQueue<String> eventQueue = new LinkedBlockingQueue<>();
+    // All OS monitors share one scheduler thread; wake-ups are aligned to this tick so they are batched.
+    private static final long MONITOR_TICK_MILLIS = 250;
+    // Telemetry period and the CPU the monitors may use, in percent of one core; both can be overridden.
+    private static final long TELEMETRY_INTERVAL_MILLIS = Long.getLong("proctor.telemetry.intervalMillis", 30000);
+    private static final double MONITOR_CPU_BUDGET_PERCENT = Double.parseDouble(System.getProperty("proctor.telemetry.cpuBudgetPercent", "2.0"));
+
+    private final ExecutorService agentExecutor = Executors.newSingleThreadExecutor();
+    private final MonitorScheduler monitorScheduler = new MonitorScheduler(MONITOR_TICK_MILLIS);
+    private final BlockingQueue<QueuedEvent> eventQueue = new LinkedBlockingQueue<>();
+    private final StartupTimer startupTimer = new StartupTimer();
+    private final AtomicBoolean stopped = new AtomicBoolean();
     private WebSocketClientManager webSocketClient;
     private PythonProcessManager pythonProcessManager;
+    private ActiveWindowSampler windowSampler;
+    private SignatureDatabase signatureDatabase;
+    private ProcessMonitor processMonitor;
+    private ClientTelemetry telemetry;
+    private EventSummarizer summarizer;
+
+    /**
+     * An event waiting for the dispatcher, stamped with when it was queued for latency tracing.
+     */
+    private static final class QueuedEvent {
+        final String json;
+        final long enqueuedAt;
+
+        QueuedEvent(String json, long enqueuedAt) {
+            this.json = json;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
 
     /**
      * The main method, the entry point of the Java application.
@@ -31,6 +75,12 @@ public class ProctorApp {
     public static void main(String[] args) {
         ConsoleUI.printStartupBanner();
 
+        // Used by the fast-startup build to record which classes to put in the CDS archive.
+        if (args.length > 0 && TrainingRun.ARGUMENT.equals(args[0])) {
+            TrainingRun.run();
+            return;
+        }
+
         // Validate the launch argument, which is now a direct WebSocket URL.
         if (args.length == 0 || args[0] == null || !args[0].startsWith("ws")) {
             ConsoleUI.showError("Invalid launch command.");
@@ -55,44 +105,135 @@ public class ProctorApp {
 
     public void start(URI serverUri) {
         webSocketClient = new WebSocketClientManager(serverUri);
-        pythonProcessManager = new PythonProcessManager(eventQueue::offer);
+        webSocketClient.setMessageHandler(this::handleServerMessage);
+        // Low-severity events are folded into digests if the server asks for it in the handshake.
+        summarizer = new EventSummarizer(webSocketClient::sendEvent);
+        webSocketClient.setSummaryWindowHandler(summarizer::setWindowMillis);
+        telemetry = new ClientTelemetry(this::enqueue, monitorScheduler, eventQueue::size, MONITOR_CPU_BUDGET_PERCENT);
+        pythonProcessManager = new PythonProcessManager(telemetry.countEvents("PythonAgent", this::enqueue), webSocketClient::sendBinary);
+        telemetry.setAgentProcess(pythonProcessManager::getProcessHandle);
+        telemetry.setStartupTimer(startupTimer);
         addShutdownHook();
 
+        // The handshake, the agent extraction and launch, and the monitor baselines all run at once:
+        // the agent starts as soon as its executable is verified, and events raised before the
+        // connection is open wait in the queue until the dispatcher starts.
         ConsoleUI.showMessage("Attempting to connect to the proctoring server...");
         webSocketClient.connect();
+        pythonProcessManager.prepareExecutable();
+        agentExecutor.submit(pythonProcessManager);
+        try {
+            startMonitors();
+        } catch (RuntimeException e) {
+            stop();
+            throw e;
+        }
+        startupTimer.mark(StartupTimer.MONITORS_READY);
 
         try {
             if (!webSocketClient.awaitOpen(10, TimeUnit.SECONDS)) {
                  ConsoleUI.showError("Could not connect to the server. Please check your internet connection.");
+                 stop();
                  return;
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             ConsoleUI.showError("Connection attempt was interrupted.");
+            stop();
             return;
         }
-        
-        startMonitors();
+        startupTimer.mark(StartupTimer.CONNECTED);
+
         startEventDispatcher();
     }
     
     private void startMonitors() {
         ConsoleUI.showMessage("Starting all system monitors...");
-        monitorExecutor.submit(pythonProcessManager);
-        monitorExecutor.submit(new ClipboardMonitor(eventQueue::offer));
-        monitorExecutor.submit(new WindowMonitor(eventQueue::offer));
-        monitorExecutor.submit(new ProcessMonitor(eventQueue::offer));
-        monitorExecutor.submit(new TabSwitchMonitor(eventQueue::offer));
-        monitorExecutor.submit(new ScreenshotMonitor(eventQueue::offer));
+        // Monitors poll at their minimum interval, back off while idle, and tighten again after a change.
+        ClipboardMonitor clipboardMonitor = new ClipboardMonitor(telemetry.countEvents("ClipboardMonitor", this::enqueue));
+        // The clipboard is checked every second, as it always was; each check is cheap, so it does not back off.
+        // Change notifications make the monitor due on the next tick instead of waiting out its interval.
+        ScheduledMonitor clipboardTask = monitorScheduler.schedule(clipboardMonitor, MonitorSchedule.fixed(1000));
+        clipboardMonitor.setChangeCallback(clipboardTask::tighten);
+        // An optional local signature file is watched for changes and merged with the bundled list.
+        String signatureFile = System.getProperty("proctor.signatures");
+        signatureDatabase = new SignatureDatabase(signatureFile != null ? Paths.get(signatureFile) : null);
+        monitorScheduler.schedule(signatureDatabase, MonitorSchedule.fixed(10000));
+        processMonitor = new ProcessMonitor(telemetry.countEvents("ProcessMonitor", this::enqueue), signatureDatabase);
+        monitorScheduler.schedule(processMonitor, MonitorSchedule.adaptive(1000, 5000));
+        // Window and tab-switch detection share a single sampler, so each tick makes one native lookup.
+        windowSampler = new ActiveWindowSampler();
+        new WindowMonitor(telemetry.countEvents("WindowMonitor", this::enqueue), windowSampler);
+        new TabSwitchMonitor(telemetry.countEvents("TabSwitchMonitor", this::enqueue), windowSampler);
+        if (!windowSampler.isEventDriven()) {
+            monitorScheduler.schedule(windowSampler, MonitorSchedule.adaptive(1000, 3000));
+        }
+        // Screenshot watch roots can be overridden with a path-separator separated list of directories.
+        String screenshotDirs = System.getProperty("proctor.screenshot.dirs");
+        Consumer<String> screenshotEvents = telemetry.countEvents("ScreenshotMonitor", this::enqueue);
+        ScreenshotMonitor screenshotMonitor = screenshotDirs != null
+                ? new ScreenshotMonitor(screenshotEvents, ScreenshotMonitor.parseWatchRoots(screenshotDirs))
+                : new ScreenshotMonitor(screenshotEvents);
+        monitorScheduler.schedule(screenshotMonitor, MonitorSchedule.adaptive(1000, 4000));
+        // Resource usage is reported periodically; its fixed schedule is not stretched by the overhead budget.
+        monitorScheduler.schedule(telemetry, MonitorSchedule.fixed(TELEMETRY_INTERVAL_MILLIS));
+        monitorScheduler.schedule(summarizer, MonitorSchedule.fixed(1000));
+        monitorScheduler.start();
+    }
+
+    /**
+     * Handles control messages pushed by the server. Unknown messages are only displayed.
+     * @param message The raw JSON message.
+     */
+    private void handleServerMessage(String message) {
+        try {
+            JSONObject json = new JSONObject(message);
+            String type = json.optString(MessageTypes.TYPE);
+            if (MessageTypes.NOTICE.equals(type)) {
+                ConsoleUI.showWarning("Message from your proctor: " + json.optString(MessageTypes.MESSAGE));
+                return;
+            }
+            if (MessageTypes.SHUTDOWN.equals(type)) {
+                ConsoleUI.showWarning("Message from your proctor: " + json.optString(MessageTypes.MESSAGE));
+                ConsoleUI.showMessage("The session has been ended by the server.");
+                // Exit from a separate thread: the shutdown hook closes the connection this handler runs on.
+                Thread exitThread = new Thread(() -> System.exit(0), "Server-Shutdown");
+                exitThread.start();
+                return;
+            }
+            if (MessageTypes.SIGNATURES.equals(type) && signatureDatabase != null) {
+                JSONArray array = json.optJSONArray(MessageTypes.SIGNATURES);
+                List<String> lines = new ArrayList<>();
+                if (array != null) {
+                    for (int i = 0; i < array.length(); i++) {
+                        lines.add(array.optString(i));
+                    }
+                }
+                signatureDatabase.updatePushedSignatures(lines);
+                return;
+            }
+        } catch (Exception e) {
+            // Not a JSON control message; fall through and display it.
+        }
+        ConsoleUI.showMessage("Received message from server: " + message);
+    }
+
+    private void enqueue(String event) {
+        eventQueue.offer(new QueuedEvent(event, System.currentTimeMillis()));
     }
 
     private void startEventDispatcher() {
         Thread dispatcherThread = new Thread(() -> {
+            boolean firstEventSent = false;
             while (!Thread.currentThread().isInterrupted()) {
                 try {
-                    String event = eventQueue.take();
-                    if (webSocketClient.isOpen()) {
-                        webSocketClient.sendEvent(event);
+                    QueuedEvent event = eventQueue.take();
+                    // While the connection is down the event is kept and sent once it is back.
+                    summarizer.accept(event.json, event.enqueuedAt, System.currentTimeMillis());
+                    if (!firstEventSent && webSocketClient.isOpen()) {
+                        firstEventSent = true;
+                        startupTimer.mark(StartupTimer.FIRST_EVENT_SENT);
+                        ConsoleUI.showMessage("Startup complete (ms since launch): " + startupTimer.summary());
                     }
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
@@ -108,15 +249,32 @@ public class ProctorApp {
     private void addShutdownHook() {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             ConsoleUI.showMessage("Shutdown signal received. Cleaning up resources...");
-            monitorExecutor.shutdownNow();
-            if (pythonProcessManager != null) {
-                pythonProcessManager.stop();
-            }
-            if (webSocketClient != null && webSocketClient.isOpen()) {
-                webSocketClient.close();
-            }
+            stop();
             ConsoleUI.showMessage("Cleanup complete. Application will now exit.");
         }));
     }
+
+    /**
+     * Stops the monitors, the agent and the connection. Safe to call more than once.
+     */
+    private void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+        monitorScheduler.shutdown();
+        agentExecutor.shutdownNow();
+        if (windowSampler != null) {
+            windowSampler.close();
+        }
+        if (processMonitor != null) {
+            processMonitor.shutdown();
+        }
+        if (pythonProcessManager != null) {
+            pythonProcessManager.stop();
+        }
+        if (webSocketClient != null && webSocketClient.isOpen()) {
+            webSocketClient.close();
+        }
+    }
 }
 
@@ -0,0 +1,109 @@
+package com.proctor.client;
+
+import com.proctor.client.monitoring.ClipboardMonitor;
+import com.proctor.client.monitoring.ProcessMonitor;
+import com.proctor.client.monitoring.ScreenshotMonitor;
+import com.proctor.client.monitoring.TabSwitchMonitor;
+import com.proctor.client.monitoring.WindowMonitor;
+import com.proctor.client.monitoring.signature.SignatureDatabase;
+import com.proctor.client.monitoring.window.ActiveWindowSampler;
+import com.proctor.client.scheduler.MonitorSchedule;
+import com.proctor.client.scheduler.MonitorScheduler;
+import com.proctor.client.summary.EventSummarizer;
+import com.proctor.client.telemetry.ClientTelemetry;
+import com.proctor.client.ui.ConsoleUI;
+import com.proctor.client.websocket.WebSocketClientManager;
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.DecodedEvent;
+import com.proctor.protocol.EventDecoder;
+import com.proctor.protocol.EventEncoder;
+import com.proctor.protocol.Status;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * A short offline run of the client's startup path, used by the {@code fast-startup} build profile
+ * while it records the AppCDS archive: every class loaded here is stored pre-parsed in the archive,
+ * so a real launch skips loading and verifying it. Nothing connects to a server and no agent is
+ * started. Parts that need a desktop session (the clipboard, native window lookups) are skipped
+ * when unavailable, which only means those classes are left out of the archive.
+ */
+final class TrainingRun {
+
+    static final String ARGUMENT = "--cds-training";
+
+    private TrainingRun() {
+    }
+
+    static void run() {
+        ConsoleUI.showMessage("Recording startup classes...");
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        Consumer<String> sink = events::offer;
+        MonitorScheduler scheduler = new MonitorScheduler(250);
+        ProcessMonitor processMonitor = null;
+        ActiveWindowSampler windowSampler = null;
+        try {
+            // Never connected; constructing it loads the WebSocket client classes.
+            new WebSocketClientManager(new URI("ws://localhost:1/training"));
+
+            ClientTelemetry telemetry = new ClientTelemetry(sink, scheduler, events::size, 2.0);
+            SignatureDatabase signatureDatabase = new SignatureDatabase(null);
+            scheduler.schedule(signatureDatabase, MonitorSchedule.fixed(10000));
+            processMonitor = new ProcessMonitor(telemetry.countEvents("ProcessMonitor", sink), signatureDatabase);
+            scheduler.schedule(processMonitor, MonitorSchedule.adaptive(1000, 5000));
+            Path screenshotRoot = Files.createTempDirectory("proctor-training");
+            scheduler.schedule(new ScreenshotMonitor(sink, Collections.singletonList(screenshotRoot)),
+                    MonitorSchedule.adaptive(1000, 4000));
+            scheduler.schedule(telemetry, MonitorSchedule.fixed(250));
+            try {
+                windowSampler = new ActiveWindowSampler();
+                new WindowMonitor(sink, windowSampler);
+                new TabSwitchMonitor(sink, windowSampler);
+                scheduler.schedule(windowSampler, MonitorSchedule.adaptive(1000, 3000));
+                scheduler.schedule(new ClipboardMonitor(sink), MonitorSchedule.fixed(1000));
+            } catch (Throwable e) {
+                ConsoleUI.showWarning("Desktop monitors unavailable during training: " + e);
+            }
+            scheduler.start();
+            Thread.sleep(1500);
+
+            // Round-trip a few events through the codec the dispatcher and server use.
+            String event = EventEncoder.forCurrentThread()
+                    .begin(Activity.WINDOW_SWITCH, Status.INFO)
+                    .detail("title", "training")
+                    .end();
+            events.offer(event);
+            DecodedEvent decoded = new DecodedEvent();
+            for (String queued : events) {
+                EventDecoder.forCurrentThread().decode(queued, decoded);
+                new JSONObject(queued);
+            }
+            // And through the summarizer, which sends its digest when summarizing is turned off.
+            EventSummarizer summarizer = new EventSummarizer((json, enqueuedAt, dispatchedAt) -> new JSONObject(json));
+            summarizer.setWindowMillis(60000);
+            events.forEach(summarizer::accept);
+            summarizer.setWindowMillis(0);
+            Files.deleteIfExists(screenshotRoot);
+        } catch (Exception e) {
+            ConsoleUI.showWarning("Training run incomplete: " + e);
+        } finally {
+            scheduler.shutdown();
+            if (windowSampler != null) {
+                windowSampler.close();
+            }
+            if (processMonitor != null) {
+                processMonitor.shutdown();
+            }
+        }
+        ConsoleUI.showMessage("Training run complete.");
+        // Monitors may have started non-daemon helper threads; the archive is written on exit.
+        System.exit(0);
+    }
+}
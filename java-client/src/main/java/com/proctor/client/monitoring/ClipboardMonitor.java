@@ -1,79 +1,233 @@
 package com.proctor.client.monitoring;
 
-import org.json.JSONObject;
+import com.proctor.client.scheduler.PollResult;
+import com.proctor.client.scheduler.PolledMonitor;
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.EventEncoder;
+import com.proctor.protocol.EventFields;
+import com.proctor.protocol.Status;
+
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import com.sun.jna.win32.StdCallLibrary;
 
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
 /**
  * Monitors the system clipboard for any new text content.
- * It runs in a loop, checking the clipboard periodically. If new text is detected,
- * it fires a "suspicious" event with the copied content.
+ * If new text is detected, it fires a "suspicious" event with the beginning of the copied content.
+ *
+ * Where the OS keeps a clipboard change counter (GetClipboardSequenceNumber on Windows), each poll only
+ * reads the counter and the contents are read when it has moved. Elsewhere an AWT FlavorListener signals
+ * changes, and because it only fires when the available flavors change, and so misses text replacing
+ * text, the contents are also checked at least every second, as before the listener was added.
+ * Only the plain-text form of the contents is read, never markup such as HTML or RTF, so a copy reports
+ * what the user copied rather than its formatting. Changes are detected from a 64-bit hash of the first
+ * few thousand characters, read through a reused buffer, together with the text's length where the
+ * clipboard provides it without streaming; a copy that differs only further on is not reported, which
+ * keeps every check cheap however much was copied. Only the hash, the length and the reported prefix
+ * are retained.
  */
-public class ClipboardMonitor implements Runnable {
+public class ClipboardMonitor implements PolledMonitor {
+
+    private static final int REPORTED_PREFIX_LENGTH = 100;
+    // Bounds the work per check; changes beyond this point are not detected unless the length changes.
+    private static final int MAX_HASHED_CHARS = 4096;
+    private static final long FALLBACK_CHECK_MILLIS = 1000;
+    private static final long UNKNOWN_LENGTH = -1;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
 
     private final Consumer<String> eventConsumer;
-    private String lastClipboardContent = "";
+    private final Clipboard clipboard;
+    // The OS change counter, or null if there is none.
+    private final LongSupplier changeCounter;
+    private long lastChangeCount;
+    private volatile boolean changeSignalled;
+    private volatile Runnable changeCallback;
+    private long lastCheckMillis;
+
+    // The fingerprint of the last seen contents, and buffers reused for every read.
+    private long lastHash;
+    private long lastLength;
+    private long currentHash;
+    private long currentLength;
+    private final char[] readBuffer = new char[MAX_HASHED_CHARS];
+    private final StringBuilder prefix = new StringBuilder(REPORTED_PREFIX_LENGTH);
 
     public ClipboardMonitor(Consumer<String> eventConsumer) {
+        this(eventConsumer, Toolkit.getDefaultToolkit().getSystemClipboard(), platformChangeCounter());
+    }
+
+    /**
+     * @param clipboard The clipboard to watch.
+     * @param changeCounter A counter that moves whenever the clipboard changes, or null if there is none.
+     */
+    ClipboardMonitor(Consumer<String> eventConsumer, Clipboard clipboard, LongSupplier changeCounter) {
         this.eventConsumer = eventConsumer;
+        this.clipboard = clipboard;
+        this.changeCounter = changeCounter;
+        if (changeCounter != null) {
+            lastChangeCount = changeCounter.getAsLong();
+        }
+        registerFlavorListener();
         // Initialize with current clipboard content to avoid firing on startup
-        this.lastClipboardContent = getClipboardText();
+        if (readClipboardText()) {
+            lastHash = currentHash;
+            lastLength = currentLength;
+        }
+        lastCheckMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Sets a callback that is run when the platform signals a clipboard change,
+     * e.g. to make the scheduler poll this monitor on its next tick.
+     * @param changeCallback The callback, run on the AWT thread.
+     */
+    public void setChangeCallback(Runnable changeCallback) {
+        this.changeCallback = changeCallback;
     }
 
     @Override
-    public void run() {
-        Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                String currentContent = getClipboardText(clipboard);
-                // Check if the content is new and not empty
-                if (currentContent != null && !currentContent.isEmpty() && !currentContent.equals(lastClipboardContent)) {
-                    lastClipboardContent = currentContent;
-                    
-                    JSONObject event = new JSONObject();
-                    event.put("timestamp", System.currentTimeMillis());
-                    event.put("activity", "clipboardCopy");
-                    event.put("status", "suspicious"); // Any copy during an exam is suspicious
-
-                    JSONObject details = new JSONObject();
-                    // For privacy, you might want to truncate or hash this in a real product
-                    details.put("copiedText", currentContent.substring(0, Math.min(currentContent.length(), 100)));
-                    details.put("message", "New text content was copied to the clipboard.");
-                    event.put("details", details);
-
-                    eventConsumer.accept(event.toString());
-                }
-                // Check every second
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                System.err.println("ClipboardMonitor was interrupted.");
-                break;
-            } catch (Exception e) {
-                // Handle cases where clipboard is not available or contains non-text data
-                // System.err.println("Could not read clipboard: " + e.getMessage());
+    public String getName() {
+        return "ClipboardMonitor";
+    }
+
+    @Override
+    public PollResult poll() {
+        long now = System.currentTimeMillis();
+        if (changeCounter != null) {
+            long changeCount = changeCounter.getAsLong();
+            if (changeCount == lastChangeCount && !changeSignalled) {
+                return PollResult.IDLE;
             }
+            lastChangeCount = changeCount;
+        } else if (!changeSignalled && now - lastCheckMillis < FALLBACK_CHECK_MILLIS) {
+            return PollResult.IDLE;
+        }
+        changeSignalled = false;
+        lastCheckMillis = now;
+
+        // Check if the content is new and not empty
+        if (!readClipboardText() || currentLength == 0 || (currentHash == lastHash && currentLength == lastLength)) {
+            return PollResult.IDLE;
         }
+        lastHash = currentHash;
+        lastLength = currentLength;
+
+        // Any copy during an exam is suspicious. For privacy, only the beginning of the copied text is reported
+        EventEncoder encoder = EventEncoder.forCurrentThread()
+                .begin(Activity.CLIPBOARD_COPY, Status.SUSPICIOUS)
+                .detail("copiedText", prefix);
+        if (currentLength != UNKNOWN_LENGTH) {
+            encoder.detail("copiedLength", currentLength);
+        }
+        eventConsumer.accept(encoder
+                .detail(EventFields.MESSAGE, "New text content was copied to the clipboard.")
+                .end());
+        return PollResult.CHANGED;
+    }
+
+    private void registerFlavorListener() {
+        clipboard.addFlavorListener(e -> {
+            changeSignalled = true;
+            Runnable callback = changeCallback;
+            if (callback != null) {
+                callback.run();
+            }
+        });
+    }
+
+    private interface ClipboardUser32 extends StdCallLibrary {
+        ClipboardUser32 INSTANCE = Native.load("user32", ClipboardUser32.class);
+        int GetClipboardSequenceNumber();
     }
 
-    private String getClipboardText() {
-        return getClipboardText(Toolkit.getDefaultToolkit().getSystemClipboard());
+    private static LongSupplier platformChangeCounter() {
+        if (!Platform.isWindows()) {
+            return null;
+        }
+        try {
+            ClipboardUser32 user32 = ClipboardUser32.INSTANCE;
+            // Returns 0 without access to the window station; the flavor listener and fallback check remain.
+            return user32.GetClipboardSequenceNumber() != 0 ? () -> user32.GetClipboardSequenceNumber() & 0xFFFFFFFFL : null;
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            return null;
+        }
     }
 
-    private String getClipboardText(Clipboard clipboard) {
+    /**
+     * Reads the start of the clipboard text into the hash, filling currentHash, currentLength and the prefix.
+     * @return {@code true} if the clipboard holds text that could be read.
+     */
+    private boolean readClipboardText() {
         try {
             Transferable contents = clipboard.getContents(null);
-            if (contents != null && contents.isDataFlavorSupported(DataFlavor.stringFlavor)) {
-                return (String) contents.getTransferData(DataFlavor.stringFlavor);
+            if (contents == null) {
+                return false;
+            }
+            String text = null;
+            Reader reader = openTextReader(contents);
+            if (reader == null) {
+                if (!contents.isDataFlavorSupported(DataFlavor.stringFlavor)) {
+                    return false;
+                }
+                text = (String) contents.getTransferData(DataFlavor.stringFlavor);
+                reader = new StringReader(text);
+            }
+            int length = 0;
+            try (Reader in = reader) {
+                int read;
+                while (length < MAX_HASHED_CHARS && (read = in.read(readBuffer, length, MAX_HASHED_CHARS - length)) != -1) {
+                    length += read;
+                }
             }
+            currentHash = hash(readBuffer, length);
+            // Only a String tells the full length for free; a stream is not read beyond the hashed prefix.
+            currentLength = text != null ? text.length() : length < MAX_HASHED_CHARS ? length : UNKNOWN_LENGTH;
+            prefix.setLength(0);
+            prefix.append(readBuffer, 0, Math.min(length, REPORTED_PREFIX_LENGTH));
+            return true;
         } catch (Exception e) {
             // Ignore - clipboard might be busy or contain other data types
+            return false;
+        }
+    }
+
+    /**
+     * @return The 64-bit FNV-1a hash of the first {@code length} characters.
+     */
+    static long hash(char[] chars, int length) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ chars[i]) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @return A reader over a streaming plain-text flavor, or null if the contents offer none.
+     */
+    private static Reader openTextReader(Transferable contents) {
+        // Prefer a streaming plain-text flavor, so the contents are not first materialized as one String.
+        // Reader flavors are already decoded to Unicode, so no charset has to be guessed.
+        for (DataFlavor flavor : contents.getTransferDataFlavors()) {
+            if (flavor.isMimeTypeEqual("text/plain") && Reader.class.equals(flavor.getRepresentationClass())) {
+                try {
+                    return flavor.getReaderForText(contents);
+                } catch (Exception e) {
+                    // Fall back to the plain string flavor.
+                    return null;
+                }
+            }
         }
         return null;
     }
 }
-
@@ -1,102 +1,217 @@
 package com.proctor.client.monitoring;
 
-import org.json.JSONObject;
+import com.proctor.client.monitoring.process.ProcessSnapshotSource;
+import com.proctor.client.monitoring.process.ProcessTable;
+import com.proctor.client.monitoring.signature.ExecutableFingerprinter;
+import com.proctor.client.monitoring.signature.FingerprintCache;
+import com.proctor.client.monitoring.signature.Signature;
+import com.proctor.client.monitoring.signature.SignatureDatabase;
+import com.proctor.client.monitoring.signature.SignatureMatch;
+import com.proctor.client.storage.ClientDirectories;
+import com.proctor.client.scheduler.PollResult;
+import com.proctor.client.scheduler.PolledMonitor;
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.EventEncoder;
+import com.proctor.protocol.EventFields;
+import com.proctor.protocol.Status;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 /**
- * Monitors the system for newly started processes.
- * It maintains a baseline of running processes and checks for any new additions
- * that are on a "forbidden" list.
+ * Monitors the system for started and exited processes.
+ * Each poll diffs one snapshot of the process list against a primitive {@link ProcessTable},
+ * so polling is cheap enough to run every second. Newly started processes are checked against
+ * the forbidden-application {@link SignatureDatabase}, and forbidden applications are reported
+ * again when they are closed. Executables that do not match by name are fingerprinted in the
+ * background by an {@link ExecutableFingerprinter}, which catches renamed binaries.
+ * PIDs reused by the OS are recognised by their start time and treated as new processes.
+ * A binary the fingerprinter identifies may already have exited by then, so after every scan the
+ * flagged processes are checked against the table and those no longer in it are reported as closed.
  */
-public class ProcessMonitor implements Runnable {
+public class ProcessMonitor implements PolledMonitor {
 
     private final Consumer<String> eventConsumer;
-    private Set<Long> baselineProcessIds;
-
-    // A simple, hardcoded list of forbidden process names (case-insensitive).
-    // In a real application, this would be configurable from the server.
-    private static final Set<String> FORBIDDEN_PROCESSES = new HashSet<>() {{
-        add("discord");
-        add("slack");
-        add("teams");
-        add("zoom");
-        add("skype");
-        add("obs");
-        add("anydesk");
-        add("teamviewer");
-        add("virtualbox");
-        add("vmware");
-    }};
-
-    public ProcessMonitor(Consumer<String> eventConsumer) {
+    private final SignatureDatabase signatureDatabase;
+    private final ProcessSnapshotSource processSource;
+    private final ExecutableFingerprinter fingerprinter;
+    private final ProcessTable processTable = new ProcessTable();
+
+    // Reused between polls to collect the PIDs that started during one scan.
+    private long[] startedPids = new long[64];
+    private int startedCount;
+    private int exitedCount;
+
+    // Forbidden processes that are still running, keyed by PID, so their exit can be reported.
+    // Also written by the fingerprinter thread when a renamed binary is identified, possibly after the
+    // process exited; such entries are removed by sweepFlaggedProcesses.
+    private final Map<Long, FlaggedProcess> flaggedProcesses = new ConcurrentHashMap<>();
+
+    private static class FlaggedProcess {
+        final long startTime;
+        final String processName;
+
+        FlaggedProcess(long startTime, String processName) {
+            this.startTime = startTime;
+            this.processName = processName;
+        }
+    }
+
+    public ProcessMonitor(Consumer<String> eventConsumer, SignatureDatabase signatureDatabase) {
+        this(eventConsumer, signatureDatabase, ProcessSnapshotSource.forCurrentPlatform());
+    }
+
+    public ProcessMonitor(Consumer<String> eventConsumer, SignatureDatabase signatureDatabase, ProcessSnapshotSource processSource) {
+        this(eventConsumer, signatureDatabase, processSource, openFingerprintCache());
+    }
+
+    ProcessMonitor(Consumer<String> eventConsumer, SignatureDatabase signatureDatabase, ProcessSnapshotSource processSource,
+                   FingerprintCache fingerprintCache) {
         this.eventConsumer = eventConsumer;
+        this.signatureDatabase = signatureDatabase;
+        this.processSource = processSource;
+        this.fingerprinter = new ExecutableFingerprinter(signatureDatabase, fingerprintCache, this::onKnownBadExecutable);
         // Establish the initial set of running processes
-        this.baselineProcessIds = getRunningProcessIds();
+        scan();
     }
 
     @Override
-    public void run() {
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                Set<Long> currentProcessIds = getRunningProcessIds();
-                
-                // Find processes that are in the current set but not in the baseline set
-                Set<Long> newProcessIds = new HashSet<>(currentProcessIds);
-                newProcessIds.removeAll(baselineProcessIds);
-
-                if (!newProcessIds.isEmpty()) {
-                    checkForForbiddenProcesses(newProcessIds);
-                    // Add the new processes to the baseline to avoid repeated alerts
-                    baselineProcessIds.addAll(newProcessIds);
-                }
-
-                Thread.sleep(5000); // Check every 5 seconds
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                System.err.println("ProcessMonitor was interrupted.");
-                break;
+    public String getName() {
+        return "ProcessMonitor";
+    }
+
+    @Override
+    public PollResult poll() {
+        scan();
+        boolean violation = false;
+        for (int i = 0; i < startedCount; i++) {
+            violation |= checkForForbiddenProcess(startedPids[i]);
+        }
+        if (violation) {
+            return PollResult.VIOLATION;
+        }
+        return startedCount > 0 || exitedCount > 0 ? PollResult.CHANGED : PollResult.IDLE;
+    }
+
+    private void scan() {
+        startedCount = 0;
+        processTable.beginScan();
+        processSource.scan(this::onProcessSeen);
+        exitedCount = processTable.endScan(this::onProcessExited);
+        sweepFlaggedProcesses();
+    }
+
+    /**
+     * Reports flagged processes that are no longer in the table, i.e. that exited before they were
+     * flagged, or whose PID has since been reused.
+     */
+    private void sweepFlaggedProcesses() {
+        if (flaggedProcesses.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Long, FlaggedProcess> entry : flaggedProcesses.entrySet()) {
+            long pid = entry.getKey();
+            if (processTable.startTimeOf(pid) != entry.getValue().startTime) {
+                onProcessExited(pid, entry.getValue().startTime);
             }
         }
     }
 
-    private void checkForForbiddenProcesses(Set<Long> newProcessIds) {
-        for (long pid : newProcessIds) {
-            ProcessHandle.of(pid).ifPresent(processHandle -> {
-                String processName = processHandle.info().command()
-                    .map(cmd -> cmd.substring(cmd.lastIndexOf('/') + 1))
-                    .map(cmd -> cmd.substring(cmd.lastIndexOf('\\') + 1)) // for Windows paths
-                    .map(String::toLowerCase)
-                    .orElse("");
-
-                // Check if the process name contains any of the forbidden keywords
-                FORBIDDEN_PROCESSES.stream()
-                    .filter(processName::contains)
-                    .findFirst()
-                    .ifPresent(forbiddenKeyword -> {
-                        JSONObject event = new JSONObject();
-                        event.put("timestamp", System.currentTimeMillis());
-                        event.put("activity", "processStarted");
-                        event.put("status", "violation");
-
-                        JSONObject details = new JSONObject();
-                        details.put("processName", processName);
-                        details.put("pid", pid);
-                        details.put("message", "A forbidden application was launched: " + forbiddenKeyword);
-                        event.put("details", details);
-                        
-                        eventConsumer.accept(event.toString());
-                    });
-            });
+    private void onProcessSeen(long pid, long startTime) {
+        int state = processTable.observe(pid, startTime);
+        if (state == ProcessTable.UNCHANGED) {
+            return;
+        }
+        if (state == ProcessTable.REPLACED) {
+            // The PID now belongs to a different process; the old one has exited.
+            onProcessExited(pid, processTable.getLastReplacedStartTime());
+        }
+        if (startedCount == startedPids.length) {
+            startedPids = Arrays.copyOf(startedPids, startedCount * 2);
+        }
+        startedPids[startedCount++] = pid;
+    }
+
+    private void onProcessExited(long pid, long startTime) {
+        FlaggedProcess flagged = flaggedProcesses.get(pid);
+        if (flagged == null || flagged.startTime != startTime || !flaggedProcesses.remove(pid, flagged)) {
+            return;
         }
+
+        eventConsumer.accept(EventEncoder.forCurrentThread()
+                .begin(Activity.PROCESS_EXITED, Status.INFO)
+                .detail("processName", flagged.processName)
+                .detail("pid", pid)
+                .detail(EventFields.MESSAGE, "A forbidden application was closed.")
+                .end());
     }
 
-    private Set<Long> getRunningProcessIds() {
-        return ProcessHandle.allProcesses()
-                .map(ProcessHandle::pid)
-                .collect(Collectors.toSet());
+    private boolean checkForForbiddenProcess(long pid) {
+        Optional<ProcessHandle> processHandle = ProcessHandle.of(pid);
+        if (processHandle.isEmpty()) {
+            return false;
+        }
+        ProcessHandle.Info info = processHandle.get().info();
+        String path = info.command().orElse("");
+        String processName = path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1).toLowerCase();
+        List<String> arguments = info.arguments().map(Arrays::asList).orElse(Collections.emptyList());
+
+        // The name is checked against every name signature in one pass, the path and arguments only
+        // against signatures that ask for them.
+        SignatureMatch match = signatureDatabase.getMatcher().match(processName, path, arguments);
+        if (match == null) {
+            // The binary may have been renamed; let the background fingerprinter check its content.
+            fingerprinter.submit(pid, processTable.startTimeOf(pid), path);
+            return false;
+        }
+
+        eventConsumer.accept(EventEncoder.forCurrentThread()
+                .begin(Activity.PROCESS_STARTED, Status.VIOLATION)
+                .detail("processName", processName)
+                .detail("pid", pid)
+                .detail("signature", match.getSignature().getPattern())
+                .detail("category", match.getSignature().getCategory())
+                .detail("matchedField", match.getField().name().toLowerCase())
+                .detail(EventFields.MESSAGE, "A forbidden application was launched: " + match.getSignature().getPattern())
+                .end());
+        flaggedProcesses.put(pid, new FlaggedProcess(processTable.startTimeOf(pid), processName));
+        return true;
+    }
+
+    /**
+     * Stops the background fingerprinting worker.
+     */
+    public void shutdown() {
+        fingerprinter.shutdown();
+    }
+
+    private void onKnownBadExecutable(long pid, long startTime, String executablePath, String sha256, Signature signature) {
+        String processName = executablePath.substring(Math.max(executablePath.lastIndexOf('/'), executablePath.lastIndexOf('\\')) + 1).toLowerCase();
+
+        eventConsumer.accept(EventEncoder.forCurrentThread()
+                .begin(Activity.PROCESS_STARTED, Status.VIOLATION)
+                .detail("processName", processName)
+                .detail("pid", pid)
+                .detail("sha256", sha256)
+                .detail("category", signature.getCategory())
+                .detail("matchedField", "hash")
+                .detail(EventFields.MESSAGE, "A forbidden application was launched under a different name: " + processName)
+                .end());
+        flaggedProcesses.put(pid, new FlaggedProcess(startTime, processName));
+    }
+
+    private static FingerprintCache openFingerprintCache() {
+        try {
+            return new FingerprintCache(ClientDirectories.cacheDirectory().resolve("fingerprints.tsv"));
+        } catch (IOException e) {
+            System.err.println("Could not open fingerprint cache, hashes will not persist: " + e.getMessage());
+            return new FingerprintCache(null);
+        }
     }
 }
@@ -1,113 +1,369 @@
 package com.proctor.client.monitoring;
 
-import org.json.JSONObject;
+import com.proctor.client.scheduler.PollResult;
+import com.proctor.client.scheduler.PolledMonitor;
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.EventEncoder;
+import com.proctor.protocol.EventFields;
+import com.proctor.protocol.Status;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.function.Consumer;
 
 /**
- * Monitors common screenshot locations for newly created image files.
+ * Monitors screenshot locations for newly created image files.
  * This is a REACTIVE approach: it detects the screenshot file just after it has been created.
  * It is more reliable and cross-platform than trying to intercept keyboard shortcuts.
+ *
+ * Each watch root is registered recursively (up to a fixed depth), new subdirectories are registered
+ * as they appear, and roots whose watch key becomes invalid are re-registered once they exist again.
+ * Only files that appear in a watched directory, by being created or moved in, are examined; modify events
+ * merely postpone the examination of such a file until it has been quiet for a short while, so saving over
+ * an existing image is not reported. A file counts as an image only if its header carries a known image
+ * signature, read through a FileChannel. Every image is a violation; to keep a burst (e.g. bulk-copied
+ * photos) from flooding the connection, only the first few images of a poll get their own event and the
+ * rest are reported together in one. When the OS drops events for a directory (OVERFLOW), its tree is
+ * walked again: new subdirectories are registered and files created since the previous poll are examined.
+ * Pending file system events are drained without blocking each time the scheduler polls the monitor.
  */
-public class ScreenshotMonitor implements Runnable {
+public class ScreenshotMonitor implements PolledMonitor {
+
+    private static final int MAX_DEPTH = 3;
+    private static final long QUIET_PERIOD_MILLIS = 1500;
+    private static final long REREGISTER_INTERVAL_MILLIS = 10000;
+    // Images per poll that are reported individually; the rest share one event.
+    private static final int MAX_INDIVIDUAL_EVENTS = 5;
+    private static final int MAX_REPORTED_FILES = 20;
 
     private final Consumer<String> eventConsumer;
     private final WatchService watchService;
-
-    // Common image file extensions to look for
-    private static final Set<String> IMAGE_EXTENSIONS = new HashSet<>(Arrays.asList("png", "jpg", "jpeg", "bmp", "gif"));
+    private final List<Path> watchRoots;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    // Files that recently appeared, mapped to the time of their last event, in order of appearance.
+    private final Map<Path, Long> pendingFiles = new LinkedHashMap<>();
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(18);
+    private final long quietPeriodMillis;
+    private long lastReregisterMillis;
+    private long lastDrainMillis;
 
     public ScreenshotMonitor(Consumer<String> eventConsumer) {
+        this(eventConsumer, defaultWatchRoots());
+    }
+
+    /**
+     * @param eventConsumer Receives the generated events.
+     * @param watchRoots The directories to watch, including their subdirectories.
+     */
+    public ScreenshotMonitor(Consumer<String> eventConsumer, List<Path> watchRoots) {
+        this(eventConsumer, watchRoots, QUIET_PERIOD_MILLIS);
+    }
+
+    ScreenshotMonitor(Consumer<String> eventConsumer, List<Path> watchRoots, long quietPeriodMillis) {
         this.eventConsumer = eventConsumer;
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.watchRoots = new ArrayList<>(watchRoots);
         try {
             this.watchService = FileSystems.getDefault().newWatchService();
-            registerDirectories();
         } catch (IOException e) {
             throw new RuntimeException("Could not initialize ScreenshotMonitor WatchService", e);
         }
+        for (Path root : this.watchRoots) {
+            registerTree(root, 0, Long.MAX_VALUE);
+        }
+        lastReregisterMillis = System.currentTimeMillis();
+        lastDrainMillis = lastReregisterMillis;
     }
 
-    private void registerDirectories() {
+    /**
+     * @return The common directories where screenshots are saved on the current user's machine.
+     */
+    public static List<Path> defaultWatchRoots() {
         String userHome = System.getProperty("user.home");
-        // List of common directories where screenshots are saved
-        List<Path> pathsToWatch = Arrays.asList(
+        List<Path> roots = new ArrayList<>(Arrays.asList(
                 Paths.get(userHome, "Desktop"),
                 Paths.get(userHome, "Pictures", "Screenshots"), // Windows default
-                Paths.get(userHome, "OneDrive", "Pictures", "Screenshots"), // Windows + OneDrive
-                Paths.get(System.getenv("USERPROFILE"), "Desktop") // More reliable for Windows Desktop
-        );
-
-        for (Path path : pathsToWatch) {
-            if (Files.isDirectory(path)) {
-                try {
-                    path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
-                    System.out.println("ScreenshotMonitor is now watching: " + path);
-                } catch (IOException e) {
-                    System.err.println("Could not register directory for screenshot monitoring: " + path);
-                }
+                Paths.get(userHome, "OneDrive", "Pictures", "Screenshots") // Windows + OneDrive
+        ));
+        String userProfile = System.getenv("USERPROFILE");
+        if (userProfile != null) {
+            roots.add(Paths.get(userProfile, "Desktop")); // More reliable for Windows Desktop
+        }
+        return roots;
+    }
+
+    /**
+     * Parses a list of directories separated by the platform path separator (':' or ';').
+     * @param value The list, e.g. from a system property.
+     * @return The parsed directories.
+     */
+    public static List<Path> parseWatchRoots(String value) {
+        List<Path> roots = new ArrayList<>();
+        for (String part : value.split(File.pathSeparator)) {
+            if (!part.trim().isEmpty()) {
+                roots.add(Paths.get(part.trim()));
             }
         }
+        return roots;
     }
 
     @Override
-    public void run() {
-        while (!Thread.currentThread().isInterrupted()) {
-            WatchKey key;
-            try {
-                key = watchService.take(); // This blocks until an event occurs
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                System.err.println("ScreenshotMonitor was interrupted.");
-                break;
-            }
+    public String getName() {
+        return "ScreenshotMonitor";
+    }
+
+    @Override
+    public PollResult poll() {
+        long now = System.currentTimeMillis();
+        drainWatchEvents(now);
+        if (now - lastReregisterMillis >= REREGISTER_INTERVAL_MILLIS) {
+            reregisterLostRoots();
+            lastReregisterMillis = now;
+        }
 
+        List<Path> images = settlePendingFiles(now);
+        if (!images.isEmpty()) {
+            return reportImages(images);
+        }
+        // Keep polling at the minimum interval while files are still settling.
+        return pendingFiles.isEmpty() ? PollResult.IDLE : PollResult.CHANGED;
+    }
+
+    private void drainWatchEvents(long now) {
+        WatchKey key;
+        // Drain every key that has been signalled since the last poll, without blocking.
+        while ((key = watchService.poll()) != null) {
+            Path directory = watchedDirectories.get(key);
             for (WatchEvent<?> event : key.pollEvents()) {
+                if (directory == null) {
+                    continue;
+                }
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost: pick up new subdirectories and files that appeared since the last poll.
+                    registerTree(directory, depthOf(directory), lastDrainMillis);
+                    continue;
+                }
+                Path path = directory.resolve((Path) event.context());
                 if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
-                    Path newFilePath = (Path) event.context();
-                    String fileName = newFilePath.toString().toLowerCase();
-                    String fileExtension = getFileExtension(fileName);
-
-                    if (IMAGE_EXTENSIONS.contains(fileExtension)) {
-                        handleScreenshotDetected(newFilePath);
+                    // Moving a file into the directory is reported as a create as well.
+                    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                        // Files may already have been saved in it before it was registered.
+                        registerTree(path, depthOf(path), 0);
+                        continue;
                     }
+                    addPendingFile(path, now);
+                } else if (pendingFiles.containsKey(path)) {
+                    // A file still being written: wait until it has been quiet again.
+                    pendingFiles.put(path, now);
                 }
             }
 
-            // Reset the key to continue watching for new events
-            boolean valid = key.reset();
-            if (!valid) {
-                System.err.println("WatchKey is no longer valid. Stopping ScreenshotMonitor for one directory.");
-                // You might want to handle this more gracefully, e.g., by re-registering
+            // Reset the key to continue watching; an invalid key means the directory is gone.
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
             }
         }
+        lastDrainMillis = now;
     }
 
-    private void handleScreenshotDetected(Path filePath) {
-        JSONObject event = new JSONObject();
-        event.put("timestamp", System.currentTimeMillis());
-        event.put("activity", "screenshotTaken");
-        event.put("status", "violation");
+    private void addPendingFile(Path path, long now) {
+        // Re-inserting moves the file to the end, so a file created again counts as new.
+        pendingFiles.remove(path);
+        pendingFiles.put(path, now);
+    }
 
-        JSONObject details = new JSONObject();
-        details.put("fileName", filePath.toString());
-        details.put("message", "A new image file was created in a monitored directory, indicating a likely screenshot.");
-        event.put("details", details);
+    /**
+     * @return The pending files that have been quiet long enough and turned out to be images.
+     */
+    private List<Path> settlePendingFiles(long now) {
+        List<Path> images = new ArrayList<>();
+        Iterator<Map.Entry<Path, Long>> iterator = pendingFiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Long> entry = iterator.next();
+            if (now - entry.getValue() < quietPeriodMillis) {
+                continue;
+            }
+            iterator.remove();
+            if (hasImageHeader(entry.getKey())) {
+                images.add(entry.getKey());
+            }
+        }
+        return images;
+    }
 
-        eventConsumer.accept(event.toString());
+    private PollResult reportImages(List<Path> images) {
+        int individual = Math.min(images.size(), MAX_INDIVIDUAL_EVENTS);
+        for (Path image : images.subList(0, individual)) {
+            handleScreenshotDetected(image);
+        }
+        if (individual == images.size()) {
+            return PollResult.VIOLATION;
+        }
+        // The rest of a burst share one event, with the same severity.
+        List<Path> rest = images.subList(individual, images.size());
+        EventEncoder encoder = EventEncoder.forCurrentThread()
+                .begin(Activity.IMAGE_FILES_ADDED, Status.VIOLATION)
+                .detail("count", rest.size())
+                .beginArray("fileNames");
+        for (Path image : rest.subList(0, Math.min(rest.size(), MAX_REPORTED_FILES))) {
+            encoder.element(image.toString());
+        }
+        eventConsumer.accept(encoder.endArray()
+                .detail(EventFields.MESSAGE, rest.size() + " more image files were added to monitored directories at once.")
+                .end());
+        return PollResult.VIOLATION;
+    }
+
+    private void handleScreenshotDetected(Path filePath) {
+        eventConsumer.accept(EventEncoder.forCurrentThread()
+                .begin(Activity.SCREENSHOT_TAKEN, Status.VIOLATION)
+                .detail("fileName", filePath.toString())
+                .detail(EventFields.MESSAGE, "A new image file was created in a monitored directory, indicating a likely screenshot.")
+                .end());
         System.out.println("Screenshot detected: " + filePath);
     }
 
-    private String getFileExtension(String fileName) {
-        int lastIndexOfDot = fileName.lastIndexOf(".");
-        if (lastIndexOfDot == -1) {
-            return ""; // No extension
+    /**
+     * Checks the file's magic number instead of trusting its extension.
+     * Recognises PNG, JPEG, GIF, BMP and WebP.
+     */
+    private boolean hasImageHeader(Path file) {
+        if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        headerBuffer.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (headerBuffer.hasRemaining() && channel.read(headerBuffer) > 0) {
+                // Read until the header is complete or the file ends.
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        int length = headerBuffer.position();
+        if (length >= 8 && matches(0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return true;
+        }
+        if (length >= 3 && matches(0, 0xFF, 0xD8, 0xFF)) {
+            return true;
+        }
+        if (length >= 6 && matches(0, 'G', 'I', 'F', '8') && (matches(4, '7', 'a') || matches(4, '9', 'a'))) {
+            return true;
+        }
+        if (length >= 12 && matches(0, 'R', 'I', 'F', 'F') && matches(8, 'W', 'E', 'B', 'P')) {
+            return true;
+        }
+        return length >= 18 && isBitmapHeader();
+    }
+
+    /**
+     * Checks more of a BMP header than its "BM" magic, which plain text files start with easily: the
+     * reserved fields must be zero, the pixel data must start after the headers, and the second header
+     * must have the size of one of the known DIB header versions.
+     */
+    private boolean isBitmapHeader() {
+        if (!matches(0, 'B', 'M') || !matches(6, 0, 0, 0, 0)) {
+            return false;
+        }
+        long dataOffset = littleEndianInt(10);
+        long dibHeaderSize = littleEndianInt(14);
+        boolean knownDibHeader = dibHeaderSize == 12 || dibHeaderSize == 40 || dibHeaderSize == 52
+                || dibHeaderSize == 56 || dibHeaderSize == 64 || dibHeaderSize == 108 || dibHeaderSize == 124;
+        return knownDibHeader && dataOffset >= 14 + dibHeaderSize;
+    }
+
+    private long littleEndianInt(int offset) {
+        return (headerBuffer.get(offset) & 0xFFL) | (headerBuffer.get(offset + 1) & 0xFFL) << 8
+                | (headerBuffer.get(offset + 2) & 0xFFL) << 16 | (headerBuffer.get(offset + 3) & 0xFFL) << 24;
+    }
+
+    private boolean matches(int offset, int... expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if ((headerBuffer.get(offset + i) & 0xFF) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void reregisterLostRoots() {
+        for (Path root : watchRoots) {
+            if (!watchedDirectories.containsValue(root) && Files.isDirectory(root)) {
+                registerTree(root, 0, lastDrainMillis);
+            }
+        }
+    }
+
+    /**
+     * Registers a directory and its subdirectories, up to {@link #MAX_DEPTH} levels below a watch root.
+     * @param createdSince Files in the tree created at or after this time are queued for examination,
+     *                     as their events may have been missed; {@link Long#MAX_VALUE} for none.
+     */
+    private void registerTree(Path start, int startDepth, long createdSince) {
+        if (!Files.isDirectory(start) || startDepth > MAX_DEPTH) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            // One level more than the directories to register, so the files in the deepest ones are visited;
+            // directories one level too deep are passed to visitFile and left alone.
+            Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), MAX_DEPTH - startDepth + 1, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                    register(directory);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile() && attributes.creationTime().toMillis() >= createdSince) {
+                        addPendingFile(file, now);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Could not register directory for screenshot monitoring: " + start);
+        }
+    }
+
+    private void register(Path directory) {
+        if (watchedDirectories.containsValue(directory)) {
+            return;
+        }
+        try {
+            WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirectories.put(key, directory);
+            if (watchRoots.contains(directory)) {
+                System.out.println("ScreenshotMonitor is now watching: " + directory);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not register directory for screenshot monitoring: " + directory);
+        }
+    }
+
+    private int depthOf(Path directory) {
+        for (Path root : watchRoots) {
+            if (directory.startsWith(root)) {
+                return root.relativize(directory).getNameCount();
+            }
         }
-        return fileName.substring(lastIndexOfDot + 1);
+        return 0;
     }
 }
@@ -1,9 +1,12 @@
 package com.proctor.client.monitoring;
 
-import com.sun.jna.Native;
-import com.sun.jna.platform.win32.User32;
-import com.sun.jna.platform.win32.WinDef;
-import org.json.JSONObject;
+import com.proctor.client.monitoring.window.ActiveWindowListener;
+import com.proctor.client.monitoring.window.ActiveWindowSampler;
+import com.proctor.client.scheduler.PollResult;
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.EventEncoder;
+import com.proctor.protocol.EventFields;
+import com.proctor.protocol.Status;
 
 import java.util.function.Consumer;
 
@@ -17,72 +20,48 @@ import java.util.function.Consumer;
  * detection requires a browser extension.
  *
  * This implementation is functionally similar to WindowMonitor but is focused on changes
- * within the allowed browser process.
+ * within the allowed browser process. Both subscribe to the same {@link ActiveWindowSampler}, so tab
+ * switches are detected on every OS the sampler can read titles on (Windows, macOS and Linux/X11),
+ * not only on Windows as when this monitor did its own lookups.
  */
-public class TabSwitchMonitor implements Runnable {
+public class TabSwitchMonitor implements ActiveWindowListener {
 
-    private static final int MAX_TITLE_LENGTH = 1024;
     private final Consumer<String> eventConsumer;
     private String lastBrowserTitle = "";
     // In a real application, the developer would provide this via the session
     private final String allowedBrowserIdentifier = "Google Chrome"; // Example
 
-    public TabSwitchMonitor(Consumer<String> eventConsumer) {
+    public TabSwitchMonitor(Consumer<String> eventConsumer, ActiveWindowSampler sampler) {
         this.eventConsumer = eventConsumer;
-        this.lastBrowserTitle = getActiveWindowTitle();
+        this.lastBrowserTitle = sampler.getCurrentTitle();
+        sampler.subscribe(this);
     }
 
     @Override
-    public void run() {
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                String currentWindowTitle = getActiveWindowTitle();
-
-                // Only proceed if we are actually in the target browser
-                if (currentWindowTitle != null && currentWindowTitle.contains(allowedBrowserIdentifier)) {
-                    // Check if the title has changed since the last check
-                    if (!currentWindowTitle.equals(lastBrowserTitle)) {
-                        
-                        JSONObject event = new JSONObject();
-                        event.put("timestamp", System.currentTimeMillis());
-                        event.put("activity", "tabSwitch");
-                        event.put("status", "suspicious"); // A tab switch is always suspicious
-
-                        JSONObject details = new JSONObject();
-                        details.put("previousTitle", lastBrowserTitle);
-                        details.put("newTitle", currentWindowTitle);
-                        details.put("message", "Browser window title changed, indicating a possible tab switch.");
-                        event.put("details", details);
-                        
-                        eventConsumer.accept(event.toString());
-                        
-                        // Update the last known title
-                        lastBrowserTitle = currentWindowTitle;
-                    }
-                } else {
-                    // If the active window isn't the browser, reset the last title.
-                    // The WindowMonitor is responsible for flagging this as a violation.
-                    lastBrowserTitle = "";
-                }
-
-                Thread.sleep(1000); // Check every second
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                System.err.println("TabSwitchMonitor was interrupted.");
-                break;
-            }
+    public PollResult onActiveWindowChanged(String previousTitle, String currentWindowTitle) {
+        // Only proceed if we are actually in the target browser
+        if (currentWindowTitle == null || !currentWindowTitle.contains(allowedBrowserIdentifier)) {
+            // If the active window isn't the browser, reset the last title.
+            // The WindowMonitor is responsible for flagging this as a violation.
+            lastBrowserTitle = "";
+            return PollResult.IDLE;
         }
-    }
 
-    private String getActiveWindowTitle() {
-        // This is Windows-specific logic
-        if (com.sun.jna.Platform.isWindows()) {
-            char[] buffer = new char[MAX_TITLE_LENGTH * 2];
-            WinDef.HWND hwnd = User32.INSTANCE.GetForegroundWindow();
-            User32.INSTANCE.GetWindowText(hwnd, buffer, MAX_TITLE_LENGTH);
-            return Native.toString(buffer);
+        // Check if the title has changed since the last check
+        if (currentWindowTitle.equals(lastBrowserTitle)) {
+            return PollResult.IDLE;
         }
-        // NOTE: Implementations for macOS and Linux would be needed here.
-        return "Unsupported OS";
+
+        // A tab switch is always suspicious
+        eventConsumer.accept(EventEncoder.forCurrentThread()
+                .begin(Activity.TAB_SWITCH, Status.SUSPICIOUS)
+                .detail("previousTitle", lastBrowserTitle)
+                .detail("newTitle", currentWindowTitle)
+                .detail(EventFields.MESSAGE, "Browser window title changed, indicating a possible tab switch.")
+                .end());
+
+        // Update the last known title
+        lastBrowserTitle = currentWindowTitle;
+        return PollResult.CHANGED;
     }
 }
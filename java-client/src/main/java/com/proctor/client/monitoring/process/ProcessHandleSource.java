@@ -0,0 +1,17 @@
+package com.proctor.client.monitoring.process;
+
+import java.time.Instant;
+
+/**
+ * A portable process source based on {@link ProcessHandle#allProcesses()}.
+ * The start time is the process start instant in milliseconds, or 0 if the OS does not report it.
+ */
+public class ProcessHandleSource implements ProcessSnapshotSource {
+
+    @Override
+    public void scan(ProcessVisitor visitor) {
+        ProcessHandle.allProcesses().forEach(process -> visitor.visit(
+                process.pid(),
+                process.info().startInstant().map(Instant::toEpochMilli).orElse(0L)));
+    }
+}
@@ -0,0 +1,30 @@
+package com.proctor.client.monitoring.process;
+
+/**
+ * Enumerates the processes currently running on the machine.
+ */
+public interface ProcessSnapshotSource {
+
+    /**
+     * Receives one call per running process.
+     */
+    interface ProcessVisitor {
+        void visit(long pid, long startTime);
+    }
+
+    /**
+     * Visits every running process once.
+     * @param visitor Receives the PID and an OS-specific start time of each process.
+     */
+    void scan(ProcessVisitor visitor);
+
+    /**
+     * @return A source that reads /proc directly on Linux, or one based on {@link ProcessHandle} elsewhere.
+     */
+    static ProcessSnapshotSource forCurrentPlatform() {
+        if (ProcfsProcessSource.isSupported()) {
+            return new ProcfsProcessSource();
+        }
+        return new ProcessHandleSource();
+    }
+}
@@ -0,0 +1,212 @@
+package com.proctor.client.monitoring.process;
+
+import java.util.Arrays;
+
+/**
+ * A primitive open-addressing table of running processes, keyed by PID and stamped with the
+ * process start time and the scan generation in which the process was last seen.
+ *
+ * A scan is bracketed by {@link #beginScan()} and {@link #endScan(ExitVisitor)}. Every process seen in
+ * between is passed to {@link #observe(long, long)}, which reports whether it is new. Entries not seen
+ * during the scan are reported as exited and removed. A PID that comes back with a different start
+ * time is treated as a new process, so reused PIDs are detected. No objects are allocated per process.
+ *
+ * This class is not thread-safe; it is owned by the thread that polls the process list.
+ */
+public class ProcessTable {
+
+    /** The process was already known with the same start time. */
+    public static final int UNCHANGED = 0;
+    /** The PID was not known before. */
+    public static final int STARTED = 1;
+    /** The PID was known, but with a different start time: the OS reused it for a new process. */
+    public static final int REPLACED = 2;
+
+    private static final long EMPTY = -1L;
+
+    /**
+     * Receives the processes that were not seen during a scan.
+     */
+    public interface ExitVisitor {
+        void onExited(long pid, long startTime);
+    }
+
+    private long[] pids;
+    private long[] startTimes;
+    private int[] generations;
+    private int size;
+    private int mask;
+    private int generation;
+    private long lastReplacedStartTime;
+
+    // Reused between scans to collect entries to remove.
+    private long[] exitedPids = new long[16];
+    private long[] exitedStartTimes = new long[16];
+
+    public ProcessTable() {
+        this(1024);
+    }
+
+    public ProcessTable(int expectedProcesses) {
+        allocate(tableSizeFor(expectedProcesses));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Starts a new scan generation.
+     */
+    public void beginScan() {
+        generation++;
+    }
+
+    /**
+     * Records that a process was seen during the current scan.
+     * @param pid The process ID.
+     * @param startTime An OS-specific start time, used to tell reused PIDs apart.
+     * @return {@link #UNCHANGED}, {@link #STARTED} or {@link #REPLACED}.
+     */
+    public int observe(long pid, long startTime) {
+        int slot = slotOf(pid);
+        if (pids[slot] == pid) {
+            generations[slot] = generation;
+            if (startTimes[slot] == startTime) {
+                return UNCHANGED;
+            }
+            lastReplacedStartTime = startTimes[slot];
+            startTimes[slot] = startTime;
+            return REPLACED;
+        }
+        pids[slot] = pid;
+        startTimes[slot] = startTime;
+        generations[slot] = generation;
+        if (++size > (mask + 1) / 2) {
+            allocate(pids.length * 2);
+        }
+        return STARTED;
+    }
+
+    /**
+     * @return The start time of the process that was replaced by the last {@link #observe} call returning {@link #REPLACED}.
+     */
+    public long getLastReplacedStartTime() {
+        return lastReplacedStartTime;
+    }
+
+    /**
+     * @param pid The process ID.
+     * @return {@code true} if the process was seen in the most recent scan.
+     */
+    public boolean contains(long pid) {
+        return pids[slotOf(pid)] == pid;
+    }
+
+    /**
+     * @param pid The process ID.
+     * @return The start time recorded for the process, or -1 if it is not in the table.
+     */
+    public long startTimeOf(long pid) {
+        int slot = slotOf(pid);
+        return pids[slot] == pid ? startTimes[slot] : -1;
+    }
+
+    /**
+     * Finishes the current scan, removing and reporting every process that was not seen in it.
+     * @param visitor Receives each exited process.
+     * @return The number of exited processes.
+     */
+    public int endScan(ExitVisitor visitor) {
+        int exited = 0;
+        for (int slot = 0; slot < pids.length; slot++) {
+            if (pids[slot] != EMPTY && generations[slot] != generation) {
+                if (exited == exitedPids.length) {
+                    exitedPids = Arrays.copyOf(exitedPids, exited * 2);
+                    exitedStartTimes = Arrays.copyOf(exitedStartTimes, exited * 2);
+                }
+                exitedPids[exited] = pids[slot];
+                exitedStartTimes[exited] = startTimes[slot];
+                exited++;
+            }
+        }
+        // Removal shifts entries around, so it happens after the sweep rather than during it.
+        for (int i = 0; i < exited; i++) {
+            remove(exitedPids[i]);
+            if (visitor != null) {
+                visitor.onExited(exitedPids[i], exitedStartTimes[i]);
+            }
+        }
+        return exited;
+    }
+
+    private void remove(long pid) {
+        int slot = slotOf(pid);
+        if (pids[slot] != pid) {
+            return;
+        }
+        // Backward-shift deletion keeps probe chains intact without tombstones.
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (pids[next] != EMPTY) {
+            int home = hash(pids[next]);
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                pids[hole] = pids[next];
+                startTimes[hole] = startTimes[next];
+                generations[hole] = generations[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        pids[hole] = EMPTY;
+        size--;
+    }
+
+    /**
+     * @return The slot holding the PID, or the empty slot where it would be inserted.
+     */
+    private int slotOf(long pid) {
+        int slot = hash(pid);
+        while (pids[slot] != EMPTY && pids[slot] != pid) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int hash(long pid) {
+        long mixed = pid * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        long[] oldPids = pids;
+        long[] oldStartTimes = startTimes;
+        int[] oldGenerations = generations;
+
+        pids = new long[capacity];
+        Arrays.fill(pids, EMPTY);
+        startTimes = new long[capacity];
+        generations = new int[capacity];
+        mask = capacity - 1;
+
+        if (oldPids != null) {
+            for (int i = 0; i < oldPids.length; i++) {
+                if (oldPids[i] != EMPTY) {
+                    int slot = slotOf(oldPids[i]);
+                    pids[slot] = oldPids[i];
+                    startTimes[slot] = oldStartTimes[i];
+                    generations[slot] = oldGenerations[i];
+                }
+            }
+        }
+    }
+
+    private static int tableSizeFor(int expected) {
+        int capacity = 16;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,109 @@
+package com.proctor.client.monitoring.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the process list straight from /proc on Linux.
+ *
+ * The start time is field 22 of /proc/[pid]/stat (clock ticks since boot), which together with the PID
+ * uniquely identifies a process. Each stat file is read into the same reusable buffer and parsed in place,
+ * and its path is built in a reused builder; what is still allocated per process is the path string
+ * and the file channel, which the JDK offers no way to reuse across files.
+ */
+public class ProcfsProcessSource implements ProcessSnapshotSource {
+
+    private static final File PROC = new File("/proc");
+    private static final String PROC_PREFIX = "/proc/";
+    private static final int START_TIME_FIELD = 22;
+
+    // Reused for every stat file; /proc/[pid]/stat is well under 1KB.
+    private final ByteBuffer statBuffer = ByteBuffer.allocate(1024);
+    // "/proc/" followed by the PID and "/stat" of the file being read.
+    private final StringBuilder statPath = new StringBuilder(32).append(PROC_PREFIX);
+
+    public static boolean isSupported() {
+        return new File(PROC, "self/stat").canRead();
+    }
+
+    @Override
+    public void scan(ProcessVisitor visitor) {
+        String[] entries = PROC.list();
+        if (entries == null) {
+            return;
+        }
+        for (String entry : entries) {
+            long pid = parsePid(entry);
+            if (pid < 0) {
+                continue;
+            }
+            statPath.setLength(PROC_PREFIX.length());
+            statPath.append(entry).append("/stat");
+            long startTime = readStartTime(FileSystems.getDefault().getPath(statPath.toString()));
+            if (startTime >= 0) {
+                visitor.visit(pid, startTime);
+            }
+        }
+    }
+
+    private static long parsePid(String entry) {
+        long pid = 0;
+        for (int i = 0; i < entry.length(); i++) {
+            char c = entry.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            pid = pid * 10 + (c - '0');
+        }
+        return entry.isEmpty() ? -1 : pid;
+    }
+
+    /**
+     * @return The start time in clock ticks, or -1 if the process has already exited.
+     */
+    private long readStartTime(Path statFile) {
+        statBuffer.clear();
+        try (FileChannel channel = FileChannel.open(statFile, StandardOpenOption.READ)) {
+            while (statBuffer.hasRemaining() && channel.read(statBuffer) > 0) {
+                // Keep reading until EOF or the buffer is full.
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        int limit = statBuffer.position();
+
+        // The command name (field 2) is in parentheses and may itself contain spaces and ')'.
+        int position = limit - 1;
+        while (position >= 0 && statBuffer.get(position) != ')') {
+            position--;
+        }
+        if (position < 0) {
+            return -1;
+        }
+        // After ")" comes " state ppid ...", so field 3 starts two bytes later.
+        int field = 2;
+        position++;
+        while (position < limit && field < START_TIME_FIELD) {
+            if (statBuffer.get(position) == ' ') {
+                field++;
+            }
+            position++;
+        }
+        long value = 0;
+        boolean digits = false;
+        while (position < limit) {
+            byte b = statBuffer.get(position++);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            digits = true;
+        }
+        return digits ? value : -1;
+    }
+}
@@ -0,0 +1,185 @@
+package com.proctor.client.monitoring.signature;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identifies forbidden applications by the content of their executable, so renaming a binary
+ * (e.g. "anydesk.exe" to "notes.exe") does not get past the ProcessMonitor.
+ *
+ * Executables are hashed with SHA-256 over a memory-mapped read of the file, on a single low-priority
+ * background thread so the poll loop never waits for it. Hashes are kept in a {@link FingerprintCache}
+ * keyed by path and file stamp, and compared against the known-bad hashes in the {@link SignatureDatabase}.
+ *
+ * Work is deduplicated by path: while an executable is queued or being hashed, further processes
+ * started from it wait for the same result and are all reported on a match. When the queue is full the
+ * submission is refused and counted; the executable is submitted again with the next process that
+ * starts from it.
+ */
+public class ExecutableFingerprinter {
+
+    /**
+     * Receives executables whose hash is on the known-bad list.
+     */
+    public interface MatchListener {
+        void onKnownBadExecutable(long pid, long startTime, String executablePath, String sha256, Signature signature);
+    }
+
+    private static final long MAP_CHUNK_SIZE = 64L * 1024 * 1024;
+    private static final int MAX_PENDING = 256;
+    // Processes of one executable waiting for its result; more are not kept.
+    private static final int MAX_WAITING_PROCESSES = 1024;
+
+    /**
+     * The processes started from one executable that wait for its result, as pid/start time pairs.
+     */
+    private static final class Waiting {
+        long[] processes = new long[4];
+        int count;
+
+        void add(long pid, long startTime) {
+            if (count == processes.length) {
+                if (count >= 2 * MAX_WAITING_PROCESSES) {
+                    return;
+                }
+                processes = Arrays.copyOf(processes, count * 2);
+            }
+            processes[count++] = pid;
+            processes[count++] = startTime;
+        }
+    }
+
+    private final SignatureDatabase signatureDatabase;
+    private final FingerprintCache cache;
+    private final MatchListener listener;
+    private final ThreadPoolExecutor executor;
+    // Executables that are queued or being hashed, with the processes waiting for each, so a burst of
+    // launches of one binary is hashed once. Guarded by itself.
+    private final Map<String, Waiting> inFlight = new HashMap<>();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ExecutableFingerprinter(SignatureDatabase signatureDatabase, FingerprintCache cache, MatchListener listener) {
+        this(signatureDatabase, cache, listener, MAX_PENDING);
+    }
+
+    ExecutableFingerprinter(SignatureDatabase signatureDatabase, FingerprintCache cache, MatchListener listener, int maxPending) {
+        this.signatureDatabase = signatureDatabase;
+        this.cache = cache;
+        this.listener = listener;
+        // When the queue is full, new work is refused rather than slowing down the caller.
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxPending), runnable -> {
+                    Thread thread = new Thread(runnable, "Executable-Fingerprinter");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queues the executable of a newly started process for fingerprinting. Returns immediately.
+     * @param pid The process ID, reported back on a match.
+     * @param startTime The process start time, reported back on a match.
+     * @param executablePath The full path of the process executable.
+     */
+    public void submit(long pid, long startTime, String executablePath) {
+        if (executablePath == null || executablePath.isEmpty()) {
+            return;
+        }
+        synchronized (inFlight) {
+            Waiting waiting = inFlight.get(executablePath);
+            if (waiting != null) {
+                waiting.add(pid, startTime);
+                return;
+            }
+            waiting = new Waiting();
+            waiting.add(pid, startTime);
+            inFlight.put(executablePath, waiting);
+        }
+        try {
+            executor.execute(() -> check(executablePath));
+        } catch (RejectedExecutionException e) {
+            synchronized (inFlight) {
+                inFlight.remove(executablePath);
+            }
+            rejected.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return How many executables were not checked because the queue was full or the fingerprinter shut down.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void check(String executablePath) {
+        String sha256 = null;
+        try {
+            Path path = Path.of(executablePath);
+            FingerprintCache.Stamp stamp = FingerprintCache.Stamp.of(path);
+            if (stamp != null) {
+                sha256 = cache.get(executablePath, stamp);
+                if (sha256 == null) {
+                    sha256 = hash(path, stamp.getSize());
+                    cache.put(executablePath, stamp, sha256);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The process may have exited or the file may not be readable; nothing to report.
+        }
+        // Processes that arrive from here on start a new check.
+        Waiting waiting;
+        synchronized (inFlight) {
+            waiting = inFlight.remove(executablePath);
+        }
+        Signature signature = sha256 != null ? signatureDatabase.findByHash(sha256) : null;
+        if (signature == null || waiting == null) {
+            return;
+        }
+        for (int i = 0; i < waiting.count; i += 2) {
+            try {
+                listener.onKnownBadExecutable(waiting.processes[i], waiting.processes[i + 1], executablePath, sha256, signature);
+            } catch (RuntimeException e) {
+                System.err.println("Error reporting a known-bad executable: " + e.getMessage());
+            }
+        }
+    }
+
+    private static String hash(Path path, long size) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (long position = 0; position < size; position += MAP_CHUNK_SIZE) {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK_SIZE, size - position));
+                digest.update(chunk);
+            }
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
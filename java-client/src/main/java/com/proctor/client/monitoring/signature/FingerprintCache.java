@@ -0,0 +1,260 @@
+package com.proctor.client.monitoring.signature;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A persistent cache of executable hashes, keyed by path and by a {@link Stamp} of the file.
+ *
+ * Entries are appended to a tab-separated file as they are computed and loaded back on the next start,
+ * so each binary is hashed only once across sessions unless it changes. If the file has accumulated
+ * many stale lines, it is compacted when loaded.
+ *
+ * The file lives in a directory the student can write to, so it is not trusted as is. Every line
+ * carries an HMAC-SHA256 under a random key kept next to it (readable by its owner only), and lines
+ * that do not verify are ignored. The stamp an entry is bound to includes the file's identity (its
+ * inode on Unix) and, where the OS exposes it, its change time, which unprivileged users cannot set:
+ * replacing a cached binary with another one of the same size and modification time still misses.
+ */
+public class FingerprintCache {
+
+    static final String KEY_SUFFIX = ".key";
+
+    private static final int KEY_BYTES = 32;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    /**
+     * What a cached hash is bound to: the file's size, modification time, identity and change time.
+     */
+    public static final class Stamp {
+        final long size;
+        final long modifiedMillis;
+        // The file key (e.g. "(dev=803,ino=1234)"), or "-" if the file system has none.
+        final String fileKey;
+        // The inode change time in milliseconds, or -1 if the OS does not expose it.
+        final long changedMillis;
+
+        Stamp(long size, long modifiedMillis, String fileKey, long changedMillis) {
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.fileKey = fileKey;
+            this.changedMillis = changedMillis;
+        }
+
+        /**
+         * @return The stamp of a regular file, or null if the path is not one.
+         * @throws IOException if the attributes cannot be read.
+         */
+        public static Stamp of(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            long changed = -1;
+            try {
+                changed = ((FileTime) Files.getAttribute(path, "unix:ctime")).toMillis();
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                // Not a Unix file system.
+            }
+            Object fileKey = attributes.fileKey();
+            return new Stamp(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    fileKey == null ? "-" : fileKey.toString().replace('\t', ' '), changed);
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Stamp)) {
+                return false;
+            }
+            Stamp other = (Stamp) o;
+            return size == other.size && modifiedMillis == other.modifiedMillis
+                    && changedMillis == other.changedMillis && fileKey.equals(other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, modifiedMillis, fileKey, changedMillis);
+        }
+    }
+
+    private static final class Entry {
+        final Stamp stamp;
+        final String sha256;
+
+        Entry(Stamp stamp, String sha256) {
+            this.stamp = stamp;
+            this.sha256 = sha256;
+        }
+    }
+
+    private final Path cacheFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Null for an in-memory cache; guarded by 'this' once loaded.
+    private final Mac mac;
+
+    /**
+     * @param cacheFile The file to load from and append to, or null for an in-memory cache. Its key
+     *                  is kept in the same directory, with {@link #KEY_SUFFIX} appended to the name.
+     */
+    public FingerprintCache(Path cacheFile) {
+        Mac fileMac = null;
+        if (cacheFile != null) {
+            try {
+                fileMac = Mac.getInstance(MAC_ALGORITHM);
+                fileMac.init(new SecretKeySpec(loadOrCreateKey(cacheFile.resolveSibling(cacheFile.getFileName() + KEY_SUFFIX)), MAC_ALGORITHM));
+            } catch (IOException | GeneralSecurityException e) {
+                System.err.println("Could not open the fingerprint cache key, hashes will not persist: " + e.getMessage());
+                fileMac = null;
+            }
+        }
+        this.mac = fileMac;
+        this.cacheFile = fileMac != null ? cacheFile : null;
+        load();
+    }
+
+    /**
+     * @return The cached hash, or null if the file is unknown or has changed since it was hashed.
+     */
+    public String get(String path, Stamp stamp) {
+        Entry entry = entries.get(path);
+        if (entry == null || !entry.stamp.equals(stamp)) {
+            return null;
+        }
+        return entry.sha256;
+    }
+
+    public synchronized void put(String path, Stamp stamp, String sha256) {
+        Entry entry = new Entry(stamp, sha256);
+        entries.put(path, entry);
+        if (cacheFile == null) {
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writeEntry(writer, path, entry);
+        } catch (IOException e) {
+            System.err.println("Could not update fingerprint cache: " + e.getMessage());
+        }
+    }
+
+    private static byte[] loadOrCreateKey(Path keyFile) throws IOException {
+        if (!Files.exists(keyFile)) {
+            byte[] key = new byte[KEY_BYTES];
+            new SecureRandom().nextBytes(key);
+            try {
+                Files.createFile(keyFile);
+                try {
+                    Files.setPosixFilePermissions(keyFile, PosixFilePermissions.fromString("rw-------"));
+                } catch (UnsupportedOperationException e) {
+                    // The per-user directory is already private on Windows.
+                }
+                Files.write(keyFile, key);
+                return key;
+            } catch (FileAlreadyExistsException e) {
+                // Another client created it first.
+            }
+        }
+        byte[] key = Files.readAllBytes(keyFile);
+        if (key.length != KEY_BYTES) {
+            throw new IOException("Invalid key file " + keyFile);
+        }
+        return key;
+    }
+
+    private synchronized void load() {
+        if (cacheFile == null || !Files.isRegularFile(cacheFile)) {
+            return;
+        }
+        int lines = 0;
+        int rejected = 0;
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                // mac <TAB> sha256 <TAB> size <TAB> mtime <TAB> ctime <TAB> file key <TAB> path (the path may contain tabs)
+                int separator = line.indexOf('\t');
+                String[] parts = line.substring(separator + 1).split("\t", 6);
+                if (separator < 0 || parts.length != 6 || !verify(line.substring(0, separator), line.substring(separator + 1))) {
+                    rejected++;
+                    continue;
+                }
+                try {
+                    Stamp stamp = new Stamp(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[4], Long.parseLong(parts[3]));
+                    entries.put(parts[5], new Entry(stamp, parts[0]));
+                } catch (NumberFormatException e) {
+                    rejected++;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read fingerprint cache: " + e.getMessage());
+            return;
+        }
+        if (rejected > 0) {
+            System.err.println("Ignored " + rejected + " fingerprint cache entries that failed verification.");
+        }
+        if (rejected > 0 || lines > 2 * entries.size() + 100) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        Path tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writeEntry(writer, entry.getKey(), entry.getValue());
+            }
+        } catch (IOException e) {
+            System.err.println("Could not compact fingerprint cache: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not replace fingerprint cache: " + e.getMessage());
+        }
+    }
+
+    private void writeEntry(BufferedWriter writer, String path, Entry entry) throws IOException {
+        Stamp stamp = entry.stamp;
+        String content = entry.sha256 + "\t" + stamp.size + "\t" + stamp.modifiedMillis + "\t" + stamp.changedMillis
+                + "\t" + stamp.fileKey + "\t" + path;
+        writer.write(sign(content) + "\t" + content);
+        writer.newLine();
+    }
+
+    private String sign(String content) {
+        byte[] digest = mac.doFinal(content.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private boolean verify(String signature, String content) {
+        return MessageDigest.isEqual(sign(content).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+}
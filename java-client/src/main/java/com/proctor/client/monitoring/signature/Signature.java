@@ -0,0 +1,142 @@
+package com.proctor.client.monitoring.signature;
+
+import java.util.Locale;
+
+/**
+ * One entry of the forbidden-application database: a pattern, what it is matched against and the
+ * category it belongs to.
+ *
+ * Database lines have the form
+ * <pre>
+ *   line  := [category ":"] [scope ":"] pattern
+ *   scope := "name" | "path" | "args" | "sha256"
+ * </pre>
+ * The scope prefixes are recognised before the category is split off, so "sha256:&lt;hex&gt;" is a hash
+ * and "path:c:\tools\x.exe" a path pattern, and only the first ':' of a line can end a category.
+ * A category is a word of at least two letters, digits, '-' or '_' not followed by a path separator,
+ * so a line such as "c:\tools" or "http://x" is a pattern without a category.
+ */
+public class Signature {
+
+    /** What a signature's pattern is compared with. */
+    public enum Scope {
+        /** A case-insensitive substring of the process name; the default. */
+        NAME("name"),
+        /** Equal to one component of the executable path, e.g. "utm.app" or the file name itself. */
+        PATH("path"),
+        /** Equal to one argument, or to its file name if the argument is a path. */
+        ARGUMENTS("args"),
+        /** The lower-case hex SHA-256 of the executable. */
+        HASH("sha256");
+
+        private final String prefix;
+
+        Scope(String prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * @return The prefix marking this scope in a database line, without the ':'.
+         */
+        public String getPrefix() {
+            return prefix;
+        }
+    }
+
+    private static final String UNCATEGORIZED = "uncategorized";
+
+    private final String pattern;
+    private final String category;
+    private final Scope scope;
+
+    public Signature(String pattern, String category) {
+        this(pattern, category, Scope.NAME);
+    }
+
+    public Signature(String pattern, String category, Scope scope) {
+        if (pattern == null || pattern.trim().isEmpty()) {
+            throw new IllegalArgumentException("Signature pattern cannot be null or empty.");
+        }
+        if (scope == null) {
+            throw new IllegalArgumentException("Signature scope cannot be null.");
+        }
+        this.pattern = pattern.trim().toLowerCase(Locale.ROOT);
+        if (scope == Scope.HASH && !this.pattern.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Not a SHA-256: " + pattern);
+        }
+        this.category = category == null || category.trim().isEmpty() ? UNCATEGORIZED : category.trim();
+        this.scope = scope;
+    }
+
+    /**
+     * Parses a database line; see the class description for the grammar.
+     * @param line The line to parse.
+     * @return The signature described by the line.
+     * @throws IllegalArgumentException if the pattern is empty, or a hash is not a SHA-256.
+     */
+    public static Signature parse(String line) {
+        String text = line.trim();
+        Scope scope = scopeOf(text);
+        if (scope != null) {
+            return new Signature(text.substring(scope.prefix.length() + 1), null, scope);
+        }
+        int separator = text.indexOf(':');
+        if (separator < 0 || !isCategory(text, separator)) {
+            return new Signature(text, null);
+        }
+        String category = text.substring(0, separator);
+        String rest = text.substring(separator + 1);
+        scope = scopeOf(rest);
+        if (scope != null) {
+            return new Signature(rest.substring(scope.prefix.length() + 1), category, scope);
+        }
+        return new Signature(rest, category);
+    }
+
+    /**
+     * @return The scope whose prefix, followed by ':', starts the text, or null if none does.
+     */
+    private static Scope scopeOf(String text) {
+        for (Scope scope : Scope.values()) {
+            int length = scope.prefix.length();
+            if (text.length() > length && text.charAt(length) == ':' && text.regionMatches(true, 0, scope.prefix, 0, length)) {
+                return scope;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isCategory(String text, int separator) {
+        if (separator < 2) {
+            return false;
+        }
+        for (int i = 0; i < separator; i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') {
+                return false;
+            }
+        }
+        char next = separator + 1 < text.length() ? text.charAt(separator + 1) : ' ';
+        return next != '/' && next != '\\';
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * @return The signature as a database line, which parses back to an equal signature.
+     */
+    @Override
+    public String toString() {
+        return category + ":" + (scope == Scope.NAME ? "" : scope.prefix + ":") + pattern;
+    }
+}
@@ -0,0 +1,168 @@
+package com.proctor.client.monitoring.signature;
+
+import com.proctor.client.scheduler.PollResult;
+import com.proctor.client.scheduler.PolledMonitor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The database of forbidden-application signatures used by the ProcessMonitor.
+ *
+ * Signatures come from the copy bundled with the client, optionally followed by a local file and
+ * by lists pushed from the server. They are compiled into a {@link SignatureMatcher} that is swapped
+ * atomically, so the database can be reloaded while the monitor keeps matching.
+ * When polled by the scheduler, the database reloads the local file if it was modified.
+ *
+ * File format: one signature per line, "[category:][scope:]pattern" as described by {@link Signature}.
+ * A "sha256" scope marks a known-bad executable hash rather than a pattern.
+ * Blank lines and lines starting with '#' are ignored.
+ */
+public class SignatureDatabase implements PolledMonitor {
+
+    private static final String BUNDLED_RESOURCE = "signatures/forbidden-applications.txt";
+
+    private final Path signatureFile;
+    private volatile SignatureMatcher matcher;
+    private volatile Map<String, Signature> hashSignatures = new HashMap<>();
+    private List<Signature> bundledSignatures = new ArrayList<>();
+    private List<Signature> fileSignatures = new ArrayList<>();
+    private List<Signature> pushedSignatures = new ArrayList<>();
+    private long signatureFileModified = -1;
+
+    /**
+     * @param signatureFile An optional local signature file to load and watch for changes, or null.
+     */
+    public SignatureDatabase(Path signatureFile) {
+        this.signatureFile = signatureFile;
+        try (InputStream in = SignatureDatabase.class.getClassLoader().getResourceAsStream(BUNDLED_RESOURCE)) {
+            if (in != null) {
+                bundledSignatures = parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+            } else {
+                System.err.println("Bundled signature database not found: " + BUNDLED_RESOURCE);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read bundled signature database: " + e.getMessage());
+        }
+        reloadFileIfModified();
+        recompile();
+    }
+
+    /**
+     * @return The currently active matcher. Callers should read it once per check.
+     */
+    public SignatureMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Looks up a known-bad executable hash.
+     * @param sha256 The lower-case hex SHA-256 of an executable.
+     * @return The matching signature, or null if the hash is not known to be bad.
+     */
+    public Signature findByHash(String sha256) {
+        return hashSignatures.get(sha256);
+    }
+
+    /**
+     * Replaces the server-pushed part of the database.
+     * @param lines Signature lines in the same format as the database file.
+     */
+    public synchronized void updatePushedSignatures(Collection<String> lines) {
+        List<Signature> parsed = new ArrayList<>();
+        for (String line : lines) {
+            addLine(parsed, line);
+        }
+        pushedSignatures = parsed;
+        recompile();
+        System.out.println("Signature database updated by the server: " + matcher.size() + " signatures active.");
+    }
+
+    @Override
+    public String getName() {
+        return "SignatureDatabase";
+    }
+
+    @Override
+    public synchronized PollResult poll() {
+        if (reloadFileIfModified()) {
+            recompile();
+            System.out.println("Signature file reloaded: " + matcher.size() + " signatures active.");
+            return PollResult.CHANGED;
+        }
+        return PollResult.IDLE;
+    }
+
+    private boolean reloadFileIfModified() {
+        if (signatureFile == null || !Files.isRegularFile(signatureFile)) {
+            return false;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(signatureFile).toMillis();
+            if (modified == signatureFileModified) {
+                return false;
+            }
+            try (Reader reader = Files.newBufferedReader(signatureFile, StandardCharsets.UTF_8)) {
+                fileSignatures = parse(reader);
+            }
+            signatureFileModified = modified;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not read signature file " + signatureFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void recompile() {
+        List<Signature> all = new ArrayList<>(bundledSignatures.size() + fileSignatures.size() + pushedSignatures.size());
+        all.addAll(bundledSignatures);
+        all.addAll(fileSignatures);
+        all.addAll(pushedSignatures);
+
+        List<Signature> patterns = new ArrayList<>(all.size());
+        Map<String, Signature> hashes = new HashMap<>();
+        for (Signature signature : all) {
+            if (signature.getScope() == Signature.Scope.HASH) {
+                hashes.putIfAbsent(signature.getPattern(), signature);
+            } else {
+                patterns.add(signature);
+            }
+        }
+        hashSignatures = hashes;
+        matcher = new SignatureMatcher(patterns);
+    }
+
+    private static List<Signature> parse(Reader source) throws IOException {
+        List<Signature> signatures = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(source)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                addLine(signatures, line);
+            }
+        }
+        return signatures;
+    }
+
+    private static void addLine(List<Signature> signatures, String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return;
+        }
+        try {
+            signatures.add(Signature.parse(trimmed));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring invalid signature: " + line);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.proctor.client.monitoring.signature;
+
+/**
+ * Describes which signature matched a process, and in which part of the process description.
+ */
+public class SignatureMatch {
+
+    /** The part of the process description in which a signature was found. */
+    public enum Field {
+        COMMAND, PATH, ARGUMENTS
+    }
+
+    private final Signature signature;
+    private final Field field;
+
+    public SignatureMatch(Signature signature, Field field) {
+        this.signature = signature;
+        this.field = field;
+    }
+
+    public Signature getSignature() {
+        return signature;
+    }
+
+    public Field getField() {
+        return field;
+    }
+}
@@ -0,0 +1,198 @@
+package com.proctor.client.monitoring.signature;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Matches processes against a list of signatures, by the scope of each signature.
+ *
+ * Name signatures are compiled into an immutable Aho-Corasick automaton that finds them as substrings
+ * of the process name; path and argument signatures are looked up whole, by path component and by
+ * argument, so a short pattern never matches part of a directory or an unrelated argument. Hash
+ * signatures are not matched here; the {@link ExecutableFingerprinter} checks them.
+ *
+ * Matching the name costs one pass over the input regardless of how many signatures there are, which keeps
+ * checks cheap for blocklists with thousands of entries. The automaton is stored in flat arrays:
+ * the outgoing edges of each state are a sorted slice of {@code edgeChars}/{@code edgeTargets}, and
+ * {@code matchOf} holds, for every state, the signature reported when the automaton reaches it
+ * (either one ending there or the nearest one along the failure links).
+ * Matching is case-insensitive; patterns are stored in lower case.
+ */
+public class SignatureMatcher {
+
+    private static final int ROOT = 0;
+    private static final int NO_MATCH = -1;
+
+    private final List<Signature> signatures;
+    private final Map<String, Signature> pathSignatures = new HashMap<>();
+    private final Map<String, Signature> argumentSignatures = new HashMap<>();
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] failure;
+    private final int[] matchOf;
+    private final int size;
+
+    public SignatureMatcher(List<Signature> signatures) {
+        this.signatures = new ArrayList<>();
+        int count = 0;
+        for (Signature signature : signatures) {
+            switch (signature.getScope()) {
+                case NAME:
+                    this.signatures.add(signature);
+                    break;
+                case PATH:
+                    pathSignatures.putIfAbsent(signature.getPattern(), signature);
+                    break;
+                case ARGUMENTS:
+                    argumentSignatures.putIfAbsent(signature.getPattern(), signature);
+                    break;
+                default:
+                    continue;
+            }
+            count++;
+        }
+        this.size = count;
+
+        // 1. Build a trie with sorted children, so the flattened edges can be binary searched.
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Integer> ownMatch = new ArrayList<>();
+        children.add(new TreeMap<>());
+        ownMatch.add(NO_MATCH);
+        for (int index = 0; index < this.signatures.size(); index++) {
+            String pattern = this.signatures.get(index).getPattern();
+            int state = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<>());
+                    ownMatch.add(NO_MATCH);
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            // Keep the first signature for duplicate patterns.
+            if (ownMatch.get(state) == NO_MATCH) {
+                ownMatch.set(state, index);
+            }
+        }
+
+        // 2. Flatten the trie into arrays.
+        int stateCount = children.size();
+        int edgeCount = stateCount - 1;
+        edgeStart = new int[stateCount + 1];
+        edgeChars = new char[edgeCount];
+        edgeTargets = new int[edgeCount];
+        int edge = 0;
+        for (int state = 0; state < stateCount; state++) {
+            edgeStart[state] = edge;
+            for (Map.Entry<Character, Integer> child : children.get(state).entrySet()) {
+                edgeChars[edge] = child.getKey();
+                edgeTargets[edge] = child.getValue();
+                edge++;
+            }
+        }
+        edgeStart[stateCount] = edge;
+
+        // 3. Compute failure links and the reported match of each state in breadth-first order.
+        failure = new int[stateCount];
+        matchOf = new int[stateCount];
+        matchOf[ROOT] = NO_MATCH;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int e = edgeStart[ROOT]; e < edgeStart[ROOT + 1]; e++) {
+            int child = edgeTargets[e];
+            failure[child] = ROOT;
+            matchOf[child] = ownMatch.get(child);
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                int child = edgeTargets[e];
+                char c = edgeChars[e];
+                int fallback = failure[state];
+                int target;
+                while ((target = transition(fallback, c)) < 0 && fallback != ROOT) {
+                    fallback = failure[fallback];
+                }
+                failure[child] = target < 0 ? ROOT : target;
+                int own = ownMatch.get(child);
+                matchOf[child] = own != NO_MATCH ? own : matchOf[failure[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @return The number of signatures compiled into this matcher.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks the command name of a process against the name signatures, each component of its
+     * executable path against the path signatures, and each argument (or its file name) against the
+     * argument signatures, in that order.
+     * @return The first signature found, or null if none matched.
+     */
+    public SignatureMatch match(String command, String path, List<String> arguments) {
+        int found = scan(command);
+        if (found != NO_MATCH) {
+            return new SignatureMatch(signatures.get(found), SignatureMatch.Field.COMMAND);
+        }
+        if (!pathSignatures.isEmpty() && path != null) {
+            for (String component : path.split("[/\\\\]")) {
+                Signature signature = pathSignatures.get(component.toLowerCase(Locale.ROOT));
+                if (signature != null) {
+                    return new SignatureMatch(signature, SignatureMatch.Field.PATH);
+                }
+            }
+        }
+        if (!argumentSignatures.isEmpty() && arguments != null) {
+            for (String argument : arguments) {
+                String token = argument.trim().toLowerCase(Locale.ROOT);
+                Signature signature = argumentSignatures.get(token);
+                if (signature == null) {
+                    signature = argumentSignatures.get(token.substring(Math.max(token.lastIndexOf('/'), token.lastIndexOf('\\')) + 1));
+                }
+                if (signature != null) {
+                    return new SignatureMatch(signature, SignatureMatch.Field.ARGUMENTS);
+                }
+            }
+        }
+        return null;
+    }
+
+    private int scan(CharSequence text) {
+        if (text == null) {
+            return NO_MATCH;
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = transition(state, c)) < 0 && state != ROOT) {
+                state = failure[state];
+            }
+            state = next < 0 ? ROOT : next;
+            if (matchOf[state] != NO_MATCH) {
+                return matchOf[state];
+            }
+        }
+        return NO_MATCH;
+    }
+
+    private int transition(int state, char c) {
+        int index = Arrays.binarySearch(edgeChars, edgeStart[state], edgeStart[state + 1], c);
+        return index >= 0 ? edgeTargets[index] : -1;
+    }
+}
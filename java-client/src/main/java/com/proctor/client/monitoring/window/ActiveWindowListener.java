@@ -0,0 +1,17 @@
+package com.proctor.client.monitoring.window;
+
+import com.proctor.client.scheduler.PollResult;
+
+/**
+ * Receives notifications from the {@link ActiveWindowSampler} whenever the foreground window title changes.
+ */
+public interface ActiveWindowListener {
+
+    /**
+     * Called on the sampler's thread with the same snapshot for every subscriber.
+     * @param previousTitle The title seen on the previous sample.
+     * @param newTitle The title seen on this sample.
+     * @return What the listener made of the change, so the sampler can adapt its polling interval.
+     */
+    PollResult onActiveWindowChanged(String previousTitle, String newTitle);
+}
@@ -0,0 +1,124 @@
+package com.proctor.client.monitoring.window;
+
+import com.proctor.client.scheduler.PollResult;
+import com.proctor.client.scheduler.PolledMonitor;
+import com.sun.jna.Platform;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Samples the foreground window title once per scheduler tick and publishes changes to all subscribers.
+ *
+ * Monitors that care about the active window (e.g. WindowMonitor and TabSwitchMonitor) subscribe here
+ * instead of querying the OS themselves, so every tick costs one native lookup no matter how many
+ * monitors are interested, and all of them see exactly the same snapshot.
+ *
+ * If the source can observe window changes by itself (see {@link ActiveWindowSource#startWatching}),
+ * the sampler becomes event-driven: changes are published from the source's thread and the sampler
+ * no longer needs to be scheduled at all.
+ */
+public class ActiveWindowSampler implements PolledMonitor {
+
+    private final ActiveWindowSource source;
+    private final List<ActiveWindowListener> listeners = new CopyOnWriteArrayList<>();
+    private final boolean eventDriven;
+    private volatile String currentTitle;
+
+    public ActiveWindowSampler() {
+        this(createPlatformSource());
+    }
+
+    public ActiveWindowSampler(ActiveWindowSource source) {
+        this.source = source;
+        this.eventDriven = source.startWatching(this::onTitlePushed);
+        // Take the initial snapshot so subscribers can establish their baseline without firing on startup.
+        this.currentTitle = source.readActiveWindowTitle();
+    }
+
+    /**
+     * @return {@code true} if changes are pushed by the source and the sampler does not need to be polled.
+     */
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    /**
+     * Registers a listener for title changes.
+     * @param listener The listener to notify on the sampler's thread.
+     */
+    public void subscribe(ActiveWindowListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(ActiveWindowListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return The title seen on the most recent sample.
+     */
+    public String getCurrentTitle() {
+        return currentTitle;
+    }
+
+    @Override
+    public String getName() {
+        return "ActiveWindowSampler";
+    }
+
+    @Override
+    public PollResult poll() {
+        if (eventDriven) {
+            return PollResult.IDLE;
+        }
+        return update(source.readActiveWindowTitle());
+    }
+
+    /**
+     * Releases the native resources of the underlying source.
+     */
+    public void close() {
+        source.close();
+    }
+
+    private void onTitlePushed(String newTitle) {
+        update(newTitle);
+    }
+
+    private synchronized PollResult update(String newTitle) {
+        String previousTitle = currentTitle;
+        if (newTitle == null || newTitle.equals(previousTitle)) {
+            return PollResult.IDLE;
+        }
+        currentTitle = newTitle;
+        return publish(previousTitle, newTitle);
+    }
+
+    private PollResult publish(String previousTitle, String newTitle) {
+        PollResult result = PollResult.CHANGED;
+        for (ActiveWindowListener listener : listeners) {
+            try {
+                if (listener.onActiveWindowChanged(previousTitle, newTitle) == PollResult.VIOLATION) {
+                    result = PollResult.VIOLATION;
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error in active window listener: " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private static ActiveWindowSource createPlatformSource() {
+        if (Platform.isWindows()) {
+            return new WindowsActiveWindowSource();
+        }
+        if (Platform.isMac()) {
+            return new MacActiveWindowSource();
+        }
+        if (Platform.isLinux()) {
+            return new X11ActiveWindowSource();
+        }
+        return () -> "Unsupported OS";
+    }
+}
@@ -0,0 +1,31 @@
+package com.proctor.client.monitoring.window;
+
+import java.util.function.Consumer;
+
+/**
+ * A platform-specific way of reading the title of the window that currently has focus.
+ * Implementations are called from a single thread and may keep native buffers between calls.
+ */
+public interface ActiveWindowSource {
+
+    /**
+     * @return The title of the foreground window, or a descriptive placeholder if it cannot be determined.
+     */
+    String readActiveWindowTitle();
+
+    /**
+     * Starts pushing title changes to the given callback, for sources that can observe the desktop
+     * without polling. Event-driven sources call the callback from their own thread.
+     * @param titleCallback Receives every new foreground window title.
+     * @return {@code true} if the source is now event-driven and does not need to be polled.
+     */
+    default boolean startWatching(Consumer<String> titleCallback) {
+        return false;
+    }
+
+    /**
+     * Releases any native resources held by this source.
+     */
+    default void close() {
+    }
+}
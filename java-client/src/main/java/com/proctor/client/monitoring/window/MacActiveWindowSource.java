@@ -0,0 +1,72 @@
+package com.proctor.client.monitoring.window;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.mac.CoreFoundation;
+import com.sun.jna.platform.mac.CoreFoundation.CFArrayRef;
+import com.sun.jna.platform.mac.CoreFoundation.CFDictionaryRef;
+import com.sun.jna.platform.mac.CoreFoundation.CFStringRef;
+
+/**
+ * Reads the frontmost window title on macOS through CoreGraphics.
+ * The dictionary keys are created once and reused for every sample.
+ */
+public class MacActiveWindowSource implements ActiveWindowSource {
+
+    // --- macOS Specific JNA Interface ---
+    private interface CoreGraphics extends CoreFoundation {
+        CoreGraphics INSTANCE = Native.load("CoreGraphics", CoreGraphics.class);
+        int kCGWindowListOptionOnScreenOnly = 1;
+        int kCGNullWindowID = 0;
+        CFArrayRef CGWindowListCopyWindowInfo(int option, int relativeToWindow);
+    }
+
+    private final CFStringRef kCGWindowOwnerNameKey = CFStringRef.createCFString("kCGWindowOwnerName");
+    private final CFStringRef kCGWindowNameKey = CFStringRef.createCFString("kCGWindowName");
+
+    @Override
+    public String readActiveWindowTitle() {
+        CFArrayRef windowList = CoreGraphics.INSTANCE.CGWindowListCopyWindowInfo(CoreGraphics.kCGWindowListOptionOnScreenOnly, CoreGraphics.kCGNullWindowID);
+        if (windowList == null) {
+            return "macOS Window - Permission Denied?";
+        }
+
+        String activeWindowTitle = "macOS Window - Not Found";
+        try {
+            int count = windowList.getCount();
+            for (int i = 0; i < count; i++) {
+                Pointer windowRef = windowList.getValueAtIndex(i);
+                CFDictionaryRef windowInfo = new CFDictionaryRef(windowRef);
+
+                // Pass the CFStringRef object (which is a PointerType) directly as the key.
+                Pointer ownerNamePtr = windowInfo.getValue(kCGWindowOwnerNameKey);
+                Pointer windowNamePtr = windowInfo.getValue(kCGWindowNameKey);
+
+                if (ownerNamePtr != null) {
+                    CFStringRef ownerNameRef = new CFStringRef(ownerNamePtr);
+                    String ownerName = ownerNameRef.toString();
+
+                    String windowName = "";
+                    if (windowNamePtr != null) {
+                        CFStringRef windowNameRef = new CFStringRef(windowNamePtr);
+                        windowName = windowNameRef.toString();
+                    }
+
+                    if (windowName != null && !windowName.isEmpty()) {
+                        activeWindowTitle = ownerName + " - " + windowName;
+                        break;
+                    }
+                }
+            }
+        } finally {
+            windowList.release();
+        }
+        return activeWindowTitle;
+    }
+
+    @Override
+    public void close() {
+        kCGWindowOwnerNameKey.release();
+        kCGWindowNameKey.release();
+    }
+}
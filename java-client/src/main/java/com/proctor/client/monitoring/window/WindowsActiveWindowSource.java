@@ -0,0 +1,26 @@
+package com.proctor.client.monitoring.window;
+
+import com.sun.jna.Native;
+import com.sun.jna.platform.win32.User32;
+import com.sun.jna.platform.win32.WinDef;
+
+/**
+ * Reads the foreground window title through User32, reusing one title buffer for every sample.
+ */
+public class WindowsActiveWindowSource implements ActiveWindowSource {
+
+    private static final int MAX_TITLE_LENGTH = 1024;
+    private final char[] buffer = new char[MAX_TITLE_LENGTH];
+
+    @Override
+    public String readActiveWindowTitle() {
+        WinDef.HWND hwnd = User32.INSTANCE.GetForegroundWindow();
+        if (hwnd == null) {
+            return "";
+        }
+        // GetWindowText always terminates what it writes, but clear the start in case it writes nothing.
+        buffer[0] = 0;
+        User32.INSTANCE.GetWindowText(hwnd, buffer, MAX_TITLE_LENGTH);
+        return Native.toString(buffer);
+    }
+}
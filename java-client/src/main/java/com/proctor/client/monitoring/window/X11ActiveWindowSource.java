@@ -0,0 +1,265 @@
+package com.proctor.client.monitoring.window;
+
+import com.sun.jna.Memory;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.unix.X11;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.NativeLongByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Tracks the active window on Linux by listening to X11 property change events instead of polling.
+ *
+ * One display connection subscribes to PropertyNotify on the root window, so the thread blocks in
+ * XNextEvent and costs nothing while the user stays in one window. When the window manager updates
+ * _NET_ACTIVE_WINDOW, the new window's _NET_WM_NAME is read once. The active window itself is also
+ * watched, so title changes inside it (e.g. browser tab switches) are reported as well.
+ *
+ * If no X server is reachable (e.g. a pure Wayland session), the source falls back to running xdotool.
+ * The display name can be given explicitly, which allows exercising the source against Xvfb.
+ */
+public class X11ActiveWindowSource implements ActiveWindowSource {
+
+    private static final int XA_WM_NAME = 39;
+    private static final long MAX_TITLE_WORDS = 1024;
+    private static final String WAKE_ATOM_NAME = "_PROCTOKIT_WAKE";
+
+    private final String displayName;
+    private final ActiveWindowSource fallback = new XdotoolActiveWindowSource();
+
+    // Reused for every property read; only touched by the thread that owns the display.
+    private final X11.AtomByReference actualType = new X11.AtomByReference();
+    private final IntByReference actualFormat = new IntByReference();
+    private final NativeLongByReference itemCount = new NativeLongByReference();
+    private final NativeLongByReference bytesAfter = new NativeLongByReference();
+    private final PointerByReference propertyData = new PointerByReference();
+    private final X11.XEvent event = new X11.XEvent();
+
+    private X11 x11;
+    private X11.Display display;
+    private X11.Window root;
+    private X11.Window activeWindow = X11.Window.None;
+    private X11.Atom netActiveWindow;
+    private X11.Atom netWmName;
+    private X11.Atom utf8String;
+    // Kept in a field so the callback is not garbage collected while registered with Xlib.
+    private X11.XErrorHandler errorHandler;
+
+    private Thread eventThread;
+    private volatile boolean watching;
+    private volatile String currentTitle = "";
+
+    public X11ActiveWindowSource() {
+        this(null);
+    }
+
+    /**
+     * @param displayName The X display to connect to (e.g. ":99"), or null to use $DISPLAY.
+     */
+    public X11ActiveWindowSource(String displayName) {
+        this.displayName = displayName;
+    }
+
+    @Override
+    public String readActiveWindowTitle() {
+        return watching ? currentTitle : fallback.readActiveWindowTitle();
+    }
+
+    @Override
+    public synchronized boolean startWatching(Consumer<String> titleCallback) {
+        if (watching) {
+            return true;
+        }
+        try {
+            x11 = X11.INSTANCE;
+            display = x11.XOpenDisplay(displayName);
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            System.err.println("X11 is not available, falling back to xdotool: " + e.getMessage());
+            return false;
+        }
+        if (display == null) {
+            System.err.println("Could not open the X display, falling back to xdotool.");
+            return false;
+        }
+
+        installErrorHandler();
+        root = x11.XDefaultRootWindow(display);
+        netActiveWindow = x11.XInternAtom(display, "_NET_ACTIVE_WINDOW", false);
+        netWmName = x11.XInternAtom(display, "_NET_WM_NAME", false);
+        utf8String = x11.XInternAtom(display, "UTF8_STRING", false);
+        x11.XSelectInput(display, root, new NativeLong(X11.PropertyChangeMask));
+
+        // The initial snapshot is taken on the caller's thread so it is available before this method returns.
+        switchActiveWindow(readActiveWindow());
+        currentTitle = readWindowTitle(activeWindow);
+        x11.XFlush(display);
+
+        watching = true;
+        eventThread = new Thread(() -> runEventLoop(titleCallback), "X11-ActiveWindow");
+        eventThread.setDaemon(true);
+        eventThread.start();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (!watching) {
+            return;
+        }
+        watching = false;
+        wakeEventThread();
+        try {
+            eventThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runEventLoop(Consumer<String> titleCallback) {
+        try {
+            while (watching) {
+                // Blocks until the X server delivers an event; nothing runs while the desktop is idle.
+                x11.XNextEvent(display, event);
+                if (event.type != X11.PropertyNotify) {
+                    continue;
+                }
+                X11.XPropertyEvent propertyEvent = (X11.XPropertyEvent) event.getTypedValue(X11.XPropertyEvent.class);
+                String newTitle = handlePropertyChange(propertyEvent);
+                if (newTitle != null && !newTitle.equals(currentTitle)) {
+                    currentTitle = newTitle;
+                    titleCallback.accept(newTitle);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("X11 active window tracking stopped: " + e.getMessage());
+        } finally {
+            watching = false;
+            x11.XCloseDisplay(display);
+        }
+    }
+
+    /**
+     * @return The new title if the event may have changed it, or null if the event is irrelevant.
+     */
+    private String handlePropertyChange(X11.XPropertyEvent propertyEvent) {
+        long window = propertyEvent.window.longValue();
+        long atom = propertyEvent.atom.longValue();
+        if (window == root.longValue()) {
+            if (atom != netActiveWindow.longValue()) {
+                return null;
+            }
+            X11.Window newActiveWindow = readActiveWindow();
+            if (newActiveWindow.longValue() == activeWindow.longValue()) {
+                return null;
+            }
+            switchActiveWindow(newActiveWindow);
+            return readWindowTitle(activeWindow);
+        }
+        if (window == activeWindow.longValue() && (atom == netWmName.longValue() || atom == XA_WM_NAME)) {
+            return readWindowTitle(activeWindow);
+        }
+        return null;
+    }
+
+    private void switchActiveWindow(X11.Window newActiveWindow) {
+        if (activeWindow.longValue() != 0) {
+            x11.XSelectInput(display, activeWindow, new NativeLong(0));
+        }
+        activeWindow = newActiveWindow;
+        if (activeWindow.longValue() != 0) {
+            // Watch the focused window too, so its own title changes arrive as events.
+            x11.XSelectInput(display, activeWindow, new NativeLong(X11.PropertyChangeMask));
+        }
+    }
+
+    private X11.Window readActiveWindow() {
+        Pointer data = readProperty(root, netActiveWindow, X11.XA_WINDOW);
+        if (data == null) {
+            return X11.Window.None;
+        }
+        try {
+            return new X11.Window(data.getNativeLong(0).longValue());
+        } finally {
+            x11.XFree(data);
+        }
+    }
+
+    private String readWindowTitle(X11.Window window) {
+        if (window.longValue() == 0) {
+            return "";
+        }
+        Pointer data = readProperty(window, netWmName, utf8String);
+        Charset charset = StandardCharsets.UTF_8;
+        if (data == null) {
+            // Older applications only set the legacy WM_NAME property, whose STRING type is Latin-1.
+            data = readProperty(window, new X11.Atom(XA_WM_NAME), X11.XA_STRING);
+            charset = StandardCharsets.ISO_8859_1;
+        }
+        if (data == null) {
+            return "";
+        }
+        try {
+            byte[] bytes = data.getByteArray(0, itemCount.getValue().intValue());
+            return new String(bytes, charset);
+        } finally {
+            x11.XFree(data);
+        }
+    }
+
+    /**
+     * Reads a property into Xlib-owned memory, which the caller must free. Returns null if it is not set.
+     */
+    private Pointer readProperty(X11.Window window, X11.Atom property, X11.Atom type) {
+        int status = x11.XGetWindowProperty(display, window, property, new NativeLong(0), new NativeLong(MAX_TITLE_WORDS),
+                false, type, actualType, actualFormat, itemCount, bytesAfter, propertyData);
+        Pointer data = propertyData.getValue();
+        if (status != 0 || data == null) {
+            return null;
+        }
+        if (itemCount.getValue().longValue() == 0) {
+            x11.XFree(data);
+            return null;
+        }
+        return data;
+    }
+
+    /**
+     * Installs an error handler that ignores errors on our own connection, such as BadWindow when the
+     * watched window is destroyed, and passes everything else to the previous handler (e.g. AWT's).
+     */
+    private void installErrorHandler() {
+        X11.XErrorHandler[] previous = new X11.XErrorHandler[1];
+        errorHandler = (errorDisplay, errorEvent) -> {
+            if (errorDisplay != null && errorDisplay.equals(display)) {
+                return 0;
+            }
+            return previous[0] != null ? previous[0].apply(errorDisplay, errorEvent) : 0;
+        };
+        previous[0] = x11.XSetErrorHandler(errorHandler);
+    }
+
+    /**
+     * Unblocks XNextEvent by touching a private property on the root window from a second connection.
+     */
+    private void wakeEventThread() {
+        X11.Display wakeDisplay = x11.XOpenDisplay(displayName);
+        if (wakeDisplay == null) {
+            return;
+        }
+        try {
+            X11.Window wakeRoot = x11.XDefaultRootWindow(wakeDisplay);
+            X11.Atom atom = x11.XInternAtom(wakeDisplay, WAKE_ATOM_NAME, false);
+            Memory payload = new Memory(1);
+            payload.setByte(0, (byte) 1);
+            x11.XChangeProperty(wakeDisplay, wakeRoot, atom, X11.XA_STRING, 8, X11.PropModeReplace, payload, 1);
+            x11.XFlush(wakeDisplay);
+        } finally {
+            x11.XCloseDisplay(wakeDisplay);
+        }
+    }
+}
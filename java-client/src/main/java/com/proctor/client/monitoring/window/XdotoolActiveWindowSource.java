@@ -0,0 +1,24 @@
+package com.proctor.client.monitoring.window;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+/**
+ * Reads the foreground window title on Linux by running the external 'xdotool' command.
+ */
+public class XdotoolActiveWindowSource implements ActiveWindowSource {
+
+    @Override
+    public String readActiveWindowTitle() {
+        try {
+            Process p = Runtime.getRuntime().exec("xdotool getactivewindow getwindowname");
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                String title = reader.readLine();
+                p.waitFor();
+                return title != null ? title : "";
+            }
+        } catch (Exception e) {
+            return "Linux Window - N/A (is xdotool installed?)";
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.proctor.client.process;
+
+import com.proctor.client.storage.ClientDirectories;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the bundled Python agent extracted in the per-user cache directory between launches.
+ *
+ * The build ships the SHA-256 of the agent next to it as a resource (e.g. "bin/proctor_agent.sha256").
+ * The cached file name is derived from that hash, and a cached copy is reused only if its own SHA-256
+ * still matches; otherwise the agent is re-extracted with a channel-to-channel transfer into a temporary
+ * file, checked against the same hash and then atomically moved into place.
+ */
+public class AgentExecutableCache {
+
+    /** Appended to the agent's resource path to locate its SHA-256, written by the build. */
+    public static final String CHECKSUM_SUFFIX = ".sha256";
+
+    private static final long TRANSFER_CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    private final String resourcePath;
+    private final String executableName;
+    private final String extension;
+
+    /**
+     * @param resourcePath The class path location of the agent, e.g. "bin/proctor_agent".
+     * @param executableName The base file name to use in the cache.
+     * @param extension The file extension, e.g. ".exe", or an empty string.
+     */
+    public AgentExecutableCache(String resourcePath, String executableName, String extension) {
+        this.resourcePath = resourcePath;
+        this.executableName = executableName;
+        this.extension = extension;
+    }
+
+    /**
+     * Returns a verified, executable copy of the agent, extracting it only if needed.
+     * @return The path of the cached executable.
+     * @throws IOException if the resource or its checksum is missing, or the agent cannot be extracted.
+     */
+    public Path resolve() throws IOException {
+        ClassLoader loader = AgentExecutableCache.class.getClassLoader();
+        URL resource = loader.getResource(resourcePath);
+        if (resource == null) {
+            throw new IOException("Cannot find " + resourcePath + " in JAR resources.");
+        }
+
+        String expected = expectedSha256(loader);
+        Path directory = Files.createDirectories(ClientDirectories.cacheDirectory().resolve("agent"));
+        // A SHA-256 is long; its first 16 hex digits are plenty to tell builds apart in a file name.
+        Path cached = directory.resolve(executableName + "-" + expected.substring(0, 16) + extension);
+
+        if (Files.isRegularFile(cached) && expected.equals(sha256Of(cached))) {
+            cached.toFile().setExecutable(true);
+            System.out.println("[INFO] Using cached Python agent: " + cached);
+            return cached;
+        }
+
+        System.out.println("[INFO] Extracting Python agent to " + cached);
+        Path tempFile = Files.createTempFile(directory, executableName, ".part");
+        try {
+            try (InputStream in = resource.openStream();
+                 ReadableByteChannel source = Channels.newChannel(in);
+                 FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = 0;
+                long transferred;
+                while ((transferred = target.transferFrom(source, position, TRANSFER_CHUNK_SIZE)) > 0) {
+                    position += transferred;
+                }
+            }
+            if (!expected.equals(sha256Of(tempFile))) {
+                throw new IOException("Extracted Python agent failed its integrity check.");
+            }
+            tempFile.toFile().setExecutable(true);
+            Files.move(tempFile, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        deleteStaleCopies(directory, cached);
+        return cached;
+    }
+
+    /**
+     * Reads the agent's SHA-256 as recorded by the build: the first token of the checksum resource,
+     * so both a bare hash and the "hash  file name" format of sha256sum are accepted.
+     */
+    private String expectedSha256(ClassLoader loader) throws IOException {
+        String checksumPath = resourcePath + CHECKSUM_SUFFIX;
+        try (InputStream in = loader.getResourceAsStream(checksumPath)) {
+            if (in == null) {
+                throw new IOException("Cannot find " + checksumPath + " in JAR resources.");
+            }
+            String text = new String(in.readAllBytes(), StandardCharsets.US_ASCII).trim();
+            String hash = text.split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+            if (!hash.matches("[0-9a-f]{64}")) {
+                throw new IOException(checksumPath + " does not hold a SHA-256.");
+            }
+            return hash;
+        }
+    }
+
+    private void deleteStaleCopies(Path directory, Path current) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, executableName + "-*")) {
+            for (Path path : stream) {
+                if (!path.equals(current)) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            // A stale copy may still be running; it will be cleaned up on a later launch.
+        }
+    }
+
+    private static String sha256Of(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        readFully(file, digest::update);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Streams a file through a direct buffer. Mapping is avoided on purpose: on Windows a mapped file
+     * cannot be moved or deleted until the mapping is garbage collected.
+     */
+    private static void readFully(Path file, Consumer<ByteBuffer> sink) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                sink.accept(buffer);
+                buffer.clear();
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,103 @@
+package com.proctor.client.process;
+
+import com.proctor.protocol.MessageTypes;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Reads the framed binary protocol spoken by the Python agent on its stdout
+ * (frame types are defined in {@link MessageTypes}).
+ * <pre>
+ *   frame   := length:uint32 body            (big-endian, length counts the body only)
+ *   body    := type:uint8 payload
+ *   EVENT   (1) payload := UTF-8 JSON event
+ *   JPEG    (2) payload := headerLength:uint16 header:UTF-8 JSON jpeg:bytes
+ * </pre>
+ * JSON events are decoded to Strings for the regular event queue. Camera frames are never turned
+ * into Strings: the body is read into a pooled direct buffer and handed as-is to the frame consumer
+ * (which forwards it as a binary WebSocket message), then returned to the pool.
+ */
+public class AgentFrameReader implements Runnable {
+
+    private final ReadableByteChannel channel;
+    private final DirectBufferPool bufferPool;
+    private final Consumer<String> eventConsumer;
+    private final Consumer<ByteBuffer> frameConsumer;
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocateDirect(Integer.BYTES);
+
+    /**
+     * @param channel The agent's stdout.
+     * @param bufferPool Pool the frame bodies are read into.
+     * @param eventConsumer Receives each JSON event.
+     * @param frameConsumer Receives each JPEG frame body (type byte included); the buffer is only
+     *                      valid for the duration of the call.
+     */
+    public AgentFrameReader(ReadableByteChannel channel, DirectBufferPool bufferPool,
+                            Consumer<String> eventConsumer, Consumer<ByteBuffer> frameConsumer) {
+        this.channel = channel;
+        this.bufferPool = bufferPool;
+        this.eventConsumer = eventConsumer;
+        this.frameConsumer = frameConsumer;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (readFrame()) {
+                // Keep reading until the agent closes its stdout.
+            }
+        } catch (IOException e) {
+            System.err.println("[ERROR] Agent IPC stream failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads and dispatches one frame.
+     * @return {@code false} once the stream has ended cleanly between frames.
+     */
+    boolean readFrame() throws IOException {
+        lengthBuffer.clear();
+        if (!readFully(lengthBuffer, true)) {
+            return false;
+        }
+        int length = lengthBuffer.getInt(0);
+        if (length < 1 || length > DirectBufferPool.maxBufferSize()) {
+            throw new IOException("Invalid agent frame length: " + length);
+        }
+
+        ByteBuffer body = bufferPool.acquire(length);
+        try {
+            readFully(body, false);
+            body.flip();
+            byte type = body.get(0);
+            if (type == MessageTypes.FRAME_EVENT) {
+                body.position(1);
+                eventConsumer.accept(StandardCharsets.UTF_8.decode(body).toString());
+            } else if (type == MessageTypes.FRAME_JPEG) {
+                frameConsumer.accept(body);
+            } else {
+                System.err.println("[WARN] Skipping agent frame of unknown type " + type);
+            }
+        } finally {
+            bufferPool.release(body);
+        }
+        return true;
+    }
+
+    private boolean readFully(ByteBuffer buffer, boolean eofAllowed) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (eofAllowed && buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Agent stream ended mid-frame");
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+package com.proctor.client.process;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of direct byte buffers, bucketed by power-of-two capacity.
+ * Agent frames arrive at a steady size (camera JPEGs of similar resolution), so after warm-up
+ * every frame is read into a buffer that is already allocated outside the Java heap.
+ */
+public class DirectBufferPool {
+
+    private static final int MIN_CAPACITY_SHIFT = 12; // 4 KB
+    private static final int MAX_CAPACITY_SHIFT = 24; // 16 MB
+
+    private final ArrayDeque<ByteBuffer>[] buckets;
+    private final int maxPerBucket;
+
+    @SuppressWarnings("unchecked")
+    public DirectBufferPool(int maxPerBucket) {
+        if (maxPerBucket < 1) {
+            throw new IllegalArgumentException("maxPerBucket must be at least 1");
+        }
+        this.maxPerBucket = maxPerBucket;
+        this.buckets = new ArrayDeque[MAX_CAPACITY_SHIFT - MIN_CAPACITY_SHIFT + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new ArrayDeque<>(maxPerBucket);
+        }
+    }
+
+    /**
+     * Returns a cleared buffer with room for at least {@code size} bytes, its limit set to {@code size}.
+     * @param size The number of bytes needed; must not exceed {@link #maxBufferSize()}.
+     */
+    public ByteBuffer acquire(int size) {
+        if (size < 0 || size > maxBufferSize()) {
+            throw new IllegalArgumentException("Buffer size out of range: " + size);
+        }
+        int bucket = bucketOf(size);
+        ByteBuffer buffer;
+        synchronized (buckets[bucket]) {
+            buffer = buckets[bucket].pollFirst();
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(1 << (bucket + MIN_CAPACITY_SHIFT));
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer obtained from {@link #acquire(int)} back to the pool.
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        int bucket = Integer.numberOfTrailingZeros(capacity) - MIN_CAPACITY_SHIFT;
+        if (bucket < 0 || bucket >= buckets.length) {
+            return;
+        }
+        synchronized (buckets[bucket]) {
+            if (buckets[bucket].size() < maxPerBucket) {
+                buckets[bucket].offerFirst(buffer);
+            }
+        }
+    }
+
+    public static int maxBufferSize() {
+        return 1 << MAX_CAPACITY_SHIFT;
+    }
+
+    private static int bucketOf(int size) {
+        int shift = size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+        return Math.max(shift, MIN_CAPACITY_SHIFT) - MIN_CAPACITY_SHIFT;
+    }
+}
@@ -3,50 +3,65 @@ package com.proctor.client.process;
 import com.sun.jna.Platform;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
  * Manages the lifecycle of the Python vision agent subprocess.
  * This version includes a more graceful shutdown procedure.
+ * The agent binary is taken from an {@link AgentExecutableCache}, and can be prepared in the
+ * background (see {@link #prepareExecutable()}) while the client connects to the server.
+ * The agent is started in framed IPC mode, see {@link AgentFrameReader} for the wire format.
  */
 public class PythonProcessManager implements Runnable {
 
     private final Consumer<String> eventConsumer;
-    private Process pythonProcess;
+    private final Consumer<ByteBuffer> frameConsumer;
+    private final DirectBufferPool bufferPool = new DirectBufferPool(2);
+    private volatile Process pythonProcess;
+    private CompletableFuture<Path> executableFuture;
     private static final String EXECUTABLE_NAME = "proctor_agent";
 
-    public PythonProcessManager(Consumer<String> eventConsumer) {
+    /**
+     * @param eventConsumer Receives JSON events reported by the agent.
+     * @param frameConsumer Receives binary camera frames; the buffer is only valid during the call.
+     */
+    public PythonProcessManager(Consumer<String> eventConsumer, Consumer<ByteBuffer> frameConsumer) {
         this.eventConsumer = eventConsumer;
+        this.frameConsumer = frameConsumer;
     }
 
     @Override
     public void run() {
         try {
-            String executablePath = extractExecutable();
+            String executablePath = prepareExecutable().get().toString();
             File executableFile = new File(executablePath);
 
             if (!executableFile.exists() || !executableFile.canExecute()) {
                 throw new IOException("Python executable is not valid or cannot be executed.");
             }
 
+            // The client may already be shutting down if the connection failed while the agent was prepared.
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Agent launch cancelled");
+            }
             System.out.println("[INFO] Starting Python agent...");
             ProcessBuilder pb = new ProcessBuilder(executablePath);
+            pb.environment().put("PROCTOR_IPC", "framed");
             pythonProcess = pb.start();
 
-            // Thread to read standard output
-            new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(pythonProcess.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        eventConsumer.accept(line);
-                    }
-                } catch (IOException e) { /* Process likely terminated */ }
-            }).start();
+            // Thread to read the framed event/frame stream from standard output
+            new Thread(new AgentFrameReader(Channels.newChannel(pythonProcess.getInputStream()),
+                    bufferPool, eventConsumer, frameConsumer), "Agent-IPC-Reader").start();
             
             // Thread to read error output for debugging
             new Thread(() -> {
@@ -62,12 +77,47 @@ public class PythonProcessManager implements Runnable {
             int exitCode = pythonProcess.waitFor();
             System.out.println("[INFO] Python agent exited with code: " + exitCode);
 
+        } catch (ExecutionException e) {
+            System.err.println("[ERROR] Failed to prepare Python agent: " + e.getCause().getMessage());
         } catch (IOException | InterruptedException e) {
             System.err.println("[ERROR] Failed to start or run Python agent: " + e.getMessage());
             Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * Starts locating, verifying and (if needed) extracting the agent binary on a background thread.
+     * Calling this early lets the integrity check overlap with other startup work; later calls return
+     * the same future.
+     * @return A future that completes with the path of the executable.
+     */
+    public synchronized CompletableFuture<Path> prepareExecutable() {
+        if (executableFuture == null) {
+            String extension = Platform.isWindows() ? ".exe" : "";
+            AgentExecutableCache cache = new AgentExecutableCache("bin/" + EXECUTABLE_NAME + extension, EXECUTABLE_NAME, extension);
+            executableFuture = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return cache.resolve();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, runnable -> {
+                Thread thread = new Thread(runnable, "Agent-Extractor");
+                thread.setDaemon(true);
+                thread.start();
+            });
+        }
+        return executableFuture;
+    }
+
+    /**
+     * @return The running agent process, if it has been started.
+     */
+    public Optional<ProcessHandle> getProcessHandle() {
+        Process process = pythonProcess;
+        return process != null ? Optional.of(process.toHandle()) : Optional.empty();
+    }
+
     /**
      * Attempts to shut down the Python process gracefully, with a forceful fallback.
      */
@@ -95,32 +145,4 @@ public class PythonProcessManager implements Runnable {
             }
         }
     }
-
-    private String extractExecutable() throws IOException {
-        String resourceName = Platform.isWindows() ? EXECUTABLE_NAME + ".exe" : EXECUTABLE_NAME;
-        String resourcePath = "bin/" + resourceName;
-        
-        InputStream in = PythonProcessManager.class.getClassLoader().getResourceAsStream(resourcePath);
-        
-        if (in == null) {
-            throw new RuntimeException("Cannot find " + resourceName + " in JAR resources. Path was: " + resourcePath);
-        }
-
-        File tempFile = File.createTempFile(EXECUTABLE_NAME, Platform.isWindows() ? ".exe" : "");
-        tempFile.deleteOnExit();
-        tempFile.setExecutable(true);
-
-        try (FileOutputStream out = new FileOutputStream(tempFile)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
-            }
-        } finally {
-            in.close();
-        }
-
-        return tempFile.getAbsolutePath();
-    }
 }
-
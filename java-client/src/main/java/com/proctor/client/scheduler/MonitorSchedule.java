@@ -0,0 +1,82 @@
+package com.proctor.client.scheduler;
+
+/**
+ * Describes how often a {@link PolledMonitor} should run.
+ * The interval starts at the minimum, grows by the backoff factor after each idle poll up to the maximum,
+ * and snaps back to the minimum as soon as the monitor observes a change.
+ */
+public class MonitorSchedule {
+
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final double backoffFactor;
+    private final int violationCooldownPolls;
+
+    /**
+     * @param minIntervalMillis The shortest interval, used right after a change or violation.
+     * @param maxIntervalMillis The longest interval the monitor may back off to while nothing changes.
+     * @param backoffFactor The multiplier applied to the interval after each idle poll (1.0 disables backoff).
+     * @param violationCooldownPolls How many polls the interval stays at the minimum after a violation.
+     */
+    public MonitorSchedule(long minIntervalMillis, long maxIntervalMillis, double backoffFactor, int violationCooldownPolls) {
+        if (minIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Minimum interval must be a positive number.");
+        }
+        if (maxIntervalMillis < minIntervalMillis) {
+            throw new IllegalArgumentException("Maximum interval must not be smaller than the minimum interval.");
+        }
+        if (backoffFactor < 1.0) {
+            throw new IllegalArgumentException("Backoff factor must be at least 1.0.");
+        }
+        if (violationCooldownPolls < 0) {
+            throw new IllegalArgumentException("Violation cooldown must not be negative.");
+        }
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.backoffFactor = backoffFactor;
+        this.violationCooldownPolls = violationCooldownPolls;
+    }
+
+    /**
+     * Creates a schedule that always polls at the same interval.
+     * @param intervalMillis The fixed polling interval.
+     * @return A schedule without backoff.
+     */
+    public static MonitorSchedule fixed(long intervalMillis) {
+        return new MonitorSchedule(intervalMillis, intervalMillis, 1.0, 0);
+    }
+
+    /**
+     * Creates a schedule that doubles its interval while idle and holds the minimum for a few polls after a violation.
+     * @param minIntervalMillis The shortest interval.
+     * @param maxIntervalMillis The longest interval.
+     * @return An adaptive schedule.
+     */
+    public static MonitorSchedule adaptive(long minIntervalMillis, long maxIntervalMillis) {
+        return new MonitorSchedule(minIntervalMillis, maxIntervalMillis, 2.0, 10);
+    }
+
+    public long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    public long getMaxIntervalMillis() {
+        return maxIntervalMillis;
+    }
+
+    public double getBackoffFactor() {
+        return backoffFactor;
+    }
+
+    public int getViolationCooldownPolls() {
+        return violationCooldownPolls;
+    }
+
+    /**
+     * @return {@code true} if the interval may change between polls. Only adaptive schedules are
+     *         stretched when the scheduler is over its overhead budget; fixed schedules keep their period.
+     */
+    public boolean isAdaptive() {
+        return minIntervalMillis != maxIntervalMillis;
+    }
+}
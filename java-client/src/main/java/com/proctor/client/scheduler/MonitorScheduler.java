@@ -0,0 +1,279 @@
+package com.proctor.client.scheduler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs all polled monitors as periodic tasks on a single background thread.
+ *
+ * Instead of every monitor sleeping in its own loop, the scheduler wakes up only when at least
+ * one monitor is due. Wake-ups are aligned to a fixed tick, so monitors whose intervals are
+ * multiples of the tick are batched into the same wake-up. Each monitor's interval adapts to
+ * what it observes: it backs off while nothing changes and tightens again after a change or violation.
+ * The CPU and wall time of every poll is recorded on the monitor's handle, and a global slowdown
+ * factor lets the client stretch all adaptive intervals when it exceeds its overhead budget.
+ *
+ * Polls on the scheduler thread run one after another, so each must finish within
+ * {@link #POLL_BUDGET_MILLIS}. A monitor whose poll takes longer is moved to a separate worker thread
+ * for good, where it can no longer delay the others; a poll still running there when the monitor is
+ * due again is not started a second time.
+ */
+public class MonitorScheduler {
+
+    /**
+     * The longest a poll may take on the scheduler thread before its monitor is moved to the worker thread.
+     */
+    public static final long POLL_BUDGET_MILLIS = 50;
+
+    private final long tickMillis;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService executor;
+    private final ExecutorService worker;
+    private final List<ScheduledMonitor> monitors = new CopyOnWriteArrayList<>();
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported;
+    private volatile double slowdownFactor = 1.0;
+
+    // Guarded by 'this'.
+    private ScheduledFuture<?> pendingTick;
+    private long pendingTickAtMillis = Long.MAX_VALUE;
+    private boolean running;
+
+    /**
+     * @param tickMillis The alignment granularity. All wake-ups happen on multiples of this value.
+     */
+    public MonitorScheduler(long tickMillis) {
+        this(tickMillis, monotonicClock());
+    }
+
+    /**
+     * @param clock The current time in milliseconds; only differences between readings matter.
+     */
+    MonitorScheduler(long tickMillis, LongSupplier clock) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be a positive number.");
+        }
+        this.tickMillis = tickMillis;
+        this.clock = clock;
+        ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Monitor-Scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        this.executor = scheduledExecutor;
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Monitor-Worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        boolean supported = threadMXBean.isCurrentThreadCpuTimeSupported();
+        if (supported && !threadMXBean.isThreadCpuTimeEnabled()) {
+            try {
+                threadMXBean.setThreadCpuTimeEnabled(true);
+            } catch (UnsupportedOperationException | SecurityException e) {
+                supported = false;
+            }
+        }
+        this.cpuTimeSupported = supported;
+    }
+
+    /**
+     * Registers a monitor. It is first polled on the next tick after the scheduler is started.
+     * @param monitor The monitor to poll.
+     * @param schedule How often to poll it.
+     * @return A handle that can be used to tighten or cancel the monitor.
+     */
+    public ScheduledMonitor schedule(PolledMonitor monitor, MonitorSchedule schedule) {
+        ScheduledMonitor scheduled = new ScheduledMonitor(this, monitor, schedule, currentTimeMillis());
+        monitors.add(scheduled);
+        reschedule();
+        return scheduled;
+    }
+
+    /**
+     * Starts polling all registered monitors.
+     */
+    public synchronized void start() {
+        running = true;
+        reschedule();
+    }
+
+    /**
+     * Cancels all monitors and stops the scheduler thread.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            running = false;
+            if (pendingTick != null) {
+                pendingTick.cancel(false);
+            }
+        }
+        for (ScheduledMonitor monitor : monitors) {
+            monitor.cancel();
+        }
+        executor.shutdownNow();
+        worker.shutdownNow();
+        try {
+            executor.awaitTermination(2, TimeUnit.SECONDS);
+            worker.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Stretches the intervals of all adaptive monitors by the given factor from their next poll on.
+     * @param slowdownFactor 1.0 for normal operation; larger values poll less often.
+     */
+    public void setSlowdownFactor(double slowdownFactor) {
+        if (slowdownFactor < 1.0 || Double.isNaN(slowdownFactor)) {
+            throw new IllegalArgumentException("Slowdown factor must be at least 1.0.");
+        }
+        this.slowdownFactor = slowdownFactor;
+    }
+
+    public double getSlowdownFactor() {
+        return slowdownFactor;
+    }
+
+    /**
+     * @return The monitors currently registered with this scheduler.
+     */
+    public List<ScheduledMonitor> getMonitors() {
+        return monitors;
+    }
+
+    long currentTimeMillis() {
+        return clock.getAsLong();
+    }
+
+    private static LongSupplier monotonicClock() {
+        long epochNanos = System.nanoTime();
+        return () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - epochNanos);
+    }
+
+    /**
+     * @return When the pending wake-up is due, or {@link Long#MAX_VALUE} if none is scheduled.
+     */
+    synchronized long getPendingTickAtMillis() {
+        return pendingTickAtMillis;
+    }
+
+    void remove(ScheduledMonitor monitor) {
+        monitors.remove(monitor);
+    }
+
+    /**
+     * Makes sure a tick is scheduled for the earliest due monitor, replacing a later pending tick if needed.
+     */
+    synchronized void reschedule() {
+        if (!running || executor.isShutdown()) {
+            return;
+        }
+        long nextDue = Long.MAX_VALUE;
+        for (ScheduledMonitor monitor : monitors) {
+            nextDue = Math.min(nextDue, monitor.getNextRunAtMillis());
+        }
+        if (nextDue == Long.MAX_VALUE) {
+            return;
+        }
+        long alignedDue = alignUp(nextDue);
+        if (pendingTick != null && !pendingTick.isDone() && pendingTickAtMillis <= alignedDue) {
+            return; // An earlier or equal tick is already scheduled.
+        }
+        if (pendingTick != null) {
+            pendingTick.cancel(false);
+        }
+        long delay = Math.max(0, alignedDue - currentTimeMillis());
+        pendingTickAtMillis = alignedDue;
+        pendingTick = executor.schedule(this::tick, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        synchronized (this) {
+            pendingTick = null;
+            pendingTickAtMillis = Long.MAX_VALUE;
+        }
+        runDueMonitors();
+        reschedule();
+    }
+
+    /**
+     * Polls every monitor that is due. Next due times are computed from the tick boundary rather than
+     * the actual wake-up time, so monitors stay aligned to the tick.
+     */
+    void runDueMonitors() {
+        long now = currentTimeMillis();
+        long tickBoundary = now - (now % tickMillis);
+        for (ScheduledMonitor scheduled : monitors) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            if (scheduled.isCancelled() || scheduled.getNextRunAtMillis() > now) {
+                continue;
+            }
+            scheduled.startPoll();
+            if (scheduled.isOffloaded()) {
+                try {
+                    worker.execute(() -> {
+                        runPoll(scheduled, tickBoundary);
+                        reschedule();
+                    });
+                } catch (RejectedExecutionException e) {
+                    return; // Shutting down.
+                }
+                continue;
+            }
+            long wallNanos = runPoll(scheduled, tickBoundary);
+            if (wallNanos > TimeUnit.MILLISECONDS.toNanos(POLL_BUDGET_MILLIS)) {
+                scheduled.offload();
+                System.err.println(scheduled.getMonitor().getName() + " took " + TimeUnit.NANOSECONDS.toMillis(wallNanos)
+                        + " ms to poll, over the " + POLL_BUDGET_MILLIS + " ms budget; it now runs on the worker thread.");
+            }
+        }
+    }
+
+    /**
+     * @return The wall time the poll took.
+     */
+    private long runPoll(ScheduledMonitor scheduled, long tickBoundary) {
+        long cpuStart = cpuTimeSupported ? threadMXBean.getCurrentThreadCpuTime() : 0;
+        long wallStart = System.nanoTime();
+        PollResult result = pollSafely(scheduled.getMonitor());
+        long wallNanos = System.nanoTime() - wallStart;
+        long cpuNanos = cpuTimeSupported ? threadMXBean.getCurrentThreadCpuTime() - cpuStart : wallNanos;
+        scheduled.recordPoll(cpuNanos, wallNanos);
+        scheduled.onPolled(result, tickBoundary, slowdownFactor);
+        return wallNanos;
+    }
+
+    private PollResult pollSafely(PolledMonitor monitor) {
+        try {
+            PollResult result = monitor.poll();
+            return result != null ? result : PollResult.IDLE;
+        } catch (Exception e) {
+            System.err.println("Error in " + monitor.getName() + ": " + e.getMessage());
+            return PollResult.IDLE;
+        }
+    }
+
+    private long alignUp(long millis) {
+        long remainder = millis % tickMillis;
+        return remainder == 0 ? millis : millis + (tickMillis - remainder);
+    }
+}
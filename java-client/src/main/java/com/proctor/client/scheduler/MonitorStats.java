@@ -0,0 +1,55 @@
+package com.proctor.client.scheduler;
+
+/**
+ * A snapshot of what a scheduled monitor has cost so far.
+ * Totals are cumulative since the monitor was scheduled; callers compute rates from the difference
+ * between two snapshots.
+ */
+public class MonitorStats {
+
+    private final String name;
+    private final long polls;
+    private final long cpuNanos;
+    private final long wallNanos;
+    private final long maxWallNanos;
+    private final long currentIntervalMillis;
+
+    public MonitorStats(String name, long polls, long cpuNanos, long wallNanos, long maxWallNanos, long currentIntervalMillis) {
+        this.name = name;
+        this.polls = polls;
+        this.cpuNanos = cpuNanos;
+        this.wallNanos = wallNanos;
+        this.maxWallNanos = maxWallNanos;
+        this.currentIntervalMillis = currentIntervalMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getPolls() {
+        return polls;
+    }
+
+    /**
+     * @return CPU time spent in polls, or wall time if the JVM cannot measure thread CPU time.
+     */
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * @return The longest single poll since the previous snapshot.
+     */
+    public long getMaxWallNanos() {
+        return maxWallNanos;
+    }
+
+    public long getCurrentIntervalMillis() {
+        return currentIntervalMillis;
+    }
+}
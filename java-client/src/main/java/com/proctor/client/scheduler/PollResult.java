@@ -0,0 +1,14 @@
+package com.proctor.client.scheduler;
+
+/**
+ * The outcome of a single {@link PolledMonitor#poll()} call.
+ * The scheduler uses it to adapt how often the monitor is polled.
+ */
+public enum PollResult {
+    /** Nothing changed since the last poll. The monitor's interval is allowed to back off. */
+    IDLE,
+    /** Something changed, but nothing that counts as a violation. The interval is reset to its minimum. */
+    CHANGED,
+    /** A violation was reported. The interval is reset to its minimum and held there for a cooldown period. */
+    VIOLATION
+}
@@ -0,0 +1,21 @@
+package com.proctor.client.scheduler;
+
+/**
+ * A monitor that performs one short, non-blocking check per call instead of running its own loop.
+ * Polled monitors are driven by the {@link MonitorScheduler}, which decides when each one runs.
+ */
+public interface PolledMonitor {
+
+    /**
+     * @return A short, human-readable name used in logs and thread diagnostics.
+     */
+    String getName();
+
+    /**
+     * Performs a single check. Implementations must not block or sleep, and should finish well within
+     * {@link MonitorScheduler#POLL_BUDGET_MILLIS}; a monitor that does not is polled on a worker thread.
+     * @return What the check observed, so the scheduler can adapt the polling interval.
+     * @throws Exception if the check failed. The scheduler logs it and keeps the monitor scheduled.
+     */
+    PollResult poll() throws Exception;
+}
@@ -0,0 +1,150 @@
+package com.proctor.client.scheduler;
+
+/**
+ * A handle to a monitor registered with the {@link MonitorScheduler}.
+ * It tracks the monitor's current adaptive interval and when it is next due, and allows the
+ * registration to be tightened or cancelled from any thread.
+ * It also accumulates the cost of each poll (CPU and wall time) for the client's telemetry.
+ * A monitor moved to the scheduler's worker thread is not due while a poll of it is running there.
+ */
+public class ScheduledMonitor {
+
+    private final MonitorScheduler scheduler;
+    private final PolledMonitor monitor;
+    private final MonitorSchedule schedule;
+
+    // Only touched by the scheduler thread, except through the synchronized methods below.
+    private long currentIntervalMillis;
+    private long nextRunAtMillis;
+    private int cooldownRemaining;
+    private boolean polling;
+    private boolean tightenRequested;
+    private volatile boolean cancelled;
+    private volatile boolean offloaded;
+
+    // Poll cost accounting; totals are cumulative, the maximum covers the period since the last snapshot.
+    private long polls;
+    private long cpuNanos;
+    private long wallNanos;
+    private long maxWallNanos;
+
+    ScheduledMonitor(MonitorScheduler scheduler, PolledMonitor monitor, MonitorSchedule schedule, long firstRunAtMillis) {
+        this.scheduler = scheduler;
+        this.monitor = monitor;
+        this.schedule = schedule;
+        this.currentIntervalMillis = schedule.getMinIntervalMillis();
+        this.nextRunAtMillis = firstRunAtMillis;
+    }
+
+    public PolledMonitor getMonitor() {
+        return monitor;
+    }
+
+    public MonitorSchedule getSchedule() {
+        return schedule;
+    }
+
+    public synchronized long getCurrentIntervalMillis() {
+        return currentIntervalMillis;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return {@code true} once the monitor has been moved to the worker thread for exceeding the poll budget.
+     */
+    public boolean isOffloaded() {
+        return offloaded;
+    }
+
+    /**
+     * Stops the monitor from being polled again. A poll that is already running is allowed to finish.
+     */
+    public void cancel() {
+        cancelled = true;
+        scheduler.remove(this);
+    }
+
+    /**
+     * Resets the interval to its minimum and makes the monitor due on the next tick,
+     * e.g. because another part of the client observed something worth a closer look.
+     */
+    public void tighten() {
+        synchronized (this) {
+            currentIntervalMillis = schedule.getMinIntervalMillis();
+            if (polling) {
+                // Applied when the running poll completes.
+                tightenRequested = true;
+                return;
+            }
+            nextRunAtMillis = scheduler.currentTimeMillis();
+        }
+        scheduler.reschedule();
+    }
+
+    /**
+     * @return The cost of this monitor's polls so far; resets the per-period maximum duration.
+     */
+    public synchronized MonitorStats takeStats() {
+        MonitorStats stats = new MonitorStats(monitor.getName(), polls, cpuNanos, wallNanos, maxWallNanos, currentIntervalMillis);
+        maxWallNanos = 0;
+        return stats;
+    }
+
+    synchronized void recordPoll(long pollCpuNanos, long pollWallNanos) {
+        polls++;
+        cpuNanos += pollCpuNanos;
+        wallNanos += pollWallNanos;
+        maxWallNanos = Math.max(maxWallNanos, pollWallNanos);
+    }
+
+    synchronized long getNextRunAtMillis() {
+        return nextRunAtMillis;
+    }
+
+    void offload() {
+        offloaded = true;
+    }
+
+    /**
+     * Marks a poll as started, so the monitor is not due again until it completes.
+     */
+    synchronized void startPoll() {
+        polling = true;
+        nextRunAtMillis = Long.MAX_VALUE;
+    }
+
+    /**
+     * Adapts the interval to the outcome of a poll and computes when the monitor is next due.
+     * @param slowdownFactor Stretches the interval of adaptive schedules while the client is over its overhead budget.
+     */
+    synchronized void onPolled(PollResult result, long nowMillis, double slowdownFactor) {
+        switch (result) {
+            case VIOLATION:
+                currentIntervalMillis = schedule.getMinIntervalMillis();
+                cooldownRemaining = schedule.getViolationCooldownPolls();
+                break;
+            case CHANGED:
+                currentIntervalMillis = schedule.getMinIntervalMillis();
+                break;
+            default:
+                if (cooldownRemaining > 0) {
+                    cooldownRemaining--;
+                } else {
+                    long backedOff = (long) Math.ceil(currentIntervalMillis * schedule.getBackoffFactor());
+                    currentIntervalMillis = Math.min(schedule.getMaxIntervalMillis(), backedOff);
+                }
+                break;
+        }
+        long interval = schedule.isAdaptive() ? (long) (currentIntervalMillis * slowdownFactor) : currentIntervalMillis;
+        nextRunAtMillis = nowMillis + interval;
+        if (tightenRequested) {
+            currentIntervalMillis = schedule.getMinIntervalMillis();
+            nextRunAtMillis = scheduler.currentTimeMillis();
+            tightenRequested = false;
+        }
+        polling = false;
+    }
+}
@@ -0,0 +1,45 @@
+package com.proctor.client.storage;
+
+import com.sun.jna.Platform;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Resolves the per-user directories where the client keeps data between sessions.
+ */
+public final class ClientDirectories {
+
+    private static final String APP_DIRECTORY = "ProctoKit";
+
+    private ClientDirectories() {
+    }
+
+    /**
+     * Returns the per-user cache directory, creating it if needed.
+     * Windows: %LOCALAPPDATA%\ProctoKit, macOS: ~/Library/Caches/ProctoKit,
+     * Linux: $XDG_CACHE_HOME/proctokit or ~/.cache/proctokit.
+     * @return The cache directory.
+     * @throws IOException if the directory cannot be created.
+     */
+    public static Path cacheDirectory() throws IOException {
+        String userHome = System.getProperty("user.home");
+        Path directory;
+        if (Platform.isWindows()) {
+            String localAppData = System.getenv("LOCALAPPDATA");
+            directory = localAppData != null
+                    ? Paths.get(localAppData, APP_DIRECTORY)
+                    : Paths.get(userHome, "AppData", "Local", APP_DIRECTORY);
+        } else if (Platform.isMac()) {
+            directory = Paths.get(userHome, "Library", "Caches", APP_DIRECTORY);
+        } else {
+            String xdgCache = System.getenv("XDG_CACHE_HOME");
+            directory = xdgCache != null && !xdgCache.isEmpty()
+                    ? Paths.get(xdgCache, APP_DIRECTORY.toLowerCase())
+                    : Paths.get(userHome, ".cache", APP_DIRECTORY.toLowerCase());
+        }
+        return Files.createDirectories(directory);
+    }
+}
@@ -0,0 +1,235 @@
+package com.proctor.client.summary;
+
+import com.proctor.client.scheduler.PollResult;
+import com.proctor.client.scheduler.PolledMonitor;
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.DecodedEvent;
+import com.proctor.protocol.EventDecoder;
+import com.proctor.protocol.EventEncoder;
+import com.proctor.protocol.EventFields;
+import com.proctor.protocol.EventSummary;
+import com.proctor.protocol.Status;
+import org.json.JSONObject;
+
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sits between the event queue and the connection and, while the server asks for it, folds
+ * low-severity events into one digest per window (see {@link EventSummary} for the format and which
+ * events are folded). Everything else is passed on unchanged, and with no window set every event is.
+ * <p>
+ * Events are handed in by the dispatcher thread; the scheduler polls once a second and sends the
+ * digest when the window is over. Sending happens under the summarizer's lock, so a digest and the
+ * violation that closes it reach the connection in order.
+ */
+public class EventSummarizer implements PolledMonitor {
+
+    /**
+     * Receives the events to send.
+     */
+    public interface Sender {
+        /**
+         * @param enqueuedAt When the event was queued, for latency tracing; 0 for digests.
+         * @param dispatchedAt When the event was taken off the queue.
+         */
+        void send(String event, long enqueuedAt, long dispatchedAt);
+    }
+
+    private static final int MAX_TITLES = 20;
+    private static final int MAX_TITLE_LENGTH = 120;
+    // The detail that names what an event is about; others fall back to the message.
+    private static final Map<Activity, String> TITLE_DETAILS = new EnumMap<>(Activity.class);
+
+    static {
+        TITLE_DETAILS.put(Activity.WINDOW_SWITCH, "activeWindow");
+        TITLE_DETAILS.put(Activity.TAB_SWITCH, "newTitle");
+        TITLE_DETAILS.put(Activity.CLIPBOARD_COPY, "copiedText");
+        TITLE_DETAILS.put(Activity.PROCESS_STARTED, "processName");
+        TITLE_DETAILS.put(Activity.PROCESS_EXITED, "processName");
+        TITLE_DETAILS.put(Activity.SCREENSHOT_TAKEN, "fileName");
+    }
+
+    /**
+     * The events of one activity and status within the current window.
+     */
+    private static final class Summary {
+        int count;
+        long first;
+        long last;
+        final Set<String> titles = new LinkedHashSet<>();
+        int moreTitles;
+    }
+
+    private final Sender sender;
+    private final DecodedEvent decoded = new DecodedEvent();
+    private volatile long windowMillis;
+
+    // Guarded by 'this'.
+    private final Map<Activity, Map<Status, Summary>> summaries = new EnumMap<>(Activity.class);
+    private long windowStart;
+    private int pendingEvents;
+
+    /**
+     * @param sender Receives the events to send: the ones passed through and the digests.
+     */
+    public EventSummarizer(Sender sender) {
+        this.sender = sender;
+    }
+
+    @Override
+    public String getName() {
+        return "EventSummarizer";
+    }
+
+    /**
+     * Sets the summary window, as announced by the server. A pending digest is sent first when
+     * summarizing is turned off.
+     * @param windowMillis The window in milliseconds, or 0 to send every event on its own.
+     */
+    public void setWindowMillis(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Summary window cannot be negative.");
+        }
+        synchronized (this) {
+            this.windowMillis = windowMillis;
+            if (windowMillis == 0) {
+                flush(System.currentTimeMillis());
+            }
+        }
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Sends an event on, or folds it into the current digest. Called by the dispatcher thread only.
+     * @param event The encoded event.
+     */
+    public void accept(String event) {
+        accept(event, 0, 0);
+    }
+
+    /**
+     * Like {@link #accept(String)}, passing the times the event was queued and dispatched on to the
+     * sender if the event is not folded.
+     */
+    public void accept(String event, long enqueuedAt, long dispatchedAt) {
+        if (windowMillis == 0) {
+            sender.send(event, enqueuedAt, dispatchedAt);
+            return;
+        }
+        // A failed decode may leave some fields of the reused holder filled in, so none are read then.
+        if (!EventDecoder.forCurrentThread().decode(event, decoded)) {
+            synchronized (this) {
+                sender.send(event, enqueuedAt, dispatchedAt);
+            }
+            return;
+        }
+        if (!EventSummary.isSummarized(decoded.getActivity(), decoded.getStatus())) {
+            synchronized (this) {
+                if (decoded.getStatus() == Status.VIOLATION) {
+                    flush(System.currentTimeMillis());
+                }
+                sender.send(event, enqueuedAt, dispatchedAt);
+            }
+            return;
+        }
+        long timestamp = decoded.getTimestamp() != DecodedEvent.NO_TIMESTAMP ? decoded.getTimestamp() : System.currentTimeMillis();
+        String title = titleOf(decoded);
+        synchronized (this) {
+            if (windowMillis == 0) {
+                sender.send(event, enqueuedAt, dispatchedAt);
+                return;
+            }
+            // The window starts with the oldest event in it, which may have waited in the queue.
+            windowStart = pendingEvents == 0 ? timestamp : Math.min(windowStart, timestamp);
+            Summary summary = summaries.computeIfAbsent(decoded.getActivity(), activity -> new EnumMap<>(Status.class))
+                    .computeIfAbsent(decoded.getStatus(), status -> new Summary());
+            if (summary.count == 0) {
+                summary.first = timestamp;
+            }
+            summary.count++;
+            summary.first = Math.min(summary.first, timestamp);
+            summary.last = Math.max(summary.last, timestamp);
+            if (title != null && !summary.titles.contains(title)) {
+                if (summary.titles.size() < MAX_TITLES) {
+                    summary.titles.add(title);
+                } else {
+                    summary.moreTitles++;
+                }
+            }
+            pendingEvents++;
+        }
+    }
+
+    /**
+     * Sends the digest once the window is over.
+     */
+    @Override
+    public PollResult poll() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (pendingEvents == 0 || now - windowStart < windowMillis) {
+                return PollResult.IDLE;
+            }
+            flush(now);
+        }
+        return PollResult.CHANGED;
+    }
+
+    private void flush(long now) {
+        if (pendingEvents == 0) {
+            return;
+        }
+        EventEncoder encoder = EventEncoder.forCurrentThread()
+                .begin(now, Activity.EVENT_DIGEST, Status.INFO)
+                .detail(EventFields.MESSAGE, "Summary of " + pendingEvents + " low-severity events over the last "
+                        + Math.max(1, (now - windowStart + 500) / 1000) + " s.")
+                .detail("windowStart", windowStart)
+                .detail("windowEnd", now)
+                .detail("events", pendingEvents)
+                .beginObject("activities");
+        for (Map.Entry<Activity, Map<Status, Summary>> activity : summaries.entrySet()) {
+            encoder.beginObject(activity.getKey().wireName());
+            for (Map.Entry<Status, Summary> status : activity.getValue().entrySet()) {
+                Summary summary = status.getValue();
+                encoder.beginObject(status.getKey().wireName())
+                        .detail("count", summary.count)
+                        .detail("first", summary.first)
+                        .detail("last", summary.last)
+                        .detail("titles", summary.titles);
+                if (summary.moreTitles > 0) {
+                    encoder.detail("moreTitles", summary.moreTitles);
+                }
+                encoder.endObject();
+            }
+            encoder.endObject();
+        }
+        String digest = encoder.endObject().end();
+        summaries.clear();
+        pendingEvents = 0;
+        sender.send(digest, 0, 0);
+    }
+
+    private static String titleOf(DecodedEvent event) {
+        String detailsJson = event.getDetailsJson();
+        if (detailsJson == null) {
+            return null;
+        }
+        try {
+            JSONObject details = new JSONObject(detailsJson);
+            String key = TITLE_DETAILS.get(event.getActivity());
+            String title = key != null && details.has(key) ? details.optString(key) : details.optString(EventFields.MESSAGE, null);
+            if (title == null || title.isEmpty()) {
+                return null;
+            }
+            return title.length() > MAX_TITLE_LENGTH ? title.substring(0, MAX_TITLE_LENGTH) : title;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
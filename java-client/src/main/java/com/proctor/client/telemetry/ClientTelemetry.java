@@ -0,0 +1,315 @@
+package com.proctor.client.telemetry;
+
+import com.proctor.client.scheduler.MonitorScheduler;
+import com.proctor.client.scheduler.MonitorStats;
+import com.proctor.client.scheduler.PollResult;
+import com.proctor.client.scheduler.PolledMonitor;
+import com.proctor.client.scheduler.ScheduledMonitor;
+import com.proctor.client.ui.ConsoleUI;
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.EventEncoder;
+import com.proctor.protocol.EventFields;
+import com.proctor.protocol.Status;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Measures what the client costs the student's machine and reports it.
+ *
+ * Each report covers the period since the previous one and contains the JVM's CPU use, the CPU and
+ * poll duration of every scheduled monitor, CPU per background thread (event-driven monitors run on
+ * their own threads), heap and resident memory, the event queue depth, the number of events each
+ * source produced, and the Python agent's CPU and memory. Reports are sent upstream as compact
+ * 'clientTelemetry' events and printed to the console.
+ *
+ * The monitors' CPU use is held to a budget: when a report finds them above it, the scheduler's
+ * slowdown factor is doubled (stretching all adaptive intervals); once they are comfortably below
+ * it again, the factor is halved back towards normal.
+ */
+public class ClientTelemetry implements PolledMonitor {
+
+    private static final double MAX_SLOWDOWN = 8.0;
+    private static final long MIN_REPORTED_THREAD_CPU_NANOS = 1_000_000;
+    // Pool and worker threads are numbered; their CPU is reported per pool.
+    private static final Pattern THREAD_NUMBER = Pattern.compile("[-# ]?\\d+$");
+
+    private final Consumer<String> eventConsumer;
+    private final MonitorScheduler scheduler;
+    private final IntSupplier queueDepth;
+    private final double cpuBudgetPercent;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+    private final OperatingSystemMXBean osMXBean = ManagementFactory.getOperatingSystemMXBean();
+    private final long selfPid = ProcessHandle.current().pid();
+    private final Map<String, LongAdder> eventCounts = new ConcurrentHashMap<>();
+    private volatile Supplier<Optional<ProcessHandle>> agentProcess = Optional::empty;
+    private volatile StartupTimer startupTimer;
+    private boolean startupReported;
+
+    // Values at the previous report; only touched by the scheduler thread.
+    private final Map<String, MonitorStats> previousMonitorStats = new HashMap<>();
+    private final Map<Long, Long> previousThreadCpu = new HashMap<>();
+    private long previousReportNanos = System.nanoTime();
+    private long previousProcessCpuNanos = processCpuNanos();
+    private long previousAgentCpuNanos = -1;
+    private long previousAgentPid = -1;
+    private boolean baselineTaken;
+
+    /**
+     * @param eventConsumer Receives the telemetry events.
+     * @param scheduler The scheduler whose monitors are measured and throttled.
+     * @param queueDepth Reports the number of events waiting to be sent.
+     * @param cpuBudgetPercent The CPU the scheduled monitors may use together, in percent of one core.
+     */
+    public ClientTelemetry(Consumer<String> eventConsumer, MonitorScheduler scheduler, IntSupplier queueDepth, double cpuBudgetPercent) {
+        if (cpuBudgetPercent <= 0) {
+            throw new IllegalArgumentException("CPU budget must be a positive percentage.");
+        }
+        this.eventConsumer = eventConsumer;
+        this.scheduler = scheduler;
+        this.queueDepth = queueDepth;
+        this.cpuBudgetPercent = cpuBudgetPercent;
+        if (threadMXBean.isThreadCpuTimeSupported() && !threadMXBean.isThreadCpuTimeEnabled()) {
+            try {
+                threadMXBean.setThreadCpuTimeEnabled(true);
+            } catch (UnsupportedOperationException | SecurityException e) {
+                // Per-thread CPU is then simply left out of the reports.
+            }
+        }
+    }
+
+    /**
+     * Wraps an event consumer so that the events flowing through it are counted under the given source.
+     * @param source The name the events are reported under, e.g. the monitor's name.
+     * @param downstream Where the events go.
+     * @return A counting consumer.
+     */
+    public Consumer<String> countEvents(String source, Consumer<String> downstream) {
+        LongAdder counter = eventCounts.computeIfAbsent(source, key -> new LongAdder());
+        return event -> {
+            counter.increment();
+            downstream.accept(event);
+        };
+    }
+
+    /**
+     * @param agentProcess Supplies the Python agent's process, if it is running.
+     */
+    public void setAgentProcess(Supplier<Optional<ProcessHandle>> agentProcess) {
+        this.agentProcess = agentProcess;
+    }
+
+    /**
+     * @param startupTimer Startup phases to include once, in the first report after the first event was sent.
+     */
+    public void setStartupTimer(StartupTimer startupTimer) {
+        this.startupTimer = startupTimer;
+    }
+
+    @Override
+    public String getName() {
+        return "ClientTelemetry";
+    }
+
+    @Override
+    public PollResult poll() {
+        if (!baselineTaken) {
+            // The first poll runs as soon as the scheduler starts; it only records the starting point.
+            takeBaseline();
+            return PollResult.IDLE;
+        }
+        long now = System.nanoTime();
+        long elapsedNanos = Math.max(1, now - previousReportNanos);
+        previousReportNanos = now;
+
+        long processCpu = processCpuNanos();
+        double cpuPercent = processCpu < 0 || previousProcessCpuNanos < 0 ? -1 : percent(processCpu - previousProcessCpuNanos, elapsedNanos);
+        previousProcessCpuNanos = processCpu;
+
+        EventEncoder encoder = EventEncoder.forCurrentThread()
+                .begin(Activity.CLIENT_TELEMETRY, Status.INFO)
+                .detail("windowMs", elapsedNanos / 1_000_000);
+        if (cpuPercent >= 0) {
+            encoder.detail("cpuPercent", round(cpuPercent));
+        }
+
+        // Scheduled monitors
+        long monitorCpuNanos = 0;
+        encoder.beginObject("monitors");
+        for (ScheduledMonitor scheduled : scheduler.getMonitors()) {
+            MonitorStats stats = scheduled.takeStats();
+            MonitorStats previous = previousMonitorStats.put(stats.getName(), stats);
+            long polls = stats.getPolls() - (previous != null ? previous.getPolls() : 0);
+            long cpu = stats.getCpuNanos() - (previous != null ? previous.getCpuNanos() : 0);
+            long wall = stats.getWallNanos() - (previous != null ? previous.getWallNanos() : 0);
+            if (scheduled.getMonitor() != this) {
+                monitorCpuNanos += cpu; // Reporting itself is not held against the monitors' budget.
+            }
+            encoder.beginObject(stats.getName())
+                    .detail("polls", polls)
+                    .detail("cpuMs", round(cpu / 1e6))
+                    .detail("avgUs", polls == 0 ? 0 : wall / polls / 1000)
+                    .detail("maxUs", stats.getMaxWallNanos() / 1000)
+                    .detail("intervalMs", stats.getCurrentIntervalMillis())
+                    .endObject();
+        }
+        encoder.endObject();
+        double monitorCpuPercent = percent(monitorCpuNanos, elapsedNanos);
+        encoder.detail("monitorCpuPercent", round(monitorCpuPercent))
+                .detail("cpuBudgetPercent", cpuBudgetPercent)
+                .detail("slowdown", enforceBudget(monitorCpuPercent));
+
+        // Background threads, including event-driven monitors
+        encoder.beginObject("threadCpuMs");
+        for (Map.Entry<String, Long> entry : threadCpuSinceLastReport().entrySet()) {
+            encoder.detail(entry.getKey(), round(entry.getValue() / 1e6));
+        }
+        encoder.endObject();
+
+        // Memory and queue
+        long heapUsed = memoryMXBean.getHeapMemoryUsage().getUsed();
+        long rss = ResidentMemory.residentBytes(selfPid);
+        int depth = queueDepth.getAsInt();
+        encoder.detail("heapUsedMb", round(heapUsed / 1048576.0));
+        if (rss >= 0) {
+            encoder.detail("rssMb", round(rss / 1048576.0));
+        }
+        encoder.detail("queueDepth", depth);
+
+        // Events produced per source
+        long totalEvents = 0;
+        encoder.beginObject("events");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(eventCounts).entrySet()) {
+            long count = entry.getValue().sumThenReset();
+            totalEvents += count;
+            encoder.detail(entry.getKey(), count);
+        }
+        encoder.endObject();
+
+        // Python agent
+        Optional<ProcessHandle> agent = agentProcess.get().filter(ProcessHandle::isAlive);
+        double agentCpuPercent = -1;
+        if (agent.isPresent()) {
+            long agentCpu = agent.get().info().totalCpuDuration().map(Duration::toNanos).orElse(-1L);
+            if (agentCpu >= 0 && previousAgentCpuNanos >= 0 && previousAgentPid == agent.get().pid()) {
+                agentCpuPercent = percent(agentCpu - previousAgentCpuNanos, elapsedNanos);
+                encoder.detail("agentCpuPercent", round(agentCpuPercent));
+            }
+            previousAgentCpuNanos = agentCpu;
+            previousAgentPid = agent.get().pid();
+            long agentRss = ResidentMemory.residentBytes(agent.get().pid());
+            if (agentRss >= 0) {
+                encoder.detail("agentRssMb", round(agentRss / 1048576.0));
+            }
+        }
+
+        // Startup phases, once they include the time to the first event
+        StartupTimer startup = startupTimer;
+        if (startup != null && !startupReported) {
+            Map<String, Long> marks = startup.getMarks();
+            if (marks.containsKey(StartupTimer.FIRST_EVENT_SENT)) {
+                encoder.beginObject("startupMs");
+                marks.forEach(encoder::detail);
+                encoder.endObject();
+                startupReported = true;
+            }
+        }
+
+        eventConsumer.accept(encoder.detail(EventFields.MESSAGE, "Client resource usage report.").end());
+
+        ConsoleUI.showTelemetry(String.format("cpu %s (monitors %.2f%% of %.2f%% budget, slowdown x%.0f), heap %.1f MB%s, queue %d, events %d%s",
+                cpuPercent >= 0 ? String.format("%.2f%%", cpuPercent) : "n/a",
+                monitorCpuPercent, cpuBudgetPercent, scheduler.getSlowdownFactor(),
+                heapUsed / 1048576.0, rss >= 0 ? String.format(", rss %.1f MB", rss / 1048576.0) : "",
+                depth, totalEvents,
+                agentCpuPercent >= 0 ? String.format(", agent cpu %.2f%%", agentCpuPercent) : ""));
+        return PollResult.IDLE;
+    }
+
+    private void takeBaseline() {
+        previousReportNanos = System.nanoTime();
+        previousProcessCpuNanos = processCpuNanos();
+        for (ScheduledMonitor scheduled : scheduler.getMonitors()) {
+            MonitorStats stats = scheduled.takeStats();
+            previousMonitorStats.put(stats.getName(), stats);
+        }
+        threadCpuSinceLastReport();
+        baselineTaken = true;
+    }
+
+    /**
+     * Adjusts the scheduler's slowdown factor to keep the monitors within their CPU budget.
+     * @return The factor now in effect.
+     */
+    private double enforceBudget(double monitorCpuPercent) {
+        double slowdown = scheduler.getSlowdownFactor();
+        if (monitorCpuPercent > cpuBudgetPercent && slowdown < MAX_SLOWDOWN) {
+            slowdown = Math.min(MAX_SLOWDOWN, slowdown * 2);
+            ConsoleUI.showWarning(String.format("Monitors used %.2f%% CPU (budget %.2f%%); polling %.0fx less often.",
+                    monitorCpuPercent, cpuBudgetPercent, slowdown));
+        } else if (monitorCpuPercent < cpuBudgetPercent / 2 && slowdown > 1.0) {
+            // Halving the slowdown roughly doubles the cost, which still stays within the budget.
+            slowdown = Math.max(1.0, slowdown / 2);
+        }
+        scheduler.setSlowdownFactor(slowdown);
+        return slowdown;
+    }
+
+    /**
+     * @return CPU time per thread group since the previous report, for groups above a millisecond.
+     */
+    private Map<String, Long> threadCpuSinceLastReport() {
+        Map<String, Long> byName = new TreeMap<>();
+        if (!threadMXBean.isThreadCpuTimeSupported() || !threadMXBean.isThreadCpuTimeEnabled()) {
+            return byName;
+        }
+        long[] ids = threadMXBean.getAllThreadIds();
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(ids);
+        Map<Long, Long> current = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            long cpu = threadMXBean.getThreadCpuTime(ids[i]);
+            if (cpu < 0 || infos[i] == null) {
+                continue; // Thread ended in the meantime.
+            }
+            current.put(ids[i], cpu);
+            long delta = cpu - previousThreadCpu.getOrDefault(ids[i], 0L);
+            if (delta > 0) {
+                byName.merge(THREAD_NUMBER.matcher(infos[i].getThreadName()).replaceFirst(""), delta, Long::sum);
+            }
+        }
+        previousThreadCpu.clear();
+        previousThreadCpu.putAll(current);
+        byName.values().removeIf(cpu -> cpu < MIN_REPORTED_THREAD_CPU_NANOS);
+        return byName;
+    }
+
+    private long processCpuNanos() {
+        if (osMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) osMXBean).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static double percent(long cpuNanos, long elapsedNanos) {
+        return cpuNanos * 100.0 / elapsedNanos;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,58 @@
+package com.proctor.client.telemetry;
+
+import com.sun.jna.Platform;
+import com.sun.jna.platform.mac.SystemB;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Reads the resident set size (physical memory in use) of a process.
+ * Uses /proc on Linux and proc_pidinfo on macOS; other platforms report it as unknown.
+ */
+public final class ResidentMemory {
+
+    private ResidentMemory() {
+    }
+
+    /**
+     * @param pid The process to inspect.
+     * @return The resident size in bytes, or -1 if it cannot be determined.
+     */
+    public static long residentBytes(long pid) {
+        try {
+            if (Platform.isLinux()) {
+                return linuxResidentBytes(Paths.get("/proc", Long.toString(pid), "status"));
+            }
+            if (Platform.isMac()) {
+                SystemB.ProcTaskInfo info = new SystemB.ProcTaskInfo();
+                int size = info.size();
+                if (SystemB.INSTANCE.proc_pidinfo((int) pid, SystemB.PROC_PIDTASKINFO, 0, info, size) == size) {
+                    return info.pti_resident_size;
+                }
+            }
+        } catch (IOException | RuntimeException | UnsatisfiedLinkError e) {
+            // Process exited or the platform call is unavailable; report unknown.
+        }
+        return -1;
+    }
+
+    private static long linuxResidentBytes(Path status) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(status, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    // Format: "VmRSS:     123456 kB"
+                    String value = line.substring("VmRSS:".length()).trim();
+                    int space = value.indexOf(' ');
+                    return Long.parseLong(space < 0 ? value : value.substring(0, space)) * 1024;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,52 @@
+package com.proctor.client.telemetry;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records when each startup phase completed, measured from the launch of the JVM.
+ * Each phase is recorded once; later marks of the same phase are ignored.
+ */
+public class StartupTimer {
+
+    public static final String MONITORS_READY = "monitorsReady";
+    public static final String CONNECTED = "connected";
+    public static final String FIRST_EVENT_SENT = "firstEventSent";
+
+    private final Map<String, Long> marks = new LinkedHashMap<>();
+
+    /**
+     * Records that a phase has completed, unless it was already recorded.
+     * @param phase The phase name, e.g. "connected".
+     * @return {@code true} if this call recorded the phase.
+     */
+    public synchronized boolean mark(String phase) {
+        return marks.putIfAbsent(phase, uptimeMillis()) == null;
+    }
+
+    /**
+     * @return The completed phases in the order they completed, in milliseconds since JVM launch.
+     */
+    public synchronized Map<String, Long> getMarks() {
+        return new LinkedHashMap<>(marks);
+    }
+
+    /**
+     * @return A one-line summary such as "monitorsReady 412 ms, connected 655 ms, firstEventSent 700 ms".
+     */
+    public synchronized String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Long> mark : marks.entrySet()) {
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+            summary.append(mark.getKey()).append(' ').append(mark.getValue()).append(" ms");
+        }
+        return summary.toString();
+    }
+
+    private static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
@@ -24,6 +24,14 @@ public class ConsoleUI {
         System.out.println(ANSI_GREEN + "[INFO] " + message + ANSI_RESET);
     }
 
+    /**
+     * Displays the client's periodic resource usage report.
+     * @param message A one-line summary of the report.
+     */
+    public static void showTelemetry(String message) {
+        System.out.println(ANSI_CYAN + "[TELEMETRY] " + message + ANSI_RESET);
+    }
+
     public static void showError(String message) {
         System.err.println(ANSI_RED + "[ERROR] " + message + ANSI_RESET);
     }
@@ -0,0 +1,62 @@
+package com.proctor.client.websocket;
+
+/**
+ * Estimates how far the server's clock is ahead of this machine's from the recent clock pings (see
+ * {@link com.proctor.protocol.LatencyTrace}). Each sample is only accurate to half its round trip,
+ * so the estimate comes from the sample with the shortest round trip among the last few; a slow
+ * ping caused by a busy network or server does not move it.
+ */
+class ClockOffset {
+
+    private static final int SAMPLES = 8;
+
+    private final long[] offsets = new long[SAMPLES];
+    private final long[] rtts = new long[SAMPLES];
+    private int count;
+    private int next;
+    private volatile long offset;
+    private volatile long rtt = -1;
+
+    /**
+     * @param sent The client time the ping was sent.
+     * @param serverTime The server time in the pong.
+     * @param received The client time the pong arrived.
+     */
+    synchronized void sample(long sent, long serverTime, long received) {
+        if (received < sent) {
+            return;
+        }
+        offsets[next] = serverTime - (sent + received) / 2;
+        rtts[next] = received - sent;
+        next = (next + 1) % SAMPLES;
+        count = Math.min(count + 1, SAMPLES);
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (rtts[i] < rtts[best]) {
+                best = i;
+            }
+        }
+        offset = offsets[best];
+        rtt = rtts[best];
+    }
+
+    /**
+     * Forgets the samples, e.g. after connecting to another server.
+     */
+    synchronized void reset() {
+        count = 0;
+        next = 0;
+        offset = 0;
+        rtt = -1;
+    }
+
+    /** @return Server time minus client time, in milliseconds; 0 before the first sample. */
+    long getOffset() {
+        return offset;
+    }
+
+    /** @return The round trip of the sample the offset comes from, or -1 before the first sample. */
+    long getRtt() {
+        return rtt;
+    }
+}
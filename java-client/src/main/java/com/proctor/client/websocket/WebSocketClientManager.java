@@ -1,39 +1,165 @@
 package com.proctor.client.websocket;
 
 import com.proctor.client.ui.ConsoleUI;
+import com.proctor.protocol.ClusterRedirect;
+import com.proctor.protocol.EventSummary;
+import com.proctor.protocol.LatencyTrace;
+import com.proctor.protocol.ProtocolVersion;
+import com.proctor.protocol.SessionResume;
+import org.java_websocket.WebSocket;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.PingFrame;
 import org.java_websocket.handshake.ServerHandshake;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * Manages the WebSocket connection to the server.
  * This version includes the missing 'awaitOpen' method required by ProctorApp.
+ * <p>
+ * A dropped connection is re-established after a random delay that doubles with each failed attempt
+ * (up to 30 s), so that when a server restarts its students do not all reconnect at the same moment.
+ * Events sent while disconnected are kept, and the most recent ones stay buffered after sending: on
+ * reconnecting, the server reports the last event it received in the resumed session (see
+ * {@link SessionResume}) and only the events after it are sent again.
+ * <p>
+ * A server of a cluster may send the client to the server that owns its session (see
+ * {@link ClusterRedirect}); the client follows within a second and stays there. After a few failed
+ * attempts to reach that server it goes back to the original URL, which redirects it to the new owner.
+ * <p>
+ * When the server asks for latency tracing (see {@link LatencyTrace}), every N-th event is sent with
+ * the times it was queued, dispatched and sent, and clock pings keep an estimate of the server's
+ * clock offset: a few right after connecting, then one every 15 s.
  */
 public class WebSocketClientManager {
 
+    private static final int MAX_UNACKNOWLEDGED_EVENTS = Integer.getInteger("proctor.resendBufferEvents", 1000);
+    private static final long INITIAL_RECONNECT_DELAY_MILLIS = 2000;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 30000;
+    private static final long MAX_REDIRECT_DELAY_MILLIS = 1000;
+    // Redirects followed without opening a connection, before falling back to the normal backoff.
+    private static final int MAX_REDIRECTS = 5;
+    // Failed attempts at a redirect target before trying the original URL again.
+    private static final int ATTEMPTS_BEFORE_ORIGINAL_URL = 3;
+    private static final int CLOCK_PINGS_ON_OPEN = 4;
+    private static final long CLOCK_PING_SPACING_MILLIS = 250;
+    private static final long CLOCK_SYNC_INTERVAL_MILLIS = 15000;
+
+    /**
+     * An event waiting to be sent or kept for resending, with the times the client handled it.
+     */
+    private static final class PendingEvent {
+        final String json;
+        final long enqueuedAt;
+        final long dispatchedAt;
+
+        PendingEvent(String json, long enqueuedAt, long dispatchedAt) {
+            this.json = json;
+            this.enqueuedAt = enqueuedAt;
+            this.dispatchedAt = dispatchedAt;
+        }
+    }
+
     private final WebSocketClient client;
     // A latch is a concurrency tool that allows one thread to wait for another to finish.
     private final CountDownLatch connectLatch = new CountDownLatch(1);
+    private final ScheduledExecutorService reconnectScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "WebSocket-Reconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger reconnectAttempts = new AtomicInteger();
+    private final AtomicInteger redirects = new AtomicInteger();
+    private volatile Consumer<String> messageHandler;
+    private volatile LongConsumer summaryWindowHandler;
+    private volatile boolean closing;
+    private final ClockOffset clockOffset = new ClockOffset();
+    private volatile int traceEvery;
+
+    // The recent events, numbered from firstSequence; guarded by 'this'.
+    private final ArrayDeque<PendingEvent> unacknowledged = new ArrayDeque<>();
+    private long firstSequence = 1;
+    private long sentSequence;
+    private boolean live;
+    private long untracedEvents;
+    private ScheduledFuture<?> clockSync;
 
     public WebSocketClientManager(URI serverUri) {
-        this.client = new WebSocketClient(serverUri) {
+        // The protocol version travels once in the handshake instead of in every event.
+        this.client = new WebSocketClient(serverUri,
+                Collections.singletonMap(ProtocolVersion.HEADER, String.valueOf(ProtocolVersion.CURRENT))) {
             @Override
             public void onOpen(ServerHandshake handshakedata) {
                 ConsoleUI.showMessage("Successfully connected to the proctoring server.");
+                LongConsumer summaryHandler = summaryWindowHandler;
+                if (summaryHandler != null) {
+                    summaryHandler.accept(EventSummary.parse(handshakedata.getFieldValue(EventSummary.HEADER)));
+                }
+                startTracing(LatencyTrace.parse(handshakedata.getFieldValue(LatencyTrace.HEADER)));
+                resume(SessionResume.parse(handshakedata.getFieldValue(SessionResume.HEADER)));
+                reconnectAttempts.set(0);
+                redirects.set(0);
                 connectLatch.countDown(); // Connection is open, release the latch.
             }
 
             @Override
             public void onMessage(String message) {
-                ConsoleUI.showMessage("Received message from server: " + message);
+                Consumer<String> handler = messageHandler;
+                if (handler != null) {
+                    handler.accept(message);
+                } else {
+                    ConsoleUI.showMessage("Received message from server: " + message);
+                }
             }
 
             @Override
             public void onClose(int code, String reason, boolean remote) {
+                synchronized (WebSocketClientManager.this) {
+                    live = false;
+                }
+                if (closing) {
+                    return;
+                }
+                if (code == ClusterRedirect.CLOSE_CODE && redirects.incrementAndGet() <= MAX_REDIRECTS) {
+                    URI target = ClusterRedirect.target(uri, reason);
+                    if (target != null) {
+                        ConsoleUI.showMessage("Session moved to " + reason + "; reconnecting there.");
+                        uri = target;
+                        scheduleReconnect(ThreadLocalRandom.current().nextLong(MAX_REDIRECT_DELAY_MILLIS));
+                        return;
+                    }
+                }
                 ConsoleUI.showWarning("Disconnected from server. Reason: " + reason);
+                if (shouldReconnect(code)) {
+                    if (reconnectAttempts.get() >= ATTEMPTS_BEFORE_ORIGINAL_URL) {
+                        uri = serverUri;
+                    }
+                    scheduleReconnect();
+                }
+            }
+
+            @Override
+            public void onWebsocketPong(WebSocket conn, Framedata f) {
+                ByteBuffer pong = f.getPayloadData();
+                if (LatencyTrace.isClockPong(pong)) {
+                    clockOffset.sample(LatencyTrace.pingTime(pong), LatencyTrace.serverTime(pong), System.currentTimeMillis());
+                }
             }
 
             @Override
@@ -43,11 +169,30 @@ public class WebSocketClientManager {
         };
     }
 
+    /**
+     * Sets the handler for messages pushed by the server. Without a handler, messages are only printed.
+     * @param messageHandler Called on the WebSocket thread with each text message.
+     */
+    public void setMessageHandler(Consumer<String> messageHandler) {
+        this.messageHandler = messageHandler;
+    }
+
+    /**
+     * Sets the handler told, on every (re)connect, which summary window the server asked for; see
+     * {@link EventSummary}.
+     * @param summaryWindowHandler Called on the WebSocket thread with the window in milliseconds, 0 for none.
+     */
+    public void setSummaryWindowHandler(LongConsumer summaryWindowHandler) {
+        this.summaryWindowHandler = summaryWindowHandler;
+    }
+
     public void connect() {
         client.connect();
     }
 
     public void close() {
+        closing = true;
+        reconnectScheduler.shutdownNow();
         client.close();
     }
 
@@ -55,11 +200,47 @@ public class WebSocketClientManager {
         return client.isOpen();
     }
 
+    /**
+     * Sends an event, or keeps it until the connection is back. Only the most recent events are kept;
+     * older ones are dropped if the client stays disconnected for long.
+     * @param eventJson The event.
+     */
     public void sendEvent(String eventJson) {
+        sendEvent(eventJson, 0, 0);
+    }
+
+    /**
+     * Sends an event like {@link #sendEvent(String)}, with the times to report if it is traced.
+     * @param enqueuedAt When the event was put on the client's queue, or 0 to never trace it.
+     * @param dispatchedAt When the event was taken off the queue.
+     */
+    public synchronized void sendEvent(String eventJson, long enqueuedAt, long dispatchedAt) {
+        PendingEvent event = new PendingEvent(eventJson, enqueuedAt, dispatchedAt);
+        unacknowledged.addLast(event);
+        if (unacknowledged.size() > MAX_UNACKNOWLEDGED_EVENTS) {
+            unacknowledged.pollFirst();
+            firstSequence++;
+        }
+        if (live) {
+            try {
+                send(event);
+                sentSequence = lastSequence();
+            } catch (WebsocketNotConnectedException e) {
+                live = false;
+            }
+        }
+    }
+
+    /**
+     * Sends a binary message, such as a camera frame forwarded from the Python agent.
+     * The frame is written out before this method returns, so the caller may reuse the buffer afterwards.
+     * @param frame The message body, from its position to its limit.
+     */
+    public void sendBinary(ByteBuffer frame) {
         if (isOpen()) {
-            client.send(eventJson);
+            client.send(frame);
         } else {
-            ConsoleUI.showWarning("Attempted to send event while disconnected.");
+            ConsoleUI.showWarning("Attempted to send frame while disconnected.");
         }
     }
 
@@ -75,5 +256,125 @@ public class WebSocketClientManager {
         // This will pause the thread until connectLatch.countDown() is called in onOpen(), or the timeout expires.
         return connectLatch.await(timeout, unit);
     }
+
+    /**
+     * Lines the buffered events up with what the server has and sends the ones it is missing.
+     * @param lastReceived The last event number the server has in the resumed session, or -1 if it
+     *                     started a new session.
+     */
+    private synchronized void resume(long lastReceived) {
+        if (lastReceived >= 0 && sentSequence > 0) {
+            while (!unacknowledged.isEmpty() && firstSequence <= lastReceived) {
+                unacknowledged.pollFirst();
+                firstSequence++;
+            }
+            long lost = firstSequence - 1 - lastReceived;
+            if (lost > 0) {
+                ConsoleUI.showWarning(lost + " events were dropped while disconnected.");
+            }
+        } else if (lastReceived < 0) {
+            // A new session: what was already sent belonged to the previous one and is not repeated.
+            while (!unacknowledged.isEmpty() && firstSequence <= sentSequence) {
+                unacknowledged.pollFirst();
+                firstSequence++;
+            }
+        }
+        // The server numbers the next event it receives after the last one it has.
+        firstSequence = Math.max(lastReceived, 0) + 1;
+        live = true;
+        try {
+            for (PendingEvent event : unacknowledged) {
+                send(event);
+            }
+            sentSequence = lastSequence();
+        } catch (WebsocketNotConnectedException e) {
+            live = false;
+        }
+    }
+
+    private void send(PendingEvent event) {
+        int every = traceEvery;
+        if (every > 0 && event.enqueuedAt > 0 && ++untracedEvents >= every) {
+            untracedEvents = 0;
+            client.send(LatencyTrace.append(event.json, event.enqueuedAt, event.dispatchedAt,
+                    System.currentTimeMillis(), clockOffset.getOffset(), clockOffset.getRtt()));
+        } else {
+            client.send(event.json);
+        }
+    }
+
+    /**
+     * Applies the sampling rate the server asked for on this connection and, if it asked for any,
+     * starts measuring the clock offset, which may differ from the previous server's.
+     */
+    private void startTracing(int every) {
+        traceEvery = every;
+        clockOffset.reset();
+        if (every == 0) {
+            return;
+        }
+        try {
+            for (int i = 0; i < CLOCK_PINGS_ON_OPEN; i++) {
+                reconnectScheduler.schedule(this::sendClockPing, i * CLOCK_PING_SPACING_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            synchronized (this) {
+                if (clockSync == null) {
+                    clockSync = reconnectScheduler.scheduleWithFixedDelay(this::sendClockPing,
+                            CLOCK_SYNC_INTERVAL_MILLIS, CLOCK_SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            // Closing.
+        }
+    }
+
+    private void sendClockPing() {
+        if (traceEvery == 0 || !client.isOpen()) {
+            return;
+        }
+        PingFrame ping = new PingFrame();
+        ping.setPayload(LatencyTrace.clockPing(System.currentTimeMillis()));
+        try {
+            client.sendFrame(ping);
+        } catch (WebsocketNotConnectedException e) {
+            // Reconnecting; the next connection measures again.
+        }
+    }
+
+    private long lastSequence() {
+        return firstSequence + unacknowledged.size() - 1;
+    }
+
+    private void scheduleReconnect() {
+        int attempt = reconnectAttempts.getAndIncrement();
+        long ceiling = Math.min(MAX_RECONNECT_DELAY_MILLIS, INITIAL_RECONNECT_DELAY_MILLIS << Math.min(attempt, 5));
+        // Full jitter: anywhere up to the ceiling, which spreads a crowd of clients out the most.
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        ConsoleUI.showMessage("Reconnecting in " + (delay + 500) / 1000 + " s...");
+        scheduleReconnect(delay);
+    }
+
+    private void scheduleReconnect(long delay) {
+        try {
+            // reconnect() must not run on the WebSocket's own thread, which is the one calling onClose.
+            reconnectScheduler.schedule(() -> {
+                if (!closing) {
+                    client.reconnect();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closing.
+        }
+    }
+
+    /**
+     * The server closed the session on purpose (a normal close, a rejected session ID or protocol),
+     * so there is nothing to reconnect to. Lost connections, a server going away and a server
+     * restart are retried.
+     */
+    private static boolean shouldReconnect(int code) {
+        return code != CloseFrame.NORMAL && code != CloseFrame.PROTOCOL_ERROR
+                && code != CloseFrame.REFUSE && code != CloseFrame.POLICY_VALIDATION;
+    }
 }
 
@@ -0,0 +1,174 @@
+package com.proctor.client.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.proctor.client.scheduler.PollResult;
+import com.proctor.protocol.DecodedEvent;
+import com.proctor.protocol.EventDecoder;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.StringSelection;
+import java.awt.datatransfer.Transferable;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests change detection in {@link ClipboardMonitor} against a private clipboard and change counter.
+ */
+public class ClipboardMonitorTest {
+
+    private final Clipboard clipboard = new Clipboard("test");
+    private final AtomicLong changeCount = new AtomicLong();
+    private final List<String> events = new ArrayList<>();
+
+    private ClipboardMonitor monitor() {
+        return new ClipboardMonitor(events::add, clipboard, changeCount::get);
+    }
+
+    private void copy(Transferable contents) {
+        clipboard.setContents(contents, null);
+        changeCount.incrementAndGet();
+    }
+
+    private void copy(String text) {
+        copy(new StringSelection(text));
+    }
+
+    private static JSONObject details(String json) {
+        DecodedEvent event = new DecodedEvent();
+        assertTrue(EventDecoder.forCurrentThread().decode(json, event));
+        return new JSONObject(event.getDetailsJson());
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    /** Offers text only as a stream, counting the characters read from it. */
+    private static Transferable streamed(String text, AtomicInteger charsRead) throws Exception {
+        DataFlavor flavor = new DataFlavor("text/plain;charset=unicode;class=java.io.Reader");
+        return new Transferable() {
+            @Override
+            public DataFlavor[] getTransferDataFlavors() {
+                return new DataFlavor[] {flavor};
+            }
+
+            @Override
+            public boolean isDataFlavorSupported(DataFlavor other) {
+                return flavor.equals(other);
+            }
+
+            @Override
+            public Object getTransferData(DataFlavor other) {
+                return new StringReader(text) {
+                    @Override
+                    public int read(char[] buffer, int offset, int length) throws java.io.IOException {
+                        int read = super.read(buffer, offset, length);
+                        charsRead.addAndGet(Math.max(read, 0));
+                        return read;
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    public void hashesWithFnv1a() {
+        assertEquals(0xcbf29ce484222325L, ClipboardMonitor.hash(new char[0], 0));
+        assertEquals(0xaf63dc4c8601ec8cL, ClipboardMonitor.hash("a".toCharArray(), 1));
+        assertEquals(0x85944171f73967e8L, ClipboardMonitor.hash("foobar".toCharArray(), 6));
+        // Only the given length counts.
+        assertEquals(0xaf63dc4c8601ec8cL, ClipboardMonitor.hash("ab".toCharArray(), 1));
+    }
+
+    @Test
+    public void reportsNewTextWithItsPrefixAndLength() {
+        copy("copied before the exam");
+        ClipboardMonitor monitor = monitor();
+        assertEquals(PollResult.IDLE, monitor.poll());
+
+        String text = repeat('q', 250);
+        copy(text);
+        assertEquals(PollResult.CHANGED, monitor.poll());
+        assertEquals(1, events.size());
+        JSONObject details = details(events.get(0));
+        assertEquals(text.substring(0, 100), details.getString("copiedText"));
+        assertEquals(250, details.getLong("copiedLength"));
+    }
+
+    @Test
+    public void ignoresTheSameTextCopiedAgain() {
+        ClipboardMonitor monitor = monitor();
+        copy("answer 42");
+        assertEquals(PollResult.CHANGED, monitor.poll());
+        copy("answer 42");
+        assertEquals(PollResult.IDLE, monitor.poll());
+        copy("answer 43");
+        assertEquals(PollResult.CHANGED, monitor.poll());
+        // Text that differs only beyond the hashed prefix is told apart by its length.
+        copy(repeat('x', 5000));
+        assertEquals(PollResult.CHANGED, monitor.poll());
+        copy(repeat('x', 5001));
+        assertEquals(PollResult.CHANGED, monitor.poll());
+        assertEquals(4, events.size());
+    }
+
+    @Test
+    public void ignoresEmptyText() {
+        ClipboardMonitor monitor = monitor();
+        copy("");
+        assertEquals(PollResult.IDLE, monitor.poll());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void readsTheClipboardOnlyWhenTheCounterMoves() throws Exception {
+        AtomicInteger charsRead = new AtomicInteger();
+        copy(streamed("first", charsRead));
+        ClipboardMonitor monitor = monitor();
+        int readOnStart = charsRead.get();
+
+        assertEquals(PollResult.IDLE, monitor.poll());
+        assertEquals(readOnStart, charsRead.get());
+        changeCount.incrementAndGet();
+        assertEquals(PollResult.IDLE, monitor.poll());
+        assertTrue(charsRead.get() > readOnStart);
+    }
+
+    @Test
+    public void streamsOnlyTheHashedPrefix() throws Exception {
+        ClipboardMonitor monitor = monitor();
+        AtomicInteger charsRead = new AtomicInteger();
+        copy(streamed(repeat('s', 1_000_000), charsRead));
+        assertEquals(PollResult.CHANGED, monitor.poll());
+        assertTrue("read " + charsRead.get() + " chars", charsRead.get() <= 4096);
+        // The length of a stream is not known without reading it all, so it is left out.
+        JSONObject details = details(events.get(0));
+        assertFalse(details.has("copiedLength"));
+        assertEquals(repeat('s', 100), details.getString("copiedText"));
+    }
+
+    @Test
+    public void checksEverySecondWithoutACounter() throws Exception {
+        copy("before");
+        ClipboardMonitor monitor = new ClipboardMonitor(events::add, clipboard, null);
+        // Text replacing text does not change the flavors, so no notification arrives.
+        clipboard.setContents(new StringSelection("after"), null);
+        assertEquals(PollResult.IDLE, monitor.poll());
+        Thread.sleep(1100);
+        assertEquals(PollResult.CHANGED, monitor.poll());
+        assertEquals("after", details(events.get(0)).getString("copiedText"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.proctor.client.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.proctor.client.monitoring.process.ProcessSnapshotSource;
+import com.proctor.client.monitoring.signature.FingerprintCache;
+import com.proctor.client.monitoring.signature.SignatureDatabase;
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.DecodedEvent;
+import com.proctor.protocol.EventDecoder;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link ProcessMonitor} with a process list the test controls and a real child process, whose
+ * executable is forbidden by hash so that it is identified by the background fingerprinter.
+ */
+public class ProcessMonitorTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final long START_TIME = 1;
+
+    private final List<Long> running = new ArrayList<>();
+    private final ProcessSnapshotSource source = visitor -> {
+        for (long pid : running) {
+            visitor.visit(pid, START_TIME);
+        }
+    };
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private Process child;
+    private ProcessMonitor monitor;
+
+    @After
+    public void stop() {
+        if (monitor != null) {
+            monitor.shutdown();
+        }
+        if (child != null) {
+            child.destroy();
+        }
+    }
+
+    private static String sha256(Path file) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file))) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private Activity nextActivity() throws InterruptedException {
+        String event = events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue("No event reported", event != null);
+        DecodedEvent decoded = new DecodedEvent();
+        assertTrue(EventDecoder.forCurrentThread().decode(event, decoded));
+        return decoded.getActivity();
+    }
+
+    /** Polls until the next event arrives, since the fingerprinter flags the process after reporting it. */
+    private Activity pollForActivity() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (events.isEmpty() && System.currentTimeMillis() < deadline) {
+            monitor.poll();
+            Thread.sleep(10);
+        }
+        return nextActivity();
+    }
+
+    @Test
+    public void reportsTheExitOfAProcessFlaggedAfterItExited() throws Exception {
+        Path sleep = Paths.get("/bin/sleep");
+        assumeTrue(Files.isRegularFile(sleep));
+        child = new ProcessBuilder(sleep.toString(), "30").start();
+        String command = child.info().command().orElse(null);
+        assumeTrue(command != null);
+        SignatureDatabase database = new SignatureDatabase(null);
+        database.updatePushedSignatures(Collections.singletonList("remote-desktop:sha256:" + sha256(Paths.get(command))));
+        monitor = new ProcessMonitor(events::add, database, source, new FingerprintCache(null));
+
+        // The process starts and leaves the list before the fingerprinter has identified it.
+        running.add(child.pid());
+        monitor.poll();
+        running.clear();
+        monitor.poll();
+
+        assertEquals(Activity.PROCESS_STARTED, nextActivity());
+        assertEquals(Activity.PROCESS_EXITED, pollForActivity());
+        // Reported once; the flag does not linger for a later process with the same PID.
+        running.add(child.pid());
+        monitor.poll();
+        running.clear();
+        monitor.poll();
+        assertEquals(Activity.PROCESS_STARTED, nextActivity());
+        assertEquals(Activity.PROCESS_EXITED, pollForActivity());
+        assertTrue(events.isEmpty());
+    }
+}
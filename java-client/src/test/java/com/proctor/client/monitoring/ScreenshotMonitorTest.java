@@ -0,0 +1,179 @@
+package com.proctor.client.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.proctor.client.scheduler.PollResult;
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.DecodedEvent;
+import com.proctor.protocol.EventDecoder;
+import com.proctor.protocol.Status;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests {@link ScreenshotMonitor} against a temporary directory, with no quiet period so files are
+ * examined as soon as their events are drained.
+ */
+public class ScreenshotMonitorTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+    // How long to keep polling before concluding that nothing will be reported.
+    private static final long SILENCE_MILLIS = 500;
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D, 'I', 'H', 'D', 'R'};
+    // A BITMAPINFOHEADER file: reserved fields zero, pixel data at 54, DIB header of 40 bytes.
+    private static final byte[] BMP = {'B', 'M', 0x46, 0, 0, 0, 0, 0, 0, 0, 0x36, 0, 0, 0, 0x28, 0, 0, 0, 1, 0, 0, 0};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private final List<PollResult> results = new ArrayList<>();
+
+    private ScreenshotMonitor monitor(Path root) {
+        return new ScreenshotMonitor(events::add, Collections.singletonList(root), 0);
+    }
+
+    private void pollUntil(ScreenshotMonitor monitor, int eventCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (events.size() < eventCount) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Expected " + eventCount + " events, got " + events);
+            }
+            results.add(monitor.poll());
+            Thread.sleep(20);
+        }
+    }
+
+    private void pollForSilence(ScreenshotMonitor monitor) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + SILENCE_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            results.add(monitor.poll());
+            Thread.sleep(20);
+        }
+    }
+
+    private static DecodedEvent decode(String json) {
+        DecodedEvent event = new DecodedEvent();
+        assertTrue(EventDecoder.forCurrentThread().decode(json, event));
+        return event;
+    }
+
+    private static Path mkdirs(Path root, String... names) throws Exception {
+        Path directory = root;
+        for (String name : names) {
+            directory = directory.resolve(name);
+        }
+        return Files.createDirectories(directory);
+    }
+
+    @Test
+    public void registersDirectoriesDownToTheDepthLimit() throws Exception {
+        Path root = folder.newFolder("root").toPath();
+        Path deepest = mkdirs(root, "a", "b", "c");
+        Path tooDeep = mkdirs(deepest, "d");
+        ScreenshotMonitor monitor = monitor(root);
+
+        Files.write(tooDeep.resolve("ignored.png"), PNG);
+        Files.write(deepest.resolve("screenshot.png"), PNG);
+        pollUntil(monitor, 1);
+        pollForSilence(monitor);
+
+        assertEquals(1, events.size());
+        DecodedEvent event = decode(events.get(0));
+        assertEquals(Activity.SCREENSHOT_TAKEN, event.getActivity());
+        assertEquals(Status.VIOLATION, event.getStatus());
+        assertTrue(event.getDetailsJson().contains("screenshot.png"));
+    }
+
+    @Test
+    public void registersNewSubdirectoriesWithTheFilesAlreadyInThem() throws Exception {
+        Path root = folder.newFolder("root").toPath();
+        ScreenshotMonitor monitor = monitor(root);
+
+        // Created before the monitor can have registered the new directory.
+        Path created = mkdirs(root, "new", "nested");
+        Files.write(created.resolve("early.png"), PNG);
+        pollUntil(monitor, 1);
+        Files.write(created.resolve("late.png"), PNG);
+        pollUntil(monitor, 2);
+
+        assertTrue(events.get(0).contains("early.png"));
+        assertTrue(events.get(1).contains("late.png"));
+    }
+
+    @Test
+    public void recognisesImagesByTheirHeader() throws Exception {
+        Path root = folder.newFolder("root").toPath();
+        ScreenshotMonitor monitor = monitor(root);
+
+        Files.write(root.resolve("renamed.dat"), PNG);
+        Files.write(root.resolve("capture.bmp"), BMP);
+        Files.write(root.resolve("fake.png"), "not an image".getBytes(StandardCharsets.US_ASCII));
+        // Plain text that happens to start with the bitmap magic.
+        Files.write(root.resolve("notes.txt"), "BMW and Mercedes, page 2 of the notes".getBytes(StandardCharsets.US_ASCII));
+        Files.write(root.resolve("empty.png"), new byte[0]);
+        pollUntil(monitor, 2);
+        pollForSilence(monitor);
+
+        assertEquals(2, events.size());
+        String all = String.join("\n", events);
+        assertTrue(all.contains("renamed.dat"));
+        assertTrue(all.contains("capture.bmp"));
+    }
+
+    @Test
+    public void reportsFilesMovedInButNotImagesSavedOver() throws Exception {
+        Path root = folder.newFolder("root").toPath();
+        Path outside = folder.newFolder("outside").toPath();
+        Path existing = Files.write(root.resolve("existing.png"), PNG);
+        ScreenshotMonitor monitor = monitor(root);
+
+        Files.write(existing, new byte[] {0, 0, 0, 0}, StandardOpenOption.APPEND);
+        pollForSilence(monitor);
+        assertEquals(Collections.emptyList(), events);
+
+        Path source = Files.write(outside.resolve("moved.png"), PNG);
+        Files.move(source, root.resolve("moved.png"), StandardCopyOption.ATOMIC_MOVE);
+        pollUntil(monitor, 1);
+        assertTrue(events.get(0).contains("moved.png"));
+    }
+
+    @Test
+    public void reportsEveryImageOfABurstAsAViolation() throws Exception {
+        Path root = folder.newFolder("root").toPath();
+        Path staging = folder.newFolder("staging").toPath();
+        for (int i = 0; i < 8; i++) {
+            Files.write(staging.resolve("photo-" + i + ".png"), PNG);
+        }
+        ScreenshotMonitor monitor = monitor(root);
+
+        // Moving the directory in makes all the images appear in the same poll.
+        Files.move(staging, root.resolve("photos"), StandardCopyOption.ATOMIC_MOVE);
+        pollUntil(monitor, 6);
+        pollForSilence(monitor);
+
+        assertEquals(6, events.size());
+        for (int i = 0; i < 5; i++) {
+            DecodedEvent event = decode(events.get(i));
+            assertEquals(Activity.SCREENSHOT_TAKEN, event.getActivity());
+            assertEquals(Status.VIOLATION, event.getStatus());
+        }
+        DecodedEvent rest = decode(events.get(5));
+        assertEquals(Activity.IMAGE_FILES_ADDED, rest.getActivity());
+        assertEquals(Status.VIOLATION, rest.getStatus());
+        assertTrue(rest.getDetailsJson(), rest.getDetailsJson().contains("\"count\":3"));
+        assertTrue(results.contains(PollResult.VIOLATION));
+    }
+}
@@ -0,0 +1,82 @@
+package com.proctor.client.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.proctor.client.monitoring.window.ActiveWindowSampler;
+import com.proctor.client.scheduler.PollResult;
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.DecodedEvent;
+import com.proctor.protocol.EventDecoder;
+import com.proctor.protocol.Status;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests {@link TabSwitchMonitor} and {@link WindowMonitor} on a shared sampler fed by a fake source.
+ * Nothing here depends on the OS: with the sampler, tab switches are detected wherever window titles
+ * can be read, not only on Windows.
+ */
+public class TabSwitchMonitorTest {
+
+    private String title = "Exam - Google Chrome";
+    private final ActiveWindowSampler sampler = new ActiveWindowSampler(() -> title);
+    private final List<String> tabEvents = new ArrayList<>();
+    private final List<String> windowEvents = new ArrayList<>();
+
+    private static DecodedEvent decode(String json) {
+        DecodedEvent event = new DecodedEvent();
+        assertTrue(EventDecoder.forCurrentThread().decode(json, event));
+        return event;
+    }
+
+    private PollResult switchTo(String newTitle) {
+        title = newTitle;
+        return sampler.poll();
+    }
+
+    @Test
+    public void reportsEachNewBrowserTitleOnce() {
+        new TabSwitchMonitor(tabEvents::add, sampler);
+
+        assertEquals(PollResult.CHANGED, switchTo("Search results - Google Chrome"));
+        assertEquals(PollResult.IDLE, switchTo("Search results - Google Chrome"));
+        assertEquals(1, tabEvents.size());
+
+        DecodedEvent event = decode(tabEvents.get(0));
+        assertEquals(Activity.TAB_SWITCH, event.getActivity());
+        assertEquals(Status.SUSPICIOUS, event.getStatus());
+        JSONObject details = new JSONObject(event.getDetailsJson());
+        assertEquals("Exam - Google Chrome", details.getString("previousTitle"));
+        assertEquals("Search results - Google Chrome", details.getString("newTitle"));
+    }
+
+    @Test
+    public void leavingTheBrowserResetsTheLastTitle() {
+        new TabSwitchMonitor(tabEvents::add, sampler);
+
+        switchTo("Terminal");
+        assertTrue(tabEvents.isEmpty());
+        // Coming back to the same tab counts as a switch, since the browser was left in between.
+        switchTo("Exam - Google Chrome");
+        assertEquals(1, tabEvents.size());
+        assertEquals("", new JSONObject(decode(tabEvents.get(0)).getDetailsJson()).getString("previousTitle"));
+    }
+
+    @Test
+    public void bothMonitorsSeeTheSameSnapshot() {
+        new WindowMonitor(windowEvents::add, sampler);
+        new TabSwitchMonitor(tabEvents::add, sampler);
+
+        assertEquals(PollResult.VIOLATION, switchTo("Terminal"));
+        assertEquals(PollResult.CHANGED, switchTo("Docs - Google Chrome"));
+        assertEquals(2, windowEvents.size());
+        assertEquals(Status.VIOLATION, decode(windowEvents.get(0)).getStatus());
+        assertEquals(Status.SUSPICIOUS, decode(windowEvents.get(1)).getStatus());
+        assertEquals(1, tabEvents.size());
+        assertTrue(tabEvents.get(0).contains("Docs - Google Chrome"));
+    }
+}
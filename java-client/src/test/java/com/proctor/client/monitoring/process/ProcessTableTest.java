@@ -0,0 +1,247 @@
+package com.proctor.client.monitoring.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests {@link ProcessTable}: probe chains that wrap around the end of the table, removal, growth and PID reuse.
+ */
+public class ProcessTableTest {
+
+    // ProcessTable(8) starts with 16 slots and grows once it holds more than 8 processes.
+    private static final int EXPECTED = 8;
+    private static final int SLOTS = 16;
+
+    /**
+     * The home slot of a PID in a table of {@link #SLOTS} slots; mirrors the table's own hash.
+     */
+    private static int home(long pid) {
+        long mixed = pid * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & (SLOTS - 1);
+    }
+
+    private static List<Long> pidsWithHome(int slot, int count) {
+        List<Long> pids = new ArrayList<>();
+        for (long pid = 1; pids.size() < count; pid++) {
+            if (home(pid) == slot) {
+                pids.add(pid);
+            }
+        }
+        return pids;
+    }
+
+    /**
+     * Runs one scan that sees exactly the given processes.
+     * @return The PIDs reported as exited.
+     */
+    private static Set<Long> scan(ProcessTable table, Map<Long, Long> running) {
+        table.beginScan();
+        for (Map.Entry<Long, Long> process : running.entrySet()) {
+            table.observe(process.getKey(), process.getValue());
+        }
+        Set<Long> exited = new HashSet<>();
+        table.endScan((pid, startTime) -> assertTrue("reported twice: " + pid, exited.add(pid)));
+        return exited;
+    }
+
+    private static void assertContainsExactly(ProcessTable table, Map<Long, Long> running, Iterable<Long> gone) {
+        assertEquals(running.size(), table.size());
+        for (Map.Entry<Long, Long> process : running.entrySet()) {
+            assertTrue("missing " + process.getKey(), table.contains(process.getKey()));
+            assertEquals((long) process.getValue(), table.startTimeOf(process.getKey()));
+        }
+        for (long pid : gone) {
+            assertFalse("still present " + pid, table.contains(pid));
+            assertEquals(-1L, table.startTimeOf(pid));
+        }
+    }
+
+    @Test
+    public void reportsStartedUnchangedAndExited() {
+        ProcessTable table = new ProcessTable(EXPECTED);
+        table.beginScan();
+        assertEquals(ProcessTable.STARTED, table.observe(100, 1));
+        assertEquals(ProcessTable.STARTED, table.observe(200, 2));
+        assertEquals(0, table.endScan(null));
+
+        table.beginScan();
+        assertEquals(ProcessTable.UNCHANGED, table.observe(100, 1));
+        List<Long> exited = new ArrayList<>();
+        List<Long> exitedStartTimes = new ArrayList<>();
+        assertEquals(1, table.endScan((pid, startTime) -> {
+            exited.add(pid);
+            exitedStartTimes.add(startTime);
+        }));
+        assertEquals(Collections.singletonList(200L), exited);
+        assertEquals(Collections.singletonList(2L), exitedStartTimes);
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void findsEntriesOfAClusterThatWrapsAround() {
+        // Three PIDs whose home is the last slot occupy slots 15, 0 and 1; a PID whose home is
+        // slot 0 is pushed on to slot 2, and one whose home is slot 1 to slot 3.
+        List<Long> last = pidsWithHome(SLOTS - 1, 3);
+        long first = pidsWithHome(0, 1).get(0);
+        long second = pidsWithHome(1, 1).get(0);
+        Map<Long, Long> running = new HashMap<>();
+        ProcessTable table = new ProcessTable(EXPECTED);
+        table.beginScan();
+        for (long pid : last) {
+            running.put(pid, pid * 10);
+            assertEquals(ProcessTable.STARTED, table.observe(pid, pid * 10));
+        }
+        running.put(first, 1L);
+        running.put(second, 2L);
+        assertEquals(ProcessTable.STARTED, table.observe(first, 1));
+        assertEquals(ProcessTable.STARTED, table.observe(second, 2));
+        table.endScan(null);
+        assertContainsExactly(table, running, Collections.<Long>emptyList());
+
+        // Removing the head of the cluster must pull the wrapped entries back, not strand them.
+        running.remove(last.get(0));
+        assertEquals(Collections.singleton(last.get(0)), scan(table, running));
+        assertContainsExactly(table, running, Collections.singletonList(last.get(0)));
+
+        // Removing an entry in the wrapped part shifts the rest of the cluster across slot 0.
+        running.remove(last.get(2));
+        running.remove(first);
+        assertEquals(new HashSet<>(Arrays.asList(last.get(2), first)), scan(table, running));
+        assertContainsExactly(table, running, Arrays.asList(last.get(0), last.get(2), first));
+    }
+
+    @Test
+    public void forgetsRemovedProcesses() {
+        List<Long> clustered = pidsWithHome(5, 4);
+        Map<Long, Long> running = new HashMap<>();
+        for (long pid : clustered) {
+            running.put(pid, pid);
+        }
+        ProcessTable table = new ProcessTable(EXPECTED);
+        scan(table, running);
+
+        for (long pid : clustered) {
+            running.remove(pid);
+            assertEquals(Collections.singleton(pid), scan(table, running));
+            assertContainsExactly(table, running, Collections.singletonList(pid));
+        }
+        assertEquals(0, table.size());
+
+        // A PID that has gone is new when it comes back, even with the same start time.
+        table.beginScan();
+        assertEquals(ProcessTable.STARTED, table.observe(clustered.get(1), clustered.get(1)));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void keepsEntriesAndScanStateWhenGrowing() {
+        ProcessTable table = new ProcessTable(1);
+        Map<Long, Long> running = new HashMap<>();
+        for (long pid = 1; pid <= 500; pid++) {
+            running.put(pid * 4, pid + 1000);
+        }
+        scan(table, running);
+        assertContainsExactly(table, running, Collections.<Long>emptyList());
+
+        // Grow in the middle of a scan: the processes seen before the growth must not be reported
+        // as exited, and the ones not seen at all must be.
+        table.beginScan();
+        for (long pid = 1; pid <= 250; pid++) {
+            assertEquals(ProcessTable.UNCHANGED, table.observe(pid * 4, pid + 1000));
+        }
+        Map<Long, Long> next = new HashMap<>();
+        for (long pid = 1; pid <= 250; pid++) {
+            next.put(pid * 4, pid + 1000);
+        }
+        for (long pid = 10001; pid <= 12000; pid++) {
+            assertEquals(ProcessTable.STARTED, table.observe(pid, pid));
+            next.put(pid, pid);
+        }
+        Set<Long> exited = new HashSet<>();
+        table.endScan((pid, startTime) -> exited.add(pid));
+        assertEquals(250, exited.size());
+        for (long pid = 251; pid <= 500; pid++) {
+            assertTrue(exited.contains(pid * 4));
+        }
+        assertContainsExactly(table, next, exited);
+    }
+
+    @Test
+    public void detectsReusedPids() {
+        ProcessTable table = new ProcessTable(EXPECTED);
+        table.beginScan();
+        assertEquals(ProcessTable.STARTED, table.observe(42, 1000));
+        table.endScan(null);
+
+        table.beginScan();
+        assertEquals(ProcessTable.REPLACED, table.observe(42, 2000));
+        assertEquals(1000L, table.getLastReplacedStartTime());
+        assertEquals(2000L, table.startTimeOf(42));
+        // The replacement was seen in this scan, so nothing exits.
+        assertEquals(0, table.endScan((pid, startTime) -> {
+            throw new AssertionError("exited " + pid);
+        }));
+        assertEquals(1, table.size());
+
+        table.beginScan();
+        assertEquals(ProcessTable.UNCHANGED, table.observe(42, 2000));
+        table.endScan(null);
+
+        table.beginScan();
+        List<Long> exitedStartTimes = new ArrayList<>();
+        table.endScan((pid, startTime) -> exitedStartTimes.add(startTime));
+        assertEquals(Collections.singletonList(2000L), exitedStartTimes);
+    }
+
+    @Test
+    public void agreesWithAMapOverRandomScans() {
+        Random random = new Random(29);
+        ProcessTable table = new ProcessTable(EXPECTED);
+        Map<Long, Long> running = new HashMap<>();
+        for (int round = 0; round < 2000; round++) {
+            Map<Long, Long> next = new HashMap<>();
+            // A small PID range keeps clusters long and makes reuse common.
+            for (Map.Entry<Long, Long> process : running.entrySet()) {
+                if (random.nextInt(4) != 0) {
+                    next.put(process.getKey(), random.nextInt(10) == 0 ? process.getValue() + 1 : process.getValue());
+                }
+            }
+            for (int i = random.nextInt(6); i > 0; i--) {
+                next.put((long) random.nextInt(64), (long) random.nextInt(3));
+            }
+
+            Set<Long> expectedExited = new HashSet<>(running.keySet());
+            expectedExited.removeAll(next.keySet());
+            table.beginScan();
+            for (Map.Entry<Long, Long> process : next.entrySet()) {
+                Long before = running.get(process.getKey());
+                int expected = before == null ? ProcessTable.STARTED
+                        : before.equals(process.getValue()) ? ProcessTable.UNCHANGED : ProcessTable.REPLACED;
+                assertEquals("pid " + process.getKey() + " in round " + round, expected,
+                        table.observe(process.getKey(), process.getValue()));
+            }
+            Set<Long> exited = new HashSet<>();
+            table.endScan((pid, startTime) -> {
+                assertEquals(running.get(pid), Long.valueOf(startTime));
+                exited.add(pid);
+            });
+            assertEquals("round " + round, expectedExited, exited);
+            assertContainsExactly(table, next, exited);
+            running.clear();
+            running.putAll(next);
+        }
+    }
+}
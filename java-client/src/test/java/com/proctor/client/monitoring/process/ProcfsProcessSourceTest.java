@@ -0,0 +1,37 @@
+package com.proctor.client.monitoring.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the real process list from /proc. Skipped where /proc is not available.
+ */
+public class ProcfsProcessSourceTest {
+
+    private static Map<Long, Long> scan(ProcfsProcessSource source) {
+        Map<Long, Long> processes = new HashMap<>();
+        source.scan(processes::put);
+        return processes;
+    }
+
+    @Test
+    public void findsThisProcessWithAStableStartTime() {
+        assumeTrue(ProcfsProcessSource.isSupported());
+        ProcfsProcessSource source = new ProcfsProcessSource();
+        long self = ProcessHandle.current().pid();
+
+        Map<Long, Long> first = scan(source);
+        Map<Long, Long> second = scan(source);
+        assertTrue(first.containsKey(self));
+        assertTrue(first.get(self) > 0);
+        // The buffers reused between files and scans do not leak one process's values into another's.
+        assertEquals(first.get(self), second.get(self));
+        assertTrue(first.containsKey(1L));
+    }
+}
@@ -0,0 +1,180 @@
+package com.proctor.client.monitoring.signature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link ExecutableFingerprinter} with real files: matches by content, use of the cache,
+ * a full queue and several processes of one executable.
+ */
+public class ExecutableFingerprinterTest {
+
+    private static final byte[] FORBIDDEN = "forbidden remote desktop binary".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BlockingQueue<String> matches = new LinkedBlockingQueue<>();
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile String blockOn;
+    private SignatureDatabase database;
+    private ExecutableFingerprinter fingerprinter;
+
+    @Before
+    public void createDatabase() throws Exception {
+        database = new SignatureDatabase(null);
+        database.updatePushedSignatures(Collections.singletonList("remote-desktop:sha256:" + sha256(FORBIDDEN)));
+    }
+
+    @After
+    public void shutdown() {
+        release.countDown();
+        if (fingerprinter != null) {
+            fingerprinter.shutdown();
+        }
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private String write(String name, byte[] content) throws Exception {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content);
+        return file.toString();
+    }
+
+    private ExecutableFingerprinter fingerprinter(FingerprintCache cache, int maxPending) {
+        fingerprinter = new ExecutableFingerprinter(database, cache, (pid, startTime, path, sha256, signature) -> {
+            if (path.equals(blockOn)) {
+                entered.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            matches.add(pid + "@" + startTime + ":" + path.substring(path.lastIndexOf('/') + 1) + ":" + signature.getCategory());
+        }, maxPending);
+        return fingerprinter;
+    }
+
+    private Set<String> nextMatches(int count) throws InterruptedException {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            String match = matches.poll(10, TimeUnit.SECONDS);
+            assertTrue("Only " + result + " reported", match != null);
+            result.add(match);
+        }
+        return result;
+    }
+
+    @Test
+    public void reportsRenamedBinariesByContent() throws Exception {
+        String renamed = write("notes.exe", FORBIDDEN);
+        String clean = write("editor", "an editor".getBytes(StandardCharsets.UTF_8));
+        fingerprinter(new FingerprintCache(null), 16);
+        fingerprinter.submit(10, 100, clean);
+        fingerprinter.submit(11, 110, renamed);
+        fingerprinter.submit(12, 120, folder.getRoot().toString());
+        fingerprinter.submit(13, 130, renamed + ".missing");
+        assertEquals(Collections.singleton("11@110:notes.exe:remote-desktop"), nextMatches(1));
+        assertNull(matches.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void usesCachedHashUntilTheFileChanges() throws Exception {
+        String path = write("tool", "harmless".getBytes(StandardCharsets.UTF_8));
+        FingerprintCache cache = new FingerprintCache(null);
+        // A cached hash is believed while the stamp matches...
+        cache.put(path, FingerprintCache.Stamp.of(Path.of(path)), sha256(FORBIDDEN));
+        fingerprinter(cache, 16);
+        fingerprinter.submit(1, 1, path);
+        assertEquals(Collections.singleton("1@1:tool:remote-desktop"), nextMatches(1));
+
+        // ...and the file is hashed again once it changes.
+        Files.write(Path.of(path), "harmless, longer".getBytes(StandardCharsets.UTF_8));
+        fingerprinter.submit(2, 2, path);
+        assertNull(matches.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(sha256("harmless, longer".getBytes(StandardCharsets.UTF_8)),
+                cache.get(path, FingerprintCache.Stamp.of(Path.of(path))));
+    }
+
+    @Test
+    public void reportsEveryProcessOfAnExecutableBeingChecked() throws Exception {
+        String blocker = write("blocker", FORBIDDEN);
+        String shared = write("shared", FORBIDDEN);
+        Path cacheFile = folder.getRoot().toPath().resolve("fingerprints.tsv");
+        fingerprinter(new FingerprintCache(cacheFile), 16);
+        blockOn = blocker;
+        fingerprinter.submit(1, 1, blocker);
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        // The worker is now held in the listener; these all wait for one check of 'shared'.
+        fingerprinter.submit(2, 2, shared);
+        fingerprinter.submit(3, 3, shared);
+        fingerprinter.submit(4, 4, shared);
+        release.countDown();
+
+        Set<String> expected = new HashSet<>();
+        expected.add("1@1:blocker:remote-desktop");
+        expected.add("2@2:shared:remote-desktop");
+        expected.add("3@3:shared:remote-desktop");
+        expected.add("4@4:shared:remote-desktop");
+        assertEquals(expected, nextMatches(4));
+        List<String> sharedLines = new ArrayList<>();
+        for (String line : Files.readAllLines(cacheFile, StandardCharsets.UTF_8)) {
+            if (line.endsWith(shared)) {
+                sharedLines.add(line);
+            }
+        }
+        assertEquals("hashed once", 1, sharedLines.size());
+        assertEquals(0, fingerprinter.getRejectedCount());
+    }
+
+    @Test
+    public void executableRefusedByAFullQueueIsCheckedLater() throws Exception {
+        String blocker = write("blocker", FORBIDDEN);
+        String queued = write("queued", FORBIDDEN);
+        String refused = write("refused", FORBIDDEN);
+        fingerprinter(new FingerprintCache(null), 1);
+        blockOn = blocker;
+        fingerprinter.submit(1, 1, blocker);
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        fingerprinter.submit(2, 2, queued);
+        fingerprinter.submit(3, 3, refused);
+        assertEquals(1, fingerprinter.getRejectedCount());
+        release.countDown();
+        assertEquals(2, nextMatches(2).size());
+        assertNull(matches.poll(200, TimeUnit.MILLISECONDS));
+
+        // The refused executable is not left marked as in progress.
+        fingerprinter.submit(4, 4, refused);
+        assertEquals(Collections.singleton("4@4:refused:remote-desktop"), nextMatches(1));
+    }
+}
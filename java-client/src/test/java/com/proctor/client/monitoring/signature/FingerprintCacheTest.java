@@ -0,0 +1,101 @@
+package com.proctor.client.monitoring.signature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeFalse;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+/**
+ * Tests the lookups, persistence and tamper checks of {@link FingerprintCache}.
+ */
+public class FingerprintCacheTest {
+
+    private static final String SHA_A = "aa00000000000000000000000000000000000000000000000000000000000000";
+    private static final String SHA_B = "bb00000000000000000000000000000000000000000000000000000000000000";
+    private static final FingerprintCache.Stamp STAMP = new FingerprintCache.Stamp(100, 5000, "(dev=1,ino=2)", 6000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void hitsOnlyForTheSameStamp() {
+        FingerprintCache cache = new FingerprintCache(null);
+        cache.put("/bin/app", STAMP, SHA_A);
+        assertEquals(SHA_A, cache.get("/bin/app", new FingerprintCache.Stamp(100, 5000, "(dev=1,ino=2)", 6000)));
+        assertNull(cache.get("/bin/other", STAMP));
+        assertNull(cache.get("/bin/app", new FingerprintCache.Stamp(101, 5000, "(dev=1,ino=2)", 6000)));
+        assertNull(cache.get("/bin/app", new FingerprintCache.Stamp(100, 5001, "(dev=1,ino=2)", 6000)));
+        assertNull(cache.get("/bin/app", new FingerprintCache.Stamp(100, 5000, "(dev=1,ino=3)", 6000)));
+        assertNull(cache.get("/bin/app", new FingerprintCache.Stamp(100, 5000, "(dev=1,ino=2)", 6001)));
+    }
+
+    @Test
+    public void persistsEntriesAcrossInstances() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("fingerprints.tsv");
+        FingerprintCache first = new FingerprintCache(file);
+        first.put("/bin/app", STAMP, SHA_A);
+        first.put("/opt/with\ttab", STAMP, SHA_B);
+
+        FingerprintCache second = new FingerprintCache(file);
+        assertEquals(SHA_A, second.get("/bin/app", STAMP));
+        assertEquals(SHA_B, second.get("/opt/with\ttab", STAMP));
+        assertEquals(32, Files.size(file.resolveSibling("fingerprints.tsv" + FingerprintCache.KEY_SUFFIX)));
+    }
+
+    @Test
+    public void ignoresEditedEntries() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("fingerprints.tsv");
+        FingerprintCache first = new FingerprintCache(file);
+        first.put("/bin/app", STAMP, SHA_A);
+        first.put("/bin/kept", STAMP, SHA_B);
+
+        // Claim a different hash for the first binary, as a student hiding a forbidden one would.
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        Files.write(file, content.replace(SHA_A, SHA_B).getBytes(StandardCharsets.UTF_8));
+
+        FingerprintCache second = new FingerprintCache(file);
+        assertNull(second.get("/bin/app", STAMP));
+        assertEquals(SHA_B, second.get("/bin/kept", STAMP));
+        // The rejected line is dropped from the file.
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+    }
+
+    @Test
+    public void ignoresEntriesSignedWithAnotherKey() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("fingerprints.tsv");
+        new FingerprintCache(file).put("/bin/app", STAMP, SHA_A);
+        Files.delete(file.resolveSibling("fingerprints.tsv" + FingerprintCache.KEY_SUFFIX));
+        assertNull(new FingerprintCache(file).get("/bin/app", STAMP));
+    }
+
+    @Test
+    public void replacedFileWithTheSameSizeAndTimeHasAnotherStamp() throws Exception {
+        Path original = folder.newFile("app").toPath();
+        Files.write(original, "original".getBytes(StandardCharsets.UTF_8));
+        FingerprintCache.Stamp before = FingerprintCache.Stamp.of(original);
+        assumeFalse("The file system has no file keys", "-".equals(before.fileKey) && before.changedMillis < 0);
+
+        Path replacement = folder.newFile("replacement").toPath();
+        Files.write(replacement, "replaced".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(replacement, FileTime.fromMillis(before.modifiedMillis));
+        Files.move(replacement, original, StandardCopyOption.REPLACE_EXISTING);
+
+        FingerprintCache.Stamp after = FingerprintCache.Stamp.of(original);
+        assertEquals(before.size, after.size);
+        assertEquals(before.modifiedMillis, after.modifiedMillis);
+        assertFalse(before.equals(after));
+        assertNull(FingerprintCache.Stamp.of(folder.getRoot().toPath()));
+    }
+}
@@ -0,0 +1,66 @@
+package com.proctor.client.monitoring.signature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests which parts of a process each kind of signature is matched against.
+ */
+public class SignatureMatcherTest {
+
+    private static SignatureMatcher matcher(String... lines) {
+        List<Signature> signatures = new ArrayList<>();
+        for (String line : lines) {
+            signatures.add(Signature.parse(line));
+        }
+        return new SignatureMatcher(signatures);
+    }
+
+    @Test
+    public void matchesNameSubstrings() {
+        SignatureMatcher matcher = matcher("recording:obs", "communication:teams");
+        SignatureMatch match = matcher.match("obs64.exe", "C:\\Program Files\\obs-studio\\bin\\obs64.exe", Collections.emptyList());
+        assertEquals("obs", match.getSignature().getPattern());
+        assertEquals(SignatureMatch.Field.COMMAND, match.getField());
+        assertEquals("teams", matcher.match("MSTeams.exe", "", Collections.emptyList()).getSignature().getPattern());
+    }
+
+    @Test
+    public void ignoresNamePatternsInPathAndArguments() {
+        SignatureMatcher matcher = matcher("recording:obs", "communication:zoom");
+        assertNull(matcher.match("java", "/home/bob/jobs/java", Arrays.asList("-jar", "zoomed-out.jar")));
+        assertNull(matcher.match("python3", "/usr/bin/python3", Arrays.asList("/opt/obs/notes.py")));
+    }
+
+    @Test
+    public void matchesWholePathComponents() {
+        SignatureMatcher matcher = matcher("virtual-machine:path:utm.app");
+        SignatureMatch match = matcher.match("UTM", "/Applications/UTM.app/Contents/MacOS/UTM", Collections.emptyList());
+        assertEquals(SignatureMatch.Field.PATH, match.getField());
+        assertNull(matcher.match("helper", "/Applications/UTM.app.backup/helper", Collections.emptyList()));
+        assertNull(matcher.match("utm", "/usr/bin/utm", Collections.emptyList()));
+    }
+
+    @Test
+    public void matchesWholeArgumentsOrTheirFileNames() {
+        SignatureMatcher matcher = matcher("ai-assistant:args:cluely.py");
+        SignatureMatch match = matcher.match("python3", "/usr/bin/python3", Arrays.asList("-u", "/home/bob/cluely.py"));
+        assertEquals(SignatureMatch.Field.ARGUMENTS, match.getField());
+        assertEquals(SignatureMatch.Field.ARGUMENTS, matcher.match("python", "", Arrays.asList("C:\\tmp\\Cluely.py")).getField());
+        assertNull(matcher.match("python3", "/usr/bin/python3", Arrays.asList("not-cluely.py.txt")));
+    }
+
+    @Test
+    public void leavesHashesToTheFingerprinter() {
+        SignatureMatcher matcher = matcher("cheating:sha256:9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08", "recording:obs");
+        assertEquals(1, matcher.size());
+        assertNull(matcher.match("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08", "", Collections.emptyList()));
+    }
+}
@@ -0,0 +1,84 @@
+package com.proctor.client.monitoring.signature;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests the database line grammar of {@link Signature}.
+ */
+public class SignatureTest {
+
+    private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    private static void assertParsed(String line, String category, Signature.Scope scope, String pattern) {
+        Signature signature = Signature.parse(line);
+        assertEquals(line, category, signature.getCategory());
+        assertEquals(line, scope, signature.getScope());
+        assertEquals(line, pattern, signature.getPattern());
+    }
+
+    @Test
+    public void parsesCategoryAndPattern() {
+        assertParsed("communication:Discord", "communication", Signature.Scope.NAME, "discord");
+        assertParsed("  recording:obs  ", "recording", Signature.Scope.NAME, "obs");
+        assertParsed("ai-assistant:lm studio", "ai-assistant", Signature.Scope.NAME, "lm studio");
+    }
+
+    @Test
+    public void parsesBarePattern() {
+        assertParsed("discord", "uncategorized", Signature.Scope.NAME, "discord");
+    }
+
+    @Test
+    public void parsesScopes() {
+        assertParsed("virtual-machine:path:UTM.app", "virtual-machine", Signature.Scope.PATH, "utm.app");
+        assertParsed("remote-desktop:args:chrome-remote-desktop", "remote-desktop", Signature.Scope.ARGUMENTS, "chrome-remote-desktop");
+        assertParsed("path:utm.app", "uncategorized", Signature.Scope.PATH, "utm.app");
+        assertParsed("name:obs", "uncategorized", Signature.Scope.NAME, "obs");
+        assertParsed("cheating:NAME:obs", "cheating", Signature.Scope.NAME, "obs");
+    }
+
+    @Test
+    public void parsesBareAndCategorizedHashes() {
+        assertParsed("sha256:" + HASH, "uncategorized", Signature.Scope.HASH, HASH);
+        assertParsed("SHA256:" + HASH.toUpperCase(), "uncategorized", Signature.Scope.HASH, HASH);
+        assertParsed("cheating:sha256:" + HASH, "cheating", Signature.Scope.HASH, HASH);
+    }
+
+    @Test
+    public void keepsColonsInPatterns() {
+        assertParsed("tools:path:c:\\tools", "tools", Signature.Scope.PATH, "c:\\tools");
+        assertParsed("path:c:\\tools", "uncategorized", Signature.Scope.PATH, "c:\\tools");
+        assertParsed("c:\\tools\\cheat.exe", "uncategorized", Signature.Scope.NAME, "c:\\tools\\cheat.exe");
+        assertParsed("tools:c:\\tools", "tools", Signature.Scope.NAME, "c:\\tools");
+        assertParsed("http://cheat.example", "uncategorized", Signature.Scope.NAME, "http://cheat.example");
+        assertParsed("a b:c", "uncategorized", Signature.Scope.NAME, "a b:c");
+    }
+
+    @Test
+    public void roundTripsThroughToString() {
+        for (String line : new String[]{"communication:discord", "x:path:utm.app", "x:args:cluely.py", "x:sha256:" + HASH, "tools:c:\\tools"}) {
+            Signature signature = Signature.parse(line);
+            Signature again = Signature.parse(signature.toString());
+            assertEquals(line, signature.getCategory(), again.getCategory());
+            assertEquals(line, signature.getScope(), again.getScope());
+            assertEquals(line, signature.getPattern(), again.getPattern());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortHash() {
+        Signature.parse("cheating:sha256:abc");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyPattern() {
+        Signature.parse("communication:");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyScopedPattern() {
+        Signature.parse("communication:path: ");
+    }
+}
@@ -0,0 +1,130 @@
+package com.proctor.client.monitoring.window;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.proctor.client.scheduler.PollResult;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Tests how {@link ActiveWindowSampler} shares one lookup per tick between its subscribers.
+ */
+public class ActiveWindowSamplerTest {
+
+    /** Returns the titles set by the test, counting how often it is read. */
+    private static class FakeSource implements ActiveWindowSource {
+        String title = "Exam - Google Chrome";
+        int reads;
+
+        @Override
+        public String readActiveWindowTitle() {
+            reads++;
+            return title;
+        }
+    }
+
+    /** Records every change it is told about. */
+    private static class RecordingListener implements ActiveWindowListener {
+        final List<String> changes = new ArrayList<>();
+        PollResult result = PollResult.CHANGED;
+
+        @Override
+        public PollResult onActiveWindowChanged(String previousTitle, String newTitle) {
+            changes.add(previousTitle + " -> " + newTitle);
+            return result;
+        }
+    }
+
+    @Test
+    public void readsOncePerPollForAllSubscribers() {
+        FakeSource source = new FakeSource();
+        ActiveWindowSampler sampler = new ActiveWindowSampler(source);
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        sampler.subscribe(first);
+        sampler.subscribe(second);
+        assertEquals(1, source.reads);
+
+        source.title = "Terminal";
+        assertEquals(PollResult.CHANGED, sampler.poll());
+        assertEquals(2, source.reads);
+        assertEquals(Arrays.asList("Exam - Google Chrome -> Terminal"), first.changes);
+        assertEquals(first.changes, second.changes);
+        assertEquals("Terminal", sampler.getCurrentTitle());
+    }
+
+    @Test
+    public void publishesOnlyChanges() {
+        FakeSource source = new FakeSource();
+        ActiveWindowSampler sampler = new ActiveWindowSampler(source);
+        RecordingListener listener = new RecordingListener();
+        sampler.subscribe(listener);
+
+        assertEquals(PollResult.IDLE, sampler.poll());
+        source.title = null;
+        assertEquals(PollResult.IDLE, sampler.poll());
+        source.title = "Terminal";
+        sampler.poll();
+        sampler.poll();
+        assertEquals(Arrays.asList("Exam - Google Chrome -> Terminal"), listener.changes);
+    }
+
+    @Test
+    public void reportsTheMostSevereResultOfItsSubscribers() {
+        FakeSource source = new FakeSource();
+        ActiveWindowSampler sampler = new ActiveWindowSampler(source);
+        RecordingListener violating = new RecordingListener();
+        violating.result = PollResult.VIOLATION;
+        RecordingListener failing = new RecordingListener() {
+            @Override
+            public PollResult onActiveWindowChanged(String previousTitle, String newTitle) {
+                throw new IllegalStateException("broken listener");
+            }
+        };
+        sampler.subscribe(failing);
+        sampler.subscribe(new RecordingListener());
+        sampler.subscribe(violating);
+
+        source.title = "Terminal";
+        assertEquals(PollResult.VIOLATION, sampler.poll());
+        // A failing subscriber does not keep the others from being notified.
+        assertEquals(1, violating.changes.size());
+
+        sampler.unsubscribe(violating);
+        source.title = "Notes";
+        assertEquals(PollResult.CHANGED, sampler.poll());
+        assertEquals(1, violating.changes.size());
+    }
+
+    @Test
+    public void eventDrivenSourcesAreNotPolled() {
+        List<Consumer<String>> callbacks = new ArrayList<>();
+        FakeSource source = new FakeSource() {
+            @Override
+            public boolean startWatching(Consumer<String> titleCallback) {
+                callbacks.add(titleCallback);
+                return true;
+            }
+        };
+        ActiveWindowSampler sampler = new ActiveWindowSampler(source);
+        RecordingListener listener = new RecordingListener();
+        sampler.subscribe(listener);
+        assertTrue(sampler.isEventDriven());
+
+        source.title = "Terminal";
+        assertEquals(PollResult.IDLE, sampler.poll());
+        assertEquals(1, source.reads);
+        assertTrue(listener.changes.isEmpty());
+
+        callbacks.get(0).accept("Terminal");
+        callbacks.get(0).accept("Terminal");
+        assertEquals(Arrays.asList("Exam - Google Chrome -> Terminal"), listener.changes);
+        assertFalse(new ActiveWindowSampler(new FakeSource()).isEventDriven());
+    }
+}
@@ -0,0 +1,161 @@
+package com.proctor.client.monitoring.window;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.platform.unix.X11;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link X11ActiveWindowSource} against a private Xvfb server. The test plays the window manager:
+ * it creates windows, names them and sets _NET_ACTIVE_WINDOW on the root window, and checks the titles
+ * the source reports from the resulting events. Skipped when Xvfb or libX11 is not installed.
+ */
+public class X11ActiveWindowSourceTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private Process xvfb;
+    private String displayName;
+    private X11 x11;
+    private X11.Display display;
+    private X11.Window root;
+    private X11ActiveWindowSource source;
+    private final BlockingQueue<String> titles = new LinkedBlockingQueue<>();
+
+    @Before
+    public void startXvfb() throws Exception {
+        File executable = findOnPath("Xvfb");
+        assumeNotNull(executable);
+        try {
+            x11 = X11.INSTANCE;
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            assumeTrue("libX11 is not available: " + e.getMessage(), false);
+        }
+        int number = 99;
+        while (new File("/tmp/.X" + number + "-lock").exists()) {
+            number++;
+        }
+        displayName = ":" + number;
+        xvfb = new ProcessBuilder(executable.getPath(), displayName, "-screen", "0", "640x480x24", "-nolisten", "tcp")
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while ((display = x11.XOpenDisplay(displayName)) == null) {
+            assumeTrue("Xvfb did not start", xvfb.isAlive() && System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+        root = x11.XDefaultRootWindow(display);
+    }
+
+    @After
+    public void stopXvfb() throws InterruptedException {
+        if (source != null) {
+            source.close();
+        }
+        if (display != null) {
+            x11.XCloseDisplay(display);
+        }
+        if (xvfb != null) {
+            xvfb.destroy();
+            xvfb.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private static File findOnPath(String name) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String directory : path.split(File.pathSeparator)) {
+            File file = new File(directory, name);
+            if (file.canExecute()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private X11.Window createWindow() {
+        return x11.XCreateSimpleWindow(display, root, 0, 0, 100, 100, 0, 0, 0);
+    }
+
+    private void setProperty(X11.Window window, String property, X11.Atom type, byte[] value) {
+        Memory data = new Memory(Math.max(1, value.length));
+        data.write(0, value, 0, value.length);
+        x11.XChangeProperty(display, window, x11.XInternAtom(display, property, false), type, 8,
+                X11.PropModeReplace, data, value.length);
+        x11.XSync(display, false);
+    }
+
+    /** Sets the modern, UTF-8 title. */
+    private void setNetWmName(X11.Window window, String title) {
+        setProperty(window, "_NET_WM_NAME", x11.XInternAtom(display, "UTF8_STRING", false),
+                title.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Sets the legacy title, which is Latin-1. */
+    private void setWmName(X11.Window window, String title) {
+        setProperty(window, "WM_NAME", X11.XA_STRING, title.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private void activate(X11.Window window) {
+        Memory data = new Memory(Native.LONG_SIZE);
+        data.setNativeLong(0, new NativeLong(window.longValue()));
+        x11.XChangeProperty(display, root, x11.XInternAtom(display, "_NET_ACTIVE_WINDOW", false), X11.XA_WINDOW, 32,
+                X11.PropModeReplace, data, 1);
+        x11.XSync(display, false);
+    }
+
+    private String nextTitle() throws InterruptedException {
+        String title = titles.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue("No title reported", title != null);
+        return title;
+    }
+
+    @Test
+    public void reportsTitlesOfActivatedWindows() throws Exception {
+        X11.Window editor = createWindow();
+        setNetWmName(editor, "Exam – Question 3 ✓");
+        setWmName(editor, "Exam - Question 3");
+        X11.Window legacy = createWindow();
+        setWmName(legacy, "Café crème ©");
+        activate(editor);
+
+        source = new X11ActiveWindowSource(displayName);
+        assertTrue(source.startWatching(titles::add));
+        // The UTF-8 title wins over the legacy one.
+        assertEquals("Exam – Question 3 ✓", source.readActiveWindowTitle());
+
+        activate(legacy);
+        assertEquals("Café crème ©", nextTitle());
+
+        // Title changes inside the active window arrive too, e.g. a browser switching tabs.
+        setWmName(legacy, "Naïve search » results");
+        assertEquals("Naïve search » results", nextTitle());
+
+        // The window that was left is no longer watched.
+        setNetWmName(editor, "Exam – Question 4");
+        activate(editor);
+        assertEquals("Exam – Question 4", nextTitle());
+        assertEquals("Exam – Question 4", source.readActiveWindowTitle());
+
+        setWmName(legacy, "Ignored");
+        assertNull(titles.poll(300, TimeUnit.MILLISECONDS));
+    }
+}
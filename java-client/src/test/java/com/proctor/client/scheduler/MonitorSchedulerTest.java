@@ -0,0 +1,288 @@
+package com.proctor.client.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests {@link MonitorScheduler} with a clock the test advances by hand, running due monitors directly
+ * instead of waiting for the scheduler thread.
+ */
+public class MonitorSchedulerTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final AtomicLong clock = new AtomicLong();
+    private MonitorScheduler scheduler;
+
+    @After
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /** Returns scripted results, then IDLE, and records the times and threads it was polled on. */
+    private class ScriptedMonitor implements PolledMonitor {
+        final Deque<PollResult> results;
+        final List<Long> polledAt = new CopyOnWriteArrayList<>();
+        final List<String> threads = new CopyOnWriteArrayList<>();
+
+        ScriptedMonitor(PollResult... results) {
+            this.results = new ArrayDeque<>(Arrays.asList(results));
+        }
+
+        @Override
+        public String getName() {
+            return "Scripted";
+        }
+
+        @Override
+        public PollResult poll() throws Exception {
+            polledAt.add(clock.get());
+            threads.add(Thread.currentThread().getName());
+            PollResult result = results.poll();
+            return result != null ? result : PollResult.IDLE;
+        }
+    }
+
+    private MonitorScheduler scheduler(long tickMillis) {
+        scheduler = new MonitorScheduler(tickMillis, clock::get);
+        return scheduler;
+    }
+
+    private void runAt(long millis) {
+        clock.set(millis);
+        scheduler.runDueMonitors();
+    }
+
+    @Test
+    public void backsOffWhileIdleUpToTheMaximum() {
+        scheduler(100);
+        ScriptedMonitor monitor = new ScriptedMonitor();
+        ScheduledMonitor scheduled = scheduler.schedule(monitor, MonitorSchedule.adaptive(100, 800));
+
+        long[] expectedIntervals = {200, 400, 800, 800};
+        long at = 0;
+        for (long expected : expectedIntervals) {
+            runAt(at);
+            assertEquals(expected, scheduled.getCurrentIntervalMillis());
+            // Not due again before the interval has passed.
+            runAt(at + expected - 1);
+            at += expected;
+        }
+        assertEquals(Arrays.asList(0L, 200L, 600L, 1400L), monitor.polledAt);
+    }
+
+    @Test
+    public void tightensAfterChangesAndHoldsTheMinimumAfterAViolation() {
+        scheduler(100);
+        ScriptedMonitor monitor = new ScriptedMonitor(PollResult.IDLE, PollResult.IDLE, PollResult.CHANGED,
+                PollResult.IDLE, PollResult.VIOLATION, PollResult.IDLE, PollResult.IDLE, PollResult.IDLE);
+        ScheduledMonitor scheduled = scheduler.schedule(monitor, new MonitorSchedule(100, 800, 2.0, 2));
+
+        long[] expectedIntervals = {200, 400, 100, 200, 100, 100, 100, 200};
+        long at = 0;
+        for (long expected : expectedIntervals) {
+            runAt(at);
+            assertEquals(expected, scheduled.getCurrentIntervalMillis());
+            at += expected;
+        }
+    }
+
+    @Test
+    public void treatsAFailedPollAsIdle() {
+        scheduler(100);
+        ScheduledMonitor scheduled = scheduler.schedule(new PolledMonitor() {
+            @Override
+            public String getName() {
+                return "Failing";
+            }
+
+            @Override
+            public PollResult poll() {
+                throw new IllegalStateException("broken");
+            }
+        }, MonitorSchedule.adaptive(100, 800));
+        runAt(0);
+        assertEquals(200, scheduled.getCurrentIntervalMillis());
+        assertFalse(scheduled.isCancelled());
+    }
+
+    @Test
+    public void alignsNextRunsToTheTick() {
+        scheduler(250);
+        clock.set(130);
+        ScriptedMonitor fast = new ScriptedMonitor();
+        ScriptedMonitor slow = new ScriptedMonitor();
+        scheduler.schedule(fast, MonitorSchedule.fixed(500));
+        scheduler.schedule(slow, MonitorSchedule.fixed(1000));
+
+        // A late wake-up still counts from the tick boundary, so both stay on multiples of the tick.
+        runAt(263);
+        runAt(750);
+        runAt(1000);
+        runAt(1260);
+        assertEquals(Arrays.asList(263L, 750L, 1260L), fast.polledAt);
+        assertEquals(Arrays.asList(263L, 1260L), slow.polledAt);
+        assertEquals(1750, scheduler.getMonitors().get(0).getNextRunAtMillis());
+        assertEquals(2250, scheduler.getMonitors().get(1).getNextRunAtMillis());
+    }
+
+    @Test
+    public void schedulesTheWakeUpOnATickBoundary() {
+        scheduler(1000);
+        clock.set(1);
+        scheduler.schedule(new ScriptedMonitor(), MonitorSchedule.fixed(1000));
+        assertEquals(Long.MAX_VALUE, scheduler.getPendingTickAtMillis());
+        scheduler.start();
+        assertEquals(1000, scheduler.getPendingTickAtMillis());
+    }
+
+    @Test
+    public void slowdownStretchesOnlyAdaptiveSchedules() {
+        scheduler(100);
+        ScheduledMonitor adaptive = scheduler.schedule(new ScriptedMonitor(), MonitorSchedule.adaptive(100, 800));
+        ScheduledMonitor fixed = scheduler.schedule(new ScriptedMonitor(), MonitorSchedule.fixed(100));
+        scheduler.setSlowdownFactor(3.0);
+        runAt(0);
+        assertEquals(600, adaptive.getNextRunAtMillis());
+        assertEquals(100, fixed.getNextRunAtMillis());
+    }
+
+    @Test
+    public void tighteningMakesTheMonitorDueNow() {
+        scheduler(100);
+        ScriptedMonitor monitor = new ScriptedMonitor();
+        ScheduledMonitor scheduled = scheduler.schedule(monitor, MonitorSchedule.adaptive(100, 800));
+        runAt(0);
+        runAt(200);
+        assertEquals(400, scheduled.getCurrentIntervalMillis());
+        clock.set(250);
+        scheduled.tighten();
+        assertEquals(100, scheduled.getCurrentIntervalMillis());
+        runAt(300);
+        assertEquals(Arrays.asList(0L, 200L, 300L), monitor.polledAt);
+    }
+
+    @Test
+    public void cancelledMonitorsAreNotPolledAgain() {
+        scheduler(100);
+        ScriptedMonitor other = new ScriptedMonitor();
+        AtomicInteger polls = new AtomicInteger();
+        ScheduledMonitor[] self = new ScheduledMonitor[1];
+        ScheduledMonitor[] next = new ScheduledMonitor[1];
+        // Cancels itself and the monitor after it in the middle of a tick.
+        self[0] = scheduler.schedule(new PolledMonitor() {
+            @Override
+            public String getName() {
+                return "Cancelling";
+            }
+
+            @Override
+            public PollResult poll() {
+                polls.incrementAndGet();
+                self[0].cancel();
+                next[0].cancel();
+                return PollResult.IDLE;
+            }
+        }, MonitorSchedule.fixed(100));
+        next[0] = scheduler.schedule(other, MonitorSchedule.fixed(100));
+
+        runAt(0);
+        runAt(100);
+        assertEquals(1, polls.get());
+        assertTrue(other.polledAt.isEmpty());
+        assertTrue(scheduler.getMonitors().isEmpty());
+    }
+
+    @Test
+    public void shutdownStopsPolling() throws Exception {
+        scheduler = new MonitorScheduler(10);
+        CountDownLatch polled = new CountDownLatch(3);
+        AtomicInteger polls = new AtomicInteger();
+        ScheduledMonitor scheduled = scheduler.schedule(new PolledMonitor() {
+            @Override
+            public String getName() {
+                return "Counting";
+            }
+
+            @Override
+            public PollResult poll() {
+                polls.incrementAndGet();
+                polled.countDown();
+                return PollResult.CHANGED;
+            }
+        }, MonitorSchedule.fixed(10));
+        scheduler.start();
+        assertTrue(polled.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        scheduler.shutdown();
+        assertTrue(scheduled.isCancelled());
+        int afterShutdown = polls.get();
+        Thread.sleep(100);
+        assertEquals(afterShutdown, polls.get());
+    }
+
+    @Test
+    public void movesSlowMonitorsToTheWorkerThread() throws Exception {
+        scheduler(100);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger polls = new AtomicInteger();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        ScriptedMonitor fast = new ScriptedMonitor();
+        ScheduledMonitor slow = scheduler.schedule(new PolledMonitor() {
+            @Override
+            public String getName() {
+                return "Slow";
+            }
+
+            @Override
+            public PollResult poll() throws InterruptedException {
+                threads.add(Thread.currentThread().getName());
+                if (polls.incrementAndGet() == 1) {
+                    Thread.sleep(MonitorScheduler.POLL_BUDGET_MILLIS * 2);
+                } else {
+                    entered.countDown();
+                    release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                return PollResult.IDLE;
+            }
+        }, MonitorSchedule.fixed(100));
+        scheduler.schedule(fast, MonitorSchedule.fixed(100));
+
+        runAt(0);
+        assertTrue(slow.isOffloaded());
+        runAt(100);
+        assertTrue(entered.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        // While its poll is still running, the slow monitor is not due and the others keep running.
+        runAt(200);
+        runAt(300);
+        slow.tighten();
+        assertEquals(2, polls.get());
+        assertEquals(Arrays.asList(0L, 100L, 200L, 300L), fast.polledAt);
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (slow.getNextRunAtMillis() == Long.MAX_VALUE && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        // The tighten requested during the poll applies once it completes.
+        assertEquals(300, slow.getNextRunAtMillis());
+        assertEquals(Arrays.asList(Thread.currentThread().getName(), "Monitor-Worker"), threads);
+    }
+}
@@ -0,0 +1,54 @@
+package com.proctor.client.summary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.EventEncoder;
+import com.proctor.protocol.Status;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests which events {@link EventSummarizer} folds into digests and which it sends on.
+ */
+public class EventSummarizerTest {
+
+    private final List<String> sent = new ArrayList<>();
+    private final EventSummarizer summarizer = new EventSummarizer((event, enqueuedAt, dispatchedAt) -> sent.add(event));
+
+    private static String event(Activity activity, Status status) {
+        return EventEncoder.forCurrentThread().begin(activity, status).detail("message", "m").end();
+    }
+
+    @Test
+    public void foldsLowSeverityEventsUntilAViolation() {
+        summarizer.setWindowMillis(60000);
+        summarizer.accept(event(Activity.TAB_SWITCH, Status.INFO));
+        summarizer.accept(event(Activity.TAB_SWITCH, Status.INFO));
+        assertEquals(0, sent.size());
+
+        String violation = event(Activity.WINDOW_SWITCH, Status.VIOLATION);
+        summarizer.accept(violation);
+        assertEquals(2, sent.size());
+        assertTrue(sent.get(0), sent.get(0).contains("\"eventDigest\""));
+        assertEquals(violation, sent.get(1));
+    }
+
+    @Test
+    public void sendsMalformedEventsWithoutReadingThem() {
+        summarizer.setWindowMillis(60000);
+        summarizer.accept(event(Activity.TAB_SWITCH, Status.INFO));
+        // Decoding stops at the missing brace after the status has been read; it must not count as a violation.
+        String malformed = "{\"activity\":\"windowSwitch\",\"status\":\"violation\"";
+        summarizer.accept(malformed);
+        assertEquals(1, sent.size());
+        assertEquals(malformed, sent.get(0));
+
+        summarizer.setWindowMillis(0);
+        assertEquals(2, sent.size());
+        assertTrue(sent.get(1), sent.get(1).contains("\"eventDigest\""));
+    }
+}
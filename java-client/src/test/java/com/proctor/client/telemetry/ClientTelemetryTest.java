@@ -0,0 +1,183 @@
+package com.proctor.client.telemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.proctor.client.scheduler.MonitorSchedule;
+import com.proctor.client.scheduler.MonitorScheduler;
+import com.proctor.client.scheduler.PollResult;
+import com.proctor.client.scheduler.PolledMonitor;
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.DecodedEvent;
+import com.proctor.protocol.EventDecoder;
+import com.proctor.protocol.Status;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Tests what {@link ClientTelemetry} adds up per report, with a real scheduler polling a monitor that
+ * stops in its poll after a known number of polls, so its statistics hold still while the test reports.
+ */
+public class ClientTelemetryTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+    private static final int POLLS = 5;
+    private static final long BUSY_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final List<String> reports = new ArrayList<>();
+    private final MonitorScheduler scheduler = new MonitorScheduler(10);
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+    /** Spends some CPU in each poll, and from the poll after {@link #POLLS} on waits for the gate. */
+    private class BusyMonitor implements PolledMonitor {
+        final AtomicInteger polls = new AtomicInteger();
+        final CountDownLatch stopped = new CountDownLatch(1);
+
+        @Override
+        public String getName() {
+            return "Busy";
+        }
+
+        @Override
+        public PollResult poll() {
+            if (polls.incrementAndGet() > POLLS) {
+                stopped.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return PollResult.IDLE;
+            }
+            long end = System.nanoTime() + BUSY_NANOS;
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+            return PollResult.IDLE;
+        }
+    }
+
+    @After
+    public void shutdown() {
+        gate.countDown();
+        scheduler.shutdown();
+    }
+
+    private JSONObject report(ClientTelemetry telemetry) {
+        telemetry.poll();
+        DecodedEvent event = new DecodedEvent();
+        assertTrue(EventDecoder.forCurrentThread().decode(reports.get(reports.size() - 1), event));
+        assertEquals(Activity.CLIENT_TELEMETRY, event.getActivity());
+        assertEquals(Status.INFO, event.getStatus());
+        return new JSONObject(event.getDetailsJson());
+    }
+
+    private BusyMonitor pollUntilStopped() throws InterruptedException {
+        BusyMonitor monitor = new BusyMonitor();
+        scheduler.schedule(monitor, MonitorSchedule.fixed(10));
+        scheduler.start();
+        assertTrue("Monitor was not polled", monitor.stopped.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return monitor;
+    }
+
+    @Test
+    public void firstPollOnlyTakesTheBaseline() {
+        ClientTelemetry telemetry = new ClientTelemetry(reports::add, scheduler, () -> 0, 2.0);
+        assertEquals(PollResult.IDLE, telemetry.poll());
+        assertTrue(reports.isEmpty());
+    }
+
+    @Test
+    public void reportsEachMonitorsPollsSinceThePreviousReport() throws InterruptedException {
+        ClientTelemetry telemetry = new ClientTelemetry(reports::add, scheduler, () -> 7, 50.0);
+        telemetry.poll();
+        pollUntilStopped();
+
+        JSONObject first = report(telemetry);
+        JSONObject busy = first.getJSONObject("monitors").getJSONObject("Busy");
+        assertEquals(POLLS, busy.getLong("polls"));
+        assertTrue(busy.getDouble("cpuMs") > 0);
+        assertTrue(busy.getLong("avgUs") >= TimeUnit.NANOSECONDS.toMicros(BUSY_NANOS));
+        assertTrue(busy.getLong("maxUs") >= busy.getLong("avgUs"));
+        assertEquals(10, busy.getLong("intervalMs"));
+        assertEquals(7, first.getInt("queueDepth"));
+        assertTrue(first.getDouble("heapUsedMb") > 0);
+
+        // The next report only counts what happened since the first one.
+        JSONObject second = report(telemetry);
+        busy = second.getJSONObject("monitors").getJSONObject("Busy");
+        assertEquals(0, busy.getLong("polls"));
+        assertEquals(0, busy.getDouble("cpuMs"), 0);
+        assertEquals(0, second.getDouble("monitorCpuPercent"), 0);
+    }
+
+    @Test
+    public void slowsTheSchedulerDownWhileOverBudget() throws InterruptedException {
+        ClientTelemetry telemetry = new ClientTelemetry(reports::add, scheduler, () -> 0, 0.001);
+        telemetry.poll();
+        pollUntilStopped();
+
+        JSONObject over = report(telemetry);
+        assertTrue(over.getDouble("monitorCpuPercent") > 0.001);
+        assertEquals(2.0, over.getDouble("slowdown"), 0);
+        assertEquals(2.0, scheduler.getSlowdownFactor(), 0);
+
+        // Nothing ran since, which is well below the budget.
+        JSONObject under = report(telemetry);
+        assertEquals(1.0, under.getDouble("slowdown"), 0);
+        assertEquals(1.0, scheduler.getSlowdownFactor(), 0);
+    }
+
+    @Test
+    public void countsEventsPerSourceAndStartsOverEachReport() {
+        ClientTelemetry telemetry = new ClientTelemetry(reports::add, scheduler, () -> 0, 2.0);
+        List<String> sent = new ArrayList<>();
+        Consumer<String> clipboard = telemetry.countEvents("ClipboardMonitor", sent::add);
+        Consumer<String> process = telemetry.countEvents("ProcessMonitor", sent::add);
+        telemetry.poll();
+
+        clipboard.accept("a");
+        clipboard.accept("b");
+        process.accept("c");
+        // The same source shares one counter.
+        telemetry.countEvents("ClipboardMonitor", sent::add).accept("d");
+        assertEquals(4, sent.size());
+
+        JSONObject events = report(telemetry).getJSONObject("events");
+        assertEquals(3, events.getLong("ClipboardMonitor"));
+        assertEquals(1, events.getLong("ProcessMonitor"));
+        events = report(telemetry).getJSONObject("events");
+        assertEquals(0, events.getLong("ClipboardMonitor"));
+        assertEquals(0, events.getLong("ProcessMonitor"));
+    }
+
+    @Test
+    public void reportsStartupPhasesOnceTheFirstEventWasSent() {
+        ClientTelemetry telemetry = new ClientTelemetry(reports::add, scheduler, () -> 0, 2.0);
+        StartupTimer startup = new StartupTimer();
+        telemetry.setStartupTimer(startup);
+        telemetry.poll();
+
+        startup.mark(StartupTimer.CONNECTED);
+        assertFalse(report(telemetry).has("startupMs"));
+        startup.mark(StartupTimer.FIRST_EVENT_SENT);
+        JSONObject phases = report(telemetry).getJSONObject("startupMs");
+        assertTrue(phases.has(StartupTimer.CONNECTED));
+        assertTrue(phases.getLong(StartupTimer.FIRST_EVENT_SENT) >= phases.getLong(StartupTimer.CONNECTED));
+        assertFalse(report(telemetry).has("startupMs"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANonPositiveBudget() {
+        new ClientTelemetry(reports::add, scheduler, () -> 0, 0);
+    }
+}
@@ -0,0 +1,68 @@
+package com.proctor.protocol;
+
+import java.util.Arrays;
+
+/**
+ * Every activity a client can report, with the name it carries on the wire.
+ */
+public enum Activity {
+    WINDOW_SWITCH("windowSwitch"),
+    TAB_SWITCH("tabSwitch"),
+    CLIPBOARD_COPY("clipboardCopy"),
+    PROCESS_STARTED("processStarted"),
+    PROCESS_EXITED("processExited"),
+    SCREENSHOT_TAKEN("screenshotTaken"),
+    IMAGE_FILES_ADDED("imageFilesAdded"),
+    FACE_DETECTION("faceDetection"),
+    FRAME_CAPTURE("frameCapture"),
+    AGENT_STATUS("agent_status"),
+    /** Periodic report of the client's own resource usage. */
+    CLIENT_TELEMETRY("clientTelemetry"),
+    /** Counts of low-severity events the client folded together; see {@link EventSummary}. */
+    EVENT_DIGEST("eventDigest"),
+    /** An activity this version of the protocol does not know about. */
+    UNKNOWN(null);
+
+    private static final Activity[] KNOWN = Arrays.copyOf(values(), values().length - 1);
+
+    private final String wireName;
+
+    Activity(String wireName) {
+        this.wireName = wireName;
+    }
+
+    public String wireName() {
+        return wireName;
+    }
+
+    /**
+     * Looks up an activity by its wire name.
+     * @return The matching activity, or {@link #UNKNOWN}.
+     */
+    public static Activity fromWireName(String name) {
+        return name == null ? UNKNOWN : fromWireName(name, 0, name.length());
+    }
+
+    /**
+     * Looks up an activity by a region of a character sequence, without extracting it.
+     * @return The matching activity, or {@link #UNKNOWN}.
+     */
+    public static Activity fromWireName(CharSequence source, int start, int end) {
+        int length = end - start;
+        for (Activity activity : KNOWN) {
+            if (activity.wireName.length() == length && regionEquals(activity.wireName, source, start)) {
+                return activity;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static boolean regionEquals(String name, CharSequence source, int start) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
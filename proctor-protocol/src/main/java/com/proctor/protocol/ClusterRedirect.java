@@ -0,0 +1,46 @@
+package com.proctor.protocol;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Sending a client to another server of a cluster. When several servers share the sessions, each
+ * session belongs to one of them; a server that is not the owner closes the connection with
+ * {@link #CLOSE_CODE} and the owner's address, e.g. {@code ws://node-2:8080}, as the close reason.
+ * The client then connects to the same session path on that server.
+ */
+public final class ClusterRedirect {
+
+    /** Close code for a redirect, from the range reserved for applications. */
+    public static final int CLOSE_CODE = 4307;
+
+    private ClusterRedirect() {
+    }
+
+    /**
+     * Builds the URL to connect to after a redirect.
+     * @param current The URL the client connected to, e.g. {@code ws://node-1:8080/session-42}.
+     * @param reason The close reason, the address of the server to go to.
+     * @return The same path and query on that server, or {@code null} if the reason is not a WebSocket address.
+     *         A {@code wss} connection stays {@code wss} even if the address says {@code ws}, so a
+     *         redirect cannot downgrade the client to an unencrypted connection.
+     */
+    public static URI target(URI current, String reason) {
+        if (reason == null || reason.isEmpty()) {
+            return null;
+        }
+        try {
+            URI owner = new URI(reason.trim());
+            String scheme = owner.getScheme();
+            if (owner.getHost() == null || !("ws".equals(scheme) || "wss".equals(scheme))) {
+                return null;
+            }
+            if ("wss".equals(current.getScheme())) {
+                scheme = "wss";
+            }
+            return new URI(scheme, null, owner.getHost(), owner.getPort(), current.getPath(), current.getQuery(), null);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+}
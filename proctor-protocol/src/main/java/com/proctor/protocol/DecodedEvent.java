@@ -0,0 +1,128 @@
+package com.proctor.protocol;
+
+/**
+ * The envelope of one event, filled in by {@link EventDecoder}.
+ * Instances are meant to be reused: decoding only records the timestamp, the activity and status
+ * enums and the position of the {@code details} object within the source text. Nothing is copied out
+ * of the source until one of the String accessors is called.
+ */
+public final class DecodedEvent {
+
+    /** Returned by {@link #getTimestamp()} when the event carries none. */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private CharSequence source;
+    private long timestamp;
+    private Activity activity;
+    private int activityStart;
+    private int activityEnd;
+    private Status status;
+    private int statusStart;
+    private int statusEnd;
+    private int detailsStart;
+    private int detailsEnd;
+    private int traceStart;
+    private int traceEnd;
+
+    void reset(CharSequence source) {
+        this.source = source;
+        this.timestamp = NO_TIMESTAMP;
+        this.activity = Activity.UNKNOWN;
+        this.activityStart = -1;
+        this.activityEnd = -1;
+        this.status = Status.UNKNOWN;
+        this.statusStart = -1;
+        this.statusEnd = -1;
+        this.detailsStart = -1;
+        this.detailsEnd = -1;
+        this.traceStart = -1;
+        this.traceEnd = -1;
+    }
+
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    void setActivity(Activity activity, int start, int end) {
+        this.activity = activity;
+        this.activityStart = start;
+        this.activityEnd = end;
+    }
+
+    void setStatus(Status status, int start, int end) {
+        this.status = status;
+        this.statusStart = start;
+        this.statusEnd = end;
+    }
+
+    void setDetails(int start, int end) {
+        this.detailsStart = start;
+        this.detailsEnd = end;
+    }
+
+    void setTrace(int start, int end) {
+        this.traceStart = start;
+        this.traceEnd = end;
+    }
+
+    /**
+     * @return The text this event was decoded from.
+     */
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Activity getActivity() {
+        return activity;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The activity name exactly as sent (still JSON-escaped), useful for activities this
+     *         version does not know about; {@code null} if the event had none.
+     */
+    public String getActivityName() {
+        return activityStart < 0 ? null : source.subSequence(activityStart, activityEnd).toString();
+    }
+
+    /**
+     * @return The status name exactly as sent (still JSON-escaped); {@code null} if the event had none.
+     */
+    public String getStatusName() {
+        return statusStart < 0 ? null : source.subSequence(statusStart, statusEnd).toString();
+    }
+
+    public boolean hasDetails() {
+        return detailsStart >= 0;
+    }
+
+    /**
+     * @return The raw JSON text of the {@code details} value, or {@code null} if the event had none.
+     */
+    public String getDetailsJson() {
+        return detailsStart < 0 ? null : source.subSequence(detailsStart, detailsEnd).toString();
+    }
+
+    public boolean hasTrace() {
+        return traceStart >= 0;
+    }
+
+    /**
+     * @return The raw JSON text of the {@code trace} value, or {@code null} if the event was not traced.
+     */
+    public String getTraceJson() {
+        return traceStart < 0 ? null : source.subSequence(traceStart, traceEnd).toString();
+    }
+
+    @Override
+    public String toString() {
+        return "DecodedEvent[" + activity + ", " + status + ", " + timestamp + "]";
+    }
+}
@@ -0,0 +1,285 @@
+package com.proctor.protocol;
+
+/**
+ * Reads the envelope of an event in the wire format described by {@link EventFields}.
+ * The decoder makes a single pass over the text and writes into a caller-supplied {@link DecodedEvent}:
+ * the timestamp is parsed in place, activity and status are matched against their enums without
+ * extracting substrings, and the {@code details} and {@code trace} objects and any unknown fields are
+ * only skipped over. Fields may appear in any order. An instance holds a small scratch buffer for
+ * escaped names and is not thread-safe; use {@link #forCurrentThread()} from shared code.
+ */
+public final class EventDecoder {
+
+    private static final ThreadLocal<EventDecoder> LOCAL = ThreadLocal.withInitial(EventDecoder::new);
+    private static final int MAX_DEPTH = 64;
+
+    private final StringBuilder scratch = new StringBuilder(32);
+    private CharSequence in;
+    private int pos;
+    private int end;
+
+    /**
+     * @return The decoder owned by the calling thread.
+     */
+    public static EventDecoder forCurrentThread() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Decodes the envelope of one event.
+     * @param json The event text.
+     * @param into The event to fill in; its previous contents are discarded.
+     * @return {@code false} if the text is not a well-formed JSON object.
+     */
+    public boolean decode(CharSequence json, DecodedEvent into) {
+        into.reset(json);
+        in = json;
+        pos = 0;
+        end = json.length();
+        try {
+            return readEnvelope(into);
+        } finally {
+            in = null;
+        }
+    }
+
+    private boolean readEnvelope(DecodedEvent into) {
+        skipWhitespace();
+        if (!consume('{')) {
+            return false;
+        }
+        skipWhitespace();
+        if (consume('}')) {
+            return trailingWhitespaceOnly();
+        }
+        while (true) {
+            skipWhitespace();
+            int keyStart = pos + 1;
+            int keyEnd = skipString();
+            if (keyEnd < 0) {
+                return false;
+            }
+            skipWhitespace();
+            if (!consume(':')) {
+                return false;
+            }
+            skipWhitespace();
+            if (!readField(into, keyStart, keyEnd)) {
+                return false;
+            }
+            skipWhitespace();
+            if (consume(',')) {
+                continue;
+            }
+            return consume('}') && trailingWhitespaceOnly();
+        }
+    }
+
+    private boolean readField(DecodedEvent into, int keyStart, int keyEnd) {
+        if (keyIs(EventFields.TIMESTAMP, keyStart, keyEnd) && pos < end && isNumberStart(in.charAt(pos))) {
+            int start = pos;
+            if (!skipValue(0)) {
+                return false;
+            }
+            into.setTimestamp(parseLong(start, pos));
+            return true;
+        }
+        if (keyIs(EventFields.ACTIVITY, keyStart, keyEnd) && pos < end && in.charAt(pos) == '"') {
+            int start = pos + 1;
+            int stop = skipString();
+            if (stop < 0) {
+                return false;
+            }
+            into.setActivity(hasEscape(start, stop)
+                    ? Activity.fromWireName(unescape(start, stop), 0, scratch.length())
+                    : Activity.fromWireName(in, start, stop), start, stop);
+            return true;
+        }
+        if (keyIs(EventFields.STATUS, keyStart, keyEnd) && pos < end && in.charAt(pos) == '"') {
+            int start = pos + 1;
+            int stop = skipString();
+            if (stop < 0) {
+                return false;
+            }
+            into.setStatus(hasEscape(start, stop)
+                    ? Status.fromWireName(unescape(start, stop), 0, scratch.length())
+                    : Status.fromWireName(in, start, stop), start, stop);
+            return true;
+        }
+        int start = pos;
+        if (!skipValue(0)) {
+            return false;
+        }
+        if (keyIs(EventFields.DETAILS, keyStart, keyEnd)) {
+            into.setDetails(start, pos);
+        } else if (keyIs(EventFields.TRACE, keyStart, keyEnd)) {
+            into.setTrace(start, pos);
+        }
+        return true;
+    }
+
+    private boolean skipValue(int depth) {
+        if (pos >= end || depth > MAX_DEPTH) {
+            return false;
+        }
+        char c = in.charAt(pos);
+        if (c == '"') {
+            return skipString() >= 0;
+        }
+        if (c == '{' || c == '[') {
+            char close = c == '{' ? '}' : ']';
+            pos++;
+            skipWhitespace();
+            if (consume(close)) {
+                return true;
+            }
+            while (true) {
+                skipWhitespace();
+                if (c == '{') {
+                    if (skipString() < 0) {
+                        return false;
+                    }
+                    skipWhitespace();
+                    if (!consume(':')) {
+                        return false;
+                    }
+                    skipWhitespace();
+                }
+                if (!skipValue(depth + 1)) {
+                    return false;
+                }
+                skipWhitespace();
+                if (consume(',')) {
+                    continue;
+                }
+                return consume(close);
+            }
+        }
+        // A number or a literal (true, false, null): runs until a structural character or whitespace.
+        int start = pos;
+        while (pos < end) {
+            char d = in.charAt(pos);
+            if (d == ',' || d == '}' || d == ']' || isWhitespace(d)) {
+                break;
+            }
+            pos++;
+        }
+        return pos > start;
+    }
+
+    /**
+     * Skips a string starting at the current position (which must be a quote).
+     * @return The index of the closing quote, or -1 if the string is malformed.
+     */
+    private int skipString() {
+        if (!consume('"')) {
+            return -1;
+        }
+        while (pos < end) {
+            char c = in.charAt(pos);
+            if (c == '"') {
+                return pos++;
+            }
+            pos += c == '\\' ? 2 : 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes a string with escapes into the scratch buffer (only needed for escaped activity/status names).
+     */
+    private CharSequence unescape(int start, int stop) {
+        scratch.setLength(0);
+        for (int i = start; i < stop; i++) {
+            char c = in.charAt(i);
+            if (c != '\\' || i + 1 >= stop) {
+                scratch.append(c);
+                continue;
+            }
+            char e = in.charAt(++i);
+            switch (e) {
+                case 'n': scratch.append('\n'); break;
+                case 'r': scratch.append('\r'); break;
+                case 't': scratch.append('\t'); break;
+                case 'b': scratch.append('\b'); break;
+                case 'f': scratch.append('\f'); break;
+                case 'u':
+                    if (i + 4 < stop) {
+                        int code = 0;
+                        for (int k = 1; k <= 4; k++) {
+                            code = code << 4 | Character.digit(in.charAt(i + k), 16);
+                        }
+                        scratch.append((char) code);
+                        i += 4;
+                    }
+                    break;
+                default: scratch.append(e);
+            }
+        }
+        return scratch;
+    }
+
+    private boolean hasEscape(int start, int stop) {
+        for (int i = start; i < stop; i++) {
+            if (in.charAt(i) == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean keyIs(String name, int start, int stop) {
+        if (stop - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (in.charAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the integral part of a JSON number; fractions and exponents are ignored.
+     */
+    private long parseLong(int start, int stop) {
+        boolean negative = in.charAt(start) == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < stop; i++) {
+            char c = in.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isNumberStart(char c) {
+        return c == '-' || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && isWhitespace(in.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private boolean consume(char c) {
+        if (pos < end && in.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean trailingWhitespaceOnly() {
+        skipWhitespace();
+        return pos == end;
+    }
+}
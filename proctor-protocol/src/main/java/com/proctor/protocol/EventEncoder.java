@@ -0,0 +1,219 @@
+package com.proctor.protocol;
+
+/**
+ * Writes events in the wire format described by {@link EventFields}.
+ * The encoder appends straight into one reused {@link StringBuilder}, so building an event costs
+ * nothing beyond the final String handed to the transport. An instance is not thread-safe; monitors
+ * running on different threads should use {@link #forCurrentThread()}.
+ * <pre>
+ *   String json = EventEncoder.forCurrentThread()
+ *           .begin(Activity.WINDOW_SWITCH, Status.VIOLATION)
+ *           .detail("activeWindow", title)
+ *           .detail(EventFields.MESSAGE, "User switched to a new active window.")
+ *           .end();
+ * </pre>
+ */
+public final class EventEncoder {
+
+    private static final ThreadLocal<EventEncoder> LOCAL = ThreadLocal.withInitial(EventEncoder::new);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // Encoders that once built a huge event give the memory back instead of holding it forever.
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final int MAX_DEPTH = 8;
+
+    private StringBuilder out = new StringBuilder(256);
+    // The open containers: depth 0 is the details object. isArray/isFirst describe each level.
+    private final boolean[] isArray = new boolean[MAX_DEPTH];
+    private final boolean[] isFirst = new boolean[MAX_DEPTH];
+    private int depth = -1;
+
+    /**
+     * @return The encoder owned by the calling thread.
+     */
+    public static EventEncoder forCurrentThread() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Starts a new event stamped with the current time. Any unfinished event is discarded.
+     */
+    public EventEncoder begin(Activity activity, Status status) {
+        return begin(System.currentTimeMillis(), activity, status);
+    }
+
+    /**
+     * Starts a new event. Any unfinished event is discarded.
+     */
+    public EventEncoder begin(long timestamp, Activity activity, Status status) {
+        if (activity == Activity.UNKNOWN || status == Status.UNKNOWN) {
+            throw new IllegalArgumentException("Cannot encode an UNKNOWN activity or status");
+        }
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            out = new StringBuilder(256);
+        }
+        out.setLength(0);
+        out.append("{\"").append(EventFields.TIMESTAMP).append("\":").append(timestamp)
+                .append(",\"").append(EventFields.ACTIVITY).append("\":\"").append(activity.wireName())
+                .append("\",\"").append(EventFields.STATUS).append("\":\"").append(status.wireName())
+                .append("\",\"").append(EventFields.DETAILS).append("\":{");
+        depth = 0;
+        isArray[0] = false;
+        isFirst[0] = true;
+        return this;
+    }
+
+    public EventEncoder detail(String key, CharSequence value) {
+        key(key);
+        string(value);
+        return this;
+    }
+
+    public EventEncoder detail(String key, long value) {
+        key(key);
+        out.append(value);
+        return this;
+    }
+
+    public EventEncoder detail(String key, double value) {
+        key(key);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append("null");
+        } else {
+            out.append(value);
+        }
+        return this;
+    }
+
+    public EventEncoder detail(String key, boolean value) {
+        key(key);
+        out.append(value);
+        return this;
+    }
+
+    /**
+     * Writes a string array detail.
+     */
+    public EventEncoder detail(String key, Iterable<? extends CharSequence> values) {
+        beginArray(key);
+        for (CharSequence value : values) {
+            element(value);
+        }
+        return endArray();
+    }
+
+    /**
+     * Opens an array detail, for callers that produce elements without a ready-made collection.
+     * Elements are added with {@link #element(CharSequence)} and the array closed with {@link #endArray()}.
+     */
+    public EventEncoder beginArray(String key) {
+        key(key);
+        open('[', true);
+        return this;
+    }
+
+    public EventEncoder element(CharSequence value) {
+        if (depth < 0 || !isArray[depth]) {
+            throw new IllegalStateException("No array is open");
+        }
+        separator();
+        string(value);
+        return this;
+    }
+
+    public EventEncoder endArray() {
+        close(true);
+        out.append(']');
+        return this;
+    }
+
+    /**
+     * Opens a nested object detail; its fields are written with the {@code detail} methods
+     * and it is closed with {@link #endObject()}.
+     */
+    public EventEncoder beginObject(String key) {
+        key(key);
+        open('{', false);
+        return this;
+    }
+
+    public EventEncoder endObject() {
+        close(false);
+        out.append('}');
+        return this;
+    }
+
+    /**
+     * Finishes the event.
+     * @return The encoded JSON.
+     */
+    public String end() {
+        if (depth != 0) {
+            throw new IllegalStateException(depth < 0 ? "No event was begun" : "A nested detail was not closed");
+        }
+        depth = -1;
+        out.append("}}");
+        return out.toString();
+    }
+
+    private void key(String key) {
+        if (depth < 0 || isArray[depth]) {
+            throw new IllegalStateException(depth < 0 ? "No event was begun" : "Array detail was not closed");
+        }
+        separator();
+        string(key);
+        out.append(':');
+    }
+
+    private void separator() {
+        if (!isFirst[depth]) {
+            out.append(',');
+        }
+        isFirst[depth] = false;
+    }
+
+    private void open(char bracket, boolean array) {
+        if (depth + 1 >= MAX_DEPTH) {
+            throw new IllegalStateException("Details are nested too deeply");
+        }
+        out.append(bracket);
+        depth++;
+        isArray[depth] = array;
+        isFirst[depth] = true;
+    }
+
+    private void close(boolean array) {
+        if (depth < 1 || isArray[depth] != array) {
+            throw new IllegalStateException(array ? "No array is open" : "No nested object is open");
+        }
+        depth--;
+    }
+
+    private void string(CharSequence value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    // Control characters are illegal in JSON strings; the line separators break JavaScript consumers.
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        out.append("\\u").append(HEX[c >> 12 & 0xF]).append(HEX[c >> 8 & 0xF])
+                                .append(HEX[c >> 4 & 0xF]).append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
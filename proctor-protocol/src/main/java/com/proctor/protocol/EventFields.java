@@ -0,0 +1,24 @@
+package com.proctor.protocol;
+
+/**
+ * Field names of the event object. Every event looks like
+ * <pre>
+ *   {"timestamp": 1700000000000, "activity": "windowSwitch", "status": "violation",
+ *    "details": {"message": "...", ...}}
+ * </pre>
+ * {@code details} always carries a human readable {@code message}; the other detail fields depend
+ * on the activity.
+ */
+public final class EventFields {
+
+    public static final String TIMESTAMP = "timestamp";
+    public static final String ACTIVITY = "activity";
+    public static final String STATUS = "status";
+    public static final String DETAILS = "details";
+    public static final String MESSAGE = "message";
+    /** Client-side timestamps of a traced event; see {@link LatencyTrace}. */
+    public static final String TRACE = "trace";
+
+    private EventFields() {
+    }
+}
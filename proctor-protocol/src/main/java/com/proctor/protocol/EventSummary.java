@@ -0,0 +1,60 @@
+package com.proctor.protocol;
+
+/**
+ * Summarizing low-severity events on the client. Most events are routine, such as tab switches,
+ * clipboard copies and faces detected as expected, and sending each one costs the server more than
+ * it tells the proctor. A server that opts in answers the handshake with the {@link #HEADER}
+ * response header, giving a window in milliseconds. The client then sends violations, errors,
+ * camera frames, agent status and its own telemetry straight away as before, and folds all other
+ * events into one {@link Activity#EVENT_DIGEST} event per window:
+ * <pre>
+ *   {"timestamp": 1700000060000, "activity": "eventDigest", "status": "info",
+ *    "details": {"message": "...", "windowStart": 1700000000000, "windowEnd": 1700000060000, "events": 42,
+ *                "activities": {"tabSwitch": {"suspicious": {"count": 30, "first": 1700000001000,
+ *                                                             "last": 1700000059000,
+ *                                                             "titles": ["Exam - Chrome", ...],
+ *                                                             "moreTitles": 3}}}}}
+ * </pre>
+ * {@code titles} lists the distinct titles seen (window titles, process names, and so on), up to a
+ * limit; {@code moreTitles} counts the ones left out. A pending digest is sent before any violation,
+ * so the server always receives what led up to it first.
+ */
+public final class EventSummary {
+
+    /** Handshake response header: the summary window in milliseconds; absent or 0 to send every event. */
+    public static final String HEADER = "X-Proctor-Summary-Window";
+
+    private EventSummary() {
+    }
+
+    /**
+     * @return {@code true} if events of this kind are folded into digests rather than sent one by one.
+     */
+    public static boolean isSummarized(Activity activity, Status status) {
+        switch (activity) {
+            case FRAME_CAPTURE:
+            case AGENT_STATUS:
+            case CLIENT_TELEMETRY:
+            case EVENT_DIGEST:
+            case UNKNOWN:
+                return false;
+            default:
+                return status == Status.OK || status == Status.INFO || status == Status.SUSPICIOUS;
+        }
+    }
+
+    /**
+     * Parses the value of the {@link #HEADER} response header.
+     * @return The window in milliseconds, or 0 if the header is missing, malformed or not positive.
+     */
+    public static long parse(String headerValue) {
+        if (headerValue == null || headerValue.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(headerValue.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.proctor.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tracing how long events take from detection on the client to the server's listeners. A server
+ * that opts in answers the handshake with the {@link #HEADER} response header, giving a sampling
+ * rate N. The client then adds a {@link EventFields#TRACE} object to every N-th event it sends,
+ * with the times it was queued, taken off the queue and written to the connection, and its latest
+ * estimate of the difference between the two clocks:
+ * <pre>
+ *   {"timestamp": 1700000000000, "activity": "windowSwitch", "status": "violation", "details": {...},
+ *    "trace": {"enqueue": 1700000000001, "dispatch": 1700000000003, "send": 1700000000003,
+ *              "clockOffset": -42, "rtt": 18}}
+ * </pre>
+ * The event's own {@code timestamp} is when it was detected. All client times are the client's
+ * clock in milliseconds; adding {@code clockOffset} converts them to the server's.
+ * <p>
+ * The offset is measured NTP-style with WebSocket pings, which are not events and so do not disturb
+ * the numbering used by {@link SessionResume}. The client's ping carries {@link #CLOCK_PING_MAGIC}
+ * and its send time; the server's pong echoes both and adds its own time. The offset is the
+ * server time minus the midpoint of the client's send and receive times, and is trusted the more the
+ * shorter the round trip was. Pings without the magic are the library's own keep-alives.
+ */
+public final class LatencyTrace {
+
+    /** Handshake response header: trace every N-th event; absent or 0 for no tracing. */
+    public static final String HEADER = "X-Proctor-Trace";
+
+    public static final String ENQUEUE = "enqueue";
+    public static final String DISPATCH = "dispatch";
+    public static final String SEND = "send";
+    public static final String CLOCK_OFFSET = "clockOffset";
+    public static final String RTT = "rtt";
+
+    /** First four bytes of a clock ping or pong payload: "PCLK". */
+    public static final int CLOCK_PING_MAGIC = 0x50434C4B;
+    private static final int CLOCK_PING_SIZE = 12;
+    private static final int CLOCK_PONG_SIZE = 20;
+
+    private LatencyTrace() {
+    }
+
+    /**
+     * Parses the value of the {@link #HEADER} response header.
+     * @return The sampling rate, or 0 if the header is missing, malformed or not positive.
+     */
+    public static int parse(String headerValue) {
+        if (headerValue == null || headerValue.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(headerValue.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Adds a trace object to an encoded event.
+     * @param event The event, as produced by {@link EventEncoder}.
+     * @return The event with the trace as its last field, or the event unchanged if it is not an object.
+     */
+    public static String append(String event, long enqueue, long dispatch, long send, long clockOffset, long rtt) {
+        int close = event.lastIndexOf('}');
+        if (close < 0) {
+            return event;
+        }
+        return new StringBuilder(event.length() + 112)
+                .append(event, 0, close)
+                .append(",\"").append(EventFields.TRACE).append("\":{\"")
+                .append(ENQUEUE).append("\":").append(enqueue).append(",\"")
+                .append(DISPATCH).append("\":").append(dispatch).append(",\"")
+                .append(SEND).append("\":").append(send).append(",\"")
+                .append(CLOCK_OFFSET).append("\":").append(clockOffset).append(",\"")
+                .append(RTT).append("\":").append(rtt).append("}}")
+                .toString();
+    }
+
+    /**
+     * @param clientMillis The client's time when sending the ping.
+     * @return The payload of a clock ping.
+     */
+    public static ByteBuffer clockPing(long clientMillis) {
+        ByteBuffer payload = ByteBuffer.allocate(CLOCK_PING_SIZE);
+        payload.putInt(CLOCK_PING_MAGIC).putLong(clientMillis).flip();
+        return payload;
+    }
+
+    /**
+     * Answers a clock ping.
+     * @param ping The payload of a received ping; not consumed.
+     * @param serverMillis The server's time now.
+     * @return The payload of the pong, or {@code null} if the ping is not a clock ping.
+     */
+    public static ByteBuffer clockPong(ByteBuffer ping, long serverMillis) {
+        if (ping == null || ping.remaining() != CLOCK_PING_SIZE || ping.getInt(ping.position()) != CLOCK_PING_MAGIC) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(CLOCK_PONG_SIZE);
+        payload.putInt(CLOCK_PING_MAGIC).putLong(ping.getLong(ping.position() + 4)).putLong(serverMillis).flip();
+        return payload;
+    }
+
+    /**
+     * @param pong The payload of a received pong; not consumed.
+     * @return {@code true} if it answers a clock ping.
+     */
+    public static boolean isClockPong(ByteBuffer pong) {
+        return pong != null && pong.remaining() == CLOCK_PONG_SIZE && pong.getInt(pong.position()) == CLOCK_PING_MAGIC;
+    }
+
+    /** @return The client time the answered ping was sent at. */
+    public static long pingTime(ByteBuffer pong) {
+        return pong.getLong(pong.position() + 4);
+    }
+
+    /** @return The server time the pong was sent at. */
+    public static long serverTime(ByteBuffer pong) {
+        return pong.getLong(pong.position() + 12);
+    }
+}
@@ -0,0 +1,36 @@
+package com.proctor.protocol;
+
+/**
+ * Message types that are not events. Text messages from the server to the client are JSON objects
+ * whose {@link #TYPE} field holds one of the constants below; binary messages start with one of the
+ * frame type bytes.
+ */
+public final class MessageTypes {
+
+    /** The field holding the type of a server-to-client message. */
+    public static final String TYPE = "type";
+
+    /** Server to client: {@code {"type":"signatures","signatures":["category:pattern", ...]}}. */
+    public static final String SIGNATURES = "signatures";
+
+    /** Server to client: {@code {"type":"notice","message":"5 minutes left"}}, shown to the student. */
+    public static final String NOTICE = "notice";
+
+    /** Server to client: {@code {"type":"shutdown","message":"Exam ended"}}; the client shows the message and exits. */
+    public static final String SHUTDOWN = "shutdown";
+
+    /** The field holding the human-readable text of a notice or shutdown message. */
+    public static final String MESSAGE = "message";
+
+    /** Binary frame carrying a UTF-8 JSON event (used on the agent pipe). */
+    public static final byte FRAME_EVENT = 1;
+
+    /**
+     * Binary frame carrying a camera image: a uint16 header length, the event header as UTF-8 JSON,
+     * then the raw JPEG bytes. Used on the agent pipe and forwarded as-is to the server.
+     */
+    public static final byte FRAME_JPEG = 2;
+
+    private MessageTypes() {
+    }
+}
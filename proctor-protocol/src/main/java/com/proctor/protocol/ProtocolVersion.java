@@ -0,0 +1,39 @@
+package com.proctor.protocol;
+
+/**
+ * Versioning of the wire format. The client announces its version in a handshake header rather than
+ * in every event; a connection without the header speaks version 1.
+ */
+public final class ProtocolVersion {
+
+    /** The handshake header carrying the client's protocol version. */
+    public static final String HEADER = "X-Proctor-Protocol";
+
+    /** The version spoken by this build. */
+    public static final int CURRENT = 1;
+
+    /** The oldest version this build still understands. */
+    public static final int MINIMUM_SUPPORTED = 1;
+
+    private ProtocolVersion() {
+    }
+
+    /**
+     * Parses the value of the {@link #HEADER} handshake header.
+     * @return The announced version, or 1 if the header is missing or malformed.
+     */
+    public static int parse(String headerValue) {
+        if (headerValue == null || headerValue.isEmpty()) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(headerValue.trim());
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    public static boolean isSupported(int version) {
+        return version >= MINIMUM_SUPPORTED && version <= CURRENT;
+    }
+}
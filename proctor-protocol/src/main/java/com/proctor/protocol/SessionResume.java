@@ -0,0 +1,37 @@
+package com.proctor.protocol;
+
+/**
+ * Resuming a session after the connection drops, e.g. while the server restarts.
+ * <p>
+ * Text events are numbered implicitly: the n-th text message a client sends in a session is event n,
+ * counted by both sides, so no sequence number travels with each event. When a client reconnects to
+ * a server that still holds its session, the server answers the handshake with the {@link #HEADER}
+ * response header carrying the number of the last event it received; the client then re-sends only
+ * the events after it and carries on numbering from there. Without the header the server started a
+ * new session, and numbering starts again at 1. Camera frames are not numbered and are not re-sent.
+ */
+public final class SessionResume {
+
+    /** Handshake response header: the number of the last event the server received in the resumed session. */
+    public static final String HEADER = "X-Proctor-Resume";
+
+    private SessionResume() {
+    }
+
+    /**
+     * Parses the value of the {@link #HEADER} response header.
+     * @return The last event number the server has, or -1 if the header is missing or malformed,
+     *         i.e. the session was not resumed.
+     */
+    public static long parse(String headerValue) {
+        if (headerValue == null || headerValue.isEmpty()) {
+            return -1;
+        }
+        try {
+            long lastSequence = Long.parseLong(headerValue.trim());
+            return lastSequence >= 0 ? lastSequence : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
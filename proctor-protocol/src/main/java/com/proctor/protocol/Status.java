@@ -0,0 +1,60 @@
+package com.proctor.protocol;
+
+import java.util.Arrays;
+
+/**
+ * The severity attached to every event, with the name it carries on the wire.
+ */
+public enum Status {
+    OK("ok"),
+    INFO("info"),
+    SUSPICIOUS("suspicious"),
+    VIOLATION("violation"),
+    ERROR("error"),
+    SHUTDOWN("shutdown"),
+    /** A status this version of the protocol does not know about. */
+    UNKNOWN(null);
+
+    private static final Status[] KNOWN = Arrays.copyOf(values(), values().length - 1);
+
+    private final String wireName;
+
+    Status(String wireName) {
+        this.wireName = wireName;
+    }
+
+    public String wireName() {
+        return wireName;
+    }
+
+    /**
+     * Looks up a status by its wire name.
+     * @return The matching status, or {@link #UNKNOWN}.
+     */
+    public static Status fromWireName(String name) {
+        return name == null ? UNKNOWN : fromWireName(name, 0, name.length());
+    }
+
+    /**
+     * Looks up a status by a region of a character sequence, without extracting it.
+     * @return The matching status, or {@link #UNKNOWN}.
+     */
+    public static Status fromWireName(CharSequence source, int start, int end) {
+        int length = end - start;
+        for (Status status : KNOWN) {
+            if (status.wireName.length() == length && regionEquals(status.wireName, source, start)) {
+                return status;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static boolean regionEquals(String name, CharSequence source, int start) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,133 @@
+package com.proctor.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests how {@link EventDecoder} reads envelopes in any field order, with fields it does not know,
+ * and how it rejects text that is not a well-formed object.
+ */
+public class EventDecoderTest {
+
+    private final EventDecoder decoder = new EventDecoder();
+    private final DecodedEvent event = new DecodedEvent();
+
+    @Test
+    public void readsFieldsInAnyOrder() {
+        String json = " {\n\t\"details\" : {\"message\":\"m\"},\"status\":\"info\", "
+                + "\"trace\":{\"t0\":1},\"activity\":\"tabSwitch\",\"timestamp\": 42 }\r\n";
+        assertTrue(decoder.decode(json, event));
+        assertEquals(42L, event.getTimestamp());
+        assertEquals(Activity.TAB_SWITCH, event.getActivity());
+        assertEquals(Status.INFO, event.getStatus());
+        assertEquals("{\"message\":\"m\"}", event.getDetailsJson());
+        assertEquals("{\"t0\":1}", event.getTraceJson());
+        assertTrue(event.hasTrace());
+    }
+
+    @Test
+    public void skipsUnknownFields() {
+        String json = "{\"version\":[1,{\"x\":\"}]\\\"\"},[]],\"timestamp\":7,\"extra\":null,"
+                + "\"activity\":\"windowSwitch\",\"nested\":{\"details\":{\"a\":1}},\"status\":\"violation\","
+                + "\"flag\":true,\"ratio\":-1.5e3}";
+        assertTrue(decoder.decode(json, event));
+        assertEquals(7L, event.getTimestamp());
+        assertEquals(Activity.WINDOW_SWITCH, event.getActivity());
+        assertEquals(Status.VIOLATION, event.getStatus());
+        // Only the top-level details count.
+        assertFalse(event.hasDetails());
+        assertNull(event.getDetailsJson());
+    }
+
+    @Test
+    public void keepsNamesOfUnknownActivityAndStatus() {
+        assertTrue(decoder.decode("{\"activity\":\"gazeAway\",\"status\":\"odd\\\"ity\",\"timestamp\":1}", event));
+        assertEquals(Activity.UNKNOWN, event.getActivity());
+        assertEquals(Status.UNKNOWN, event.getStatus());
+        assertEquals("gazeAway", event.getActivityName());
+        assertEquals("odd\\\"ity", event.getStatusName());
+    }
+
+    @Test
+    public void unescapesActivityAndStatusNames() {
+        assertTrue(decoder.decode("{\"activity\":\"window\\u0053witch\",\"status\":\"\\u006fk\"}", event));
+        assertEquals(Activity.WINDOW_SWITCH, event.getActivity());
+        assertEquals(Status.OK, event.getStatus());
+        assertEquals(DecodedEvent.NO_TIMESTAMP, event.getTimestamp());
+    }
+
+    @Test
+    public void ignoresFieldsOfTheWrongType() {
+        assertTrue(decoder.decode("{\"timestamp\":\"yesterday\",\"activity\":1,\"status\":[\"ok\"],\"details\":\"text\"}", event));
+        assertEquals(DecodedEvent.NO_TIMESTAMP, event.getTimestamp());
+        assertEquals(Activity.UNKNOWN, event.getActivity());
+        assertNull(event.getActivityName());
+        assertEquals(Status.UNKNOWN, event.getStatus());
+        assertNull(event.getStatusName());
+        assertEquals("\"text\"", event.getDetailsJson());
+    }
+
+    @Test
+    public void readsEmptyObjectAndNegativeTimestamp() {
+        assertTrue(decoder.decode("{ }", event));
+        assertEquals(DecodedEvent.NO_TIMESTAMP, event.getTimestamp());
+        assertTrue(decoder.decode("{\"timestamp\":-12.9e1}", event));
+        assertEquals(-12L, event.getTimestamp());
+    }
+
+    @Test
+    public void rejectsMalformedText() {
+        String[] malformed = {
+                "",
+                "   ",
+                "[]",
+                "\"event\"",
+                "{",
+                "}",
+                "{\"timestamp\":1",
+                "{\"timestamp\" 1}",
+                "{\"timestamp\":}",
+                "{\"timestamp\":1,}",
+                "{,\"timestamp\":1}",
+                "{timestamp:1}",
+                "{\"timestamp\":1 \"activity\":\"tabSwitch\"}",
+                "{\"activity\":\"tabSwitch}",
+                "{\"details\":{\"a\":1}",
+                "{\"details\":{\"a\" 1}}",
+                "{\"details\":[1,2}",
+                "{\"details\":{\"a\":\"\\\"}}",
+                "{\"timestamp\":1}{}",
+                "{\"timestamp\":1} x",
+        };
+        for (String json : malformed) {
+            assertFalse(json, decoder.decode(json, event));
+        }
+    }
+
+    @Test
+    public void rejectsExcessiveNesting() {
+        StringBuilder json = new StringBuilder("{\"details\":");
+        for (int i = 0; i < 100; i++) {
+            json.append('[');
+        }
+        for (int i = 0; i < 100; i++) {
+            json.append(']');
+        }
+        assertFalse(decoder.decode(json.append('}'), event));
+    }
+
+    @Test
+    public void discardsThePreviousEvent() {
+        assertTrue(decoder.decode("{\"timestamp\":9,\"activity\":\"tabSwitch\",\"status\":\"ok\",\"details\":{},\"trace\":{}}", event));
+        assertTrue(decoder.decode("{\"status\":\"error\"}", event));
+        assertEquals(DecodedEvent.NO_TIMESTAMP, event.getTimestamp());
+        assertEquals(Activity.UNKNOWN, event.getActivity());
+        assertEquals(Status.ERROR, event.getStatus());
+        assertFalse(event.hasDetails());
+        assertFalse(event.hasTrace());
+    }
+}
@@ -0,0 +1,170 @@
+package com.proctor.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests that what {@link EventEncoder} writes is valid JSON that {@link EventDecoder} and an
+ * independent parser both read back unchanged.
+ */
+public class EventEncoderTest {
+
+    private final EventEncoder encoder = new EventEncoder();
+
+    private static DecodedEvent decode(String json) {
+        DecodedEvent event = new DecodedEvent();
+        assertTrue(json, new EventDecoder().decode(json, event));
+        return event;
+    }
+
+    @Test
+    public void roundTripsEnvelopeAndDetails() {
+        String json = encoder.begin(1700000000123L, Activity.PROCESS_STARTED, Status.VIOLATION)
+                .detail(EventFields.MESSAGE, "Forbidden application started.")
+                .detail("pid", 4242L)
+                .detail("cpu", 12.5)
+                .detail("visible", true)
+                .detail("arguments", Arrays.asList("--kiosk", "C:\\Program Files\\x.exe"))
+                .end();
+
+        DecodedEvent event = decode(json);
+        assertEquals(1700000000123L, event.getTimestamp());
+        assertEquals(Activity.PROCESS_STARTED, event.getActivity());
+        assertEquals(Status.VIOLATION, event.getStatus());
+        assertEquals("processStarted", event.getActivityName());
+        assertEquals("violation", event.getStatusName());
+        assertFalse(event.hasTrace());
+
+        JSONObject details = new JSONObject(event.getDetailsJson());
+        assertEquals("Forbidden application started.", details.getString(EventFields.MESSAGE));
+        assertEquals(4242L, details.getLong("pid"));
+        assertEquals(12.5, details.getDouble("cpu"), 0.0);
+        assertTrue(details.getBoolean("visible"));
+        assertEquals("C:\\Program Files\\x.exe", details.getJSONArray("arguments").getString(1));
+    }
+
+    @Test
+    public void escapesQuotesBackslashesAndControlCharacters() {
+        StringBuilder controls = new StringBuilder();
+        for (char c = 0; c < 0x20; c++) {
+            controls.append(c);
+        }
+        String awkward = "say \"hi\" \\ to/" + controls + "\u007f\u2028\u2029";
+        String json = encoder.begin(1L, Activity.CLIPBOARD_COPY, Status.SUSPICIOUS)
+                .detail("text", awkward)
+                .detail("quoted \"key\"\n", "value")
+                .end();
+
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            assertTrue("raw character " + (int) c + " at " + i, c >= 0x20 && c != '\u2028' && c != '\u2029');
+        }
+        assertTrue(json, json.contains("\\u0000") && json.contains("\\u001f") && json.contains("\\u2028"));
+
+        JSONObject details = new JSONObject(decode(json).getDetailsJson());
+        assertEquals(awkward, details.getString("text"));
+        assertEquals("value", details.getString("quoted \"key\"\n"));
+    }
+
+    @Test
+    public void keepsSurrogatePairsIntact() {
+        String emoji = "exam \uD83D\uDE00 window \uD834\uDD1E";
+        String json = encoder.begin(1L, Activity.WINDOW_SWITCH, Status.VIOLATION)
+                .detail("activeWindow", emoji)
+                .detail("\uD83D\uDCCB", "key")
+                .end();
+        JSONObject details = new JSONObject(decode(json).getDetailsJson());
+        assertEquals(emoji, details.getString("activeWindow"));
+        assertEquals("key", details.getString("\uD83D\uDCCB"));
+    }
+
+    @Test
+    public void writesNestedDetails() {
+        String json = encoder.begin(2L, Activity.EVENT_DIGEST, Status.INFO)
+                .detail(EventFields.MESSAGE, "digest")
+                .beginObject("counts")
+                    .detail("windowSwitch", 3L)
+                    .beginArray("titles")
+                        .element("a")
+                        .element(null)
+                        .element("b\tc")
+                    .endArray()
+                    .beginObject("empty")
+                    .endObject()
+                .endObject()
+                .detail("after", "x")
+                .detail("none", Collections.<String>emptyList())
+                .end();
+
+        JSONObject details = new JSONObject(decode(json).getDetailsJson());
+        JSONObject counts = details.getJSONObject("counts");
+        assertEquals(3L, counts.getLong("windowSwitch"));
+        JSONArray titles = counts.getJSONArray("titles");
+        assertEquals(3, titles.length());
+        assertEquals("a", titles.getString(0));
+        assertTrue(titles.isNull(1));
+        assertEquals("b\tc", titles.getString(2));
+        assertEquals(0, counts.getJSONObject("empty").length());
+        assertEquals("x", details.getString("after"));
+        assertEquals(0, details.getJSONArray("none").length());
+    }
+
+    @Test
+    public void writesNonFiniteNumbersAsNull() {
+        String json = encoder.begin(3L, Activity.CLIENT_TELEMETRY, Status.INFO)
+                .detail("nan", Double.NaN)
+                .detail("infinity", Double.POSITIVE_INFINITY)
+                .end();
+        JSONObject details = new JSONObject(decode(json).getDetailsJson());
+        assertTrue(details.isNull("nan"));
+        assertTrue(details.isNull("infinity"));
+    }
+
+    @Test
+    public void startsAfreshForEachEvent() {
+        encoder.begin(4L, Activity.TAB_SWITCH, Status.INFO).detail("left", "over");
+        String json = encoder.begin(5L, Activity.TAB_SWITCH, Status.OK).detail("fresh", true).end();
+        assertEquals("{\"timestamp\":5,\"activity\":\"tabSwitch\",\"status\":\"ok\",\"details\":{\"fresh\":true}}", json);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownActivity() {
+        encoder.begin(Activity.UNKNOWN, Status.INFO);
+    }
+
+    @Test
+    public void rejectsUnbalancedNesting() {
+        encoder.begin(6L, Activity.TAB_SWITCH, Status.INFO).beginArray("open");
+        expectIllegalState(encoder::end);
+        expectIllegalState(() -> encoder.detail("key", "in an array"));
+        expectIllegalState(encoder::endObject);
+
+        encoder.begin(6L, Activity.TAB_SWITCH, Status.INFO);
+        expectIllegalState(encoder::endArray);
+        expectIllegalState(() -> encoder.element("outside an array"));
+
+        encoder.begin(6L, Activity.TAB_SWITCH, Status.INFO);
+        for (int i = 0; i < 7; i++) {
+            encoder.beginObject("level" + i);
+        }
+        expectIllegalState(() -> encoder.beginObject("too deep"));
+    }
+
+    private static void expectIllegalState(Runnable action) {
+        try {
+            action.run();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,96 @@
+"""
+Offline benchmark for the face detection pipeline.
+
+Replays recorded video files through FaceDetector in several configurations and reports
+throughput (frames/sec of detection work) and CPU time per frame, so changes to the detector
+can be measured on a machine without a webcam.
+
+Usage:
+    python benchmark.py recording.mp4 [more.mp4 ...] [--max-frames 600] [--width 320]
+                        [--full-scan-interval 10] [--modes full,downscale,tracking]
+"""
+import argparse
+import sys
+import time
+
+import cv2
+
+from modules.face_detector import FaceDetector
+
+# name -> (detection_width, full_scan_interval); None values are filled in from the command line.
+MODES = {
+    "full": (None, 1),          # original behaviour: full resolution, full scan every frame
+    "downscale": ("width", 1),  # downscaled, full scan every frame
+    "tracking": ("width", "interval"),  # downscaled, ROI tracking between full scans
+}
+
+def load_frames(paths, max_frames):
+    """
+    Decodes the videos up front so that decoding cost is not counted against the detector.
+    """
+    frames = []
+    for path in paths:
+        cap = cv2.VideoCapture(path)
+        if not cap.isOpened():
+            print(f"Could not open {path}", file=sys.stderr)
+            continue
+        while len(frames) < max_frames:
+            success, frame = cap.read()
+            if not success:
+                break
+            frames.append(frame)
+        cap.release()
+    return frames
+
+def run_mode(frames, detection_width, full_scan_interval):
+    detector = FaceDetector(detection_width=detection_width, full_scan_interval=full_scan_interval)
+    counts = []
+    wall_start = time.perf_counter()
+    cpu_start = time.process_time()
+    for frame in frames:
+        counts.append(len(detector.get_face_rectangles(frame)))
+    cpu = time.process_time() - cpu_start
+    wall = time.perf_counter() - wall_start
+    return wall, cpu, counts
+
+def main():
+    parser = argparse.ArgumentParser(description="Replay videos through the face detector and report fps and CPU per frame.")
+    parser.add_argument("videos", nargs="+", help="Recorded video files to replay")
+    parser.add_argument("--max-frames", type=int, default=600, help="Maximum frames to replay across all videos")
+    parser.add_argument("--width", type=int, default=320, help="Detection width for the downscaled modes")
+    parser.add_argument("--full-scan-interval", type=int, default=10, help="Frames between full scans in tracking mode")
+    parser.add_argument("--modes", default=",".join(MODES), help="Comma-separated modes to run: " + ", ".join(MODES))
+    args = parser.parse_args()
+
+    # OpenCV's own thread pool would blur per-frame CPU numbers; the agent's cost is what we want.
+    cv2.setNumThreads(1)
+
+    frames = load_frames(args.videos, args.max_frames)
+    if not frames:
+        print("No frames could be read.", file=sys.stderr)
+        return 1
+    height, width = frames[0].shape[:2]
+    print(f"Replaying {len(frames)} frames ({width}x{height})")
+    print(f"{'mode':<10} {'fps':>9} {'cpu ms/frame':>13} {'mean faces':>11} {'agree %':>8}")
+
+    baseline = None
+    for name in args.modes.split(","):
+        name = name.strip()
+        if name not in MODES:
+            print(f"Unknown mode {name!r}", file=sys.stderr)
+            return 1
+        detection_width, interval = MODES[name]
+        detection_width = args.width if detection_width == "width" else detection_width
+        interval = args.full_scan_interval if interval == "interval" else interval
+
+        wall, cpu, counts = run_mode(frames, detection_width, interval)
+        if baseline is None:
+            baseline = counts
+        # How often this mode reports the same face count as the first mode run.
+        agreement = 100.0 * sum(1 for a, b in zip(counts, baseline) if a == b) / len(counts)
+        print(f"{name:<10} {len(frames) / wall:>9.1f} {1000.0 * cpu / len(frames):>13.2f} "
+              f"{sum(counts) / len(counts):>11.2f} {agreement:>8.1f}")
+    return 0
+
+if __name__ == "__main__":
+    sys.exit(main())
@@ -1,9 +1,43 @@
 import cv2
+import os
 import sys
 import json
 import time
+import struct
+import threading
 from modules.face_detector import FaceDetector
 from modules.screen_capture import CameraFrameCapture
+from modules.frame_grabber import LatestFrameGrabber
+from modules.frame_dedup import FrameDeduplicator, dhash
+from modules import protocol
+
+# Framed binary IPC (see AgentFrameReader on the Java side):
+#   frame := length:uint32 body, body := type:uint8 payload
+#   EVENT (1): UTF-8 JSON, JPEG_FRAME (2): headerLength:uint16 header-JSON jpeg-bytes
+# The Java client sets PROCTOR_IPC=framed; when run by hand the agent prints plain JSON lines.
+FRAMED_IPC = os.environ.get("PROCTOR_IPC") == "framed"
+_stdout_lock = threading.Lock()
+
+def _write_frame(frame_type, *parts):
+    """
+    Writes one length-prefixed frame to stdout. The parts are written back to back so the JPEG
+    buffer never has to be concatenated into a new bytes object.
+    """
+    length = 1 + sum(len(part) for part in parts)
+    with _stdout_lock:
+        out = sys.stdout.buffer
+        out.write(struct.pack(">IB", length, frame_type))
+        for part in parts:
+            out.write(part)
+        out.flush()
+
+def _build_event(activity, status, details):
+    return {
+        protocol.TIMESTAMP: int(time.time() * 1000),
+        protocol.ACTIVITY: activity,
+        protocol.STATUS: status,
+        protocol.DETAILS: details
+    }
 
 def create_event(activity, status, details):
     """
@@ -11,18 +45,33 @@ def create_event(activity, status, details):
     Includes robust error handling for broken communication pipes.
     """
     try:
-        event = {
-            "timestamp": int(time.time() * 1000),
-            "activity": activity,
-            "status": status,
-            "details": details
-        }
-        print(json.dumps(event))
-        sys.stdout.flush()
+        event = _build_event(activity, status, details)
+        if FRAMED_IPC:
+            _write_frame(protocol.FRAME_EVENT, json.dumps(event).encode("utf-8"))
+        else:
+            with _stdout_lock:
+                print(json.dumps(event))
+                sys.stdout.flush()
     except (OSError, BrokenPipeError):
         # THE FIX: If the pipe is broken, exit the script cleanly.
         sys.exit(0)
 
+def send_camera_frame(jpeg_buffer, details):
+    """
+    Sends a JPEG camera frame. In framed mode the raw JPEG bytes follow a small JSON header;
+    otherwise the frame falls back to a base64 'data' field inside a regular event.
+    """
+    try:
+        if FRAMED_IPC:
+            header = json.dumps(_build_event(protocol.FRAME_CAPTURE, protocol.STATUS_INFO, details)).encode("utf-8")
+            _write_frame(protocol.FRAME_JPEG, struct.pack(">H", len(header)), header, memoryview(jpeg_buffer))
+        else:
+            data = dict(details)
+            data["data"] = CameraFrameCapture.to_base64(jpeg_buffer)
+            create_event(protocol.FRAME_CAPTURE, protocol.STATUS_INFO, data)
+    except (OSError, BrokenPipeError):
+        sys.exit(0)
+
 def debug_print(message):
     """
     Helper function to print debug messages to stderr.
@@ -35,43 +84,71 @@ def debug_print(message):
         # THE FIX: If the pipe is broken, exit the script cleanly.
         sys.exit(0)
 
+def env_number(name, default, cast=float):
+    """
+    Reads a numeric tuning knob from the environment, falling back to the default if unset or invalid.
+    """
+    try:
+        return cast(os.environ.get(name, default))
+    except ValueError:
+        debug_print(f"Ignoring invalid {name}={os.environ.get(name)!r}")
+        return default
+
 def main():
     """
     Main function for the proctoring vision agent. This version includes enhanced
     resilience and internal debugging to ensure stable operation.
     """
     cap = None  # Initialize cap to None for the finally block
+    grabber = None
     try:
         # Initialize the camera.
         cap = cv2.VideoCapture(0)
         if not cap.isOpened():
-            create_event("agent_status", "error", {"message": "Could not open webcam. Check camera permissions and connections."})
+            create_event(protocol.AGENT_STATUS, protocol.STATUS_ERROR, {protocol.MESSAGE: "Could not open webcam. Check camera permissions and connections."})
             return
 
+        # Configuration (detection tuning can be overridden through the environment)
+        # A frame is sampled every FRAME_CAPTURE_INTERVAL seconds but only uploaded if it differs from the
+        # last one sent by more than FRAME_HASH_THRESHOLD bits of its 64-bit dHash, or FRAME_REFRESH_INTERVAL
+        # seconds have passed. A confirmed face-count change sends a frame at once, at most one per FACE_CHANGE_FRAME_GAP.
+        FRAME_CAPTURE_INTERVAL = env_number("PROCTOR_FRAME_INTERVAL", 60)
+        FRAME_REFRESH_INTERVAL = env_number("PROCTOR_FRAME_REFRESH_INTERVAL", 300)
+        FRAME_HASH_THRESHOLD = env_number("PROCTOR_FRAME_HASH_THRESHOLD", 6, int)
+        FACE_CHANGE_FRAME_GAP = env_number("PROCTOR_FACE_CHANGE_FRAME_GAP", 5)
+        TARGET_FPS = max(0.1, env_number("PROCTOR_TARGET_FPS", 2.0))
+        DETECTION_WIDTH = env_number("PROCTOR_DETECTION_WIDTH", 320, int)
+        FULL_SCAN_INTERVAL = env_number("PROCTOR_FULL_SCAN_INTERVAL", 10, int)
+        # A face-count change must hold for ~1.5 seconds (3 frames at the default 2 fps) before it is reported.
+        CONFIRMATION_THRESHOLD = max(3, round(1.5 * TARGET_FPS))
+
         # Initialize monitoring modules.
-        face_detector = FaceDetector()
+        face_detector = FaceDetector(detection_width=DETECTION_WIDTH or None,
+                                     full_scan_interval=FULL_SCAN_INTERVAL)
+        grabber = LatestFrameGrabber(cap).start()
         frame_capture = CameraFrameCapture()
+        frame_filter = FrameDeduplicator(threshold=FRAME_HASH_THRESHOLD, refresh_interval=FRAME_REFRESH_INTERVAL)
         
         # State tracking variables
         last_confirmed_face_count = -1
         pending_face_count = -1
         change_confirm_frames = 0
-        last_frame_capture_time = 0
-        
-        # Configuration
-        FRAME_CAPTURE_INTERVAL = 60
-        CONFIRMATION_THRESHOLD = 3
+        last_frame_capture_time = -FRAME_CAPTURE_INTERVAL
+        face_change_pending = False
+        last_face_change_frame_time = -FACE_CHANGE_FRAME_GAP
 
-        create_event("agent_status", "ok", {"message": "Python agent started successfully."})
-        debug_print("Main monitoring loop started.")
+        create_event(protocol.AGENT_STATUS, protocol.STATUS_OK, {protocol.MESSAGE: "Python agent started successfully."})
+        debug_print(f"Main monitoring loop started (target {TARGET_FPS} fps, detection width {DETECTION_WIDTH}).")
 
+        frame_period = 1.0 / TARGET_FPS
+        next_frame_at = time.monotonic()
         while True:
             # Robustness Check: Ensure camera is still connected on each loop.
-            if not cap.isOpened():
-                create_event("agent_status", "error", {"message": "Webcam connection was lost."})
+            if not cap.isOpened() or not grabber.is_alive():
+                create_event(protocol.AGENT_STATUS, protocol.STATUS_ERROR, {protocol.MESSAGE: "Webcam connection was lost."})
                 break
 
-            success, frame = cap.read()
+            success, frame = grabber.read()
             if not success:
                 time.sleep(0.5)
                 continue
@@ -100,43 +177,70 @@ def main():
                 debug_print(f"State change confirmed: {last_confirmed_face_count} -> {current_face_count} faces. Sending event.")
                 details = {"faceCount": current_face_count}
                 if current_face_count > 1:
-                    status = "violation"
-                    details["message"] = "Multiple faces detected."
+                    status = protocol.STATUS_VIOLATION
+                    details[protocol.MESSAGE] = "Multiple faces detected."
                 elif current_face_count == 0:
-                    status = "suspicious"
-                    details["message"] = "No face detected."
+                    status = protocol.STATUS_SUSPICIOUS
+                    details[protocol.MESSAGE] = "No face detected."
                 else:
-                    status = "ok"
-                    details["message"] = "Single face detected."
+                    status = protocol.STATUS_OK
+                    details[protocol.MESSAGE] = "Single face detected."
                 
-                create_event("faceDetection", status, details)
+                create_event(protocol.FACE_DETECTION, status, details)
+                face_change_pending = True
                 
                 last_confirmed_face_count = current_face_count
                 pending_face_count = -1
                 change_confirm_frames = 0
 
-            # --- Periodic Camera Frame Capture ---
-            current_time = time.time()
-            if current_time - last_frame_capture_time > FRAME_CAPTURE_INTERVAL:
-                debug_print("Capturing periodic camera frame.")
-                base64_frame = frame_capture.get_base64_frame(frame)
-                if base64_frame:
-                    create_event("frameCapture", "info", {"format": "jpeg", "data": base64_frame})
-                    last_frame_capture_time = current_time
+            # --- Periodic Camera Frame Capture, skipping near-duplicates ---
+            current_time = time.monotonic()
+            forced_reason = None
+            if face_change_pending and current_time - last_face_change_frame_time >= FACE_CHANGE_FRAME_GAP:
+                forced_reason = "faceCountChanged"
+                face_change_pending = False
+                last_face_change_frame_time = current_time
+            if forced_reason or current_time - last_frame_capture_time >= FRAME_CAPTURE_INTERVAL:
+                last_frame_capture_time = current_time
+                frame_hash = dhash(frame)
+                reason = frame_filter.decide(frame_hash, current_time, forced_reason)
+                if reason is None:
+                    debug_print(f"Skipping camera frame, {frame_filter.last_distance} bits from the last one sent.")
+                else:
+                    jpeg_buffer = frame_capture.get_jpeg_frame(frame)
+                    if jpeg_buffer is not None:
+                        debug_print(f"Sending camera frame ({reason}).")
+                        details = {
+                            "format": "jpeg",
+                            "reason": reason,
+                            "dhash": f"{frame_hash:016x}",
+                            "skippedFrames": frame_filter.take_skipped(),
+                        }
+                        if last_confirmed_face_count >= 0:
+                            details["faceCount"] = last_confirmed_face_count
+                        send_camera_frame(jpeg_buffer, details)
 
-            time.sleep(0.5) # Loop roughly twice per second.
+            # Pace detection to the target rate; if detection ran long, start the next one right away.
+            next_frame_at += frame_period
+            delay = next_frame_at - time.monotonic()
+            if delay > 0:
+                time.sleep(delay)
+            else:
+                next_frame_at = time.monotonic()
 
     except Exception as e:
         # Catch any unexpected top-level errors and report them.
-        create_event("agent_status", "error", {"message": f"A critical error occurred in the Python agent: {str(e)}"})
+        create_event(protocol.AGENT_STATUS, protocol.STATUS_ERROR, {protocol.MESSAGE: f"A critical error occurred in the Python agent: {str(e)}"})
         debug_print(f"CRITICAL ERROR: {e}")
     finally:
         # Ensure resources are always cleaned up.
         debug_print("Shutdown sequence initiated.")
+        if grabber:
+            grabber.stop()
         if cap and cap.isOpened():
             cap.release()
         # Send one final shutdown message.
-        create_event("agent_status", "shutdown", {"message": "Python agent is shutting down."})
+        create_event(protocol.AGENT_STATUS, protocol.STATUS_SHUTDOWN, {protocol.MESSAGE: "Python agent is shutting down."})
 
 if __name__ == "__main__":
     main()
@@ -0,0 +1,79 @@
+import cv2
+
+# dHash compares each pixel of a (HASH_SIZE+1) x HASH_SIZE thumbnail with its right neighbour: 64 bits.
+HASH_SIZE = 8
+
+def dhash(image):
+    """
+    Computes the difference hash of a camera frame. The frame is reduced to a 9x8 grayscale
+    thumbnail, which averages away sensor noise and JPEG-level detail, and each bit records whether
+    brightness rises from one pixel to the next. Frames that look the same to a person differ in
+    only a few bits; a student moving, leaving or being joined by someone changes many.
+
+    Returns:
+        The hash as a 64-bit int.
+    """
+    gray = cv2.cvtColor(image, cv2.COLOR_BGR2GRAY) if image.ndim == 3 else image
+    small = cv2.resize(gray, (HASH_SIZE + 1, HASH_SIZE), interpolation=cv2.INTER_AREA)
+    value = 0
+    for bit in (small[:, 1:] > small[:, :-1]).flatten():
+        value = (value << 1) | int(bit)
+    return value
+
+def hamming_distance(a, b):
+    """
+    The number of bits in which two hashes differ.
+    """
+    return bin(a ^ b).count("1")
+
+class FrameDeduplicator:
+    """
+    Decides which sampled camera frames are worth uploading. A frame within `threshold` bits of the
+    last frame sent is a near-duplicate and skipped, unless `refresh_interval` seconds have passed
+    since the last upload, so the server still gets a current picture of a student who sits still.
+    A caller may force a frame, e.g. when the number of faces changed.
+    """
+
+    def __init__(self, threshold=6, refresh_interval=300):
+        self.threshold = threshold
+        self.refresh_interval = refresh_interval
+        self._last_hash = None
+        self._last_sent_at = None
+        self.skipped = 0
+        self.last_distance = None
+
+    def decide(self, frame_hash, now, forced_reason=None):
+        """
+        Args:
+            frame_hash: The dhash of the sampled frame.
+            now: The current time in seconds, from a monotonic clock.
+            forced_reason: Sends the frame regardless of its hash, giving this as the reason.
+
+        Returns:
+            Why the frame should be sent ("first", "changed", "refresh" or the forced reason), or
+            None to skip it. A returned reason records the frame as sent.
+        """
+        if self._last_hash is None:
+            reason = forced_reason or "first"
+            self.last_distance = None
+        else:
+            self.last_distance = hamming_distance(frame_hash, self._last_hash)
+            if forced_reason:
+                reason = forced_reason
+            elif self.last_distance > self.threshold:
+                reason = "changed"
+            elif now - self._last_sent_at >= self.refresh_interval:
+                reason = "refresh"
+            else:
+                self.skipped += 1
+                return None
+        self._last_hash = frame_hash
+        self._last_sent_at = now
+        return reason
+
+    def take_skipped(self):
+        """
+        Returns the number of frames skipped since the previous call, and resets it.
+        """
+        skipped, self.skipped = self.skipped, 0
+        return skipped
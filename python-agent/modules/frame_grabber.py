@@ -0,0 +1,91 @@
+import threading
+import time
+
+class LatestFrameGrabber:
+    """
+    Decouples camera capture from detection. A background thread keeps draining the camera
+    with cap.grab(), which only pulls the frame off the driver without decoding it, so the
+    camera's internal buffer never fills with stale frames. When the detection loop asks for a
+    frame with read(), the grabber decodes the next grabbed frame (cap.retrieve()) and hands it
+    over. The camera is only ever touched from the grabber thread.
+
+    A failed grab is retried with a growing backoff, since cameras drop single frames (e.g. on USB
+    bandwidth hiccups or while the driver renegotiates exposure). The camera only counts as lost once
+    it is closed, or has not delivered a frame for loss_timeout seconds.
+    """
+
+    INITIAL_BACKOFF = 0.05
+
+    def __init__(self, cap, loss_timeout=5.0, max_backoff=1.0):
+        self._cap = cap
+        self._loss_timeout = loss_timeout
+        self._max_backoff = max_backoff
+        self._condition = threading.Condition()
+        self._requested = False
+        self._frame = None
+        self._sequence = 0
+        self._ok = True
+        self._running = False
+        self._thread = None
+
+    def start(self):
+        self._running = True
+        self._thread = threading.Thread(target=self._run, name="frame-grabber", daemon=True)
+        self._thread.start()
+        return self
+
+    def stop(self):
+        with self._condition:
+            self._running = False
+            self._condition.notify_all()
+        if self._thread is not None:
+            self._thread.join(timeout=2)
+
+    def read(self, timeout=1.0):
+        """
+        Waits for the next frame off the camera.
+
+        Returns:
+            (success, frame). success is False if no frame arrived within the timeout
+            or the camera stopped delivering frames.
+        """
+        with self._condition:
+            if not self._ok or not self._running:
+                return False, None
+            sequence = self._sequence
+            self._requested = True
+            self._condition.wait_for(lambda: self._sequence != sequence or not self._ok or not self._running, timeout)
+            self._requested = False
+            if self._sequence == sequence:
+                return False, None
+            frame, self._frame = self._frame, None
+            return frame is not None, frame
+
+    def is_alive(self):
+        return self._ok and self._thread is not None and self._thread.is_alive()
+
+    def _run(self):
+        last_success = time.monotonic()
+        backoff = self.INITIAL_BACKOFF
+        while self._running:
+            # grab() blocks for roughly one frame period, which paces this loop at the camera's rate.
+            ok = self._cap.grab()
+            frame = None
+            if ok and self._requested:
+                ok, frame = self._cap.retrieve()
+            if ok:
+                last_success = time.monotonic()
+                backoff = self.INITIAL_BACKOFF
+            lost = not ok and (not self._cap.isOpened() or time.monotonic() - last_success >= self._loss_timeout)
+            with self._condition:
+                self._ok = not lost
+                if frame is not None:
+                    self._frame = frame
+                    self._sequence += 1
+                self._condition.notify_all()
+                if lost:
+                    return
+                if not ok:
+                    # Transient failure: wait before retrying, but wake up at once on stop().
+                    self._condition.wait_for(lambda: not self._running, backoff)
+                    backoff = min(backoff * 2, self._max_backoff)
@@ -0,0 +1,28 @@
+"""
+Wire-format constants shared with the Java side. These mirror the proctor-protocol module
+(com.proctor.protocol.Activity, Status, EventFields and MessageTypes); keep the two in step.
+"""
+
+# Activities (Activity enum wire names)
+FACE_DETECTION = "faceDetection"
+FRAME_CAPTURE = "frameCapture"
+AGENT_STATUS = "agent_status"
+
+# Statuses (Status enum wire names)
+STATUS_OK = "ok"
+STATUS_INFO = "info"
+STATUS_SUSPICIOUS = "suspicious"
+STATUS_VIOLATION = "violation"
+STATUS_ERROR = "error"
+STATUS_SHUTDOWN = "shutdown"
+
+# Event fields (EventFields)
+TIMESTAMP = "timestamp"
+ACTIVITY = "activity"
+STATUS = "status"
+DETAILS = "details"
+MESSAGE = "message"
+
+# Agent pipe frame types (MessageTypes.FRAME_*)
+FRAME_EVENT = 1
+FRAME_JPEG = 2
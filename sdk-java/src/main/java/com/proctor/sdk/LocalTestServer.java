@@ -26,6 +26,10 @@ public class LocalTestServer {
             System.out.println("\n[SERVER] ✅ Client connected! Session ID: " + session.getSessionId());
             System.out.println("[SERVER] Ready to receive real-time events. Start performing actions to test.");
 
+            // Sessions can be grouped, e.g. by exam, and messaged as a group.
+            session.joinGroup("local-test-exam");
+            sdk.broadcast("local-test-exam", "Welcome! Your exam session is being monitored.");
+
             session.onActivity(event -> {
                 System.out.println("[SERVER] 🔵 Received Activity: " + event.toString());
             });
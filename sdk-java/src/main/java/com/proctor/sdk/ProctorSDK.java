@@ -1,15 +1,38 @@
 package com.proctor.sdk;
 
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.Status;
+import com.proctor.sdk.cluster.ClusterNode;
+import com.proctor.sdk.cluster.ProctorCluster;
 import com.proctor.sdk.config.ProctorConfig;
+import com.proctor.sdk.replay.ReplayStats;
+import com.proctor.sdk.replay.SessionRecorder;
+import com.proctor.sdk.replay.SessionReplayer;
+import com.proctor.sdk.scheduling.FairScheduler;
 import com.proctor.sdk.session.ProctorSession;
+import com.proctor.sdk.session.ServerMessages;
 import com.proctor.sdk.session.SessionManager;
+import com.proctor.sdk.trace.LatencyTracer;
+import com.proctor.sdk.webhook.WebhookForwarder;
 import com.proctor.sdk.websocket.ProctorWebsocketServer;
+import org.java_websocket.WebSocket;
+import org.json.JSONObject;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * The final, production-ready entry point for the Proctoring SDK for Java.
@@ -18,31 +41,284 @@ import java.util.function.Consumer;
  */
 public class ProctorSDK {
 
+    /** How long sessions restored after a warm restart wait for their clients by default. */
+    public static final long DEFAULT_RESUME_WINDOW_MILLIS = 120000;
+    /** Sessions whose messages are scheduled without being in a group are charged to this tenant. */
+    public static final String DEFAULT_TENANT = "default";
+    private static final long SCHEDULER_DRAIN_SECONDS = 10;
+
     private final ProctorConfig config;
     private final SessionManager sessionManager;
     private final ProctorWebsocketServer server;
     private final List<Consumer<ProctorSession>> newSessionHandlers = new ArrayList<>();
+    private final List<Consumer<ProctorSession>> resumedSessionHandlers = new ArrayList<>();
+    private final List<WebhookForwarder> forwarders = new CopyOnWriteArrayList<>();
+    private SessionRecorder recorder;
+    private Path snapshotFile;
+    private long resumeWindowMillis;
+    private ScheduledExecutorService resumeExpiry;
+    private ProctorCluster cluster;
+    private FairScheduler scheduler;
 
     public ProctorSDK(ProctorConfig config) {
         this.config = config;
-        this.sessionManager = new SessionManager(this::handleNewSession);
+        this.sessionManager = new SessionManager(this::handleNewSession, this::handleResumedSession);
         InetSocketAddress address = new InetSocketAddress(config.getHost(), config.getPort());
-        this.server = new ProctorWebsocketServer(address, this.sessionManager);
+        this.server = new ProctorWebsocketServer(address, this.sessionManager, config.getReadBufferSize());
     }
 
     /**
-     * Starts the internal WebSocket server.
+     * Starts the internal WebSocket server. With {@link #enableWarmRestart warm restart} enabled, the
+     * sessions saved by the previous process are restored first.
      */
     public void start() {
+        if (snapshotFile != null) {
+            restoreSessions();
+        }
+        if (cluster != null) {
+            cluster.start();
+        }
         server.start();
     }
 
     /**
-     * Stops the internal WebSocket server.
+     * Stops the internal WebSocket server. With {@link #enableWarmRestart warm restart} enabled, the
+     * sessions are saved instead of ended: disconnect listeners do not run, and clients reconnect to
+     * the next process and resume. In cluster mode without warm restart, the node leaves the cluster
+     * and its sessions move to the remaining nodes first.
      * @throws InterruptedException if the thread is interrupted while stopping.
      */
     public void stop() throws InterruptedException {
-        server.stop();
+        if (cluster != null && snapshotFile == null) {
+            cluster.leave();
+        }
+        if (snapshotFile != null) {
+            List<ProctorSession> sessions = sessionManager.suspend(server.getConnections());
+            server.stop();
+            // Messages already received are handled first, so the saved counters include them.
+            drainScheduler();
+            try {
+                sessionManager.saveSnapshot(snapshotFile, sessions);
+                System.out.println("Saved " + sessions.size() + " sessions to " + snapshotFile + " for a warm restart.");
+            } catch (IOException e) {
+                System.err.println("ERROR: Could not save the session snapshot: " + e.getMessage());
+            }
+        } else {
+            server.stop();
+            drainScheduler();
+        }
+        if (resumeExpiry != null) {
+            resumeExpiry.shutdownNow();
+        }
+        if (cluster != null) {
+            cluster.close();
+        }
+        try {
+            stopRecording();
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not finish the session recording: " + e.getMessage());
+        }
+        forwarders.forEach(WebhookForwarder::close);
+    }
+
+    private void drainScheduler() throws InterruptedException {
+        if (scheduler != null && !scheduler.close(SCHEDULER_DRAIN_SECONDS, TimeUnit.SECONDS)) {
+            System.err.println("WARNING: Some received messages were not handled before stopping.");
+        }
+    }
+
+    /**
+     * Keeps sessions across a restart of the server, e.g. while deploying a new version mid-exam.
+     * {@link #stop()} saves every session's ID, groups and counters to the snapshot file, and the next
+     * {@link #start()} restores them before accepting connections. Clients reconnect with a random
+     * delay, resume their session where the server left off and re-send the events it missed, so
+     * listeners see neither a disconnect nor a new student. Restored sessions are handed to
+     * {@link #onSessionResumed}, not {@link #onSession}, so per-session listeners can be registered
+     * again; sessions whose client has not come back within the resume window are ended. A snapshot
+     * older than the resume window, or one that cannot be read, is ignored. Call before {@link #start()}.
+     * @param snapshotFile Where the sessions are saved between processes.
+     * @param resumeWindowMillis How long restored sessions wait for their client.
+     */
+    public void enableWarmRestart(Path snapshotFile, long resumeWindowMillis) {
+        if (resumeWindowMillis <= 0) {
+            throw new IllegalArgumentException("Resume window must be positive.");
+        }
+        this.snapshotFile = snapshotFile;
+        this.resumeWindowMillis = resumeWindowMillis;
+    }
+
+    /**
+     * Keeps sessions across a restart, waiting up to two minutes for clients to come back.
+     * @param snapshotFile Where the sessions are saved between processes.
+     * @see #enableWarmRestart(Path, long)
+     */
+    public void enableWarmRestart(Path snapshotFile) {
+        enableWarmRestart(snapshotFile, DEFAULT_RESUME_WINDOW_MILLIS);
+    }
+
+    /**
+     * Runs this server as one node of a cluster that shares the students; see {@link ProctorCluster}.
+     * Clients whose session belongs to another node are redirected to it, and sessions move when
+     * nodes join or leave. The methods of this class still act on this node only; the returned
+     * cluster looks sessions up, broadcasts and counts across all nodes. Call before {@link #start()}.
+     * With {@link #enableWarmRestart warm restart} as well, a stopping node keeps its sessions for its
+     * next start instead of handing them to the other nodes.
+     * @param localNode This node; its client URI must reach this SDK's port.
+     * @param seeds Members to join through, e.g. all nodes of a fixed cluster, or any one running
+     *              node when adding a node. May include {@code localNode}.
+     * @param secret Shared by all nodes, at least 16 bytes; the nodes sign their messages to each
+     *               other with it and ignore anything not signed with it.
+     * @return The cluster, for operations across all nodes.
+     */
+    public ProctorCluster enableCluster(ClusterNode localNode, Collection<ClusterNode> seeds, String secret) {
+        if (cluster != null) {
+            throw new IllegalStateException("Cluster mode is already enabled.");
+        }
+        cluster = new ProctorCluster(this, sessionManager, localNode, seeds, secret);
+        server.setRouter(cluster);
+        return cluster;
+    }
+
+    /**
+     * Asks clients to summarize low-severity events instead of sending each one: violations, errors,
+     * camera frames, agent status and client telemetry still arrive as they happen, while routine
+     * events such as tab switches, clipboard copies and expected face detections arrive as one
+     * 'eventDigest' event per window, with counts, first and last timestamps and the distinct titles
+     * per activity and status. Applies to clients that connect afterwards, so call before
+     * {@link #start()}. See {@link com.proctor.protocol.EventSummary} for the digest format.
+     * @param windowMillis How often each client sends its digest; 0 to receive every event again.
+     */
+    public void enableEventSummaries(long windowMillis) {
+        server.setSummaryWindowMillis(windowMillis);
+    }
+
+    /**
+     * Measures how long events take from detection on the client to the end of the listeners, per
+     * stage: queueing and sending on the client, the network, parsing and the listeners on the
+     * server (see {@link com.proctor.sdk.trace.TraceStage}). Clients that connect afterwards add a
+     * small 'trace' field to every N-th event, which listeners see too, and keep an estimate of their
+     * clock offset with WebSocket pings. Replayed events are recorded as well.
+     * @param sampleEvery N; 1 traces every event.
+     * @return The tracer, whose histograms can be read or printed at any time.
+     */
+    public LatencyTracer enableLatencyTracing(int sampleEvery) {
+        LatencyTracer tracer = new LatencyTracer(sampleEvery);
+        sessionManager.setTracer(tracer);
+        return tracer;
+    }
+
+    /**
+     * @return The latency tracer, or {@code null} unless {@link #enableLatencyTracing(int)} was called.
+     */
+    public LatencyTracer getLatencyTracer() {
+        return sessionManager.getTracer();
+    }
+
+    /**
+     * Handles incoming messages on a pool of threads shared fairly between tenants, instead of on the
+     * WebSocket threads that read them, so one large exam with chatty clients cannot delay the
+     * events of the others. A session's tenant is the group it joined first (see
+     * {@link ProctorSession#getFirstGroup()}), or {@link #DEFAULT_TENANT}. See {@link FairScheduler}
+     * for how the threads are shared; each session's messages are still handled in order. Call
+     * before {@link #start()}.
+     * @param threads The number of threads handling messages.
+     * @param maxInFlightPerTenant How many of them one tenant may use at a time.
+     * @return The scheduler, to set tenant weights on and read per-tenant latencies from.
+     */
+    public FairScheduler enableFairScheduling(int threads, int maxInFlightPerTenant) {
+        return enableFairScheduling(threads, maxInFlightPerTenant, session -> {
+            String group = session.getFirstGroup();
+            return group != null ? group : DEFAULT_TENANT;
+        });
+    }
+
+    /**
+     * Like {@link #enableFairScheduling(int, int)}, with tenants chosen by the application, e.g. the
+     * school an exam group belongs to.
+     * @param tenantOf Gives the tenant of a session; called for every message, so it should be cheap.
+     */
+    public FairScheduler enableFairScheduling(int threads, int maxInFlightPerTenant, Function<ProctorSession, String> tenantOf) {
+        return enableFairScheduling(threads, maxInFlightPerTenant, FairScheduler.DEFAULT_MAX_QUEUED_BYTES_PER_TENANT, tenantOf);
+    }
+
+    /**
+     * Like {@link #enableFairScheduling(int, int, Function)}, with a cap on each tenant's queue.
+     * @param maxQueuedBytesPerTenant How many bytes of messages one tenant may have waiting; past that,
+     *                                the WebSocket thread that read the next message waits, and stops
+     *                                reading its connections, until there is room.
+     */
+    public FairScheduler enableFairScheduling(int threads, int maxInFlightPerTenant, long maxQueuedBytesPerTenant,
+                                              Function<ProctorSession, String> tenantOf) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Fair scheduling is already enabled.");
+        }
+        if (tenantOf == null) {
+            throw new IllegalArgumentException("Tenant function cannot be null.");
+        }
+        scheduler = new FairScheduler(threads, maxInFlightPerTenant, maxQueuedBytesPerTenant);
+        server.setScheduler(scheduler, tenantOf);
+        return scheduler;
+    }
+
+    /**
+     * Forwards the events of every session to the forwarder's webhook endpoints, in the background.
+     * Each event is sent as {@code {"sessionId":"...","event":{...}}}. The forwarder is closed when the
+     * SDK stops.
+     * @param forwarder The forwarder, with its endpoints added.
+     * @param violationsOnly {@code true} to forward only violations, {@code false} for all activity.
+     */
+    public void forwardEvents(WebhookForwarder forwarder, boolean violationsOnly) {
+        forwarders.add(forwarder);
+        BiConsumer<ProctorSession, JSONObject> listener = (session, event) -> forwarder.forward(session.getSessionId(), event);
+        if (violationsOnly) {
+            onViolation(listener);
+        } else {
+            onActivity(listener);
+        }
+    }
+
+    /**
+     * Starts recording everything clients send, with arrival times, to a file that {@link #replay(Path, double)}
+     * or {@link SessionReplayer} can play back. Sessions that are already connected are included from now on.
+     * Replaces any recording in progress.
+     * @param file The recording file to create.
+     * @throws IOException if the file cannot be created.
+     */
+    public synchronized void startRecording(Path file) throws IOException {
+        stopRecording();
+        recorder = new SessionRecorder(file);
+        server.setRecorder(recorder);
+        for (WebSocket connection : server.getConnections()) {
+            ProctorSession session = sessionManager.getSession(connection);
+            if (session != null) {
+                recorder.recordOpen(connection, session.getSessionId());
+            }
+        }
+    }
+
+    /**
+     * Stops the recording in progress, if any, and completes its file.
+     * @throws IOException if the file cannot be completed.
+     */
+    public synchronized void stopRecording() throws IOException {
+        if (recorder != null) {
+            server.setRecorder(null);
+            recorder.close();
+            recorder = null;
+        }
+    }
+
+    /**
+     * Plays a recording back through this SDK's session handlers and listeners, without any network
+     * connection, e.g. to reproduce an incident or profile listeners against real exam traffic.
+     * The server does not need to be started. Runs on the calling thread.
+     * @param file The recording.
+     * @param speed 1 for real time, N for N times faster, or {@link SessionReplayer#MAX_SPEED}.
+     * @return What was replayed and how long it took.
+     * @throws IOException if the recording cannot be read.
+     */
+    public ReplayStats replay(Path file, double speed) throws IOException {
+        return new SessionReplayer(file, sessionManager).replay(speed);
     }
 
     /**
@@ -53,6 +329,122 @@ public class ProctorSDK {
         newSessionHandlers.add(handler);
     }
 
+    /**
+     * Registers a handler to be called for each session that carries on from before a
+     * {@link #enableWarmRestart warm restart}, or moves here from another node of the cluster. These
+     * sessions are not new students and are not handed to {@link #onSession}; they are marked as
+     * {@link ProctorSession#isResumed() resumed} and keep their groups and counters, but per-session
+     * listeners have to be registered again. The handler runs before the student's client reconnects.
+     * @param handler A consumer that accepts the resumed ProctorSession.
+     */
+    public void onSessionResumed(Consumer<ProctorSession> handler) {
+        resumedSessionHandlers.add(handler);
+    }
+
+    /**
+     * Adds a listener that will be called for any event from any session. Unlike
+     * {@link ProctorSession#onActivity}, one registration serves every session, so it costs nothing per
+     * connection; prefer it when the same handling applies to all students.
+     * @param listener The callback, given the session and the event.
+     */
+    public void onActivity(BiConsumer<ProctorSession, JSONObject> listener) {
+        sessionManager.onActivity(listener);
+    }
+
+    /**
+     * Adds a listener that will be called for events of one activity, of any status, from any
+     * session. Only matching events reach it, and events that no listener wants are not parsed.
+     * @param activity The activity, e.g. {@link Activity#CLIPBOARD_COPY}.
+     * @param listener The callback, given the session and the event.
+     */
+    public void onActivity(Activity activity, BiConsumer<ProctorSession, JSONObject> listener) {
+        sessionManager.onActivity(activity, null, listener);
+    }
+
+    /**
+     * Adds a listener that will be called for events of one activity and status from any session.
+     * @param activity The activity, e.g. {@link Activity#PROCESS_STARTED}.
+     * @param status The status, e.g. {@link Status#VIOLATION}; {@code null} for any.
+     * @param listener The callback, given the session and the event.
+     */
+    public void onActivity(Activity activity, Status status, BiConsumer<ProctorSession, JSONObject> listener) {
+        sessionManager.onActivity(activity, status, listener);
+    }
+
+    /**
+     * Adds a listener that will be called for events of one activity, of any status, from any session.
+     * @param activity The activity as sent by the client, e.g. "clipboardCopy".
+     * @param listener The callback, given the session and the event.
+     */
+    public void onActivity(String activity, BiConsumer<ProctorSession, JSONObject> listener) {
+        sessionManager.onActivity(activity, listener);
+    }
+
+    /**
+     * Adds a listener that will be called for events marked as 'violation' from any session.
+     * @param listener The callback, given the session and the event.
+     */
+    public void onViolation(BiConsumer<ProctorSession, JSONObject> listener) {
+        sessionManager.onViolation(listener);
+    }
+
+    /**
+     * Adds a listener that will be called when any session disconnects.
+     * @param listener The callback, given the session.
+     */
+    public void onDisconnect(Consumer<ProctorSession> listener) {
+        sessionManager.onDisconnect(listener);
+    }
+
+    /**
+     * @return The number of connected sessions.
+     */
+    public int getSessionCount() {
+        return sessionManager.getSessionCount();
+    }
+
+    /**
+     * Shows a message to every student in a group, e.g. "5 minutes left".
+     * The message is serialized and framed once and the same frames are written to every member.
+     * @param groupId The group, as joined with {@link ProctorSession#joinGroup(String)}.
+     * @param message The text to show.
+     */
+    public void broadcast(String groupId, String message) {
+        server.broadcast(ServerMessages.notice(message), sessionManager.getGroups().connections(groupId));
+    }
+
+    /**
+     * Shows a message to every connected student.
+     * @param message The text to show.
+     */
+    public void broadcastToAll(String message) {
+        server.broadcast(ServerMessages.notice(message));
+    }
+
+    /**
+     * Tells every client in a group to show a final message and shut down, e.g. when the exam has ended.
+     * @param groupId The group to shut down.
+     * @param message The text to show before the client exits.
+     */
+    public void shutdownGroup(String groupId, String message) {
+        server.broadcast(ServerMessages.shutdown(message), sessionManager.getGroups().connections(groupId));
+    }
+
+    /**
+     * @param groupId The group.
+     * @return The sessions currently in the group, as a live view.
+     */
+    public Collection<ProctorSession> getGroupMembers(String groupId) {
+        return sessionManager.getGroups().members(groupId);
+    }
+
+    /**
+     * @return The IDs of all groups that currently have members, as a live view.
+     */
+    public Set<String> getGroupIds() {
+        return sessionManager.getGroups().groupIds();
+    }
+
     /**
      * (NEW) Returns the map of installer URLs provided during configuration.
      * The developer's backend will expose this data via an API endpoint for their
@@ -70,13 +462,47 @@ public class ProctorSDK {
      * This SDK provides the necessary information via getInstallerLinks().
      */
 
+    private void restoreSessions() {
+        int restored;
+        try {
+            restored = sessionManager.restoreSnapshot(snapshotFile, resumeWindowMillis);
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not restore the session snapshot: " + e.getMessage());
+            return;
+        }
+        if (restored == 0) {
+            return;
+        }
+        System.out.println("Restored " + restored + " sessions; waiting for their clients to resume.");
+        resumeExpiry = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Session-Resume-Expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        resumeExpiry.schedule(() -> {
+            int expired = sessionManager.expireRestoredSessions();
+            if (expired > 0) {
+                System.out.println(expired + " restored sessions were not resumed in time and have ended.");
+            }
+            resumeExpiry.shutdown();
+        }, resumeWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
     private void handleNewSession(ProctorSession session) {
-        for (Consumer<ProctorSession> handler : newSessionHandlers) {
+        runHandlers(newSessionHandlers, "onSession", session);
+    }
+
+    private void handleResumedSession(ProctorSession session) {
+        runHandlers(resumedSessionHandlers, "onSessionResumed", session);
+    }
+
+    private static void runHandlers(List<Consumer<ProctorSession>> handlers, String name, ProctorSession session) {
+        for (Consumer<ProctorSession> handler : handlers) {
             try {
                 handler.accept(session);
             } catch (RuntimeException e) {
                 // Provides a more helpful error message for the developer using the SDK.
-                System.err.println("ERROR: Unhandled exception in developer-provided onSession handler for session " 
+                System.err.println("ERROR: Unhandled exception in developer-provided " + name + " handler for session " 
                     + session.getSessionId() + ": " + e.getMessage());
             }
         }
@@ -0,0 +1,164 @@
+package com.proctor.sdk;
+
+import com.proctor.sdk.config.ProctorConfig;
+import com.proctor.sdk.session.ProctorSession;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures the server heap used per idle client connection.
+ * The SDK runs in this process; the clients run in a child process, so their sockets are not
+ * counted. Each client completes the WebSocket handshake and then stays silent. The harness reports
+ * the retained heap per session after a full GC: without listeners, with three listeners registered
+ * on every session, and with the same three registered once on the SDK.
+ * <pre>
+ *   java -cp sdk-java-jar-with-dependencies.jar com.proctor.sdk.SessionFootprintHarness [connections] [port]
+ * </pre>
+ * Every connection needs one file descriptor in each process, so raise {@code ulimit -n} above the
+ * connection count.
+ */
+public class SessionFootprintHarness {
+
+    private static final String CLIENTS_ARGUMENT = "--clients";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && CLIENTS_ARGUMENT.equals(args[0])) {
+            runClients(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 18100;
+
+        System.out.println("Idle sessions: " + connections + ", heap max " + (Runtime.getRuntime().maxMemory() >> 20) + " MB");
+        // Warm-up, not reported: one-time growth of JDK and library caches would otherwise be charged
+        // to the first scenario's sessions.
+        measure(connections, port, Listeners.NONE);
+        report("no listeners", measure(connections, port + 1, Listeners.NONE));
+        report("per-session listeners", measure(connections, port + 2, Listeners.PER_SESSION));
+        report("shared listeners", measure(connections, port + 3, Listeners.SHARED));
+        System.exit(0);
+    }
+
+    enum Listeners { NONE, PER_SESSION, SHARED }
+
+    private static void report(String scenario, long bytesPerSession) {
+        System.out.printf("%-22s %6d bytes per idle session, %5d MB projected for 100k sessions%n",
+                scenario + ":", bytesPerSession, bytesPerSession * 100_000 >> 20);
+    }
+
+    static long measure(int connections, int port, Listeners listeners) throws Exception {
+        ProctorSDK sdk = new ProctorSDK(new ProctorConfig(port, "localhost", Collections.singletonMap("windows", "unused")));
+        if (listeners == Listeners.PER_SESSION) {
+            // Like most real handlers, these capture their session, so each one is a separate object.
+            sdk.onSession(session -> {
+                session.onActivity(event -> consume(session, event));
+                session.onViolation(event -> consume(session, event));
+                session.onDisconnect(() -> consume(session, null));
+            });
+        } else if (listeners == Listeners.SHARED) {
+            sdk.onActivity(SessionFootprintHarness::consume);
+            sdk.onViolation(SessionFootprintHarness::consume);
+            sdk.onDisconnect(session -> consume(session, null));
+        }
+        sdk.start();
+        Thread.sleep(500);
+        long before = usedHeapAfterGc();
+
+        Process clients = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx256m", "-cp", System.getProperty("java.class.path"),
+                SessionFootprintHarness.class.getName(), CLIENTS_ARGUMENT, Integer.toString(port), Integer.toString(connections))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(clients.getInputStream(), StandardCharsets.UTF_8));
+            String line = reader.readLine();
+            if (!"ready".equals(line)) {
+                throw new IllegalStateException("Clients failed to connect: " + line);
+            }
+            long deadline = System.currentTimeMillis() + 60000;
+            while (sdk.getSessionCount() < connections && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            long after = usedHeapAfterGc();
+            return (after - before) / Math.max(1, sdk.getSessionCount());
+        } finally {
+            clients.destroy();
+            clients.waitFor();
+            // Let the disconnects drain first; stopping closes every remaining connection at once.
+            long deadline = System.currentTimeMillis() + 60000;
+            while (sdk.getSessionCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            sdk.stop();
+        }
+    }
+
+    private static void consume(ProctorSession session, JSONObject event) {
+        // Idle sessions send nothing; the listeners only need to exist.
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(200);
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    /**
+     * Child process: opens the connections, reports "ready", and holds them until the parent exits.
+     */
+    private static void runClients(int port, int connections) throws IOException {
+        List<SocketChannel> channels = new ArrayList<>(connections);
+        ByteBuffer response = ByteBuffer.allocate(1024);
+        for (int i = 0; i < connections; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", port));
+            byte[] key = new byte[16];
+            ThreadLocalRandom.current().nextBytes(key);
+            String request = "GET /footprint-" + i + " HTTP/1.1\r\n"
+                    + "Host: localhost:" + port + "\r\n"
+                    + "Upgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\n"
+                    + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(key) + "\r\n"
+                    + "Sec-WebSocket-Version: 13\r\n\r\n";
+            channel.write(ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII)));
+            response.clear();
+            while (!endsWithBlankLine(response)) {
+                if (channel.read(response) < 0) {
+                    throw new IOException("Server closed connection " + i + " during the handshake");
+                }
+            }
+            channels.add(channel);
+        }
+        System.out.println("ready");
+        System.out.flush();
+        // Hold the connections until the parent destroys this process.
+        while (System.in.read() >= 0) {
+            // Nothing is ever sent on stdin.
+        }
+    }
+
+    private static boolean endsWithBlankLine(ByteBuffer buffer) {
+        int p = buffer.position();
+        return p >= 4 && buffer.get(p - 4) == '\r' && buffer.get(p - 3) == '\n'
+                && buffer.get(p - 2) == '\r' && buffer.get(p - 1) == '\n';
+    }
+}
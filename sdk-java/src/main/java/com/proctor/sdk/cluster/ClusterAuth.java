@@ -0,0 +1,65 @@
+package com.proctor.sdk.cluster;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Authenticates what the nodes of a cluster tell each other with a secret they all share: every
+ * request, every reply and every member list entry carries an HMAC-SHA256 over its content. A host
+ * that can reach the cluster port but does not know the secret can neither make requests nor add
+ * itself as a member. The secret itself is never sent.
+ */
+final class ClusterAuth {
+
+    /** The shortest secret accepted, in bytes. */
+    static final int MIN_SECRET_BYTES = 16;
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+
+    ClusterAuth(String secret) {
+        if (secret == null || secret.getBytes(StandardCharsets.UTF_8).length < MIN_SECRET_BYTES) {
+            throw new IllegalArgumentException("Cluster secret must be at least " + MIN_SECRET_BYTES + " bytes.");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    /**
+     * @param parts The content to authenticate; joined with newlines, so parts must not contain one
+     *              unless it is the last.
+     * @return The MAC as hex.
+     */
+    String sign(Object... parts) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                text.append('\n');
+            }
+            text.append(parts[i]);
+        }
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            byte[] digest = mac.doFinal(text.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available.", e);
+        }
+    }
+
+    /**
+     * @return {@code true} if the MAC matches the content; compared in constant time.
+     */
+    boolean verify(String mac, Object... parts) {
+        return mac != null && MessageDigest.isEqual(mac.getBytes(StandardCharsets.US_ASCII),
+                sign(parts).getBytes(StandardCharsets.US_ASCII));
+    }
+}
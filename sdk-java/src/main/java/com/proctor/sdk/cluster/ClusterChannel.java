@@ -0,0 +1,260 @@
+package com.proctor.sdk.cluster;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Request/reply messaging between the nodes of a cluster, over WebSocket connections separate from
+ * the students' ones. Each node listens on its cluster address and keeps one connection to every node
+ * it sends requests to, opened on first use and again after it drops; replies come back on the same
+ * connection. Requests and replies are JSON, with the body carried as text so that the MAC covers
+ * exactly the bytes that were signed:
+ * <pre>
+ *   request := {"id": n, "from": "node", "ts": millis, "body": "{...}", "mac": "..."}
+ *   reply   := {"re": n, "body": "{...}", "mac": "..."}  |  {"re": n, "error": "...", "mac": "..."}
+ * </pre>
+ * The MAC is an HMAC-SHA256 with the cluster secret. A request with a wrong MAC, a timestamp more
+ * than {@link #MAX_CLOCK_SKEW_MILLIS} away from this node's clock or a MAC already seen in that time
+ * closes the connection unanswered; a reply with a wrong MAC is ignored. Requests are handled on the receiving node's WebSocket threads, so handlers must not wait for
+ * other requests.
+ */
+final class ClusterChannel {
+
+    /** How far a request's timestamp may be from the receiving node's clock. */
+    static final long MAX_CLOCK_SKEW_MILLIS = 30_000;
+
+    private final String localNodeId;
+    private final ClusterAuth auth;
+    private final Function<JSONObject, JSONObject> handler;
+    private final long timeoutMillis;
+    private final Server server;
+    private final Map<String, PeerLink> links = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    /** The MACs of the requests received within the allowed clock skew, by timestamp, against replays. */
+    private final Map<String, Long> recentMacs = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * @param auth Signs and checks requests and replies with the cluster secret.
+     * @param handler Answers a request body from another node with a reply body; an exception is
+     *                sent back as an error.
+     * @param timeoutMillis How long a request waits for its reply.
+     */
+    ClusterChannel(ClusterNode localNode, ClusterAuth auth, Function<JSONObject, JSONObject> handler, long timeoutMillis) {
+        this.localNodeId = localNode.getNodeId();
+        this.auth = auth;
+        this.handler = handler;
+        this.timeoutMillis = timeoutMillis;
+        this.server = new Server(localNode.getClusterAddress());
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() throws InterruptedException {
+        closed = true;
+        for (PeerLink link : links.values()) {
+            link.close();
+        }
+        server.stop();
+    }
+
+    /**
+     * Sends a request to another node.
+     * @return The reply body; completes exceptionally if the node cannot be reached, does not reply
+     *         in time or answers with an error.
+     */
+    CompletableFuture<JSONObject> request(ClusterNode node, JSONObject body) {
+        CompletableFuture<JSONObject> reply = new CompletableFuture<>();
+        if (closed) {
+            reply.completeExceptionally(new IOException("The cluster channel is closed."));
+            return reply;
+        }
+        long id = nextId.incrementAndGet();
+        PeerLink link = links.computeIfAbsent(node.getNodeId(), nodeId -> connect(node));
+        link.pending.put(id, reply);
+        long timestamp = System.currentTimeMillis();
+        String bodyText = body.toString();
+        String text = new JSONObject().put("id", id).put("from", localNodeId).put("ts", timestamp).put("body", bodyText)
+                .put("mac", auth.sign("request", id, localNodeId, timestamp, bodyText)).toString();
+        link.opened.whenComplete((ignored, error) -> {
+            if (error != null) {
+                reply.completeExceptionally(error);
+                return;
+            }
+            try {
+                link.send(text);
+            } catch (WebsocketNotConnectedException e) {
+                reply.completeExceptionally(new IOException("Lost the connection to node " + node.getNodeId() + "."));
+            }
+        });
+        reply.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((result, error) -> link.pending.remove(id));
+        return reply;
+    }
+
+    private PeerLink connect(ClusterNode node) {
+        InetSocketAddress address = node.getClusterAddress();
+        PeerLink link = new PeerLink(node.getNodeId(),
+                URI.create("ws://" + address.getHostString() + ":" + address.getPort() + "/" + localNodeId));
+        link.connect();
+        return link;
+    }
+
+    /**
+     * @return {@code true} if the request is signed with the cluster secret, recent and not a replay.
+     */
+    private boolean authentic(JSONObject request) {
+        long timestamp = request.getLong("ts");
+        long now = System.currentTimeMillis();
+        if (Math.abs(now - timestamp) > MAX_CLOCK_SKEW_MILLIS) {
+            return false;
+        }
+        String mac = request.getString("mac");
+        if (!auth.verify(mac, "request", request.getLong("id"), request.getString("from"), timestamp, request.getString("body"))) {
+            return false;
+        }
+        recentMacs.values().removeIf(seen -> now - seen > 2 * MAX_CLOCK_SKEW_MILLIS);
+        return recentMacs.putIfAbsent(mac, timestamp) == null;
+    }
+
+    private JSONObject reply(JSONObject request) {
+        long id = request.getLong("id");
+        JSONObject reply = new JSONObject().put("re", id);
+        try {
+            String body = handler.apply(new JSONObject(request.getString("body"))).toString();
+            return reply.put("body", body).put("mac", auth.sign("reply", id, body));
+        } catch (RuntimeException e) {
+            String message = e.getMessage() != null ? e.getMessage() : e.toString();
+            return reply.put("error", message).put("mac", auth.sign("error", id, message));
+        }
+    }
+
+    private final class Server extends WebSocketServer {
+
+        Server(InetSocketAddress address) {
+            super(address);
+            setReuseAddr(true);
+        }
+
+        @Override
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        }
+
+        @Override
+        public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, String message) {
+            JSONObject request;
+            try {
+                request = new JSONObject(message);
+                if (!authentic(request)) {
+                    System.err.println("Rejecting unauthenticated cluster request from " + conn.getRemoteSocketAddress() + ".");
+                    conn.close(CloseFrame.POLICY_VALIDATION, "Unauthenticated");
+                    return;
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Dropping malformed cluster request from " + conn.getRemoteSocketAddress() + ": " + e.getMessage());
+                conn.close(CloseFrame.POLICY_VALIDATION, "Malformed");
+                return;
+            }
+            conn.send(reply(request).toString());
+        }
+
+        @Override
+        public void onError(WebSocket conn, Exception ex) {
+            if (conn == null) {
+                System.err.println("Cluster channel error: " + ex.getMessage());
+            }
+        }
+
+        @Override
+        public void onStart() {
+            System.out.println("Cluster channel of node " + localNodeId + " listening on port " + getPort());
+        }
+    }
+
+    /**
+     * The connection to one other node, for the requests this node sends it.
+     */
+    private final class PeerLink extends WebSocketClient {
+
+        final String nodeId;
+        final CompletableFuture<Void> opened = new CompletableFuture<>();
+        final Map<Long, CompletableFuture<JSONObject>> pending = new ConcurrentHashMap<>();
+
+        PeerLink(String nodeId, URI uri) {
+            super(uri);
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            opened.complete(null);
+        }
+
+        @Override
+        public void onMessage(String message) {
+            JSONObject reply;
+            long id;
+            boolean error;
+            String content;
+            try {
+                reply = new JSONObject(message);
+                id = reply.getLong("re");
+                error = reply.has("error");
+                content = error ? reply.getString("error") : reply.getString("body");
+            } catch (RuntimeException e) {
+                System.err.println("Dropping malformed cluster reply from node " + nodeId + ": " + e.getMessage());
+                return;
+            }
+            if (!auth.verify(reply.optString("mac", null), error ? "error" : "reply", id, content)) {
+                System.err.println("Ignoring unauthenticated cluster reply from node " + nodeId + ".");
+                return;
+            }
+            CompletableFuture<JSONObject> future = pending.remove(id);
+            if (future == null) {
+                return;
+            }
+            if (error) {
+                future.completeExceptionally(new IOException("Node " + nodeId + ": " + content));
+            } else {
+                future.complete(new JSONObject(content));
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            // The next request opens a new connection.
+            links.remove(nodeId, this);
+            IOException error = new IOException("No connection to node " + nodeId + ".");
+            opened.completeExceptionally(error);
+            for (CompletableFuture<JSONObject> future : pending.values()) {
+                future.completeExceptionally(error);
+            }
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            // Followed by onClose.
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.proctor.sdk.cluster;
+
+import org.json.JSONObject;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+/**
+ * One server of a cluster: the address its students connect to and the address the other servers
+ * reach it on. Nodes are identified by their ID alone.
+ */
+public final class ClusterNode {
+
+    private final String nodeId;
+    private final URI clientUri;
+    private final InetSocketAddress clusterAddress;
+
+    /**
+     * @param nodeId A name that is unique in the cluster and stays the same across restarts.
+     * @param clientUri Where students connect, without a path, e.g. {@code ws://node-1.example.com:8080}.
+     *                  Clients whose session belongs to this node are sent here.
+     * @param clusterAddress Where the other nodes connect to this one. It should only be reachable
+     *                       from the cluster's own network.
+     */
+    public ClusterNode(String nodeId, URI clientUri, InetSocketAddress clusterAddress) {
+        if (nodeId == null || nodeId.trim().isEmpty()) {
+            throw new IllegalArgumentException("Node ID cannot be null or empty.");
+        }
+        if (clientUri == null || clientUri.getHost() == null
+                || !("ws".equals(clientUri.getScheme()) || "wss".equals(clientUri.getScheme()))) {
+            throw new IllegalArgumentException("Client URI must be a ws:// or wss:// address with a host.");
+        }
+        if (clusterAddress == null) {
+            throw new IllegalArgumentException("Cluster address cannot be null.");
+        }
+        this.nodeId = nodeId;
+        this.clientUri = clientUri;
+        this.clusterAddress = clusterAddress;
+    }
+
+    /**
+     * A node on this machine, e.g. to run several nodes side by side while testing.
+     * @param clientPort The port students connect to.
+     * @param clusterPort The port the other nodes connect to.
+     */
+    public static ClusterNode localhost(String nodeId, int clientPort, int clusterPort) {
+        return new ClusterNode(nodeId, URI.create("ws://localhost:" + clientPort), new InetSocketAddress("localhost", clusterPort));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public URI getClientUri() {
+        return clientUri;
+    }
+
+    public InetSocketAddress getClusterAddress() {
+        return clusterAddress;
+    }
+
+    JSONObject toJson() {
+        return new JSONObject()
+                .put("id", nodeId)
+                .put("client", clientUri.toString())
+                .put("host", clusterAddress.getHostString())
+                .put("port", clusterAddress.getPort());
+    }
+
+    static ClusterNode fromJson(JSONObject json) {
+        return new ClusterNode(json.getString("id"), URI.create(json.getString("client")),
+                new InetSocketAddress(json.getString("host"), json.getInt("port")));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ClusterNode && nodeId.equals(((ClusterNode) other).nodeId);
+    }
+
+    @Override
+    public int hashCode() {
+        return nodeId.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return nodeId + " (" + clientUri + ")";
+    }
+}
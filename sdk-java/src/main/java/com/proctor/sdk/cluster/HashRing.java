@@ -0,0 +1,100 @@
+package com.proctor.sdk.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Maps session IDs to nodes by consistent hashing. Every node is placed on a 64-bit ring at a number
+ * of pseudo-random points (virtual nodes); a session belongs to the node at the first point at or
+ * after the session ID's hash. Adding a node therefore only moves the sessions that land on its new
+ * points, about 1/n of them, and the virtual nodes keep the shares even. Immutable; a membership
+ * change builds a new ring.
+ */
+final class HashRing {
+
+    private final long[] points;
+    private final ClusterNode[] owners;
+    private final List<ClusterNode> nodes;
+
+    HashRing(Collection<ClusterNode> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node.");
+        }
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Virtual nodes per node must be positive.");
+        }
+        List<ClusterNode> sorted = new ArrayList<>(nodes);
+        sorted.sort((a, b) -> a.getNodeId().compareTo(b.getNodeId()));
+        this.nodes = Collections.unmodifiableList(sorted);
+
+        int count = sorted.size() * virtualNodes;
+        long[] unsortedPoints = new long[count];
+        for (int n = 0; n < sorted.size(); n++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                unsortedPoints[n * virtualNodes + v] = hash(sorted.get(n).getNodeId() + "#" + v);
+            }
+        }
+        // Sort the points, keeping track of which node each one belongs to.
+        Integer[] indexes = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = i;
+        }
+        Arrays.sort(indexes, (a, b) -> Long.compareUnsigned(unsortedPoints[a], unsortedPoints[b]));
+        this.points = new long[count];
+        this.owners = new ClusterNode[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = unsortedPoints[indexes[i]];
+            owners[i] = sorted.get(indexes[i] / virtualNodes);
+        }
+    }
+
+    /**
+     * @return The node that owns the key.
+     */
+    ClusterNode ownerOf(String key) {
+        long hash = hash(key);
+        int low = 0;
+        int high = points.length - 1;
+        // The first point at or after the hash, wrapping around to the start of the ring.
+        if (Long.compareUnsigned(hash, points[high]) > 0) {
+            return owners[0];
+        }
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(points[mid], hash) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return owners[low];
+    }
+
+    /**
+     * @return The nodes on the ring, ordered by ID.
+     */
+    List<ClusterNode> nodes() {
+        return nodes;
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters, followed by the MurmurHash3 finalizer so that similar keys,
+     * such as numbered session IDs, spread over the whole ring.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
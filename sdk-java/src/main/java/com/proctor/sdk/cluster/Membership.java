@@ -0,0 +1,127 @@
+package com.proctor.sdk.cluster;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cluster's member list as this node knows it. Nodes exchange their lists and merge them, so a
+ * node that joins through any one member is soon known to all. Each entry carries the incarnation
+ * of the node, the time it started, and whether it is leaving: of two entries for the same node the
+ * later incarnation wins, and within one incarnation leaving wins. Merging is therefore order
+ * independent and every node ends up with the same list. A node that restarts joins again with a
+ * new incarnation. Entries are signed with the cluster secret, and entries received without a valid
+ * signature are dropped, so only nodes that know the secret can join.
+ */
+final class Membership {
+
+    private static final class Member {
+        final ClusterNode node;
+        final long incarnation;
+        final boolean leaving;
+
+        Member(ClusterNode node, long incarnation, boolean leaving) {
+            this.node = node;
+            this.incarnation = incarnation;
+            this.leaving = leaving;
+        }
+
+        boolean supersedes(Member other) {
+            return incarnation != other.incarnation ? incarnation > other.incarnation : leaving && !other.leaving;
+        }
+    }
+
+    private final Map<String, Member> members = new LinkedHashMap<>();
+    private final ClusterAuth auth;
+
+    Membership(ClusterAuth auth) {
+        this.auth = auth;
+    }
+
+    /**
+     * Adds a node as a member. Seeds are added with incarnation 0, so whatever the node itself
+     * announces replaces them.
+     */
+    synchronized void add(ClusterNode node, long incarnation) {
+        merge(new Member(node, incarnation, false));
+    }
+
+    /**
+     * Marks a node as leaving; it no longer owns any sessions.
+     */
+    synchronized void leave(ClusterNode node) {
+        Member current = members.get(node.getNodeId());
+        merge(new Member(node, current != null ? current.incarnation : 0, true));
+    }
+
+    /**
+     * Merges a member list received from another node.
+     * @return {@code true} if this node's list changed.
+     */
+    synchronized boolean merge(JSONArray list) {
+        boolean changed = false;
+        for (int i = 0; i < list.length(); i++) {
+            JSONObject entry = list.getJSONObject(i);
+            Member member = new Member(ClusterNode.fromJson(entry), entry.getLong("incarnation"), entry.optBoolean("leaving"));
+            if (!auth.verify(entry.optString("sig", null), signed(member))) {
+                System.err.println("Ignoring unsigned member entry for node " + member.node.getNodeId() + ".");
+                continue;
+            }
+            changed |= merge(member);
+        }
+        return changed;
+    }
+
+    private boolean merge(Member member) {
+        Member current = members.get(member.node.getNodeId());
+        if (current != null && !member.supersedes(current)) {
+            return false;
+        }
+        members.put(member.node.getNodeId(), member);
+        return true;
+    }
+
+    /**
+     * @return The nodes that own sessions: every member that is not leaving.
+     */
+    synchronized List<ClusterNode> activeNodes() {
+        List<ClusterNode> nodes = new ArrayList<>();
+        for (Member member : members.values()) {
+            if (!member.leaving) {
+                nodes.add(member.node);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * @return Every member, including leaving ones, which still have to hear about changes.
+     */
+    synchronized List<ClusterNode> allNodes() {
+        List<ClusterNode> nodes = new ArrayList<>();
+        for (Member member : members.values()) {
+            nodes.add(member.node);
+        }
+        return nodes;
+    }
+
+    synchronized JSONArray toJson() {
+        JSONArray list = new JSONArray();
+        for (Member member : members.values()) {
+            list.put(member.node.toJson().put("incarnation", member.incarnation).put("leaving", member.leaving)
+                    .put("sig", auth.sign(signed(member))));
+        }
+        return list;
+    }
+
+    private static Object[] signed(Member member) {
+        InetSocketAddress address = member.node.getClusterAddress();
+        return new Object[]{"member", member.node.getNodeId(), member.node.getClientUri(),
+                address.getHostString(), address.getPort(), member.incarnation, member.leaving};
+    }
+}
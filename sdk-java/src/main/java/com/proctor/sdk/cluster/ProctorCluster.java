@@ -0,0 +1,506 @@
+package com.proctor.sdk.cluster;
+
+import com.proctor.protocol.ClusterRedirect;
+import com.proctor.sdk.ProctorSDK;
+import com.proctor.sdk.session.ProctorSession;
+import com.proctor.sdk.session.SessionManager;
+import com.proctor.sdk.websocket.SessionRouter;
+import org.java_websocket.WebSocket;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Cluster mode: several SDK servers share the students, each owning the sessions that consistent
+ * hashing of the session ID assigns to it. Created by {@link ProctorSDK#enableCluster}.
+ * <p>
+ * A client may connect to any node; a node that does not own the session sends the client to the
+ * owner (see {@link ClusterRedirect}). Operations on one session are carried out by its owner, and
+ * operations on groups or on all students run on every node and combine the results, since the
+ * members of a group are spread over the cluster. The nodes talk over a separate channel on their
+ * cluster addresses.
+ * <p>
+ * A node joins by starting with the address of any existing member; the member lists are merged and
+ * passed on, so every node learns of it. Each node then hands the sessions that now belong to the new
+ * node over to it, with their groups and counters, and redirects their clients, which resume there
+ * as after a warm restart. A node that stops hands its sessions to the remaining nodes the same way.
+ * Nodes that fail without stopping are not detected: their students reconnect once the node is back.
+ */
+public class ProctorCluster implements SessionRouter {
+
+    /** Points per node on the hash ring; more points give a more even share of sessions. */
+    public static final int VIRTUAL_NODES = 128;
+    /** How long a request to another node waits for its reply. */
+    public static final long REQUEST_TIMEOUT_MILLIS = 5000;
+    /** How long a session handed over by another node waits for its client. */
+    public static final long HANDOFF_WINDOW_MILLIS = 60000;
+
+    // Sessions are handed over in batches of this size, one request per batch.
+    private static final int HANDOFF_BATCH_SIZE = 500;
+
+    private static final String OP = "op";
+    private static final String MEMBERS = "members";
+    private static final String ADOPT = "adopt";
+    private static final String FIND = "find";
+    private static final String NOTICE = "notice";
+    private static final String DISCONNECT = "disconnect";
+    private static final String BROADCAST = "broadcast";
+    private static final String COUNT = "count";
+    private static final String GROUP_SIZE = "groupSize";
+    private static final String GROUP_IDS = "groupIds";
+    private static final String GROUP_MEMBERS = "groupMembers";
+
+    private final ProctorSDK sdk;
+    private final SessionManager sessionManager;
+    private final ClusterNode localNode;
+    private final Membership membership;
+    private final ClusterChannel channel;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Cluster-Rebalance");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Sessions sent to another node whose handover has not been answered yet.
+    private final Set<ProctorSession> handingOver = ConcurrentHashMap.newKeySet();
+    private volatile HashRing ring;
+
+    /**
+     * Use {@link ProctorSDK#enableCluster} rather than calling this directly.
+     * @param seeds Other members to join through; any one running member is enough.
+     * @param secret Shared by all members; authenticates their messages to each other.
+     */
+    public ProctorCluster(ProctorSDK sdk, SessionManager sessionManager, ClusterNode localNode, Collection<ClusterNode> seeds,
+                          String secret) {
+        ClusterAuth auth = new ClusterAuth(secret);
+        this.membership = new Membership(auth);
+        this.sdk = sdk;
+        this.sessionManager = sessionManager;
+        this.localNode = localNode;
+        for (ClusterNode seed : seeds) {
+            if (!seed.equals(localNode)) {
+                membership.add(seed, 0);
+            }
+        }
+        membership.add(localNode, System.currentTimeMillis());
+        this.ring = new HashRing(membership.activeNodes(), VIRTUAL_NODES);
+        this.channel = new ClusterChannel(localNode, auth, this::handle, REQUEST_TIMEOUT_MILLIS);
+        sessionManager.enableSessionIndex();
+    }
+
+    /**
+     * Opens the cluster channel and announces this node to the other members.
+     */
+    public void start() {
+        channel.start();
+        announce();
+    }
+
+    /**
+     * Leaves the cluster: this node stops owning sessions, tells the others, and hands its sessions
+     * over to their new owners, waiting up to the request timeout for each step. Clients are
+     * redirected before the server stops, so no disconnect listeners run.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void leave() throws InterruptedException {
+        membership.leave(localNode);
+        if (!updateRing()) {
+            return;
+        }
+        await(CompletableFuture.allOf(announce().toArray(new CompletableFuture[0])));
+        await(rebalance());
+    }
+
+    /**
+     * Closes the cluster channel.
+     * @throws InterruptedException if the thread is interrupted while stopping.
+     */
+    public void close() throws InterruptedException {
+        executor.shutdownNow();
+        channel.stop();
+    }
+
+    public ClusterNode getLocalNode() {
+        return localNode;
+    }
+
+    /**
+     * @return The nodes currently owning sessions, ordered by ID.
+     */
+    public List<ClusterNode> getMembers() {
+        return ring.nodes();
+    }
+
+    /**
+     * @param sessionId The session ID.
+     * @return The node the session belongs to.
+     */
+    public ClusterNode ownerOf(String sessionId) {
+        return ring.ownerOf(sessionId);
+    }
+
+    @Override
+    public URI redirectFor(String sessionId) {
+        ClusterNode owner = ownerOf(sessionId);
+        return owner.equals(localNode) ? null : owner.getClientUri();
+    }
+
+    /**
+     * Looks a session up on its owner.
+     * @return The session's state, or {@code null} if its owner does not have it.
+     */
+    public CompletableFuture<SessionInfo> findSession(String sessionId) {
+        return onOwner(sessionId, request(FIND).put("sessionId", sessionId), reply -> {
+            JSONObject session = reply.optJSONObject("session");
+            return session != null ? SessionInfo.fromJson(session) : null;
+        });
+    }
+
+    /**
+     * Shows a message to one student, wherever the session is.
+     * @return {@code true} if the student is connected and the message was sent.
+     */
+    public CompletableFuture<Boolean> sendNotice(String sessionId, String message) {
+        return onOwner(sessionId, request(NOTICE).put("sessionId", sessionId).put("message", message),
+                reply -> reply.getBoolean("sent"));
+    }
+
+    /**
+     * Closes one student's connection, wherever the session is.
+     * @return {@code true} if the student was connected.
+     */
+    public CompletableFuture<Boolean> disconnect(String sessionId) {
+        return onOwner(sessionId, request(DISCONNECT).put("sessionId", sessionId), reply -> reply.getBoolean("disconnected"));
+    }
+
+    /**
+     * Shows a message to every student in a group, on every node.
+     * @return Completes once every node has sent it; exceptionally if a node could not be reached,
+     *         though the other nodes still send it.
+     */
+    public CompletableFuture<Void> broadcast(String groupId, String message) {
+        return onEveryNode(request(BROADCAST).put("groupId", groupId).put("message", message), replies -> null);
+    }
+
+    /**
+     * Shows a message to every connected student in the cluster.
+     * @see #broadcast(String, String)
+     */
+    public CompletableFuture<Void> broadcastToAll(String message) {
+        return onEveryNode(request(BROADCAST).put("message", message), replies -> null);
+    }
+
+    /**
+     * Tells every client in a group, on every node, to show a final message and shut down.
+     * @see #broadcast(String, String)
+     */
+    public CompletableFuture<Void> shutdownGroup(String groupId, String message) {
+        return onEveryNode(request(BROADCAST).put("groupId", groupId).put("message", message).put("shutdown", true),
+                replies -> null);
+    }
+
+    /**
+     * @return The number of connected sessions in the whole cluster.
+     */
+    public CompletableFuture<Integer> getSessionCount() {
+        return onEveryNode(request(COUNT), replies -> sum(replies, "sessions"));
+    }
+
+    /**
+     * @return The number of sessions in a group, across the cluster.
+     */
+    public CompletableFuture<Integer> getGroupSize(String groupId) {
+        return onEveryNode(request(GROUP_SIZE).put("groupId", groupId), replies -> sum(replies, "size"));
+    }
+
+    /**
+     * @return The IDs of all groups that have members on any node.
+     */
+    public CompletableFuture<Set<String>> getGroupIds() {
+        return onEveryNode(request(GROUP_IDS), replies -> union(replies, "groupIds"));
+    }
+
+    /**
+     * @return The session IDs of a group's members, across the cluster.
+     */
+    public CompletableFuture<Set<String>> getGroupMembers(String groupId) {
+        return onEveryNode(request(GROUP_MEMBERS).put("groupId", groupId), replies -> union(replies, "sessionIds"));
+    }
+
+    private static JSONObject request(String op) {
+        return new JSONObject().put(OP, op);
+    }
+
+    private <T> CompletableFuture<T> onOwner(String sessionId, JSONObject request, Function<JSONObject, T> result) {
+        ClusterNode owner = ownerOf(sessionId);
+        if (owner.equals(localNode)) {
+            try {
+                return CompletableFuture.completedFuture(result.apply(handle(request)));
+            } catch (RuntimeException e) {
+                CompletableFuture<T> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+        return channel.request(owner, request).thenApply(result);
+    }
+
+    private <T> CompletableFuture<T> onEveryNode(JSONObject request, Function<List<JSONObject>, T> combine) {
+        List<CompletableFuture<JSONObject>> replies = new ArrayList<>();
+        for (ClusterNode node : ring.nodes()) {
+            if (node.equals(localNode)) {
+                replies.add(CompletableFuture.supplyAsync(() -> handle(request), Runnable::run));
+            } else {
+                replies.add(channel.request(node, request));
+            }
+        }
+        return CompletableFuture.allOf(replies.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<JSONObject> bodies = new ArrayList<>(replies.size());
+            for (CompletableFuture<JSONObject> reply : replies) {
+                bodies.add(reply.join());
+            }
+            return combine.apply(bodies);
+        });
+    }
+
+    private static int sum(List<JSONObject> replies, String key) {
+        int total = 0;
+        for (JSONObject reply : replies) {
+            total += reply.getInt(key);
+        }
+        return total;
+    }
+
+    private static Set<String> union(List<JSONObject> replies, String key) {
+        Set<String> values = new LinkedHashSet<>();
+        for (JSONObject reply : replies) {
+            JSONArray array = reply.getJSONArray(key);
+            for (int i = 0; i < array.length(); i++) {
+                values.add(array.getString(i));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Carries out a request on this node, from another node or from this one.
+     */
+    private JSONObject handle(JSONObject request) {
+        String op = request.getString(OP);
+        JSONObject reply = new JSONObject();
+        switch (op) {
+            case MEMBERS:
+                if (membership.merge(request.getJSONArray(MEMBERS))) {
+                    membershipChanged();
+                }
+                return reply.put(MEMBERS, membership.toJson());
+            case ADOPT:
+                return reply.put("adopted", adopt(request.getJSONArray("sessions")));
+            case FIND: {
+                String sessionId = request.getString("sessionId");
+                ProctorSession session = sessionManager.findSession(sessionId);
+                if (session == null) {
+                    // Handed over, or restored, and waiting for its client.
+                    session = sessionManager.claimRestored(sessionId);
+                }
+                return session != null ? reply.put("session", SessionInfo.of(session, localNode.getNodeId()).toJson()) : reply;
+            }
+            case NOTICE: {
+                ProctorSession session = sessionManager.findSession(request.getString("sessionId"));
+                boolean sent = session != null && session.isConnected();
+                if (sent) {
+                    session.sendNotice(request.getString("message"));
+                }
+                return reply.put("sent", sent);
+            }
+            case DISCONNECT: {
+                ProctorSession session = sessionManager.findSession(request.getString("sessionId"));
+                boolean connected = session != null && session.isConnected();
+                if (connected) {
+                    session.disconnect();
+                }
+                return reply.put("disconnected", connected);
+            }
+            case BROADCAST: {
+                String groupId = request.optString("groupId", null);
+                String message = request.getString("message");
+                if (groupId == null) {
+                    sdk.broadcastToAll(message);
+                } else if (request.optBoolean("shutdown")) {
+                    sdk.shutdownGroup(groupId, message);
+                } else {
+                    sdk.broadcast(groupId, message);
+                }
+                return reply;
+            }
+            case COUNT:
+                return reply.put("sessions", sdk.getSessionCount());
+            case GROUP_SIZE:
+                return reply.put("size", sessionManager.getGroups().size(request.getString("groupId")));
+            case GROUP_IDS:
+                return reply.put("groupIds", new JSONArray(sdk.getGroupIds()));
+            case GROUP_MEMBERS: {
+                JSONArray sessionIds = new JSONArray();
+                for (ProctorSession session : sdk.getGroupMembers(request.getString("groupId"))) {
+                    sessionIds.put(session.getSessionId());
+                }
+                return reply.put("sessionIds", sessionIds);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown cluster operation " + op);
+        }
+    }
+
+    /**
+     * Passes a change of the member list on to the other members and moves the sessions that now
+     * belong elsewhere.
+     */
+    private void membershipChanged() {
+        announce();
+        if (updateRing()) {
+            executor.execute(this::rebalance);
+        }
+    }
+
+    /**
+     * Rebuilds the ring from the active members.
+     * @return {@code false} if the owners did not change.
+     */
+    private synchronized boolean updateRing() {
+        List<ClusterNode> active = membership.activeNodes();
+        if (active.isEmpty()) {
+            // The last node leaving keeps its sessions.
+            return false;
+        }
+        HashRing updated = new HashRing(active, VIRTUAL_NODES);
+        if (updated.nodes().equals(ring.nodes())) {
+            return false;
+        }
+        ring = updated;
+        System.out.println("Cluster members: " + updated.nodes());
+        return true;
+    }
+
+    /**
+     * Sends this node's member list to every other member and merges their answers.
+     */
+    private List<CompletableFuture<JSONObject>> announce() {
+        List<CompletableFuture<JSONObject>> replies = new ArrayList<>();
+        JSONObject request = request(MEMBERS).put(MEMBERS, membership.toJson());
+        for (ClusterNode node : membership.allNodes()) {
+            if (node.equals(localNode)) {
+                continue;
+            }
+            CompletableFuture<JSONObject> reply = channel.request(node, request);
+            reply.thenAccept(answer -> {
+                if (membership.merge(answer.getJSONArray(MEMBERS))) {
+                    membershipChanged();
+                }
+            });
+            // A member that is not up yet learns of this node when it announces itself.
+            replies.add(reply.exceptionally(error -> null));
+        }
+        return replies;
+    }
+
+    /**
+     * Hands every local session that belongs to another node over to it.
+     * @return Completes once every batch was answered.
+     */
+    private synchronized CompletableFuture<Void> rebalance() {
+        HashRing current = ring;
+        Map<ClusterNode, List<ProctorSession>> moves = new LinkedHashMap<>();
+        for (ProctorSession session : sessionManager.getSessions()) {
+            ClusterNode owner = current.ownerOf(session.getSessionId());
+            if (!owner.equals(localNode) && handingOver.add(session)) {
+                moves.computeIfAbsent(owner, node -> new ArrayList<>()).add(session);
+            }
+        }
+        List<CompletableFuture<Void>> handoffs = new ArrayList<>();
+        for (Map.Entry<ClusterNode, List<ProctorSession>> move : moves.entrySet()) {
+            List<ProctorSession> sessions = move.getValue();
+            System.out.println("Handing " + sessions.size() + " sessions over to node " + move.getKey().getNodeId());
+            for (int from = 0; from < sessions.size(); from += HANDOFF_BATCH_SIZE) {
+                handoffs.add(handOff(move.getKey(), sessions.subList(from, Math.min(from + HANDOFF_BATCH_SIZE, sessions.size()))));
+            }
+        }
+        return CompletableFuture.allOf(handoffs.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Sends a batch of sessions to their new owner and, once it has taken them, redirects their clients.
+     * Events that arrive in between are handled here and sent again by the client, as after a warm restart.
+     */
+    private CompletableFuture<Void> handOff(ClusterNode owner, List<ProctorSession> batch) {
+        JSONArray sessions = new JSONArray();
+        for (ProctorSession session : batch) {
+            sessions.put(new JSONObject()
+                    .put("sessionId", session.getSessionId())
+                    .put("events", session.getEventCount())
+                    .put("violations", session.getViolationCount())
+                    .put("groups", new JSONArray(session.getGroups())));
+        }
+        String target = owner.getClientUri().toString();
+        return channel.request(owner, request(ADOPT).put("sessions", sessions)).handle((reply, error) -> {
+            handingOver.removeAll(batch);
+            if (error != null) {
+                // The sessions stay here until the members change again.
+                System.err.println("Could not hand " + batch.size() + " sessions over to node " + owner.getNodeId() + ": " + error.getMessage());
+                return null;
+            }
+            for (ProctorSession session : batch) {
+                WebSocket connection = sessionManager.handOff(session);
+                if (connection != null) {
+                    connection.close(ClusterRedirect.CLOSE_CODE, target);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Takes over sessions from another node; they wait for their clients for {@link #HANDOFF_WINDOW_MILLIS}.
+     */
+    private int adopt(JSONArray sessions) {
+        List<ProctorSession> adopted = new ArrayList<>(sessions.length());
+        for (int i = 0; i < sessions.length(); i++) {
+            JSONObject entry = sessions.getJSONObject(i);
+            JSONArray groups = entry.getJSONArray("groups");
+            String[] groupIds = new String[groups.length()];
+            for (int g = 0; g < groupIds.length; g++) {
+                groupIds[g] = groups.getString(g);
+            }
+            adopted.add(sessionManager.adoptSession(entry.getString("sessionId"), entry.getLong("events"),
+                    entry.getInt("violations"), groupIds));
+        }
+        executor.schedule(() -> {
+            for (ProctorSession session : adopted) {
+                sessionManager.expireRestoredSession(session);
+            }
+        }, HANDOFF_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        return adopted.size();
+    }
+
+    private static void await(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Cluster: gave up waiting for the other nodes: " + e.getMessage());
+        }
+    }
+}
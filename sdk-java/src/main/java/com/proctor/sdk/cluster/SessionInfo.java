@@ -0,0 +1,91 @@
+package com.proctor.sdk.cluster;
+
+import com.proctor.sdk.session.ProctorSession;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The state of a session on whichever node of the cluster holds it, at the time it was looked up.
+ */
+public class SessionInfo {
+
+    private final String sessionId;
+    private final String nodeId;
+    private final boolean connected;
+    private final long eventCount;
+    private final int violationCount;
+    private final Set<String> groups;
+
+    SessionInfo(String sessionId, String nodeId, boolean connected, long eventCount, int violationCount, Set<String> groups) {
+        this.sessionId = sessionId;
+        this.nodeId = nodeId;
+        this.connected = connected;
+        this.eventCount = eventCount;
+        this.violationCount = violationCount;
+        this.groups = Collections.unmodifiableSet(groups);
+    }
+
+    static SessionInfo of(ProctorSession session, String nodeId) {
+        return new SessionInfo(session.getSessionId(), nodeId, session.isConnected(), session.getEventCount(),
+                session.getViolationCount(), session.getGroups());
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /** @return The node the session is on. */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /** @return {@code true} while the student's client is connected. */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /** @return The number of text events received in the session. */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /** @return The number of violations received in the session. */
+    public int getViolationCount() {
+        return violationCount;
+    }
+
+    /** @return The groups the session is in. */
+    public Set<String> getGroups() {
+        return groups;
+    }
+
+    JSONObject toJson() {
+        return new JSONObject()
+                .put("sessionId", sessionId)
+                .put("node", nodeId)
+                .put("connected", connected)
+                .put("events", eventCount)
+                .put("violations", violationCount)
+                .put("groups", new JSONArray(groups));
+    }
+
+    static SessionInfo fromJson(JSONObject json) {
+        Set<String> groups = new LinkedHashSet<>();
+        JSONArray array = json.getJSONArray("groups");
+        for (int i = 0; i < array.length(); i++) {
+            groups.add(array.getString(i));
+        }
+        return new SessionInfo(json.getString("sessionId"), json.getString("node"), json.getBoolean("connected"),
+                json.getLong("events"), json.getInt("violations"), groups);
+    }
+
+    @Override
+    public String toString() {
+        return sessionId + " on " + nodeId + (connected ? "" : " (disconnected)") + ": " + eventCount + " events, "
+                + violationCount + " violations, groups " + groups;
+    }
+}
@@ -7,9 +7,16 @@ import java.util.Map;
  * This updated version includes a map to hold the download URLs for the client installers.
  */
 public class ProctorConfig {
+
+    /**
+     * The default size of the server's pooled socket read buffers, in bytes.
+     */
+    public static final int DEFAULT_READ_BUFFER_SIZE = 16 * 1024;
+
     private final int port;
     private final String host;
     private final Map<String, String> installerUrls;
+    private final int readBufferSize;
 
     /**
      * @param port The port for the WebSocket server to listen on.
@@ -23,15 +30,31 @@ public class ProctorConfig {
      * new ProctorConfig(8080, "0.0.0.0", urls);
      */
     public ProctorConfig(int port, String host, Map<String, String> installerUrls) {
+        this(port, host, installerUrls, DEFAULT_READ_BUFFER_SIZE);
+    }
+
+    /**
+     * @param port The port for the WebSocket server to listen on.
+     * @param host The host to bind to (e.g., '0.0.0.0').
+     * @param installerUrls A map where the key is the OS ('windows', 'macos') and the value is the public download URL.
+     * @param readBufferSize The size of each socket read buffer, in bytes. The buffers are pooled and
+     *                       shared by all connections, so this trades read passes per camera frame
+     *                       against a few buffers' worth of heap, not per-session memory.
+     */
+    public ProctorConfig(int port, String host, Map<String, String> installerUrls, int readBufferSize) {
         if (port <= 0) {
             throw new IllegalArgumentException("Port must be a positive number.");
         }
         if (installerUrls == null || installerUrls.isEmpty()) {
             throw new IllegalArgumentException("Installer URLs must be provided.");
         }
+        if (readBufferSize <= 0) {
+            throw new IllegalArgumentException("Read buffer size must be positive.");
+        }
         this.port = port;
         this.host = host;
         this.installerUrls = installerUrls;
+        this.readBufferSize = readBufferSize;
     }
 
     public int getPort() {
@@ -45,5 +68,8 @@ public class ProctorConfig {
     public Map<String, String> getInstallerUrls() {
         return installerUrls;
     }
-}
 
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+}
@@ -0,0 +1,30 @@
+package com.proctor.sdk.replay;
+
+/**
+ * The layout of a session recording. All integers are unsigned LEB128 varints; strings and payloads
+ * are length-prefixed.
+ * <pre>
+ *   file    := magic:"PRCR" version:uint8 record*
+ *   record  := kind:uint8 delta:varint connection:varint body
+ *   OPEN    (1) body := sessionIdLength:varint sessionId:UTF-8
+ *   TEXT    (2) body := length:varint message:UTF-8
+ *   BINARY  (3) body := length:varint message:bytes
+ *   CLOSE   (4) body := (empty)
+ * </pre>
+ * {@code delta} is the time since the previous record in microseconds, and {@code connection} numbers
+ * connections in the order they were opened, so a session that reconnects gets a new number.
+ * Records appear in the order the server received them.
+ */
+final class RecordingFormat {
+
+    static final byte[] MAGIC = {'P', 'R', 'C', 'R'};
+    static final int VERSION = 1;
+
+    static final int OPEN = 1;
+    static final int TEXT = 2;
+    static final int BINARY = 3;
+    static final int CLOSE = 4;
+
+    private RecordingFormat() {
+    }
+}
@@ -0,0 +1,156 @@
+package com.proctor.sdk.replay;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.enums.ReadyState;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.protocols.IProtocol;
+
+import javax.net.ssl.SSLSession;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Stands in for a client connection during a replay. Nothing goes over a network: messages sent to
+ * the client are dropped, and closing just marks the connection closed.
+ */
+final class ReplayConnection implements WebSocket {
+
+    private static final Draft DRAFT = new Draft_6455();
+    private static final InetSocketAddress ADDRESS = InetSocketAddress.createUnresolved("replay", 0);
+
+    private final String resourceDescriptor;
+    private volatile ReadyState readyState = ReadyState.OPEN;
+    private Object attachment;
+
+    ReplayConnection(String sessionId) {
+        this.resourceDescriptor = "/" + sessionId;
+    }
+
+    @Override
+    public void close(int code, String message) {
+        readyState = ReadyState.CLOSED;
+    }
+
+    @Override
+    public void close(int code) {
+        close(code, "");
+    }
+
+    @Override
+    public void close() {
+        close(1000, "");
+    }
+
+    @Override
+    public void closeConnection(int code, String message) {
+        close(code, message);
+    }
+
+    @Override
+    public void send(String text) {
+    }
+
+    @Override
+    public void send(ByteBuffer bytes) {
+    }
+
+    @Override
+    public void send(byte[] bytes) {
+    }
+
+    @Override
+    public void sendFrame(Framedata framedata) {
+    }
+
+    @Override
+    public void sendFrame(Collection<Framedata> frames) {
+    }
+
+    @Override
+    public void sendPing() {
+    }
+
+    @Override
+    public void sendFragmentedFrame(Opcode op, ByteBuffer buffer, boolean fin) {
+    }
+
+    @Override
+    public boolean hasBufferedData() {
+        return false;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteSocketAddress() {
+        return ADDRESS;
+    }
+
+    @Override
+    public InetSocketAddress getLocalSocketAddress() {
+        return ADDRESS;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return readyState == ReadyState.OPEN;
+    }
+
+    @Override
+    public boolean isClosing() {
+        return false;
+    }
+
+    @Override
+    public boolean isFlushAndClose() {
+        return false;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return readyState == ReadyState.CLOSED;
+    }
+
+    @Override
+    public Draft getDraft() {
+        return DRAFT;
+    }
+
+    @Override
+    public ReadyState getReadyState() {
+        return readyState;
+    }
+
+    @Override
+    public String getResourceDescriptor() {
+        return resourceDescriptor;
+    }
+
+    @Override
+    public <T> void setAttachment(T attachment) {
+        this.attachment = attachment;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getAttachment() {
+        return (T) attachment;
+    }
+
+    @Override
+    public boolean hasSSLSupport() {
+        return false;
+    }
+
+    @Override
+    public SSLSession getSSLSession() {
+        throw new IllegalArgumentException("Replay connections have no SSL session.");
+    }
+
+    @Override
+    public IProtocol getProtocol() {
+        return null;
+    }
+}
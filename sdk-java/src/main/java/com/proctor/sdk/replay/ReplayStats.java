@@ -0,0 +1,67 @@
+package com.proctor.sdk.replay;
+
+/**
+ * What a {@link SessionReplayer} run delivered and how long it took.
+ */
+public class ReplayStats {
+
+    private final long sessions;
+    private final long textMessages;
+    private final long binaryMessages;
+    private final long payloadBytes;
+    private final long recordedMicros;
+    private final long elapsedNanos;
+
+    ReplayStats(long sessions, long textMessages, long binaryMessages, long payloadBytes,
+                long recordedMicros, long elapsedNanos) {
+        this.sessions = sessions;
+        this.textMessages = textMessages;
+        this.binaryMessages = binaryMessages;
+        this.payloadBytes = payloadBytes;
+        this.recordedMicros = recordedMicros;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /** @return The number of connections opened. */
+    public long getSessions() {
+        return sessions;
+    }
+
+    public long getTextMessages() {
+        return textMessages;
+    }
+
+    public long getBinaryMessages() {
+        return binaryMessages;
+    }
+
+    /** @return The total size of all replayed messages. */
+    public long getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    /** @return The time the recording spans, from its start to its last record. */
+    public long getRecordedMicros() {
+        return recordedMicros;
+    }
+
+    /** @return The wall-clock time the replay took. */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /** @return Messages delivered per second of replay. */
+    public double getMessagesPerSecond() {
+        return elapsedNanos > 0 ? (textMessages + binaryMessages) * 1e9 / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        double elapsedMillis = elapsedNanos / 1e6;
+        double speedup = elapsedNanos > 0 ? recordedMicros * 1000.0 / elapsedNanos : 0;
+        return String.format("%d text + %d binary messages from %d sessions (%.1f MB) in %.1f ms: "
+                        + "%.0f messages/s, %.1fx the recorded %.1f s",
+                textMessages, binaryMessages, sessions, payloadBytes / (1024.0 * 1024.0), elapsedMillis,
+                getMessagesPerSecond(), speedup, recordedMicros / 1e6);
+    }
+}
@@ -0,0 +1,172 @@
+package com.proctor.sdk.replay;
+
+import org.java_websocket.WebSocket;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records everything clients send to the server, as received, into a compact file that
+ * {@link SessionReplayer} can play back (see {@link RecordingFormat} for the layout).
+ * Records from all connections are written under one lock, so the file order is the order in which
+ * the server handled them. Writes are buffered; the file is complete once {@link #close()} returns.
+ * Once a write fails the recorder stops recording and reports the failure once.
+ */
+public class SessionRecorder implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final DataOutputStream out;
+    private final Map<WebSocket, Integer> connectionNumbers = new ConcurrentHashMap<>();
+    private final long startNanos;
+    private long lastMicros;
+    private int nextConnection;
+    private boolean failed;
+    private boolean closed;
+
+    /**
+     * Creates (or replaces) a recording file.
+     * @param file The file to write.
+     * @throws IOException if the file cannot be created.
+     */
+    public SessionRecorder(Path file) throws IOException {
+        this.file = file;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+        out.write(RecordingFormat.MAGIC);
+        out.writeByte(RecordingFormat.VERSION);
+        this.startNanos = System.nanoTime();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Records a newly accepted connection. A connection that is already recorded is ignored.
+     * @param connection The connection.
+     * @param sessionId The session ID it connected with.
+     */
+    public synchronized void recordOpen(WebSocket connection, String sessionId) {
+        if (closed || failed || connectionNumbers.containsKey(connection)) {
+            return;
+        }
+        int number = nextConnection++;
+        connectionNumbers.put(connection, number);
+        byte[] id = sessionId.getBytes(StandardCharsets.UTF_8);
+        try {
+            writeHeader(RecordingFormat.OPEN, number);
+            Varints.write(out, id.length);
+            out.write(id);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records a text message.
+     * @param connection The connection it arrived on; ignored unless its opening was recorded.
+     * @param message The message.
+     */
+    public void recordText(WebSocket connection, String message) {
+        Integer number = connectionNumbers.get(connection);
+        if (number == null) {
+            return;
+        }
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            if (closed || failed) {
+                return;
+            }
+            try {
+                writeHeader(RecordingFormat.TEXT, number);
+                Varints.write(out, bytes.length);
+                out.write(bytes);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Records a binary message. The buffer's position is not changed.
+     * @param connection The connection it arrived on; ignored unless its opening was recorded.
+     * @param message The message.
+     */
+    public void recordBinary(WebSocket connection, ByteBuffer message) {
+        Integer number = connectionNumbers.get(connection);
+        if (number == null) {
+            return;
+        }
+        ByteBuffer bytes = message.duplicate();
+        if (!bytes.hasArray()) {
+            ByteBuffer copy = ByteBuffer.allocate(bytes.remaining());
+            copy.put(bytes).flip();
+            bytes = copy;
+        }
+        synchronized (this) {
+            if (closed || failed) {
+                return;
+            }
+            try {
+                writeHeader(RecordingFormat.BINARY, number);
+                Varints.write(out, bytes.remaining());
+                out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Records that a connection closed.
+     * @param connection The connection.
+     */
+    public synchronized void recordClose(WebSocket connection) {
+        Integer number = connectionNumbers.remove(connection);
+        if (number == null || closed || failed) {
+            return;
+        }
+        try {
+            writeHeader(RecordingFormat.CLOSE, number);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Flushes and closes the file. Later records are ignored.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        connectionNumbers.clear();
+        out.close();
+    }
+
+    private void writeHeader(int kind, int connection) throws IOException {
+        // Deltas are taken between absolute offsets so rounding to microseconds does not accumulate.
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        out.writeByte(kind);
+        Varints.write(out, micros - lastMicros);
+        Varints.write(out, connection);
+        lastMicros = micros;
+    }
+
+    private void fail(IOException e) {
+        failed = true;
+        System.err.println("Session recording to " + file + " stopped: " + e.getMessage());
+    }
+}
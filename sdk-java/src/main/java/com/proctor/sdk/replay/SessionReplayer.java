@@ -0,0 +1,180 @@
+package com.proctor.sdk.replay;
+
+import com.proctor.sdk.session.ProctorSession;
+import com.proctor.sdk.session.SessionManager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a {@link SessionRecorder} file back into a {@link SessionManager}, in-process and without
+ * sockets: each recorded connection becomes a stand-in connection, and its messages go through
+ * {@link ProctorSession#handleMessage(String)} and {@link ProctorSession#handleBinaryMessage(ByteBuffer)}
+ * exactly as the server would call them, so session handlers and listeners run unchanged.
+ * <p>
+ * Everything is delivered on the calling thread in file order, so a replay is deterministic whatever
+ * its speed. At a finite speed each record is delivered at its recorded offset divided by the speed;
+ * at {@link #MAX_SPEED} records are delivered back to back. Connections still open when the
+ * recording ends are closed at the end of the replay.
+ */
+public class SessionReplayer {
+
+    /** Replays as fast as the listeners keep up. */
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    private static final int MAX_MESSAGE_BYTES = 64 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final SessionManager sessionManager;
+
+    /**
+     * @param file The recording.
+     * @param sessionManager Receives the replayed sessions, as if their clients had connected.
+     */
+    public SessionReplayer(Path file, SessionManager sessionManager) {
+        this.file = file;
+        this.sessionManager = sessionManager;
+    }
+
+    /**
+     * Replays the whole recording.
+     * @param speed 1 for real time, N for N times faster, or {@link #MAX_SPEED}.
+     * @return What was delivered and how long it took.
+     * @throws IOException if the file cannot be read or is not a recording.
+     */
+    public ReplayStats replay(double speed) throws IOException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Replay speed must be positive.");
+        }
+        Map<Long, ReplayConnection> connections = new HashMap<>();
+        long sessions = 0;
+        long textMessages = 0;
+        long binaryMessages = 0;
+        long payloadBytes = 0;
+        long recordedMicros = 0;
+        long startNanos = System.nanoTime();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            readHeader(in);
+            int kind;
+            while ((kind = in.read()) >= 0) {
+                recordedMicros += Varints.read(in);
+                long number = Varints.read(in);
+                byte[] payload = kind == RecordingFormat.CLOSE ? null : new byte[Varints.readLength(in, MAX_MESSAGE_BYTES)];
+                if (payload != null) {
+                    in.readFully(payload);
+                }
+                if (speed != MAX_SPEED) {
+                    awaitOffset(startNanos, recordedMicros, speed);
+                }
+
+                switch (kind) {
+                    case RecordingFormat.OPEN: {
+                        String sessionId = new String(payload, StandardCharsets.UTF_8);
+                        ReplayConnection connection = new ReplayConnection(sessionId);
+                        connections.put(number, connection);
+                        sessionManager.startSession(connection, sessionId);
+                        sessions++;
+                        break;
+                    }
+                    case RecordingFormat.TEXT: {
+                        ProctorSession session = sessionFor(connections.get(number));
+                        if (session != null) {
+                            session.handleMessage(new String(payload, StandardCharsets.UTF_8));
+                        }
+                        textMessages++;
+                        payloadBytes += payload.length;
+                        break;
+                    }
+                    case RecordingFormat.BINARY: {
+                        ProctorSession session = sessionFor(connections.get(number));
+                        if (session != null) {
+                            session.handleBinaryMessage(ByteBuffer.wrap(payload));
+                        }
+                        binaryMessages++;
+                        payloadBytes += payload.length;
+                        break;
+                    }
+                    case RecordingFormat.CLOSE: {
+                        ReplayConnection connection = connections.remove(number);
+                        if (connection != null) {
+                            connection.close();
+                            sessionManager.endSession(connection);
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown record type " + kind + " in " + file);
+                }
+            }
+        } catch (EOFException e) {
+            System.err.println("Recording " + file + " ends mid-record; replayed up to the last complete record.");
+        } finally {
+            for (ReplayConnection connection : new ArrayList<>(connections.values())) {
+                connection.close();
+                sessionManager.endSession(connection);
+            }
+        }
+        return new ReplayStats(sessions, textMessages, binaryMessages, payloadBytes, recordedMicros,
+                System.nanoTime() - startNanos);
+    }
+
+    private ProctorSession sessionFor(ReplayConnection connection) {
+        return connection != null ? sessionManager.getSession(connection) : null;
+    }
+
+    private void readHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[RecordingFormat.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, RecordingFormat.MAGIC)) {
+            throw new IOException(file + " is not a session recording.");
+        }
+        int version = in.readUnsignedByte();
+        if (version != RecordingFormat.VERSION) {
+            throw new IOException("Unsupported recording version " + version + " in " + file);
+        }
+    }
+
+    private static void awaitOffset(long startNanos, long offsetMicros, double speed) {
+        long target = startNanos + (long) (offsetMicros * 1000 / speed);
+        long remaining;
+        while ((remaining = target - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Replays a recording against a listener that only counts events, to measure the SDK's own
+     * throughput on real traffic.
+     * Usage: {@code SessionReplayer <recording> [speed|max]}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: SessionReplayer <recording> [speed|max]");
+            return;
+        }
+        double speed = args.length > 1 && !"max".equalsIgnoreCase(args[1]) ? Double.parseDouble(args[1]) : MAX_SPEED;
+        AtomicLong activities = new AtomicLong();
+        AtomicLong violations = new AtomicLong();
+        SessionManager sessionManager = new SessionManager(session -> { });
+        sessionManager.onActivity((session, event) -> activities.incrementAndGet());
+        sessionManager.onViolation((session, event) -> violations.incrementAndGet());
+        ReplayStats stats = new SessionReplayer(Paths.get(args[0]), sessionManager).replay(speed);
+        System.out.println("Replayed " + stats);
+        System.out.println("Listeners received " + activities.get() + " activities and " + violations.get() + " violations.");
+    }
+}
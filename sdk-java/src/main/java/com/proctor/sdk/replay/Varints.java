@@ -0,0 +1,42 @@
+package com.proctor.sdk.replay;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Unsigned LEB128 varints: seven bits per byte, low bits first, high bit set on all but the last byte.
+ */
+final class Varints {
+
+    private Varints() {
+    }
+
+    static void write(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long read(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static int readLength(DataInput in, int max) throws IOException {
+        long length = read(in);
+        if (length > max) {
+            throw new IOException("Record length " + length + " exceeds " + max + " bytes");
+        }
+        return (int) length;
+    }
+}
@@ -0,0 +1,395 @@
+package com.proctor.sdk.scheduling;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the handling of incoming messages on its own threads, shared fairly between tenants, e.g. the
+ * schools or exams on one node, so a large exam with chatty clients cannot hold up a small one. Each
+ * tenant has a queue, and the queues are served by deficit round robin: on its turn a tenant is
+ * credited {@link #QUANTUM_BYTES} times its weight and may run messages while its credit lasts, so
+ * over time every tenant with work gets a share of the threads in proportion to its weight, in bytes
+ * handled. A tenant also never has more than {@code maxInFlightPerTenant} messages running at once,
+ * which leaves threads free for the others.
+ * <p>
+ * Messages are submitted with an ordering key, normally the session. A key's messages run one at a
+ * time and in order, and within a tenant the keys with waiting messages take turns. Keys and tenants
+ * hold no memory while they have nothing queued, apart from each tenant's {@link TenantStats}.
+ * <p>
+ * A tenant's queue is capped at {@code maxQueuedBytesPerTenant}. A submission that would take it past
+ * the cap blocks the submitting thread until the tenant's threads have worked the queue down; for a
+ * WebSocket decoder thread that means its connections are not read, so TCP pushes back on the clients
+ * instead of the node buffering without limit. The decoder threads are shared, so a tenant at its cap
+ * also holds up the other connections of the thread that blocked; the cap should be well above what a
+ * tenant queues in normal operation. Each blocked submission is counted in {@link TenantStats#getRejections()}.
+ */
+public class FairScheduler {
+
+    /** The credit per turn of a tenant of weight 1, in bytes (characters for text messages). */
+    public static final int QUANTUM_BYTES = 16 * 1024;
+    /** The default cap on the size of one tenant's queued messages, in bytes. */
+    public static final long DEFAULT_MAX_QUEUED_BYTES_PER_TENANT = 8L * 1024 * 1024;
+
+    private static final class Task {
+        final Mailbox mailbox;
+        final int cost;
+        final Runnable runnable;
+        final long enqueuedNanos;
+
+        Task(Mailbox mailbox, int cost, Runnable runnable) {
+            this.mailbox = mailbox;
+            this.cost = cost;
+            this.runnable = runnable;
+            this.enqueuedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * The waiting messages of one ordering key.
+     */
+    private static final class Mailbox {
+        final Object key;
+        final Tenant tenant;
+        final ArrayDeque<Task> tasks = new ArrayDeque<>(4);
+        boolean running;
+
+        Mailbox(Object key, Tenant tenant) {
+            this.key = key;
+            this.tenant = tenant;
+        }
+    }
+
+    private static final class Tenant {
+        final TenantStats stats;
+        int weight;
+        long deficit;
+        // Mailboxes with messages that are not running; they take turns.
+        final ArrayDeque<Mailbox> ready = new ArrayDeque<>();
+        int queued;
+        long queuedBytes;
+        int inFlight;
+        boolean active;
+
+        Tenant(String id, int weight) {
+            this.stats = new TenantStats(id, weight);
+            this.weight = weight;
+        }
+    }
+
+    private final int maxInFlightPerTenant;
+    private final long maxQueuedBytesPerTenant;
+    private final Thread[] workers;
+    private final Object lock = new Object();
+
+    // Guarded by lock.
+    private final Map<String, Tenant> tenants = new LinkedHashMap<>();
+    private final Map<Object, Mailbox> mailboxes = new HashMap<>();
+    // Tenants with queued messages, in the order they take turns.
+    private final List<Tenant> active = new ArrayList<>();
+    private int cursor;
+    private boolean turnStarted;
+    private int queued;
+    // Submitters waiting for a tenant to drop below its cap.
+    private int blocked;
+    private boolean closed;
+
+    /**
+     * Starts the scheduler's threads, with each tenant's queue capped at {@link #DEFAULT_MAX_QUEUED_BYTES_PER_TENANT}.
+     * @param threads The number of threads handling messages.
+     * @param maxInFlightPerTenant How many of them one tenant may use at a time.
+     */
+    public FairScheduler(int threads, int maxInFlightPerTenant) {
+        this(threads, maxInFlightPerTenant, DEFAULT_MAX_QUEUED_BYTES_PER_TENANT);
+    }
+
+    /**
+     * Starts the scheduler's threads.
+     * @param threads The number of threads handling messages.
+     * @param maxInFlightPerTenant How many of them one tenant may use at a time.
+     * @param maxQueuedBytesPerTenant How many bytes of messages one tenant may have waiting before
+     *                                submissions block. A single larger message is still taken when
+     *                                the tenant has nothing else waiting.
+     */
+    public FairScheduler(int threads, int maxInFlightPerTenant, long maxQueuedBytesPerTenant) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive.");
+        }
+        if (maxInFlightPerTenant <= 0) {
+            throw new IllegalArgumentException("Max in-flight messages per tenant must be positive.");
+        }
+        if (maxQueuedBytesPerTenant <= 0) {
+            throw new IllegalArgumentException("Max queued bytes per tenant must be positive.");
+        }
+        this.maxInFlightPerTenant = maxInFlightPerTenant;
+        this.maxQueuedBytesPerTenant = maxQueuedBytesPerTenant;
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::work, "Fair-Scheduler-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    public int getMaxInFlightPerTenant() {
+        return maxInFlightPerTenant;
+    }
+
+    public long getMaxQueuedBytesPerTenant() {
+        return maxQueuedBytesPerTenant;
+    }
+
+    /**
+     * Sets a tenant's share: a tenant of weight 3 is served three times as much as one of weight 1
+     * while both have messages waiting. Tenants not given a weight have weight 1.
+     * @param tenantId The tenant.
+     * @param weight From 1 up.
+     */
+    public void setWeight(String tenantId, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Weight must be positive.");
+        }
+        synchronized (lock) {
+            Tenant tenant = tenant(tenantId);
+            tenant.weight = weight;
+            tenant.stats.setWeight(weight);
+        }
+    }
+
+    /**
+     * Queues a message for handling. If the tenant's queue is at its cap, this blocks until there is
+     * room, except on the scheduler's own threads. After {@link #close} the message is handled on the
+     * calling thread.
+     * @param key The ordering key; messages with the same key run one at a time, in order.
+     * @param tenantId The tenant to charge. A key's messages are charged to the tenant of its first
+     *                 waiting message until none are left waiting.
+     * @param cost The size of the message, in bytes. Messages of cost 0, such as a connection's close,
+     *             never block.
+     * @param handler Handles the message.
+     */
+    public void submit(Object key, String tenantId, int cost, Runnable handler) {
+        cost = Math.max(0, cost);
+        boolean mayBlock = cost > 0 && !isWorker(Thread.currentThread());
+        synchronized (lock) {
+            boolean rejected = false;
+            while (!closed) {
+                Mailbox mailbox = mailboxes.get(key);
+                if (mailbox == null) {
+                    mailbox = new Mailbox(key, tenant(tenantId));
+                    mailboxes.put(key, mailbox);
+                }
+                Tenant tenant = mailbox.tenant;
+                if (mayBlock && tenant.queuedBytes > 0 && tenant.queuedBytes + cost > maxQueuedBytesPerTenant) {
+                    if (!rejected) {
+                        rejected = true;
+                        tenant.stats.rejected();
+                    }
+                    if (mailbox.tasks.isEmpty() && !mailbox.running) {
+                        // Not kept while nothing is queued under it.
+                        mailboxes.remove(key);
+                    }
+                    if (!await()) {
+                        // Interrupted: queue it anyway rather than lose it, and stop blocking.
+                        mayBlock = false;
+                    }
+                    continue;
+                }
+                mailbox.tasks.addLast(new Task(mailbox, cost, handler));
+                if (!mailbox.running && mailbox.tasks.size() == 1) {
+                    tenant.ready.addLast(mailbox);
+                }
+                tenant.stats.setQueued(++tenant.queued);
+                tenant.stats.setQueuedBytes(tenant.queuedBytes += cost);
+                queued++;
+                if (!tenant.active) {
+                    tenant.active = true;
+                    active.add(tenant);
+                }
+                lock.notifyAll();
+                return;
+            }
+        }
+        handler.run();
+    }
+
+    /**
+     * @return The statistics of every tenant seen so far, in the order they were first seen.
+     */
+    public Map<String, TenantStats> getTenantStats() {
+        Map<String, TenantStats> stats = new LinkedHashMap<>();
+        synchronized (lock) {
+            tenants.forEach((id, tenant) -> stats.put(id, tenant.stats));
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * Stops taking messages, handles the ones already queued and stops the threads.
+     * @param timeout How long to wait for the queue to drain.
+     * @return {@code true} if it drained in time.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining > 0) {
+                worker.join(remaining);
+            }
+        }
+        for (Thread worker : workers) {
+            if (worker.isAlive()) {
+                worker.interrupt();
+            }
+        }
+        synchronized (lock) {
+            return queued == 0;
+        }
+    }
+
+    private Tenant tenant(String tenantId) {
+        return tenants.computeIfAbsent(tenantId, id -> new Tenant(id, 1));
+    }
+
+    private boolean isWorker(Thread thread) {
+        for (Thread worker : workers) {
+            if (worker == thread) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for a tenant's queue to shrink. Called with the lock held.
+     * @return {@code false} if the thread was interrupted; its interrupt status is kept.
+     */
+    private boolean await() {
+        blocked++;
+        try {
+            lock.wait();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            blocked--;
+        }
+    }
+
+    private void work() {
+        try {
+            while (true) {
+                Task task;
+                synchronized (lock) {
+                    while ((task = next()) == null) {
+                        if (closed && queued == 0) {
+                            return;
+                        }
+                        lock.wait();
+                    }
+                }
+                long start = System.nanoTime();
+                try {
+                    task.runnable.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error handling a message for tenant " + task.mailbox.tenant.stats.getTenantId()
+                            + ": " + e.getMessage());
+                }
+                long end = System.nanoTime();
+                finish(task);
+                task.mailbox.tenant.stats.handled(task.cost, start - task.enqueuedNanos, end - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Picks the next message by deficit round robin. Called with the lock held.
+     * @return The message, or {@code null} if none may run now.
+     */
+    private Task next() {
+        // Tenants passed over in a row because they could not run anything; a full round of them means
+        // there is nothing to do.
+        int passed = 0;
+        while (!active.isEmpty() && passed < active.size()) {
+            if (cursor >= active.size()) {
+                cursor = 0;
+            }
+            Tenant tenant = active.get(cursor);
+            if (tenant.queued == 0) {
+                // Everything it had is done or running; it starts from nothing when it has more.
+                tenant.active = false;
+                tenant.deficit = 0;
+                active.remove(cursor);
+                turnStarted = false;
+                continue;
+            }
+            Mailbox mailbox = tenant.ready.peekFirst();
+            if (mailbox == null || tenant.inFlight >= maxInFlightPerTenant) {
+                // All its keys are running, or it is at its limit: no credit this round.
+                endTurn();
+                passed++;
+                continue;
+            }
+            if (!turnStarted) {
+                tenant.deficit += (long) QUANTUM_BYTES * tenant.weight;
+                turnStarted = true;
+            }
+            Task task = mailbox.tasks.peekFirst();
+            if (tenant.deficit >= task.cost) {
+                tenant.deficit -= task.cost;
+                mailbox.tasks.pollFirst();
+                tenant.ready.pollFirst();
+                mailbox.running = true;
+                tenant.stats.setQueued(--tenant.queued);
+                tenant.stats.setQueuedBytes(tenant.queuedBytes -= task.cost);
+                tenant.stats.setInFlight(++tenant.inFlight);
+                queued--;
+                if (blocked > 0) {
+                    lock.notifyAll();
+                }
+                return task;
+            }
+            // Out of credit; a message larger than the quantum runs once enough turns have added up.
+            endTurn();
+            passed = 0;
+        }
+        return null;
+    }
+
+    private void endTurn() {
+        cursor++;
+        turnStarted = false;
+    }
+
+    private void finish(Task task) {
+        synchronized (lock) {
+            Mailbox mailbox = task.mailbox;
+            Tenant tenant = mailbox.tenant;
+            tenant.stats.setInFlight(--tenant.inFlight);
+            mailbox.running = false;
+            if (mailbox.tasks.isEmpty()) {
+                mailboxes.remove(mailbox.key);
+            } else {
+                // Behind the tenant's other keys, so they take turns.
+                tenant.ready.addLast(mailbox);
+            }
+            lock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.proctor.sdk.scheduling;
+
+import com.proctor.sdk.trace.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How one tenant's messages have fared in a {@link FairScheduler}: how long they waited for a thread,
+ * how long handling them took, and what is waiting now. Comparing the waits of a large and a small
+ * tenant under load shows whether the weights hold.
+ */
+public class TenantStats {
+
+    private final String tenantId;
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram processing = new LatencyHistogram();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private volatile int weight;
+    private volatile int queued;
+    private volatile long queuedBytes;
+    private volatile int inFlight;
+
+    TenantStats(String tenantId, int weight) {
+        this.tenantId = tenantId;
+        this.weight = weight;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /** @return From being received to a scheduler thread starting on it, in microseconds. */
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    /** @return Handling, i.e. decoding and running the listeners, in microseconds. */
+    public LatencyHistogram getProcessing() {
+        return processing;
+    }
+
+    /** @return The number of messages handled. */
+    public long getMessages() {
+        return messages.sum();
+    }
+
+    /** @return The size of the messages handled, in bytes (characters for text). */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /** @return The number of messages waiting now. */
+    public int getQueued() {
+        return queued;
+    }
+
+    /** @return The size of the messages waiting now, in bytes (characters for text). */
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * @return The number of messages that arrived while the tenant's queue was at its cap, and were
+     *         held back, blocking the thread that read them, until there was room.
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /** @return The number of messages being handled now. */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    void setQueued(int queued) {
+        this.queued = queued;
+    }
+
+    void setQueuedBytes(long queuedBytes) {
+        this.queuedBytes = queuedBytes;
+    }
+
+    void rejected() {
+        rejections.increment();
+    }
+
+    void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    void handled(int cost, long waitNanos, long processingNanos) {
+        messages.increment();
+        bytes.add(cost);
+        queueWait.record(waitNanos / 1000);
+        processing.record(processingNanos / 1000);
+    }
+
+    @Override
+    public String toString() {
+        return tenantId + " (weight " + weight + "): " + getMessages() + " messages, " + queued + " queued ("
+                + queuedBytes + " bytes), " + inFlight + " in flight, " + getRejections() + " rejected; wait " + queueWait
+                + "; processing " + processing;
+    }
+}
@@ -0,0 +1,106 @@
+package com.proctor.sdk.session;
+
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.Status;
+
+import java.util.Arrays;
+
+/**
+ * Listeners registered for particular activities, optionally of one status only, laid out as one
+ * array per activity and status that already holds everyone to call for that combination, in the
+ * order they registered. Finding the listeners of an event is a single array index by the ordinals
+ * its envelope was decoded to; no listener has to look at the event to decide whether it applies.
+ * <p>
+ * Tables are immutable. Registering or removing copies the outer array and the cells that change
+ * into a new table, which the owner publishes through a volatile field, so dispatching never locks;
+ * a dispatch that already fetched a cell still calls everyone in it.
+ * Empty cells share one empty array, and the empty table itself can be shared by every owner.
+ */
+final class ListenerTable<L> {
+
+    private static final int STATUSES = Status.values().length;
+    private static final int CELLS = Activity.values().length * STATUSES;
+
+    // L[] per activity and status, at activity.ordinal() * STATUSES + status.ordinal().
+    private final Object[] cells;
+    private final L[] none;
+
+    private ListenerTable(Object[] cells, L[] none) {
+        this.cells = cells;
+        this.none = none;
+    }
+
+    /**
+     * @param none An empty array of the listener type, which every cell starts out as.
+     * @return A table without listeners.
+     */
+    static <L> ListenerTable<L> empty(L[] none) {
+        Object[] cells = new Object[CELLS];
+        Arrays.fill(cells, none);
+        return new ListenerTable<>(cells, none);
+    }
+
+    /**
+     * @param status The status to listen for, or {@code null} for every status.
+     * @return A new table that also calls the listener for events of this activity and status.
+     */
+    ListenerTable<L> with(Activity activity, Status status, L listener) {
+        Object[] copy = cells.clone();
+        int row = activity.ordinal() * STATUSES;
+        int from = status == null ? 0 : status.ordinal();
+        int to = status == null ? STATUSES - 1 : status.ordinal();
+        for (int i = row + from; i <= row + to; i++) {
+            @SuppressWarnings("unchecked")
+            L[] current = (L[]) copy[i];
+            L[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = listener;
+            copy[i] = grown;
+        }
+        return new ListenerTable<>(copy, none);
+    }
+
+    /**
+     * @return A new table that no longer calls the listener for any activity and status, or this
+     *         table if it did not hold the listener.
+     */
+    ListenerTable<L> without(L listener) {
+        Object[] copy = null;
+        for (int i = 0; i < CELLS; i++) {
+            @SuppressWarnings("unchecked")
+            L[] current = (L[]) cells[i];
+            int index = indexOf(current, listener);
+            if (index < 0) {
+                continue;
+            }
+            if (copy == null) {
+                copy = cells.clone();
+            }
+            if (current.length == 1) {
+                copy[i] = none;
+            } else {
+                L[] shrunk = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, index + 1, shrunk, index, current.length - index - 1);
+                copy[i] = shrunk;
+            }
+        }
+        return copy == null ? this : new ListenerTable<>(copy, none);
+    }
+
+    private static int indexOf(Object[] listeners, Object listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The listeners for events of this activity and status; an empty array if there are none.
+     *         Must not be modified.
+     */
+    @SuppressWarnings("unchecked")
+    L[] get(Activity activity, Status status) {
+        return (L[]) cells[activity.ordinal() * STATUSES + status.ordinal()];
+    }
+}
@@ -1,42 +1,234 @@
 package com.proctor.sdk.session;
 
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.DecodedEvent;
+import com.proctor.protocol.EventDecoder;
+import com.proctor.protocol.EventFields;
+import com.proctor.protocol.MessageTypes;
+import com.proctor.protocol.Status;
+import com.proctor.sdk.trace.LatencyTracer;
 import org.java_websocket.WebSocket;
 import org.json.JSONObject;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.function.Consumer;
 
 /**
  * Represents a single, active proctoring session for one student.
  * This class acts as an event emitter, allowing developers to listen for
  * specific events from an individual student's client.
+ * <p>
+ * A node may hold on the order of 100k mostly idle sessions, so a session is kept small: it is found
+ * through its connection's attachment rather than a map, and its listeners and groups are
+ * copy-on-write arrays that start out as shared empty arrays and are only allocated once something
+ * is registered. Listeners that every session needs are better registered once with
+ * {@link SessionManager#onActivity}, {@link SessionManager#onViolation} and
+ * {@link SessionManager#onDisconnect}, which all sessions share.
+ * <p>
+ * Listeners for one activity, or one activity and status, are kept in a {@link ListenerTable}, so an
+ * event only reaches the listeners registered for its kind, found by the enums its envelope was
+ * decoded to; an event nobody listens for is not parsed at all.
  */
 public class ProctorSession {
 
+    // Envelopes are decoded into one reusable holder per WebSocket worker thread.
+    private static final ThreadLocal<DecodedEvent> DECODED = ThreadLocal.withInitial(DecodedEvent::new);
+
+    @SuppressWarnings("unchecked")
+    private static final Consumer<JSONObject>[] NO_EVENT_LISTENERS = new Consumer[0];
+    private static final Runnable[] NO_DISCONNECT_LISTENERS = new Runnable[0];
+    private static final ListenerTable<Consumer<JSONObject>> NO_ROUTED_LISTENERS = ListenerTable.empty(NO_EVENT_LISTENERS);
+    private static final String[] NO_GROUPS = new String[0];
+
     private final String sessionId;
-    private final WebSocket connection;
+    private final SessionManager manager;
+    private final boolean resumed;
+    // Null while a session restored from a snapshot waits for its client to come back.
+    private volatile WebSocket connection;
+    // Written only by the thread handling this session's connection.
+    private volatile long eventCount;
+    private volatile int violationCount;
 
-    // Listeners for various event types
-    private final List<Consumer<JSONObject>> activityListeners = new ArrayList<>();
-    private final List<Consumer<JSONObject>> violationListeners = new ArrayList<>();
-    private final List<Runnable> disconnectListeners = new ArrayList<>();
+    // Replaced, never modified, under the session's lock; read without it.
+    private volatile String[] groupIds = NO_GROUPS;
+    private volatile Consumer<JSONObject>[] activityListeners = NO_EVENT_LISTENERS;
+    private volatile Consumer<JSONObject>[] violationListeners = NO_EVENT_LISTENERS;
+    private volatile ListenerTable<Consumer<JSONObject>> routedListeners = NO_ROUTED_LISTENERS;
+    private volatile Runnable[] disconnectListeners = NO_DISCONNECT_LISTENERS;
+    private boolean disconnected;
 
-    public ProctorSession(String sessionId, WebSocket connection) {
+    public ProctorSession(String sessionId, WebSocket connection, SessionManager manager) {
         this.sessionId = sessionId;
         this.connection = connection;
+        this.manager = manager;
+        this.resumed = false;
+    }
+
+    /**
+     * A session restored from a snapshot or adopted from another server; it has no connection until
+     * its client reconnects.
+     */
+    ProctorSession(String sessionId, SessionManager manager, long eventCount, int violationCount, String[] groupIds) {
+        this.sessionId = sessionId;
+        this.manager = manager;
+        this.resumed = true;
+        this.eventCount = eventCount;
+        this.violationCount = violationCount;
+        this.groupIds = groupIds.length > 0 ? groupIds.clone() : NO_GROUPS;
     }
 
     public String getSessionId() {
         return sessionId;
     }
+
+    /**
+     * @return {@code true} if the session was carried over from before a server restart, or handed
+     *         over by another server of the cluster, rather than started by a new client connection.
+     *         Its groups and counters are restored; per-session listeners have to be registered again,
+     *         from {@code ProctorSDK#onSessionResumed}.
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * @return The number of text events received in this session, across restarts. This is also the
+     *         sequence number of the last event received, where a reconnecting client resumes.
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return The number of violations received in this session, across restarts.
+     */
+    public int getViolationCount() {
+        return violationCount;
+    }
+
+    /**
+     * @return {@code true} while the student's client is connected.
+     */
+    public boolean isConnected() {
+        WebSocket current = connection;
+        return current != null && current.isOpen();
+    }
+
+    WebSocket getConnection() {
+        return connection;
+    }
+
+    /**
+     * Adds this session to a group, such as the exam or room the student is taking part in.
+     * A session can be in any number of groups and leaves all of them when it disconnects.
+     * @param groupId The group to join.
+     */
+    public void joinGroup(String groupId) {
+        if (groupId == null || groupId.trim().isEmpty()) {
+            throw new IllegalArgumentException("Group ID cannot be null or empty.");
+        }
+        // Held across the index update so a join racing with the disconnect cannot leave the session
+        // behind in the group.
+        synchronized (this) {
+            if (disconnected || Arrays.asList(groupIds).contains(groupId)) {
+                return;
+            }
+            groupIds = append(groupIds, groupId);
+            manager.getGroups().add(groupId, this);
+        }
+    }
+
+    /**
+     * Removes this session from a group.
+     * @param groupId The group to leave.
+     */
+    public void leaveGroup(String groupId) {
+        synchronized (this) {
+            String[] current = groupIds;
+            int index = Arrays.asList(current).indexOf(groupId);
+            if (index < 0) {
+                return;
+            }
+            groupIds = current.length == 1 ? NO_GROUPS : remove(current, index);
+            manager.getGroups().remove(groupId, this);
+        }
+    }
+
+    /**
+     * @return A snapshot of the groups this session is in.
+     */
+    public Set<String> getGroups() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(groupIds)));
+    }
+
+    /**
+     * @return The group the session joined first among those it is still in, or {@code null} if it is
+     *         in none. By default, the tenant its messages are scheduled under (see
+     *         {@link com.proctor.sdk.scheduling.FairScheduler}).
+     */
+    public String getFirstGroup() {
+        String[] current = groupIds;
+        return current.length > 0 ? current[0] : null;
+    }
+
+    /**
+     * Shows a message to this student, e.g. a personal warning from the proctor.
+     * @param message The text to show.
+     */
+    public void sendNotice(String message) {
+        WebSocket current = connection;
+        if (current != null && current.isOpen()) {
+            current.send(ServerMessages.notice(message));
+        }
+    }
     
     /**
      * Adds a listener that will be called for any event from the client.
      * @param listener The callback to execute.
      */
     public void onActivity(Consumer<JSONObject> listener) {
-        activityListeners.add(listener);
+        synchronized (this) {
+            activityListeners = append(activityListeners, listener);
+        }
+    }
+
+    /**
+     * Adds a listener that will be called only for events of one activity, of any status.
+     * @param activity The activity, e.g. {@link Activity#CLIPBOARD_COPY}.
+     * @param listener The callback to execute.
+     */
+    public void onActivity(Activity activity, Consumer<JSONObject> listener) {
+        onActivity(activity, null, listener);
+    }
+
+    /**
+     * Adds a listener that will be called only for events of one activity and status.
+     * @param activity The activity, e.g. {@link Activity#PROCESS_STARTED}.
+     * @param status The status, e.g. {@link Status#VIOLATION}; {@code null} for any.
+     * @param listener The callback to execute.
+     */
+    public void onActivity(Activity activity, Status status, Consumer<JSONObject> listener) {
+        if (activity == null) {
+            throw new IllegalArgumentException("Activity cannot be null.");
+        }
+        synchronized (this) {
+            routedListeners = routedListeners.with(activity, status, listener);
+        }
+    }
+
+    /**
+     * Adds a listener that will be called only for events of one activity, of any status.
+     * @param activity The activity as sent by the client, e.g. "clipboardCopy".
+     * @param listener The callback to execute.
+     */
+    public void onActivity(String activity, Consumer<JSONObject> listener) {
+        onActivity(SessionManager.activityNamed(activity), null, listener);
     }
 
     /**
@@ -44,52 +236,235 @@ public class ProctorSession {
      * @param listener The callback to execute.
      */
     public void onViolation(Consumer<JSONObject> listener) {
-        violationListeners.add(listener);
+        synchronized (this) {
+            violationListeners = append(violationListeners, listener);
+        }
     }
     
+    /**
+     * Removes an event listener, wherever it was registered with {@code onActivity} or
+     * {@code onViolation}. A dispatch that is already running may still call it once.
+     * @param listener The callback passed when registering it.
+     */
+    public void removeListener(Consumer<JSONObject> listener) {
+        synchronized (this) {
+            activityListeners = without(activityListeners, listener, NO_EVENT_LISTENERS);
+            violationListeners = without(violationListeners, listener, NO_EVENT_LISTENERS);
+            routedListeners = routedListeners.without(listener);
+        }
+    }
+
     /**
      * Adds a listener that will be called when the student's client disconnects.
      * @param listener The callback to execute.
      */
     public void onDisconnect(Runnable listener) {
-        disconnectListeners.add(listener);
+        synchronized (this) {
+            disconnectListeners = append(disconnectListeners, listener);
+        }
     }
 
     /**
      * Called by the server when a message is received for this session.
      * It parses the event and notifies the appropriate listeners.
+     * Only the envelope is decoded up front; the full JSONObject is built only when some listener
+     * will actually receive the event.
      * @param message The raw JSON string from the client.
      */
     public void handleMessage(String message) {
+        // Every text message counts, even a malformed one, since the client numbers what it sends.
+        eventCount++;
+        LatencyTracer tracer = manager.getTracer();
+        long receivedNanos = tracer != null ? System.nanoTime() : 0;
         try {
+            DecodedEvent decoded = DECODED.get();
+            if (!EventDecoder.forCurrentThread().decode(message, decoded)) {
+                System.err.println("Error parsing event JSON for session " + sessionId + ": " + message);
+                return;
+            }
+            Activity activity = decoded.getActivity();
+            Status status = decoded.getStatus();
+            boolean violation = status == Status.VIOLATION;
+            if (violation) {
+                violationCount++;
+            }
+            if (!hasListeners(activity, status, violation)) {
+                if (tracer != null) {
+                    tracer.record(decoded.getTraceJson(), decoded.getTimestamp(), receivedNanos, System.nanoTime(), 0);
+                }
+                return;
+            }
             JSONObject event = new JSONObject(message);
-            
-            // Notify all general activity listeners
-            activityListeners.forEach(listener -> listener.accept(event));
-            
-            // If the event is a violation, notify the specific violation listeners
-            if ("violation".equals(event.optString("status"))) {
-                violationListeners.forEach(listener -> listener.accept(event));
+            if (tracer == null) {
+                dispatch(event, activity, status, violation);
+                return;
             }
-
+            long parsedNanos = System.nanoTime();
+            // Read before the listeners run, since they may decode other events on this thread.
+            String traceJson = decoded.getTraceJson();
+            long detectedAt = decoded.getTimestamp();
+            dispatch(event, activity, status, violation);
+            tracer.record(traceJson, detectedAt, receivedNanos, parsedNanos, System.nanoTime());
         } catch (Exception e) {
             System.err.println("Error parsing event JSON for session " + sessionId + ": " + message);
         }
     }
 
+    /**
+     * Called by the server when a binary message is received for this session.
+     * Camera frames arrive as a small JSON header followed by the raw JPEG bytes; they are turned back
+     * into a regular 'frameCapture' event with a Base64 {@code details.data} field, so listeners see
+     * the same event shape as before. The header's envelope is read first, and the frame is only
+     * encoded when some listener will receive it.
+     * @param message The binary frame: type byte, header length (uint16), header JSON, JPEG bytes.
+     */
+    public void handleBinaryMessage(ByteBuffer message) {
+        try {
+            ByteBuffer frame = message.duplicate();
+            byte type = frame.get();
+            if (type != MessageTypes.FRAME_JPEG) {
+                System.err.println("Ignoring binary message of unknown type " + type + " for session " + sessionId);
+                return;
+            }
+            int headerLength = Short.toUnsignedInt(frame.getShort());
+            ByteBuffer header = frame.slice();
+            header.limit(headerLength);
+            frame.position(frame.position() + headerLength);
+
+            String headerJson = StandardCharsets.UTF_8.decode(header).toString();
+            DecodedEvent decoded = DECODED.get();
+            if (!EventDecoder.forCurrentThread().decode(headerJson, decoded)) {
+                System.err.println("Error parsing binary frame header for session " + sessionId + ": " + headerJson);
+                return;
+            }
+            Activity activity = decoded.getActivity();
+            Status status = decoded.getStatus();
+            boolean violation = status == Status.VIOLATION;
+            if (violation) {
+                violationCount++;
+            }
+            if (!hasListeners(activity, status, violation)) {
+                return;
+            }
+            JSONObject event = new JSONObject(headerJson);
+            JSONObject details = event.optJSONObject(EventFields.DETAILS);
+            if (details == null) {
+                details = new JSONObject();
+                event.put(EventFields.DETAILS, details);
+            }
+            details.put("data", StandardCharsets.ISO_8859_1.decode(Base64.getEncoder().encode(frame)).toString());
+            dispatch(event, activity, status, violation);
+        } catch (Exception e) {
+            System.err.println("Error parsing binary frame for session " + sessionId + ": " + e.getMessage());
+        }
+    }
+
+    private boolean hasListeners(Activity activity, Status status, boolean violation) {
+        return activityListeners.length > 0 || manager.hasActivityListeners()
+                || routedListeners.get(activity, status).length > 0 || manager.hasActivityListeners(activity, status)
+                || (violation && (violationListeners.length > 0 || manager.hasViolationListeners()));
+    }
+
+    private void dispatch(JSONObject event, Activity activity, Status status, boolean violation) {
+        // Notify all general activity listeners, the session's own first, then those for this kind of event
+        for (Consumer<JSONObject> listener : activityListeners) {
+            listener.accept(event);
+        }
+        for (Consumer<JSONObject> listener : routedListeners.get(activity, status)) {
+            listener.accept(event);
+        }
+        manager.dispatchActivity(this, event, activity, status);
+
+        // If the event is a violation, notify the specific violation listeners
+        if (violation) {
+            for (Consumer<JSONObject> listener : violationListeners) {
+                listener.accept(event);
+            }
+            manager.dispatchViolation(this, event);
+        }
+    }
+
     /**
      * Called by the server when the connection for this session is closed.
+     * Runs the disconnect listeners once, however often it is called.
+     * @return {@code false} if the session had already been disconnected.
      */
-    public void handleDisconnect() {
-        disconnectListeners.forEach(Runnable::run);
+    public boolean handleDisconnect() {
+        synchronized (this) {
+            if (disconnected) {
+                return false;
+            }
+            disconnected = true;
+            for (String groupId : groupIds) {
+                manager.getGroups().remove(groupId, this);
+            }
+            groupIds = NO_GROUPS;
+        }
+        for (Runnable listener : disconnectListeners) {
+            listener.run();
+        }
+        manager.dispatchDisconnect(this);
+        return true;
+    }
+
+    /**
+     * Called when the server stops for a warm restart: the session lets go of its connection but
+     * keeps its groups and counters for the snapshot, and no disconnect listeners run.
+     * @return {@code false} if the session had already been disconnected.
+     */
+    synchronized boolean detach() {
+        if (disconnected || connection == null) {
+            return false;
+        }
+        for (String groupId : groupIds) {
+            manager.getGroups().remove(groupId, this);
+        }
+        connection = null;
+        return true;
+    }
+
+    /**
+     * Called when the client of a restored session reconnects; the session rejoins the group index
+     * under its new connection.
+     */
+    synchronized void attach(WebSocket newConnection) {
+        connection = newConnection;
+        for (String groupId : groupIds) {
+            manager.getGroups().add(groupId, this);
+        }
+    }
+
+    String[] groupIdArray() {
+        return groupIds;
     }
     
     /**
      * Closes the connection to the student's client.
      */
     public void disconnect() {
-        if (connection != null && connection.isOpen()) {
-            connection.close();
+        WebSocket current = connection;
+        if (current != null && current.isOpen()) {
+            current.close();
         }
     }
+
+    private static <T> T[] append(T[] values, T value) {
+        T[] grown = Arrays.copyOf(values, values.length + 1);
+        grown[values.length] = value;
+        return grown;
+    }
+
+    private static <T> T[] without(T[] values, T value, T[] none) {
+        int index = Arrays.asList(values).indexOf(value);
+        if (index < 0) {
+            return values;
+        }
+        return values.length == 1 ? none : remove(values, index);
+    }
+
+    private static <T> T[] remove(T[] values, int index) {
+        T[] shrunk = Arrays.copyOf(values, values.length - 1);
+        System.arraycopy(values, index + 1, shrunk, index, values.length - index - 1);
+        return shrunk;
+    }
 }
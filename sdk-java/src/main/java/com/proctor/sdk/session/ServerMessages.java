@@ -0,0 +1,36 @@
+package com.proctor.sdk.session;
+
+import com.proctor.protocol.MessageTypes;
+import org.json.JSONObject;
+
+/**
+ * Builds the control messages the server sends to clients (see {@link MessageTypes}).
+ */
+public final class ServerMessages {
+
+    private ServerMessages() {
+    }
+
+    /**
+     * @param message The text to show the student, e.g. "5 minutes left".
+     * @return A notice message.
+     */
+    public static String notice(String message) {
+        return build(MessageTypes.NOTICE, message);
+    }
+
+    /**
+     * @param message The text to show the student before the client exits.
+     * @return A shutdown command.
+     */
+    public static String shutdown(String message) {
+        return build(MessageTypes.SHUTDOWN, message);
+    }
+
+    private static String build(String type, String message) {
+        if (message == null) {
+            throw new IllegalArgumentException("Message cannot be null.");
+        }
+        return new JSONObject().put(MessageTypes.TYPE, type).put(MessageTypes.MESSAGE, message).toString();
+    }
+}
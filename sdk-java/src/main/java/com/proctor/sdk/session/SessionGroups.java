@@ -0,0 +1,90 @@
+package com.proctor.sdk.session;
+
+import org.java_websocket.WebSocket;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Indexes sessions by group (for example an exam or a room), so that a message to a group can be
+ * handed to the WebSocket server as one collection of connections.
+ * Each group is a concurrent map from connection to session: joining, leaving and broadcasting may
+ * happen from any thread, and a broadcast iterates a live, weakly consistent view without copying.
+ * A group exists while it has at least one member.
+ */
+public class SessionGroups {
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<WebSocket, ProctorSession>> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a session to a group, creating the group if needed. A session without a connection is
+     * not indexed; it is added when its client reconnects.
+     * @return {@code false} if the session was already a member or has no connection.
+     */
+    boolean add(String groupId, ProctorSession session) {
+        WebSocket connection = session.getConnection();
+        if (connection == null) {
+            return false;
+        }
+        boolean[] added = new boolean[1];
+        // compute() keeps this atomic with respect to remove() dropping the group when it empties.
+        groups.compute(groupId, (id, members) -> {
+            if (members == null) {
+                members = new ConcurrentHashMap<>();
+            }
+            added[0] = members.put(connection, session) == null;
+            return members;
+        });
+        return added[0];
+    }
+
+    /**
+     * Removes a session from a group, dropping the group once it is empty.
+     * @return {@code false} if the session was not a member.
+     */
+    boolean remove(String groupId, ProctorSession session) {
+        WebSocket connection = session.getConnection();
+        if (connection == null) {
+            return false;
+        }
+        boolean[] removed = new boolean[1];
+        groups.computeIfPresent(groupId, (id, members) -> {
+            removed[0] = members.remove(connection) != null;
+            return members.isEmpty() ? null : members;
+        });
+        return removed[0];
+    }
+
+    /**
+     * @return The connections of the group's members, as a live view (empty if the group does not exist).
+     */
+    public Collection<WebSocket> connections(String groupId) {
+        ConcurrentHashMap<WebSocket, ProctorSession> members = groups.get(groupId);
+        return members != null ? members.keySet() : Collections.emptySet();
+    }
+
+    /**
+     * @return The group's sessions, as a live view (empty if the group does not exist).
+     */
+    public Collection<ProctorSession> members(String groupId) {
+        ConcurrentHashMap<WebSocket, ProctorSession> members = groups.get(groupId);
+        return members != null ? Collections.unmodifiableCollection(members.values()) : Collections.emptySet();
+    }
+
+    /**
+     * @return The number of sessions currently in the group.
+     */
+    public int size(String groupId) {
+        ConcurrentHashMap<WebSocket, ProctorSession> members = groups.get(groupId);
+        return members != null ? members.size() : 0;
+    }
+
+    /**
+     * @return The IDs of all groups that currently have members, as a live view.
+     */
+    public Set<String> groupIds() {
+        return Collections.unmodifiableSet(groups.keySet());
+    }
+}
@@ -1,8 +1,24 @@
 package com.proctor.sdk.session;
 
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.Status;
+import com.proctor.sdk.trace.LatencyTracer;
 import org.java_websocket.WebSocket;
+import org.json.JSONObject;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
@@ -10,14 +26,51 @@ import java.util.function.Consumer;
  * It is responsible for creating, tracking, and removing sessions as students connect and disconnect.
  * In a production environment, the sessionId is provided by the developer's main application,
  * not generated by this SDK.
+ * <p>
+ * Each session is stored as its connection's attachment, so no per-session map entry is needed to
+ * find it again. Listeners registered here are shared by all sessions: one table serves every
+ * connection, instead of each session holding its own copy of the same callbacks.
+ * <p>
+ * For a warm restart the registry can be suspended and saved, then restored by the next process.
+ * Restored sessions wait without a connection until their client comes back and claims them by
+ * session ID; until then they are the only sessions kept in a map. They are handed to the
+ * resumed-session handler, not the new-session handler, so code that runs once per student does not
+ * run twice for the same one.
+ * <p>
+ * In cluster mode sessions also have to be found by ID, so an index by session ID is kept as well
+ * (see {@link #enableSessionIndex()}); sessions move between servers by being handed off by one and
+ * adopted by the other, the same way as across a warm restart.
  */
 public class SessionManager {
 
-    private final ConcurrentHashMap<WebSocket, ProctorSession> activeSessions = new ConcurrentHashMap<>();
+    private final SessionGroups groups = new SessionGroups();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final ConcurrentHashMap<String, ProctorSession> restoredSessions = new ConcurrentHashMap<>();
     private final Consumer<ProctorSession> newSessionHandler;
+    private final Consumer<ProctorSession> resumedSessionHandler;
+    private volatile boolean suspended;
+    // Only kept once enabled, for cluster mode.
+    private volatile ConcurrentHashMap<String, ProctorSession> sessionsById;
+    private volatile LatencyTracer tracer;
+
+    private final List<BiConsumer<ProctorSession, JSONObject>> activityListeners = new CopyOnWriteArrayList<>();
+    private final List<BiConsumer<ProctorSession, JSONObject>> violationListeners = new CopyOnWriteArrayList<>();
+    @SuppressWarnings("unchecked")
+    private volatile ListenerTable<BiConsumer<ProctorSession, JSONObject>> routedListeners = ListenerTable.empty(new BiConsumer[0]);
+    private final List<Consumer<ProctorSession>> disconnectListeners = new CopyOnWriteArrayList<>();
 
     public SessionManager(Consumer<ProctorSession> newSessionHandler) {
+        this(newSessionHandler, session -> { });
+    }
+
+    /**
+     * @param newSessionHandler Called for each session started by a new client connection.
+     * @param resumedSessionHandler Called for each session restored from a snapshot or adopted from
+     *                              another server, before its client reconnects.
+     */
+    public SessionManager(Consumer<ProctorSession> newSessionHandler, Consumer<ProctorSession> resumedSessionHandler) {
         this.newSessionHandler = newSessionHandler;
+        this.resumedSessionHandler = resumedSessionHandler;
     }
 
     /**
@@ -30,33 +83,348 @@ public class SessionManager {
         if (sessionId == null || sessionId.trim().isEmpty()) {
             throw new IllegalArgumentException("Session ID cannot be null or empty.");
         }
-        
-        ProctorSession session = new ProctorSession(sessionId, conn);
-        activeSessions.put(conn, session);
-        
+
+        ProctorSession restored = conn.getAttachment();
+        if (restored != null) {
+            // Claimed during the handshake: the client carries on where it left off, and the
+            // resumed-session handler already received this session when it was restored.
+            if (restoredSessions.remove(restored.getSessionId(), restored)) {
+                restored.attach(conn);
+                sessionCount.incrementAndGet();
+                index(restored);
+                return;
+            }
+            // It expired in the meantime; the client gets a new session instead.
+            conn.setAttachment(null);
+        }
+
+        ProctorSession session = new ProctorSession(sessionId, conn, this);
+        conn.setAttachment(session);
+        sessionCount.incrementAndGet();
+        index(session);
+
         // Notify the developer's code that a new session has started.
         newSessionHandler.accept(session);
     }
-    
+
     /**
      * Called by the WebSocket server when a client disconnects.
      * It cleans up the session and notifies its disconnect listeners.
      * @param conn The WebSocket connection object.
      */
     public void endSession(WebSocket conn) {
-        ProctorSession session = activeSessions.remove(conn);
-        if (session != null) {
-            session.handleDisconnect();
+        ProctorSession session = conn.getAttachment();
+        // Skips a restored session claimed by a handshake that never opened, which still waits for
+        // its client, and a session that has already moved on to a newer connection.
+        if (session == null || session.getConnection() != conn) {
+            return;
+        }
+        // While suspended for a warm restart, connections close without ending their sessions.
+        if (suspended ? session.detach() : session.handleDisconnect()) {
+            sessionCount.decrementAndGet();
+            unindex(session);
         }
     }
-    
+
     /**
      * Retrieves the session associated with a given WebSocket connection.
      * @param conn The WebSocket connection object.
      * @return The ProctorSession, or null if not found.
      */
     public ProctorSession getSession(WebSocket conn) {
-        return activeSessions.get(conn);
+        return conn.getAttachment();
+    }
+
+    /**
+     * @return The number of connected sessions.
+     */
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    /**
+     * Starts keeping an index of the connected sessions by ID, for {@link #findSession(String)} and
+     * {@link #getSessions()}. Costs one map entry per session, so it is only enabled in cluster mode.
+     * Sessions that are already connected are not indexed; call before the server starts.
+     */
+    public void enableSessionIndex() {
+        if (sessionsById == null) {
+            sessionsById = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * @param sessionId The session ID.
+     * @return The connected session with this ID, or {@code null} if there is none or the index is not enabled.
+     */
+    public ProctorSession findSession(String sessionId) {
+        ConcurrentHashMap<String, ProctorSession> index = sessionsById;
+        return index != null ? index.get(sessionId) : null;
+    }
+
+    /**
+     * @return The connected sessions, as a live view; empty unless the index is enabled.
+     */
+    public Collection<ProctorSession> getSessions() {
+        ConcurrentHashMap<String, ProctorSession> index = sessionsById;
+        return index != null ? Collections.unmodifiableCollection(index.values()) : Collections.emptySet();
+    }
+
+    private void index(ProctorSession session) {
+        ConcurrentHashMap<String, ProctorSession> index = sessionsById;
+        if (index != null) {
+            index.put(session.getSessionId(), session);
+        }
+    }
+
+    private void unindex(ProctorSession session) {
+        ConcurrentHashMap<String, ProctorSession> index = sessionsById;
+        if (index != null) {
+            index.remove(session.getSessionId(), session);
+        }
+    }
+
+    /**
+     * Lets go of a session that carries on on another server: it is detached from its connection
+     * without running disconnect listeners, and no longer counted here.
+     * @return The connection to close, or {@code null} if the session is no longer connected here.
+     */
+    public WebSocket handOff(ProctorSession session) {
+        WebSocket connection = session.getConnection();
+        if (connection == null || !session.detach()) {
+            return null;
+        }
+        sessionCount.decrementAndGet();
+        unindex(session);
+        return connection;
+    }
+
+    /**
+     * Takes over a session handed off by another server. It waits, like a session restored from a
+     * snapshot, for its client to reconnect, and is handed to the resumed-session handler.
+     * @return The adopted session.
+     */
+    public ProctorSession adoptSession(String sessionId, long eventCount, int violationCount, String[] groupIds) {
+        ProctorSession session = new ProctorSession(sessionId, this, eventCount, violationCount, groupIds);
+        restoredSessions.put(sessionId, session);
+        resumedSessionHandler.accept(session);
+        return session;
+    }
+
+    /**
+     * Ends one adopted or restored session if its client has not come back, running its disconnect listeners.
+     * @return {@code false} if the client came back or the session had already ended.
+     */
+    public boolean expireRestoredSession(ProctorSession session) {
+        if (restoredSessions.remove(session.getSessionId(), session)) {
+            session.handleDisconnect();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Looks up a session restored from a snapshot whose client has not come back yet. The server calls
+     * this during the handshake, so it can tell the client where to resume.
+     * @param sessionId The session ID the client connects with.
+     * @return The waiting session, or {@code null} if there is none or the registry is suspended.
+     */
+    public ProctorSession claimRestored(String sessionId) {
+        return suspended ? null : restoredSessions.get(sessionId);
+    }
+
+    /**
+     * @return {@code true} once {@link #suspend} was called; new connections should be turned away.
+     */
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    /**
+     * Prepares a warm restart: from now on closing connections only detach their sessions, without
+     * running disconnect listeners, and no new sessions are accepted.
+     * @param connections The server's open connections.
+     * @return Every session to save: the connected ones and restored ones still waiting for their client.
+     */
+    public List<ProctorSession> suspend(Collection<WebSocket> connections) {
+        suspended = true;
+        Set<ProctorSession> sessions = new LinkedHashSet<>();
+        for (WebSocket connection : connections) {
+            ProctorSession session = connection.getAttachment();
+            if (session != null) {
+                sessions.add(session);
+            }
+        }
+        sessions.addAll(restoredSessions.values());
+        return new ArrayList<>(sessions);
+    }
+
+    /**
+     * Writes the sessions' IDs, groups and counters to a snapshot file for {@link #restoreSnapshot}.
+     * @throws IOException if the file cannot be written.
+     */
+    public void saveSnapshot(Path file, Collection<ProctorSession> sessions) throws IOException {
+        SessionSnapshot.write(file, sessions);
+    }
+
+    /**
+     * Restores the sessions saved by a previous process and hands each one to the resumed-session
+     * handler, so per-session listeners can be registered before its client reconnects. The file is
+     * deleted once read, whether or not it could be used.
+     * @param file The snapshot; nothing is restored if it does not exist.
+     * @param maxAgeMillis A snapshot older than this is discarded, since its clients have given up; so
+     *                     is one saved in the future, whose age cannot be trusted.
+     * @return The number of sessions restored.
+     * @throws IOException if the file cannot be read.
+     */
+    public int restoreSnapshot(Path file, long maxAgeMillis) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        SessionSnapshot snapshot;
+        try {
+            snapshot = SessionSnapshot.read(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        long age = System.currentTimeMillis() - snapshot.savedAtMillis;
+        if (age < 0 || age > maxAgeMillis) {
+            System.err.println("Ignoring session snapshot " + file + " saved " + age / 1000 + " s ago.");
+            return 0;
+        }
+        List<ProctorSession> sessions = new ArrayList<>(snapshot.entries.size());
+        for (SessionSnapshot.Entry entry : snapshot.entries) {
+            ProctorSession session = new ProctorSession(entry.sessionId, this, entry.eventCount, entry.violationCount, entry.groupIds);
+            restoredSessions.put(entry.sessionId, session);
+            sessions.add(session);
+        }
+        for (ProctorSession session : sessions) {
+            resumedSessionHandler.accept(session);
+        }
+        return sessions.size();
+    }
+
+    /**
+     * Ends the restored sessions whose clients did not come back, running their disconnect listeners.
+     * @return The number of sessions ended.
+     */
+    public int expireRestoredSessions() {
+        int expired = 0;
+        for (ProctorSession session : restoredSessions.values()) {
+            if (expireRestoredSession(session)) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @param tracer Records the latency of every event received from now on; {@code null} to stop.
+     */
+    public void setTracer(LatencyTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * @return The latency tracer, or {@code null} if latency tracing is off.
+     */
+    public LatencyTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * @return The index of sessions by group.
+     */
+    public SessionGroups getGroups() {
+        return groups;
+    }
+
+    /**
+     * Adds a listener that will be called for any event from any session.
+     * @param listener The callback, given the session and the event.
+     */
+    public void onActivity(BiConsumer<ProctorSession, JSONObject> listener) {
+        activityListeners.add(listener);
+    }
+
+    /**
+     * Adds a listener that will be called for events of one activity, and optionally one status, from
+     * any session.
+     * @param status The status, or {@code null} for any.
+     * @param listener The callback, given the session and the event.
+     */
+    public void onActivity(Activity activity, Status status, BiConsumer<ProctorSession, JSONObject> listener) {
+        if (activity == null) {
+            throw new IllegalArgumentException("Activity cannot be null.");
+        }
+        synchronized (this) {
+            routedListeners = routedListeners.with(activity, status, listener);
+        }
+    }
+
+    /**
+     * Adds a listener that will be called for events of one activity, of any status, from any session.
+     * @param activity The activity as sent by the client, e.g. "clipboardCopy".
+     * @param listener The callback, given the session and the event.
+     */
+    public void onActivity(String activity, BiConsumer<ProctorSession, JSONObject> listener) {
+        onActivity(activityNamed(activity), null, listener);
+    }
+
+    /**
+     * Adds a listener that will be called for events marked as 'violation' from any session.
+     * @param listener The callback, given the session and the event.
+     */
+    public void onViolation(BiConsumer<ProctorSession, JSONObject> listener) {
+        violationListeners.add(listener);
+    }
+
+    /**
+     * Adds a listener that will be called when any session disconnects.
+     * @param listener The callback, given the session.
+     */
+    public void onDisconnect(Consumer<ProctorSession> listener) {
+        disconnectListeners.add(listener);
+    }
+
+    boolean hasActivityListeners() {
+        return !activityListeners.isEmpty();
     }
-}
 
+    static Activity activityNamed(String name) {
+        Activity activity = Activity.fromWireName(name);
+        if (activity == Activity.UNKNOWN) {
+            throw new IllegalArgumentException("Unknown activity: " + name);
+        }
+        return activity;
+    }
+
+    boolean hasActivityListeners(Activity activity, Status status) {
+        return routedListeners.get(activity, status).length > 0;
+    }
+
+    boolean hasViolationListeners() {
+        return !violationListeners.isEmpty();
+    }
+
+    void dispatchActivity(ProctorSession session, JSONObject event, Activity activity, Status status) {
+        for (BiConsumer<ProctorSession, JSONObject> listener : activityListeners) {
+            listener.accept(session, event);
+        }
+        for (BiConsumer<ProctorSession, JSONObject> listener : routedListeners.get(activity, status)) {
+            listener.accept(session, event);
+        }
+    }
+
+    void dispatchViolation(ProctorSession session, JSONObject event) {
+        for (BiConsumer<ProctorSession, JSONObject> listener : violationListeners) {
+            listener.accept(session, event);
+        }
+    }
+
+    void dispatchDisconnect(ProctorSession session) {
+        for (Consumer<ProctorSession> listener : disconnectListeners) {
+            listener.accept(session);
+        }
+    }
+}
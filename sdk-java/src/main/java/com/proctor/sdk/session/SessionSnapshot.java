@@ -0,0 +1,116 @@
+package com.proctor.sdk.session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads and writes the session registry for a warm restart. Strings use
+ * {@link DataOutputStream#writeUTF}'s modified UTF-8.
+ * <pre>
+ *   file    := magic:"PRSS" version:uint8 savedAt:int64 count:int32 session*
+ *   session := sessionId:utf eventCount:int64 violationCount:int32 groupCount:int32 groupId:utf*
+ * </pre>
+ * {@code savedAt} is in epoch milliseconds. The file is written next to its final name and moved into
+ * place, so a crash while saving never leaves a partial snapshot behind. A file that does not match
+ * this layout exactly, e.g. truncated, with negative counters or with bytes left over, is rejected.
+ */
+final class SessionSnapshot {
+
+    private static final byte[] MAGIC = {'P', 'R', 'S', 'S'};
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * One saved session.
+     */
+    static final class Entry {
+        final String sessionId;
+        final long eventCount;
+        final int violationCount;
+        final String[] groupIds;
+
+        Entry(String sessionId, long eventCount, int violationCount, String[] groupIds) {
+            this.sessionId = sessionId;
+            this.eventCount = eventCount;
+            this.violationCount = violationCount;
+            this.groupIds = groupIds;
+        }
+    }
+
+    final long savedAtMillis;
+    final List<Entry> entries;
+
+    private SessionSnapshot(long savedAtMillis, List<Entry> entries) {
+        this.savedAtMillis = savedAtMillis;
+        this.entries = entries;
+    }
+
+    static void write(Path file, Collection<ProctorSession> sessions) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".part");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(sessions.size());
+            for (ProctorSession session : sessions) {
+                String[] groupIds = session.groupIdArray();
+                out.writeUTF(session.getSessionId());
+                out.writeLong(session.getEventCount());
+                out.writeInt(session.getViolationCount());
+                out.writeInt(groupIds.length);
+                for (String groupId : groupIds) {
+                    out.writeUTF(groupId);
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static SessionSnapshot read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + " is not a session snapshot.");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported session snapshot version " + version + " in " + file);
+            }
+            long savedAtMillis = in.readLong();
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Corrupt session snapshot " + file);
+            }
+            List<Entry> entries = new ArrayList<>(Math.min(count, 1 << 20));
+            for (int i = 0; i < count; i++) {
+                String sessionId = in.readUTF();
+                long eventCount = in.readLong();
+                int violationCount = in.readInt();
+                int groupCount = in.readInt();
+                if (eventCount < 0 || violationCount < 0 || groupCount < 0) {
+                    throw new IOException("Corrupt session snapshot " + file);
+                }
+                String[] groupIds = new String[groupCount];
+                for (int g = 0; g < groupIds.length; g++) {
+                    groupIds[g] = in.readUTF();
+                }
+                entries.add(new Entry(sessionId, eventCount, violationCount, groupIds));
+            }
+            if (in.read() != -1) {
+                throw new IOException("Corrupt session snapshot " + file);
+            }
+            return new SessionSnapshot(savedAtMillis, entries);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.proctor.sdk.trace;
+
+import com.proctor.protocol.DecodedEvent;
+import com.proctor.protocol.LatencyTrace;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Collects per-stage latency histograms of the events of all sessions (see {@link TraceStage}). The
+ * server stages are recorded for every text event. The client stages need the {@code trace} object
+ * clients add to one event in {@link #getSampleEvery()} (see {@link LatencyTrace}), and the network
+ * and total stages also need the client's clock offset estimate, which it has shortly after
+ * connecting.
+ */
+public class LatencyTracer {
+
+    private final int sampleEvery;
+    private final Map<TraceStage, LatencyHistogram> histograms;
+
+    /**
+     * @param sampleEvery Clients trace every N-th event they send; 1 traces every event.
+     */
+    public LatencyTracer(int sampleEvery) {
+        if (sampleEvery <= 0) {
+            throw new IllegalArgumentException("Sampling rate must be positive.");
+        }
+        this.sampleEvery = sampleEvery;
+        Map<TraceStage, LatencyHistogram> map = new EnumMap<>(TraceStage.class);
+        for (TraceStage stage : TraceStage.values()) {
+            map.put(stage, new LatencyHistogram());
+        }
+        this.histograms = Collections.unmodifiableMap(map);
+    }
+
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    public LatencyHistogram getHistogram(TraceStage stage) {
+        return histograms.get(stage);
+    }
+
+    /** @return The histogram of every stage, in the order of the stages. */
+    public Map<TraceStage, LatencyHistogram> getHistograms() {
+        return histograms;
+    }
+
+    /**
+     * Clears all histograms, e.g. to measure from a known point on.
+     */
+    public void reset() {
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+
+    /**
+     * Records one event. Called by sessions on the thread that received it.
+     * @param traceJson The event's {@code trace} object, or {@code null} if the client did not trace it.
+     * @param detectedAt The event's timestamp, or {@link DecodedEvent#NO_TIMESTAMP}.
+     * @param receivedNanos {@link System#nanoTime()} when the server received the event.
+     * @param parsedNanos When the event was decoded and parsed.
+     * @param listenersEndNanos When the last listener returned, or 0 if the event had no listeners.
+     */
+    public void record(String traceJson, long detectedAt, long receivedNanos, long parsedNanos, long listenersEndNanos) {
+        long nowNanos = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        record(TraceStage.PARSE, (parsedNanos - receivedNanos) / 1000);
+        if (listenersEndNanos != 0) {
+            record(TraceStage.LISTENERS, (listenersEndNanos - parsedNanos) / 1000);
+        }
+        if (traceJson == null) {
+            return;
+        }
+        JSONObject trace;
+        try {
+            trace = new JSONObject(traceJson);
+        } catch (JSONException e) {
+            return;
+        }
+        long enqueue = trace.optLong(LatencyTrace.ENQUEUE);
+        long dispatch = trace.optLong(LatencyTrace.DISPATCH);
+        long send = trace.optLong(LatencyTrace.SEND);
+        boolean detected = detectedAt != DecodedEvent.NO_TIMESTAMP;
+        if (detected) {
+            record(TraceStage.DETECT_TO_ENQUEUE, (enqueue - detectedAt) * 1000);
+        }
+        record(TraceStage.QUEUE, (dispatch - enqueue) * 1000);
+        record(TraceStage.DISPATCH_TO_SEND, (send - dispatch) * 1000);
+        if (trace.optLong(LatencyTrace.RTT, -1) < 0) {
+            // The client had no clock offset yet, so its times cannot be compared with the server's.
+            return;
+        }
+        long offset = trace.optLong(LatencyTrace.CLOCK_OFFSET);
+        long receivedAtMicros = nowMillis * 1000 - (nowNanos - receivedNanos) / 1000;
+        record(TraceStage.NETWORK, receivedAtMicros - (send + offset) * 1000);
+        if (detected) {
+            long endNanos = listenersEndNanos != 0 ? listenersEndNanos : parsedNanos;
+            long endMicros = nowMillis * 1000 - (nowNanos - endNanos) / 1000;
+            record(TraceStage.END_TO_END, endMicros - (detectedAt + offset) * 1000);
+        }
+    }
+
+    private void record(TraceStage stage, long micros) {
+        histograms.get(stage).record(micros);
+    }
+
+    /**
+     * @return One line per stage with its count, mean, median, 90th and 99th percentile and maximum.
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("Event latency (1 in ").append(sampleEvery).append(" traced):");
+        for (Map.Entry<TraceStage, LatencyHistogram> entry : histograms.entrySet()) {
+            report.append(String.format("%n  %-24s %s", entry.getKey().getLabel(), entry.getValue()));
+        }
+        return report.toString();
+    }
+}
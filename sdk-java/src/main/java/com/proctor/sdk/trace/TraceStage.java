@@ -0,0 +1,35 @@
+package com.proctor.sdk.trace;
+
+/**
+ * The stages of an event's way from the monitor that detected it to the server's listeners. The
+ * first three are measured on the client, the last three on the server; the network stage and the
+ * total span both clocks and are corrected by the client's estimate of the offset between them.
+ */
+public enum TraceStage {
+
+    /** From detection (the event's timestamp) to the client's event queue. */
+    DETECT_TO_ENQUEUE("detect -> enqueue"),
+    /** Waiting in the client's event queue. */
+    QUEUE("enqueue -> dispatch"),
+    /** From the dispatcher to the connection: summarizing, and buffering while disconnected. */
+    DISPATCH_TO_SEND("dispatch -> send"),
+    /** From the client writing the event to the server receiving it. */
+    NETWORK("send -> receive"),
+    /** Decoding the event and, if there are listeners, parsing it into a JSONObject. */
+    PARSE("receive -> parse"),
+    /** Running the listeners, the session's own and the SDK-wide ones. */
+    LISTENERS("listener start -> end"),
+    /** From detection to the end of the listeners, or of parsing if there are none. */
+    END_TO_END("detect -> listener end");
+
+    private final String label;
+
+    TraceStage(String label) {
+        this.label = label;
+    }
+
+    /** @return The stage as "from -> to". */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,366 @@
+package com.proctor.sdk.webhook;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Batches, sends and retries the events of one {@link WebhookEndpoint}.
+ * <p>
+ * Events collect in a pending batch that is closed when it is full or when its first event has
+ * lingered long enough. Closed batches wait in a ready queue for one of the endpoint's request
+ * permits, so at most {@code maxInFlight} requests are outstanding; sending is asynchronous and
+ * completions start the next ready batch. A failed request is retried after an exponential backoff
+ * with jitter; once its attempts run out the batch goes to the disk spool. Spooled batches are sent
+ * again one at a time, whenever a request to the endpoint succeeds and periodically.
+ */
+final class EndpointDispatcher {
+
+    private static final int MAX_READY_BATCHES = 256;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final WebhookEndpoint endpoint;
+    private final HttpClient client;
+    private final ScheduledExecutorService scheduler;
+    private final WebhookSpool spool;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+
+    private final Object lock = new Object();
+    private List<String> pending = new ArrayList<>();
+    private ScheduledFuture<?> lingerTask;
+    private final ArrayDeque<Batch> ready = new ArrayDeque<>();
+    private final Set<Batch> backingOff = new HashSet<>();
+    private int inFlight;
+    private boolean drainingSpool;
+    private boolean closed;
+
+    private final AtomicLong eventsSent = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong batchesSpooled = new AtomicLong();
+    private final AtomicLong batchesDropped = new AtomicLong();
+
+    /**
+     * A request body and where it came from. Spooled batches remember their file, which is only
+     * deleted once the endpoint accepts them.
+     */
+    private static final class Batch {
+        final String body;
+        final int eventCount;
+        final Path spoolFile;
+        int attempts;
+
+        Batch(String body, int eventCount, Path spoolFile) {
+            this.body = body;
+            this.eventCount = eventCount;
+            this.spoolFile = spoolFile;
+        }
+    }
+
+    EndpointDispatcher(WebhookEndpoint endpoint, HttpClient client, ScheduledExecutorService scheduler,
+                       WebhookSpool spool, int maxAttempts, long initialBackoffMillis) {
+        this.endpoint = endpoint;
+        this.client = client;
+        this.scheduler = scheduler;
+        this.spool = spool;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    WebhookEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Adds one event to the pending batch. Never blocks on the network.
+     */
+    void add(String eventJson) {
+        List<String> full = null;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            pending.add(eventJson);
+            if (pending.size() >= endpoint.getMaxBatchSize()) {
+                full = takePending();
+            } else if (pending.size() == 1) {
+                lingerTask = scheduler.schedule(this::flush, endpoint.getLingerMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            submit(new Batch(toBody(full), full.size(), null));
+        }
+    }
+
+    /**
+     * Closes the pending batch, if any, and queues it for sending.
+     */
+    void flush() {
+        List<String> events;
+        synchronized (lock) {
+            events = pending.isEmpty() ? null : takePending();
+        }
+        if (events != null) {
+            submit(new Batch(toBody(events), events.size(), null));
+        }
+    }
+
+    /**
+     * Sends the oldest spooled batch if none is being sent yet.
+     */
+    void drainSpool() {
+        if (spool == null) {
+            return;
+        }
+        Path file;
+        synchronized (lock) {
+            if (closed || drainingSpool || (file = spool.peek()) == null) {
+                return;
+            }
+            drainingSpool = true;
+        }
+        try {
+            submit(new Batch(spool.read(file), WebhookSpool.eventCountOf(file), file));
+        } catch (IOException e) {
+            System.err.println("Could not read spooled webhook batch " + file + ": " + e.getMessage());
+            spool.remove(file);
+            synchronized (lock) {
+                drainingSpool = false;
+            }
+        }
+    }
+
+    /**
+     * Sends what is pending, waits up to the deadline for outstanding requests, and spools whatever
+     * is still unsent (including batches waiting to retry).
+     */
+    void close(long deadlineNanos) {
+        flush();
+        synchronized (lock) {
+            try {
+                while ((inFlight > 0 || !ready.isEmpty()) && System.nanoTime() < deadlineNanos) {
+                    lock.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime())));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            closed = true;
+        }
+        List<Batch> unsent;
+        synchronized (lock) {
+            unsent = new ArrayList<>(ready);
+            unsent.addAll(backingOff);
+            ready.clear();
+            backingOff.clear();
+        }
+        for (Batch batch : unsent) {
+            if (batch.spoolFile == null) {
+                spoolOrDrop(batch);
+            }
+        }
+    }
+
+    WebhookStats getStats() {
+        int currentInFlight;
+        synchronized (lock) {
+            currentInFlight = inFlight;
+        }
+        return new WebhookStats(endpoint.getUri(), eventsSent.get(), batchesSent.get(), retries.get(),
+                batchesSpooled.get(), batchesDropped.get(), spool != null ? spool.size() : 0, currentInFlight);
+    }
+
+    private List<String> takePending() {
+        List<String> events = pending;
+        pending = new ArrayList<>(Math.min(events.size(), endpoint.getMaxBatchSize()));
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        return events;
+    }
+
+    private void submit(Batch batch) {
+        boolean overflow;
+        synchronized (lock) {
+            overflow = ready.size() >= MAX_READY_BATCHES;
+            if (!overflow) {
+                ready.addLast(batch);
+            }
+        }
+        if (overflow) {
+            // The endpoint cannot keep up; keep the batch on disk rather than grow the heap.
+            if (batch.spoolFile == null) {
+                spoolOrDrop(batch);
+            } else {
+                synchronized (lock) {
+                    drainingSpool = false;
+                }
+            }
+            return;
+        }
+        pump();
+    }
+
+    /**
+     * Starts as many ready batches as there are free permits.
+     */
+    private void pump() {
+        while (true) {
+            Batch next;
+            synchronized (lock) {
+                if (closed || ready.isEmpty() || inFlight >= endpoint.getMaxInFlight()) {
+                    return;
+                }
+                next = ready.pollFirst();
+                inFlight++;
+            }
+            send(next);
+        }
+    }
+
+    private void send(Batch batch) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(endpoint.getUri())
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(batch.body));
+        endpoint.getHeaders().forEach(request::header);
+        client.sendAsync(request.build(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> onComplete(batch, response, error));
+    }
+
+    private void onComplete(Batch batch, HttpResponse<Void> response, Throwable error) {
+        try {
+            handleOutcome(batch, response, error);
+        } finally {
+            // Released only once the batch is accounted for, so close() never returns while it is
+            // still being rescheduled or written to the spool.
+            synchronized (lock) {
+                inFlight--;
+                lock.notifyAll();
+            }
+        }
+        pump();
+    }
+
+    private void handleOutcome(Batch batch, HttpResponse<Void> response, Throwable error) {
+        int status = response != null ? response.statusCode() : 0;
+        if (error == null && status >= 200 && status < 300) {
+            eventsSent.addAndGet(batch.eventCount);
+            batchesSent.incrementAndGet();
+            if (batch.spoolFile != null) {
+                spool.remove(batch.spoolFile);
+                synchronized (lock) {
+                    drainingSpool = false;
+                }
+            }
+            // The endpoint is healthy again, so anything buffered on disk can follow.
+            drainSpool();
+        } else if (error == null && !isRetryable(status)) {
+            System.err.println("Webhook " + endpoint.getUri() + " rejected a batch of " + batch.eventCount
+                    + " events with HTTP " + status + "; dropping it.");
+            batchesDropped.incrementAndGet();
+            if (batch.spoolFile != null) {
+                spool.remove(batch.spoolFile);
+                synchronized (lock) {
+                    drainingSpool = false;
+                }
+            }
+        } else if (++batch.attempts < maxAttempts) {
+            retries.incrementAndGet();
+            scheduleRetry(batch);
+        } else if (batch.spoolFile != null) {
+            // Already on disk; the periodic drain tries it again later.
+            synchronized (lock) {
+                drainingSpool = false;
+            }
+        } else {
+            System.err.println("Webhook " + endpoint.getUri() + " failed " + batch.attempts + " times ("
+                    + (error != null ? error.getMessage() : "HTTP " + status) + "); buffering the batch.");
+            spoolOrDrop(batch);
+        }
+    }
+
+    private void scheduleRetry(Batch batch) {
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, initialBackoffMillis << Math.min(batch.attempts - 1, 20));
+        // Jitter keeps many failed batches from retrying in lockstep.
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        boolean isClosed;
+        synchronized (lock) {
+            isClosed = closed;
+            if (!isClosed) {
+                backingOff.add(batch);
+            }
+        }
+        if (isClosed) {
+            // Shutting down: no more retries, so keep it for the next run.
+            if (batch.spoolFile == null) {
+                spoolOrDrop(batch);
+            }
+            return;
+        }
+        scheduler.schedule(() -> {
+            synchronized (lock) {
+                if (!backingOff.remove(batch)) {
+                    return;
+                }
+                ready.addFirst(batch);
+            }
+            pump();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void spoolOrDrop(Batch batch) {
+        if (spool != null) {
+            try {
+                int evicted = spool.append(batch.body, batch.eventCount);
+                if (evicted >= 0) {
+                    batchesSpooled.incrementAndGet();
+                    if (evicted > 0) {
+                        System.err.println("Webhook buffer for " + endpoint.getUri() + " is full; dropped "
+                                + evicted + " oldest batches.");
+                        batchesDropped.addAndGet(evicted);
+                    }
+                    return;
+                }
+            } catch (IOException e) {
+                System.err.println("Could not buffer webhook batch for " + endpoint.getUri() + ": " + e.getMessage());
+            }
+        }
+        System.err.println("Dropping a batch of " + batch.eventCount + " events for " + endpoint.getUri() + ".");
+        batchesDropped.incrementAndGet();
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 408 || status == 425 || status == 429 || status >= 500;
+    }
+
+    private static String toBody(List<String> events) {
+        int length = 2 + events.size();
+        for (String event : events) {
+            length += event.length();
+        }
+        StringBuilder body = new StringBuilder(length).append('[');
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append(events.get(i));
+        }
+        return body.append(']').toString();
+    }
+}
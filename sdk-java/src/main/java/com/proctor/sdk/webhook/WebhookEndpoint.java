@@ -0,0 +1,80 @@
+package com.proctor.sdk.webhook;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Configuration of one webhook target for a {@link WebhookForwarder}.
+ * Events are posted as a JSON array of up to {@code maxBatchSize} events; a partial batch is sent once
+ * its first event has waited {@code lingerMillis}. At most {@code maxInFlight} requests to the
+ * endpoint are outstanding at a time.
+ */
+public class WebhookEndpoint {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    public static final long DEFAULT_LINGER_MILLIS = 200;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private final URI uri;
+    private final Map<String, String> headers;
+    private final int maxBatchSize;
+    private final long lingerMillis;
+    private final int maxInFlight;
+
+    /**
+     * An endpoint with the default batching and concurrency settings.
+     * @param uri The URL events are POSTed to.
+     */
+    public WebhookEndpoint(URI uri) {
+        this(uri, Collections.emptyMap(), DEFAULT_MAX_BATCH_SIZE, DEFAULT_LINGER_MILLIS, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param uri The URL events are POSTed to.
+     * @param headers Extra request headers, e.g. an authorization token.
+     * @param maxBatchSize The most events in one request.
+     * @param lingerMillis How long the first event of a partial batch may wait for more events.
+     * @param maxInFlight The most concurrent requests to this endpoint.
+     */
+    public WebhookEndpoint(URI uri, Map<String, String> headers, int maxBatchSize, long lingerMillis, int maxInFlight) {
+        if (uri == null || uri.getScheme() == null || !uri.getScheme().startsWith("http")) {
+            throw new IllegalArgumentException("Webhook URI must be an http or https URL.");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        if (lingerMillis < 0) {
+            throw new IllegalArgumentException("Linger time cannot be negative.");
+        }
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Max in-flight requests must be positive.");
+        }
+        this.uri = uri;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+}
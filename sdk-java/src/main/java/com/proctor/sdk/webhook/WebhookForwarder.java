@@ -0,0 +1,161 @@
+package com.proctor.sdk.webhook;
+
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards SDK events to HTTP endpoints in the background, so listeners never wait on the network.
+ * <p>
+ * Each endpoint batches events by size and linger time (see {@link WebhookEndpoint}) and POSTs every
+ * batch as a JSON array. All endpoints share one {@link HttpClient}, which prefers HTTP/2 and so
+ * multiplexes concurrent requests over pooled connections; HTTP/1.1 endpoints get keep-alive
+ * connections instead. Failed requests (network errors, timeouts, 408, 429 and 5xx responses) are
+ * retried with exponential backoff. Batches that still fail go to a bounded on-disk buffer under
+ * the spool directory, one subdirectory per endpoint, and are re-sent once the endpoint recovers,
+ * including after a restart. Other 4xx responses are not retried.
+ * <pre>
+ *   WebhookForwarder forwarder = new WebhookForwarder(Paths.get("webhook-spool"));
+ *   forwarder.addEndpoint(new WebhookEndpoint(URI.create("https://backend.example.com/proctor/violations")));
+ *   sdk.forwardEvents(forwarder, true);
+ * </pre>
+ */
+public class WebhookForwarder implements Closeable {
+
+    public static final long DEFAULT_MAX_SPOOL_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+
+    private static final long SPOOL_DRAIN_INTERVAL_MILLIS = 30000;
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000;
+
+    private final HttpClient client;
+    private final ScheduledExecutorService scheduler;
+    private final Path spoolDirectory;
+    private final long maxSpoolBytes;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final List<EndpointDispatcher> dispatchers = new CopyOnWriteArrayList<>();
+
+    /**
+     * A forwarder with the default retry settings and disk buffer size.
+     * @param spoolDirectory Where undeliverable batches are kept; {@code null} to drop them instead.
+     */
+    public WebhookForwarder(Path spoolDirectory) {
+        this(spoolDirectory, DEFAULT_MAX_SPOOL_BYTES, DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @param spoolDirectory Where undeliverable batches are kept; {@code null} to drop them instead.
+     * @param maxSpoolBytes The disk buffer size per endpoint; the oldest batches are deleted beyond it.
+     * @param maxAttempts How many times a batch is sent before it is buffered.
+     * @param initialBackoffMillis The wait before the first retry; it doubles with each attempt, up to 30 s.
+     */
+    public WebhookForwarder(Path spoolDirectory, long maxSpoolBytes, int maxAttempts, long initialBackoffMillis) {
+        if (maxSpoolBytes <= 0) {
+            throw new IllegalArgumentException("Spool size must be positive.");
+        }
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Max attempts must be positive.");
+        }
+        if (initialBackoffMillis <= 0) {
+            throw new IllegalArgumentException("Initial backoff must be positive.");
+        }
+        this.spoolDirectory = spoolDirectory;
+        this.maxSpoolBytes = maxSpoolBytes;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Webhook-Scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    /**
+     * Adds an endpoint; every event forwarded from now on is also sent to it. Batches buffered on disk
+     * for the same URL by an earlier run are re-sent.
+     * @param endpoint The endpoint.
+     * @throws IOException if its spool directory cannot be created or read.
+     */
+    public void addEndpoint(WebhookEndpoint endpoint) throws IOException {
+        WebhookSpool spool = null;
+        if (spoolDirectory != null) {
+            // Named after the URL, so a restarted forwarder finds the same endpoint's buffer again.
+            String name = UUID.nameUUIDFromBytes(endpoint.getUri().toString().getBytes(StandardCharsets.UTF_8)).toString();
+            spool = new WebhookSpool(spoolDirectory.resolve(name), maxSpoolBytes);
+        }
+        EndpointDispatcher dispatcher = new EndpointDispatcher(endpoint, client, scheduler, spool, maxAttempts, initialBackoffMillis);
+        dispatchers.add(dispatcher);
+        scheduler.scheduleWithFixedDelay(dispatcher::drainSpool, 0, SPOOL_DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues an event for every endpoint. Returns immediately.
+     * @param eventJson The event as JSON text.
+     */
+    public void forward(String eventJson) {
+        for (EndpointDispatcher dispatcher : dispatchers) {
+            dispatcher.add(eventJson);
+        }
+    }
+
+    /**
+     * Queues a session's event for every endpoint, as {@code {"sessionId":"...","event":{...}}}.
+     * @param sessionId The session the event came from.
+     * @param event The event.
+     */
+    public void forward(String sessionId, JSONObject event) {
+        forward(new JSONObject().put("sessionId", sessionId).put("event", event).toString());
+    }
+
+    /**
+     * Sends all partial batches now instead of waiting out their linger time.
+     */
+    public void flush() {
+        for (EndpointDispatcher dispatcher : dispatchers) {
+            dispatcher.flush();
+        }
+    }
+
+    /**
+     * @return The delivery counters of each endpoint, in the order they were added.
+     */
+    public List<WebhookStats> getStats() {
+        List<WebhookStats> stats = new ArrayList<>();
+        for (EndpointDispatcher dispatcher : dispatchers) {
+            stats.add(dispatcher.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Sends what is queued, waits up to 10 seconds for outstanding requests, and buffers anything
+     * still unsent on disk for the next run. If the calling thread is interrupted it stops waiting.
+     * Events forwarded afterwards are ignored.
+     */
+    @Override
+    public void close() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+        for (EndpointDispatcher dispatcher : dispatchers) {
+            dispatcher.close(deadline);
+        }
+        scheduler.shutdownNow();
+    }
+}
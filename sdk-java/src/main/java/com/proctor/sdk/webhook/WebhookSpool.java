@@ -0,0 +1,113 @@
+package com.proctor.sdk.webhook;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A bounded on-disk queue of request bodies for one endpoint, used for batches whose retries ran out.
+ * Each batch is one file named {@code <sequence>-<eventCount>.batch}, so the queue survives a restart
+ * and is read back oldest first. When the total size exceeds the limit the oldest batches are deleted.
+ */
+final class WebhookSpool {
+
+    private static final String SUFFIX = ".batch";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final ArrayDeque<Path> files = new ArrayDeque<>();
+    private long totalBytes;
+    private long nextSequence;
+
+    WebhookSpool(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(existing::add);
+        }
+        // Sequence numbers are zero-padded, so name order is age order.
+        Collections.sort(existing);
+        for (Path file : existing) {
+            files.addLast(file);
+            totalBytes += Files.size(file);
+            nextSequence = Math.max(nextSequence, sequenceOf(file) + 1);
+        }
+    }
+
+    /**
+     * Appends a batch, deleting the oldest batches if the spool would grow past its limit.
+     * @return The number of older batches deleted to make room, or -1 if the batch alone exceeds the limit.
+     */
+    synchronized int append(String body, int eventCount) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) {
+            return -1;
+        }
+        Path file = directory.resolve(String.format("%019d-%d%s", nextSequence++, eventCount, SUFFIX));
+        Path temp = directory.resolve(file.getFileName() + ".part");
+        Files.write(temp, bytes);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        files.addLast(file);
+        totalBytes += bytes.length;
+
+        int evicted = 0;
+        while (totalBytes > maxBytes && files.size() > 1) {
+            remove(files.peekFirst());
+            evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * @return The oldest batch, or {@code null} if the spool is empty.
+     */
+    synchronized Path peek() {
+        return files.peekFirst();
+    }
+
+    String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    synchronized void remove(Path file) {
+        if (!files.remove(file)) {
+            return;
+        }
+        try {
+            totalBytes -= Files.size(file);
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Could not delete spooled webhook batch " + file + ": " + e.getMessage());
+        }
+    }
+
+    synchronized int size() {
+        return files.size();
+    }
+
+    static int eventCountOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(name.indexOf('-') + 1, name.length() - SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.indexOf('-')));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+}
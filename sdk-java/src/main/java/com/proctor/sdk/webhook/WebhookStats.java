@@ -0,0 +1,76 @@
+package com.proctor.sdk.webhook;
+
+import java.net.URI;
+
+/**
+ * Delivery counters of one webhook endpoint since the forwarder started.
+ */
+public class WebhookStats {
+
+    private final URI uri;
+    private final long eventsSent;
+    private final long batchesSent;
+    private final long retries;
+    private final long batchesSpooled;
+    private final long batchesDropped;
+    private final int spooledBatches;
+    private final int inFlight;
+
+    WebhookStats(URI uri, long eventsSent, long batchesSent, long retries, long batchesSpooled,
+                 long batchesDropped, int spooledBatches, int inFlight) {
+        this.uri = uri;
+        this.eventsSent = eventsSent;
+        this.batchesSent = batchesSent;
+        this.retries = retries;
+        this.batchesSpooled = batchesSpooled;
+        this.batchesDropped = batchesDropped;
+        this.spooledBatches = spooledBatches;
+        this.inFlight = inFlight;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    /** @return Events delivered with a 2xx response. */
+    public long getEventsSent() {
+        return eventsSent;
+    }
+
+    /** @return Requests answered with a 2xx response. */
+    public long getBatchesSent() {
+        return batchesSent;
+    }
+
+    /** @return Requests repeated after a failure. */
+    public long getRetries() {
+        return retries;
+    }
+
+    /** @return Batches written to the disk buffer after their retries ran out. */
+    public long getBatchesSpooled() {
+        return batchesSpooled;
+    }
+
+    /** @return Batches given up on: rejected by the endpoint, or with no room left to buffer them. */
+    public long getBatchesDropped() {
+        return batchesDropped;
+    }
+
+    /** @return Batches currently waiting in the disk buffer. */
+    public int getSpooledBatches() {
+        return spooledBatches;
+    }
+
+    /** @return Requests currently outstanding. */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    @Override
+    public String toString() {
+        return uri + ": " + eventsSent + " events in " + batchesSent + " batches, " + retries + " retries, "
+                + batchesSpooled + " spooled (" + spooledBatches + " waiting), " + batchesDropped + " dropped, "
+                + inFlight + " in flight";
+    }
+}
@@ -1,35 +1,165 @@
 package com.proctor.sdk.websocket;
 
+import com.proctor.protocol.ClusterRedirect;
+import com.proctor.protocol.EventSummary;
+import com.proctor.protocol.LatencyTrace;
+import com.proctor.protocol.ProtocolVersion;
+import com.proctor.protocol.SessionResume;
+import com.proctor.sdk.config.ProctorConfig;
+import com.proctor.sdk.replay.SessionRecorder;
+import com.proctor.sdk.scheduling.FairScheduler;
 import com.proctor.sdk.session.ProctorSession;
 import com.proctor.sdk.session.SessionManager;
+import com.proctor.sdk.trace.LatencyTracer;
 import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.PongFrame;
 import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
 import org.java_websocket.server.WebSocketServer;
 
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
 
 /**
  * The internal WebSocket server that listens for connections from student clients.
  * It delegates all connection and message handling to the SessionManager.
+ * <p>
+ * Per-connection memory is kept low for nodes holding many idle sessions. All connections share one
+ * list of supported drafts; without it the library gives every connection its own list and template
+ * draft, each with its own SecureRandom, on top of the draft the handshake negotiates. Socket reads
+ * go through a small pool of shared buffers, two per decoder thread plus one, whose size is set by
+ * {@code readBufferSize}; an idle connection holds no read buffer at all.
+ * <p>
+ * Messages are handled on the thread that decoded them, unless a {@link FairScheduler} is set: then
+ * each session's messages, and finally its close, are queued under its tenant and handled in order
+ * on the scheduler's threads. A tenant whose queue is full holds up the decoder thread that read its
+ * message, which stops reading from its connections until the queue has room.
  */
 public class ProctorWebsocketServer extends WebSocketServer {
 
+    private static final List<Draft> SUPPORTED_DRAFTS = Collections.singletonList(new Draft_6455());
+
     private final SessionManager sessionManager;
+    private final int readBufferSize;
+    private volatile SessionRecorder recorder;
+    private volatile SessionRouter router;
+    private volatile long summaryWindowMillis;
+    private volatile FairScheduler scheduler;
+    private volatile Function<ProctorSession, String> tenantOf;
 
     public ProctorWebsocketServer(InetSocketAddress address, SessionManager sessionManager) {
-        super(address);
+        this(address, sessionManager, ProctorConfig.DEFAULT_READ_BUFFER_SIZE);
+    }
+
+    /**
+     * @param readBufferSize The size of each pooled socket read buffer, in bytes. Larger messages are
+     *                       read in several passes.
+     */
+    public ProctorWebsocketServer(InetSocketAddress address, SessionManager sessionManager, int readBufferSize) {
+        super(address, Runtime.getRuntime().availableProcessors(), SUPPORTED_DRAFTS);
+        if (readBufferSize <= 0) {
+            throw new IllegalArgumentException("Read buffer size must be positive.");
+        }
         this.sessionManager = sessionManager;
+        this.readBufferSize = readBufferSize;
+        // A restarted server must be able to bind again while the old connections linger in TIME_WAIT.
+        setReuseAddr(true);
+    }
+
+    /**
+     * @param recorder Receives every accepted connection and incoming message from now on; {@code null} to stop.
+     */
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * @param router Sends clients whose session belongs to another server there; {@code null} to
+     *               accept every session.
+     */
+    public void setRouter(SessionRouter router) {
+        this.router = router;
+    }
+
+    /**
+     * @param summaryWindowMillis Asks clients that connect from now on to fold low-severity events
+     *                            into one digest per window (see {@link EventSummary}); 0 for every event.
+     */
+    public void setSummaryWindowMillis(long summaryWindowMillis) {
+        if (summaryWindowMillis < 0) {
+            throw new IllegalArgumentException("Summary window cannot be negative.");
+        }
+        this.summaryWindowMillis = summaryWindowMillis;
+    }
+
+    /**
+     * @param scheduler Handles the messages of all sessions from now on; {@code null} to handle them
+     *                  on the WebSocket threads again.
+     * @param tenantOf Gives the tenant of a session's messages; not {@code null}.
+     */
+    public void setScheduler(FairScheduler scheduler, Function<ProctorSession, String> tenantOf) {
+        this.tenantOf = tenantOf;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public ByteBuffer createBuffer() {
+        return ByteBuffer.allocate(readBufferSize);
+    }
+
+    /**
+     * Tells a client whose session was restored from a snapshot where to resume, in the handshake
+     * response itself. The session is claimed for the connection here and attached in {@link #onOpen}.
+     * The summary window and latency tracing, if any, are announced the same way.
+     */
+    @Override
+    public ServerHandshakeBuilder onWebsocketHandshakeReceivedAsServer(WebSocket conn, Draft draft, ClientHandshake request)
+            throws InvalidDataException {
+        ServerHandshakeBuilder response = super.onWebsocketHandshakeReceivedAsServer(conn, draft, request);
+        long summaryWindow = summaryWindowMillis;
+        if (summaryWindow > 0) {
+            response.put(EventSummary.HEADER, Long.toString(summaryWindow));
+        }
+        LatencyTracer tracer = sessionManager.getTracer();
+        if (tracer != null) {
+            response.put(LatencyTrace.HEADER, Integer.toString(tracer.getSampleEvery()));
+        }
+        try {
+            String sessionId = sessionIdOf(request);
+            if (redirectFor(sessionId) != null) {
+                // onOpen sends the client on; the session is not claimed here.
+                return response;
+            }
+            ProctorSession restored = sessionManager.claimRestored(sessionId);
+            if (restored != null) {
+                conn.setAttachment(restored);
+                response.put(SessionResume.HEADER, Long.toString(restored.getEventCount()));
+            }
+        } catch (Exception e) {
+            // An invalid session URL; onOpen rejects the connection.
+        }
+        return response;
     }
 
     @Override
     public void onOpen(WebSocket conn, ClientHandshake handshake) {
-        // The client connects with a URL like "ws://host:port/sessionId"
-        // We extract the sessionId from the resource descriptor.
+        if (sessionManager.isSuspended()) {
+            // Stopping for a warm restart; the client retries and resumes with the next process.
+            conn.close(CloseFrame.SERVICE_RESTART, "Server is restarting.");
+            return;
+        }
         try {
-            String path = new URI(handshake.getResourceDescriptor()).getPath();
-            // Remove the leading slash to get the ID
-            String sessionId = path.startsWith("/") ? path.substring(1) : path;
+            String sessionId = sessionIdOf(handshake);
             
             if (sessionId == null || sessionId.trim().isEmpty()) {
                 System.err.println("Connection rejected: No session ID provided in URL.");
@@ -37,7 +167,24 @@ public class ProctorWebsocketServer extends WebSocketServer {
                 return;
             }
             
+            int protocolVersion = ProtocolVersion.parse(handshake.getFieldValue(ProtocolVersion.HEADER));
+            if (!ProtocolVersion.isSupported(protocolVersion)) {
+                System.err.println("Connection rejected: Unsupported protocol version " + protocolVersion);
+                conn.close(1002, "Unsupported protocol version " + protocolVersion + ".");
+                return;
+            }
+
+            URI owner = redirectFor(sessionId);
+            if (owner != null) {
+                conn.close(ClusterRedirect.CLOSE_CODE, owner.toString());
+                return;
+            }
+
             System.out.println("Client connected with session ID: " + sessionId);
+            SessionRecorder currentRecorder = recorder;
+            if (currentRecorder != null) {
+                currentRecorder.recordOpen(conn, sessionId);
+            }
             sessionManager.startSession(conn, sessionId);
 
         } catch (Exception e) {
@@ -46,27 +193,101 @@ public class ProctorWebsocketServer extends WebSocketServer {
         }
     }
 
+    private URI redirectFor(String sessionId) {
+        SessionRouter currentRouter = router;
+        return currentRouter != null ? currentRouter.redirectFor(sessionId) : null;
+    }
+
+    /**
+     * The client connects with a URL like "ws://host:port/sessionId"; the session ID is the path
+     * without its leading slash.
+     */
+    private static String sessionIdOf(ClientHandshake handshake) throws URISyntaxException {
+        String path = new URI(handshake.getResourceDescriptor()).getPath();
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
         System.out.println("Client disconnected: " + conn.getRemoteSocketAddress());
-        sessionManager.endSession(conn);
+        SessionRecorder currentRecorder = recorder;
+        if (currentRecorder != null) {
+            currentRecorder.recordClose(conn);
+        }
+        endSession(conn);
+    }
+
+    /**
+     * Ends the connection's session, behind its queued messages when a scheduler is set, so listeners
+     * see its events before the disconnect.
+     */
+    private void endSession(WebSocket conn) {
+        FairScheduler currentScheduler = scheduler;
+        ProctorSession session = currentScheduler != null ? sessionManager.getSession(conn) : null;
+        if (session != null) {
+            currentScheduler.submit(session, tenantOf.apply(session), 0, () -> sessionManager.endSession(conn));
+        } else {
+            sessionManager.endSession(conn);
+        }
     }
 
     @Override
     public void onMessage(WebSocket conn, String message) {
+        SessionRecorder currentRecorder = recorder;
+        if (currentRecorder != null) {
+            currentRecorder.recordText(conn, message);
+        }
         ProctorSession session = sessionManager.getSession(conn);
         if (session != null) {
-            session.handleMessage(message);
+            FairScheduler currentScheduler = scheduler;
+            if (currentScheduler != null) {
+                currentScheduler.submit(session, tenantOf.apply(session), message.length(), () -> session.handleMessage(message));
+            } else {
+                session.handleMessage(message);
+            }
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        SessionRecorder currentRecorder = recorder;
+        if (currentRecorder != null) {
+            currentRecorder.recordBinary(conn, message);
+        }
+        ProctorSession session = sessionManager.getSession(conn);
+        if (session != null) {
+            FairScheduler currentScheduler = scheduler;
+            if (currentScheduler != null) {
+                currentScheduler.submit(session, tenantOf.apply(session), message.remaining(), () -> session.handleBinaryMessage(message));
+            } else {
+                session.handleBinaryMessage(message);
+            }
         }
     }
 
+    /**
+     * Answers clients' clock pings with the server's time, for their clock offset estimate (see
+     * {@link LatencyTrace}); other pings get the usual pong.
+     */
+    @Override
+    public void onWebsocketPing(WebSocket conn, Framedata f) {
+        ByteBuffer payload = LatencyTrace.clockPong(f.getPayloadData(), System.currentTimeMillis());
+        if (payload == null) {
+            super.onWebsocketPing(conn, f);
+            return;
+        }
+        PongFrame pong = new PongFrame();
+        pong.setPayload(payload);
+        conn.sendFrame(pong);
+    }
+
     @Override
     public void onError(WebSocket conn, Exception ex) {
         System.err.println("An error occurred on connection " + (conn != null ? conn.getRemoteSocketAddress() : "UNKNOWN"));
         ex.printStackTrace();
         if (conn != null) {
             // Ensure the session is cleaned up on error
-            sessionManager.endSession(conn);
+            endSession(conn);
         }
     }
     
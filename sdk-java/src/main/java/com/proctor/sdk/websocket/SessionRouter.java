@@ -0,0 +1,16 @@
+package com.proctor.sdk.websocket;
+
+import java.net.URI;
+
+/**
+ * Decides which server a session belongs to when several servers share the sessions.
+ */
+public interface SessionRouter {
+
+    /**
+     * @param sessionId The session ID a client connects with.
+     * @return The client address of the server that owns the session, e.g. {@code ws://node-2:8080},
+     *         or {@code null} if it belongs to this server.
+     */
+    URI redirectFor(String sessionId);
+}
@@ -0,0 +1,34 @@
+package com.proctor.sdk;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * Runs {@link SessionFootprintHarness} with a few hundred idle connections, to check that every
+ * scenario connects its clients, measures and cleans up. The numbers themselves are too noisy at this
+ * size to compare the scenarios; they only have to be plausible.
+ */
+public class SessionFootprintHarnessTest {
+
+    private static final int CONNECTIONS = 200;
+    private static final long MAX_PLAUSIBLE_BYTES = 64 * 1024;
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Test
+    public void measuresEveryScenario() throws Exception {
+        for (SessionFootprintHarness.Listeners listeners : SessionFootprintHarness.Listeners.values()) {
+            long bytesPerSession = SessionFootprintHarness.measure(CONNECTIONS, freePort(), listeners);
+            assertTrue(listeners + ": " + bytesPerSession + " bytes per session",
+                    bytesPerSession > 0 && bytesPerSession < MAX_PLAUSIBLE_BYTES);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.proctor.sdk.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the distribution of {@link HashRing} and how few keys move when nodes come and go.
+ */
+public class HashRingTest {
+
+    private static final int KEYS = 20000;
+
+    private static List<ClusterNode> nodes(String... ids) {
+        List<ClusterNode> nodes = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            nodes.add(ClusterNode.localhost(ids[i], 8080 + i, 9080 + i));
+        }
+        return nodes;
+    }
+
+    private static Map<String, ClusterNode> owners(HashRing ring) {
+        Map<String, ClusterNode> owners = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            String key = "session-" + i;
+            owners.put(key, ring.ownerOf(key));
+        }
+        return owners;
+    }
+
+    @Test
+    public void spreadsKeysEvenly() {
+        List<ClusterNode> nodes = nodes("a", "b", "c", "d");
+        Map<ClusterNode, Integer> counts = new HashMap<>();
+        for (ClusterNode owner : owners(new HashRing(nodes, ProctorCluster.VIRTUAL_NODES)).values()) {
+            counts.merge(owner, 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        for (Map.Entry<ClusterNode, Integer> count : counts.entrySet()) {
+            double share = count.getValue() / (double) KEYS;
+            assertTrue(count.getKey() + " owns " + share, share > 0.25 * 0.75 && share < 0.25 * 1.25);
+        }
+    }
+
+    @Test
+    public void ownersDoNotDependOnNodeOrder() {
+        List<ClusterNode> nodes = nodes("a", "b", "c");
+        List<ClusterNode> reversed = new ArrayList<>(nodes);
+        Collections.reverse(reversed);
+        HashRing ring = new HashRing(nodes, ProctorCluster.VIRTUAL_NODES);
+        assertEquals(owners(ring), owners(new HashRing(reversed, ProctorCluster.VIRTUAL_NODES)));
+        assertEquals(Arrays.asList("a", "b", "c"), Arrays.asList(ring.nodes().get(0).getNodeId(),
+                ring.nodes().get(1).getNodeId(), ring.nodes().get(2).getNodeId()));
+    }
+
+    @Test
+    public void joiningNodeOnlyTakesKeys() {
+        List<ClusterNode> before = nodes("a", "b", "c", "d");
+        List<ClusterNode> after = nodes("a", "b", "c", "d", "e");
+        ClusterNode joined = after.get(4);
+        Map<String, ClusterNode> oldOwners = owners(new HashRing(before, ProctorCluster.VIRTUAL_NODES));
+        Map<String, ClusterNode> newOwners = owners(new HashRing(after, ProctorCluster.VIRTUAL_NODES));
+        int moved = 0;
+        for (String key : oldOwners.keySet()) {
+            if (!oldOwners.get(key).equals(newOwners.get(key))) {
+                // Keys only ever move to the new node, never between the old ones.
+                assertEquals(key, joined, newOwners.get(key));
+                moved++;
+            }
+        }
+        double share = moved / (double) KEYS;
+        assertTrue("moved " + share, share > 0.2 * 0.75 && share < 0.2 * 1.25);
+    }
+
+    @Test
+    public void leavingNodeOnlyGivesUpItsKeys() {
+        List<ClusterNode> before = nodes("a", "b", "c", "d");
+        ClusterNode left = before.get(2);
+        List<ClusterNode> after = new ArrayList<>(before);
+        after.remove(left);
+        Map<String, ClusterNode> oldOwners = owners(new HashRing(before, ProctorCluster.VIRTUAL_NODES));
+        Map<String, ClusterNode> newOwners = owners(new HashRing(after, ProctorCluster.VIRTUAL_NODES));
+        for (String key : oldOwners.keySet()) {
+            if (!oldOwners.get(key).equals(left)) {
+                assertEquals(key, oldOwners.get(key), newOwners.get(key));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyRing() {
+        new HashRing(Collections.<ClusterNode>emptyList(), ProctorCluster.VIRTUAL_NODES);
+    }
+}
@@ -0,0 +1,348 @@
+package com.proctor.sdk.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.ClusterRedirect;
+import com.proctor.protocol.EventEncoder;
+import com.proctor.protocol.ProtocolVersion;
+import com.proctor.protocol.Status;
+import com.proctor.sdk.ProctorSDK;
+import com.proctor.sdk.config.ProctorConfig;
+import com.proctor.sdk.session.ProctorSession;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs several cluster nodes on local ports, with students that follow redirects the way the client does.
+ */
+public class ProctorClusterTest {
+
+    private static final String SECRET = "test-cluster-secret-0123456789";
+    private static final String GROUP = "exam";
+    private static final int STUDENTS = 24;
+    private static final long TIMEOUT_MILLIS = 20000;
+
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private final List<Student> students = new ArrayList<>();
+    private final AtomicInteger newSessions = new AtomicInteger();
+    private final AtomicInteger resumedSessions = new AtomicInteger();
+    private final AtomicInteger disconnects = new AtomicInteger();
+
+    private static final class Node {
+        final ClusterNode self;
+        final ProctorSDK sdk;
+        final ProctorCluster cluster;
+
+        Node(ClusterNode self, ProctorSDK sdk, ProctorCluster cluster) {
+            this.self = self;
+            this.sdk = sdk;
+            this.cluster = cluster;
+        }
+    }
+
+    /**
+     * A student's connection, which reconnects to wherever a redirect sends it.
+     */
+    private static final class Student {
+        final String sessionId;
+        final AtomicInteger redirects = new AtomicInteger();
+        final List<String> notices = Collections.synchronizedList(new ArrayList<>());
+        volatile WebSocketClient connection;
+        volatile boolean closed;
+
+        Student(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        void connect(URI server) {
+            URI uri = URI.create(server + "/" + sessionId);
+            connection = new WebSocketClient(uri, Collections.singletonMap(ProtocolVersion.HEADER, Integer.toString(ProtocolVersion.CURRENT))) {
+                @Override
+                public void onOpen(ServerHandshake handshake) {
+                }
+
+                @Override
+                public void onMessage(String message) {
+                    notices.add(message);
+                }
+
+                @Override
+                public void onClose(int code, String reason, boolean remote) {
+                    URI target = code == ClusterRedirect.CLOSE_CODE ? ClusterRedirect.target(uri, reason) : null;
+                    if (target != null && !closed) {
+                        redirects.incrementAndGet();
+                        // Not on this client's own thread, which is still closing.
+                        new Thread(() -> Student.this.connect(URI.create(target.getScheme() + "://" + target.getAuthority()))).start();
+                    }
+                }
+
+                @Override
+                public void onError(Exception ex) {
+                }
+            };
+            connection.connect();
+        }
+
+        boolean isOpen() {
+            WebSocketClient current = connection;
+            return current != null && current.isOpen();
+        }
+
+        void send(Activity activity, Status status) {
+            connection.send(EventEncoder.forCurrentThread().begin(activity, status).end());
+        }
+
+        void close() {
+            closed = true;
+            connection.close();
+        }
+    }
+
+    @After
+    public void stopAll() throws InterruptedException {
+        for (Student student : students) {
+            student.close();
+        }
+        for (Node node : nodes.values()) {
+            node.sdk.stop();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static ClusterNode localNode(String id) throws IOException {
+        return ClusterNode.localhost(id, freePort(), freePort());
+    }
+
+    private Node start(ClusterNode self, List<ClusterNode> seeds, String secret) {
+        ProctorSDK sdk = new ProctorSDK(new ProctorConfig(self.getClientUri().getPort(), "localhost",
+                Collections.singletonMap("windows", "http://localhost/installer.exe")));
+        sdk.onSession(session -> {
+            newSessions.incrementAndGet();
+            session.joinGroup(GROUP);
+        });
+        sdk.onSessionResumed(session -> {
+            if (session.isResumed()) {
+                resumedSessions.incrementAndGet();
+            }
+        });
+        sdk.onDisconnect(session -> disconnects.incrementAndGet());
+        ProctorCluster cluster = sdk.enableCluster(self, seeds, secret);
+        sdk.start();
+        Node node = new Node(self, sdk, cluster);
+        nodes.put(self.getNodeId(), node);
+        return node;
+    }
+
+    private void connectStudents(URI server) throws InterruptedException {
+        for (int i = 0; i < STUDENTS; i++) {
+            Student student = new Student("student-" + i);
+            students.add(student);
+            student.connect(server);
+        }
+        await(() -> totalSessions() == STUDENTS && allOpen(), "every student to connect");
+    }
+
+    private static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for " + what);
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private int totalSessions() {
+        int total = 0;
+        for (Node node : nodes.values()) {
+            total += node.sdk.getSessionCount();
+        }
+        return total;
+    }
+
+    private boolean allOpen() {
+        for (Student student : students) {
+            if (!student.isOpen()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean membersConverged(int count) {
+        for (Node node : nodes.values()) {
+            if (node.cluster.getMembers().size() != count) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if every node holds exactly the connected sessions the ring gives it.
+     */
+    private boolean sessionsOnOwners() {
+        Set<String> seen = new HashSet<>();
+        for (Node node : nodes.values()) {
+            for (ProctorSession session : node.sdk.getGroupMembers(GROUP)) {
+                if (!session.isConnected() || !node.cluster.ownerOf(session.getSessionId()).equals(node.self)
+                        || !seen.add(session.getSessionId())) {
+                    return false;
+                }
+            }
+        }
+        return seen.size() == STUDENTS;
+    }
+
+    @Test
+    public void sessionsFollowTheRingAsNodesJoinAndLeave() throws Exception {
+        ClusterNode a = localNode("a");
+        ClusterNode b = localNode("b");
+        Node nodeA = start(a, Arrays.asList(a, b), SECRET);
+        start(b, Arrays.asList(a, b), SECRET);
+        await(() -> membersConverged(2), "two members");
+
+        // Everyone connects to a; those owned by b are redirected there.
+        connectStudents(a.getClientUri());
+        await(this::sessionsOnOwners, "sessions on their owners");
+        int redirected = 0;
+        for (Student student : students) {
+            redirected += student.redirects.get();
+            student.send(Activity.TAB_SWITCH, Status.INFO);
+            student.send(Activity.TAB_SWITCH, Status.VIOLATION);
+        }
+        assertTrue("some sessions belong to b", redirected > 0 && redirected < STUDENTS);
+        await(() -> eventCount() == 2 * STUDENTS, "every event to arrive");
+
+        // c joins through a alone; the sessions it now owns are handed over and their students resume there.
+        Node nodeC = start(localNode("c"), Collections.singletonList(a), SECRET);
+        await(() -> membersConverged(3), "three members");
+        await(() -> nodeC.sdk.getSessionCount() > 0 && sessionsOnOwners(), "sessions moved to c");
+        assertEquals(STUDENTS, newSessions.get());
+        assertEquals(nodeC.sdk.getSessionCount(), resumedSessions.get());
+        assertEquals(0, disconnects.get());
+        // The counters moved with the sessions.
+        assertEquals(2 * STUDENTS, eventCount());
+        for (Student student : students) {
+            SessionInfo info = nodeA.cluster.findSession(student.sessionId).get(5, TimeUnit.SECONDS);
+            assertEquals(student.sessionId, 2, info.getEventCount());
+            assertEquals(student.sessionId, 1, info.getViolationCount());
+            assertEquals(nodeA.cluster.ownerOf(student.sessionId).getNodeId(), info.getNodeId());
+        }
+
+        // c leaves; its sessions go back to a and b.
+        int resumedBefore = resumedSessions.get();
+        int onC = nodeC.sdk.getSessionCount();
+        nodeC.sdk.stop();
+        nodes.remove("c");
+        await(() -> membersConverged(2), "two members again");
+        await(this::sessionsOnOwners, "sessions back on a and b");
+        assertEquals(resumedBefore + onC, resumedSessions.get());
+        assertEquals(STUDENTS, newSessions.get());
+        assertEquals(0, disconnects.get());
+        assertEquals(2 * STUDENTS, eventCount());
+    }
+
+    private int eventCount() {
+        try {
+            int total = 0;
+            Node any = nodes.values().iterator().next();
+            for (Student student : students) {
+                SessionInfo info = any.cluster.findSession(student.sessionId).get(5, TimeUnit.SECONDS);
+                total += info != null ? info.getEventCount() : 0;
+            }
+            return total;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    @Test
+    public void combinesQueriesAcrossNodes() throws Exception {
+        ClusterNode a = localNode("a");
+        ClusterNode b = localNode("b");
+        ClusterNode c = localNode("c");
+        List<ClusterNode> all = Arrays.asList(a, b, c);
+        Node nodeA = start(a, all, SECRET);
+        Node nodeB = start(b, all, SECRET);
+        start(c, all, SECRET);
+        await(() -> membersConverged(3), "three members");
+        connectStudents(b.getClientUri());
+        await(this::sessionsOnOwners, "sessions on their owners");
+        for (Node node : nodes.values()) {
+            assertTrue(node.self + " has sessions", node.sdk.getSessionCount() > 0);
+        }
+
+        assertEquals(STUDENTS, (int) nodeA.cluster.getSessionCount().get(5, TimeUnit.SECONDS));
+        assertEquals(STUDENTS, (int) nodeB.cluster.getGroupSize(GROUP).get(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singleton(GROUP), nodeA.cluster.getGroupIds().get(5, TimeUnit.SECONDS));
+        Set<String> expected = new HashSet<>();
+        for (Student student : students) {
+            expected.add(student.sessionId);
+        }
+        assertEquals(expected, nodeB.cluster.getGroupMembers(GROUP).get(5, TimeUnit.SECONDS));
+        assertNull(nodeA.cluster.findSession("nobody").get(5, TimeUnit.SECONDS));
+
+        // A broadcast from one node reaches the students on every node.
+        nodeA.cluster.broadcast(GROUP, "Ten minutes left").get(5, TimeUnit.SECONDS);
+        await(() -> {
+            for (Student student : students) {
+                if (student.notices.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }, "the broadcast");
+
+        Student one = students.get(0);
+        assertTrue(nodeB.cluster.sendNotice(one.sessionId, "Eyes on the screen").get(5, TimeUnit.SECONDS));
+        await(() -> one.notices.size() == 2, "the notice");
+    }
+
+    @Test
+    public void ignoresNodesWithAnotherSecret() throws Exception {
+        ClusterNode a = localNode("a");
+        ClusterNode b = localNode("b");
+        Node nodeA = start(a, Collections.singletonList(a), SECRET);
+        Node nodeB = start(b, Arrays.asList(a, b), SECRET);
+        await(() -> membersConverged(2), "two members");
+
+        start(localNode("intruder"), Collections.singletonList(a), "some-other-secret-0123456789");
+        Thread.sleep(1000);
+        assertEquals(2, nodeA.cluster.getMembers().size());
+        assertEquals(2, nodeB.cluster.getMembers().size());
+        assertEquals(0, (int) nodeB.cluster.getSessionCount().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortSecret() throws IOException {
+        ClusterNode a = localNode("a");
+        new ProctorSDK(new ProctorConfig(a.getClientUri().getPort(), "localhost",
+                Collections.singletonMap("windows", "http://localhost/installer.exe"))).enableCluster(a, Collections.singletonList(a), "short");
+    }
+}
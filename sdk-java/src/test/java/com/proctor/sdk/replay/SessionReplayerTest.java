@@ -0,0 +1,152 @@
+package com.proctor.sdk.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.proctor.protocol.MessageTypes;
+import com.proctor.sdk.session.SessionManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records sessions with {@link SessionRecorder} and plays them back with {@link SessionReplayer}.
+ */
+public class SessionReplayerTest {
+
+    private static final long GAP_MILLIS = 300;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> received = new ArrayList<>();
+    private final List<Long> receivedAtNanos = new ArrayList<>();
+    private final SessionManager sessionManager = new SessionManager(session -> received.add("open " + session.getSessionId()));
+
+    public SessionReplayerTest() {
+        sessionManager.onActivity((session, event) -> {
+            received.add(session.getSessionId() + " " + event.getString("activity") + " "
+                    + event.getJSONObject("details").getString("message"));
+            receivedAtNanos.add(System.nanoTime());
+        });
+        sessionManager.onDisconnect(session -> received.add("close " + session.getSessionId()));
+    }
+
+    private Path file() {
+        return folder.getRoot().toPath().resolve("session.rec");
+    }
+
+    private static String event(String message) {
+        return "{\"timestamp\":1,\"activity\":\"tabSwitch\",\"status\":\"info\",\"details\":{\"message\":\"" + message + "\"}}";
+    }
+
+    private static ByteBuffer frame(String message) {
+        byte[] header = ("{\"timestamp\":1,\"activity\":\"frameCapture\",\"status\":\"ok\",\"details\":{\"message\":\""
+                + message + "\"}}").getBytes(StandardCharsets.UTF_8);
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9};
+        ByteBuffer frame = ByteBuffer.allocate(3 + header.length + jpeg.length);
+        frame.put(MessageTypes.FRAME_JPEG).putShort((short) header.length).put(header).put(jpeg);
+        frame.flip();
+        return frame;
+    }
+
+    @Test
+    public void replaysEveryRecordInTheOrderItWasReceived() throws IOException {
+        ReplayConnection first = new ReplayConnection("s1");
+        ReplayConnection second = new ReplayConnection("s2");
+        ReplayConnection reconnected = new ReplayConnection("s1");
+        ByteBuffer frame = frame("f1");
+        try (SessionRecorder recorder = new SessionRecorder(file())) {
+            recorder.recordOpen(first, "s1");
+            recorder.recordOpen(second, "s2");
+            recorder.recordText(first, event("a1"));
+            recorder.recordText(second, event("b1"));
+            recorder.recordBinary(second, frame);
+            recorder.recordText(first, event("a2"));
+            recorder.recordClose(first);
+            // Not recorded: the connection is closed.
+            recorder.recordText(first, event("lost"));
+            recorder.recordOpen(reconnected, "s1");
+            recorder.recordText(reconnected, event("a3"));
+        }
+        assertEquals("The recorded buffer is left as it was", 0, frame.position());
+
+        ReplayStats stats = new SessionReplayer(file(), sessionManager).replay(SessionReplayer.MAX_SPEED);
+
+        assertEquals(Arrays.asList(
+                "open s1", "open s2",
+                "s1 tabSwitch a1", "s2 tabSwitch b1", "s2 frameCapture f1", "s1 tabSwitch a2",
+                "close s1", "open s1", "s1 tabSwitch a3"), received.subList(0, 9));
+        // Still open when the recording ends, and closed then in no particular order.
+        List<String> closedAtEnd = new ArrayList<>(received.subList(9, received.size()));
+        Collections.sort(closedAtEnd);
+        assertEquals(Arrays.asList("close s1", "close s2"), closedAtEnd);
+        assertEquals(3, stats.getSessions());
+        assertEquals(4, stats.getTextMessages());
+        assertEquals(1, stats.getBinaryMessages());
+        assertEquals(4 * event("a1").length() + frame.remaining(), stats.getPayloadBytes());
+    }
+
+    @Test
+    public void keepsTheRecordedTimingScaledBySpeed() throws Exception {
+        ReplayConnection connection = new ReplayConnection("s1");
+        try (SessionRecorder recorder = new SessionRecorder(file())) {
+            recorder.recordOpen(connection, "s1");
+            recorder.recordText(connection, event("before"));
+            Thread.sleep(GAP_MILLIS);
+            recorder.recordText(connection, event("after"));
+        }
+
+        double speed = 3;
+        long startNanos = System.nanoTime();
+        ReplayStats stats = new SessionReplayer(file(), sessionManager).replay(speed);
+        long recordedGapNanos = TimeUnit.MILLISECONDS.toNanos(GAP_MILLIS);
+        assertTrue(TimeUnit.MICROSECONDS.toNanos(stats.getRecordedMicros()) >= recordedGapNanos);
+        // Records are due at their offset from the start, so the later one is never early even if the
+        // first one was late; the upper bound only leaves room for a slow machine.
+        long replayedOffsetNanos = receivedAtNanos.get(1) - startNanos;
+        assertTrue("Replayed at " + replayedOffsetNanos, replayedOffsetNanos >= recordedGapNanos / (long) speed);
+        long replayedGapNanos = receivedAtNanos.get(1) - receivedAtNanos.get(0);
+        assertTrue("Replayed gap " + replayedGapNanos, replayedGapNanos < recordedGapNanos);
+        assertTrue(stats.getElapsedNanos() >= TimeUnit.MICROSECONDS.toNanos(stats.getRecordedMicros()) / (long) speed);
+
+        received.clear();
+        ReplayStats fastest = new SessionReplayer(file(), sessionManager).replay(SessionReplayer.MAX_SPEED);
+        assertEquals(stats.getRecordedMicros(), fastest.getRecordedMicros());
+        assertTrue(fastest.getElapsedNanos() < TimeUnit.MILLISECONDS.toNanos(GAP_MILLIS));
+        assertEquals(Arrays.asList("open s1", "s1 tabSwitch before", "s1 tabSwitch after", "close s1"), received);
+    }
+
+    @Test
+    public void replaysATruncatedRecordingUpToItsLastCompleteRecord() throws IOException {
+        ReplayConnection connection = new ReplayConnection("s1");
+        try (SessionRecorder recorder = new SessionRecorder(file())) {
+            recorder.recordOpen(connection, "s1");
+            recorder.recordText(connection, event("kept"));
+            recorder.recordText(connection, event("cut"));
+        }
+        byte[] bytes = Files.readAllBytes(file());
+        Files.write(file(), Arrays.copyOf(bytes, bytes.length - 5));
+
+        ReplayStats stats = new SessionReplayer(file(), sessionManager).replay(SessionReplayer.MAX_SPEED);
+        assertEquals(Arrays.asList("open s1", "s1 tabSwitch kept", "close s1"), received);
+        assertEquals(1, stats.getTextMessages());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAFileThatIsNotARecording() throws IOException {
+        Files.write(file(), "PRSS-not-a-recording".getBytes(StandardCharsets.US_ASCII));
+        new SessionReplayer(file(), sessionManager).replay(SessionReplayer.MAX_SPEED);
+    }
+}
@@ -0,0 +1,254 @@
+package com.proctor.sdk.scheduling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Tests how {@link FairScheduler} shares its threads between tenants and caps their queues.
+ */
+public class FairSchedulerTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private FairScheduler scheduler;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+
+    @After
+    public void closeScheduler() throws InterruptedException {
+        release.countDown();
+        if (scheduler != null) {
+            scheduler.close(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Runnable held(String name) {
+        return () -> {
+            try {
+                release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handled.add(name);
+        };
+    }
+
+    private Thread submitInBackground(Object key, String tenant, int cost, Runnable handler) {
+        Thread thread = new Thread(() -> scheduler.submit(key, tenant, cost, handler), "submitter-" + key);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for " + what);
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void sharesThreadsInProportionToWeight() throws Exception {
+        scheduler = new FairScheduler(1, 1);
+        scheduler.setWeight("heavy-weight", 3);
+        // Hold the only thread until both tenants have a backlog.
+        scheduler.submit("gate", "gate", 1, held("gate"));
+        List<String> order = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String light = "light-" + i;
+            String heavy = "heavy-" + i;
+            scheduler.submit(light, "light-weight", FairScheduler.QUANTUM_BYTES, () -> order.add("light"));
+            scheduler.submit(heavy, "heavy-weight", FairScheduler.QUANTUM_BYTES, () -> order.add("heavy"));
+        }
+        release.countDown();
+        await(() -> order.size() == 200, "every message");
+
+        // While both have messages waiting, each turn runs one message of weight 1 and three of weight 3.
+        int heavy = 0;
+        for (String tenant : order.subList(0, 80)) {
+            if (tenant.equals("heavy")) {
+                heavy++;
+            }
+        }
+        assertTrue("heavy ran " + heavy + " of the first 80", heavy >= 58 && heavy <= 62);
+    }
+
+    @Test
+    public void limitsEachTenantsMessagesInFlight() throws Exception {
+        scheduler = new FairScheduler(4, 2);
+        Map<String, AtomicInteger> running = new HashMap<>();
+        Map<String, AtomicInteger> maxRunning = new HashMap<>();
+        AtomicInteger total = new AtomicInteger();
+        AtomicInteger maxTotal = new AtomicInteger();
+        for (String tenant : new String[] {"exam-a", "exam-b"}) {
+            running.put(tenant, new AtomicInteger());
+            maxRunning.put(tenant, new AtomicInteger());
+        }
+        for (int i = 0; i < 20; i++) {
+            for (String tenant : running.keySet()) {
+                scheduler.submit(tenant + i, tenant, 100, () -> {
+                    maxRunning.get(tenant).accumulateAndGet(running.get(tenant).incrementAndGet(), Math::max);
+                    maxTotal.accumulateAndGet(total.incrementAndGet(), Math::max);
+                    sleep(10);
+                    total.decrementAndGet();
+                    running.get(tenant).decrementAndGet();
+                    handled.add(tenant);
+                });
+            }
+        }
+        await(() -> handled.size() == 40, "every message");
+        assertEquals(2, maxRunning.get("exam-a").get());
+        assertEquals(2, maxRunning.get("exam-b").get());
+        // Each tenant's limit leaves the remaining threads to the other.
+        assertEquals(4, maxTotal.get());
+    }
+
+    @Test
+    public void keepsMessagesOfOneKeyInOrder() throws Exception {
+        scheduler = new FairScheduler(4, 4);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int n = i;
+            scheduler.submit("session", "exam-a", 10, () -> order.add(n));
+        }
+        await(() -> order.size() == 200, "every message");
+        for (int i = 0; i < 200; i++) {
+            assertEquals(Integer.valueOf(i), order.get(i));
+        }
+    }
+
+    @Test
+    public void heavyTenantCannotStarveALightOne() throws Exception {
+        scheduler = new FairScheduler(2, 2);
+        AtomicInteger heavyDone = new AtomicInteger();
+        for (int i = 0; i < 2000; i++) {
+            scheduler.submit("flood-" + (i % 40), "large-exam", 1000, () -> {
+                sleep(1);
+                heavyDone.incrementAndGet();
+            });
+        }
+        await(() -> heavyDone.get() >= 20, "the flood to be under way");
+
+        List<Integer> heavyDoneWhenLightRan = new ArrayList<>();
+        CountDownLatch lightRan = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            int before = heavyDone.get();
+            scheduler.submit("student-" + i, "small-exam", 200, () -> {
+                heavyDoneWhenLightRan.add(heavyDone.get() - before);
+                lightRan.countDown();
+            });
+            sleep(20);
+        }
+        assertTrue(lightRan.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        // The small exam waits for at most about one turn of the large one, not for its backlog.
+        for (int behind : heavyDoneWhenLightRan) {
+            assertTrue("small exam waited behind " + behind + " messages", behind < 2 * FairScheduler.QUANTUM_BYTES / 1000 + 20);
+        }
+        assertTrue(heavyDone.get() < 2000);
+    }
+
+    @Test
+    public void blocksSubmitterWhileTenantIsAtItsCap() throws Exception {
+        scheduler = new FairScheduler(2, 1, 100);
+        scheduler.submit("a1", "exam-a", 60, held("a1"));
+        TenantStats stats = scheduler.getTenantStats().get("exam-a");
+        await(() -> stats.getInFlight() == 1, "the first message to run");
+        scheduler.submit("a2", "exam-a", 60, held("a2"));
+        assertEquals(60, stats.getQueuedBytes());
+
+        Thread blocked = submitInBackground("a3", "exam-a", 60, held("a3"));
+        await(() -> stats.getRejections() == 1, "the third message to be held back");
+        await(() -> blocked.getState() == Thread.State.WAITING, "the submitter to wait");
+        assertEquals(1, stats.getQueued());
+        assertEquals(60, stats.getQueuedBytes());
+
+        // Other tenants are not held back.
+        scheduler.submit("b1", "exam-b", 60, () -> handled.add("b1"));
+        await(() -> handled.contains("b1"), "the other tenant's message");
+        assertEquals(0, scheduler.getTenantStats().get("exam-b").getRejections());
+
+        release.countDown();
+        blocked.join(TIMEOUT_MILLIS);
+        assertFalse(blocked.isAlive());
+        await(() -> stats.getMessages() == 3, "all of the tenant's messages");
+        assertEquals(0, stats.getQueuedBytes());
+        assertEquals(1, stats.getRejections());
+    }
+
+    @Test
+    public void takesOversizedMessageAndClosesWithoutBlocking() throws Exception {
+        scheduler = new FairScheduler(1, 1, 100);
+        scheduler.submit("a1", "exam-a", 10, held("a1"));
+        TenantStats stats = scheduler.getTenantStats().get("exam-a");
+        await(() -> stats.getInFlight() == 1, "the first message to run");
+
+        // Nothing is waiting, so a message over the cap is still taken...
+        scheduler.submit("a2", "exam-a", 500, held("a2"));
+        assertEquals(500, stats.getQueuedBytes());
+        // ...and a close, which costs nothing, is queued behind it.
+        scheduler.submit("a2", "exam-a", 0, () -> handled.add("a2 closed"));
+        assertEquals(2, stats.getQueued());
+        assertEquals(0, stats.getRejections());
+
+        release.countDown();
+        await(() -> handled.size() == 3, "every message");
+        assertEquals("a2 closed", handled.get(2));
+    }
+
+    @Test
+    public void closingReleasesBlockedSubmitters() throws Exception {
+        scheduler = new FairScheduler(1, 1, 100);
+        scheduler.submit("a1", "exam-a", 60, held("a1"));
+        TenantStats stats = scheduler.getTenantStats().get("exam-a");
+        await(() -> stats.getInFlight() == 1, "the first message to run");
+        scheduler.submit("a2", "exam-a", 60, held("a2"));
+        Thread blocked = submitInBackground("a3", "exam-a", 60, () -> handled.add("a3"));
+        await(() -> blocked.getState() == Thread.State.WAITING, "the submitter to wait");
+
+        Thread closer = new Thread(() -> {
+            try {
+                scheduler.close(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        closer.start();
+        // Once closed, the held-back message is handled on the thread that submitted it.
+        blocked.join(TIMEOUT_MILLIS);
+        assertFalse(blocked.isAlive());
+        assertTrue(handled.contains("a3"));
+        release.countDown();
+        closer.join(TIMEOUT_MILLIS);
+        assertEquals(3, handled.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveCap() {
+        new FairScheduler(1, 1, 0);
+    }
+}
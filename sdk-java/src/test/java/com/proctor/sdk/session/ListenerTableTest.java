@@ -0,0 +1,70 @@
+package com.proctor.sdk.session;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.Status;
+import org.junit.Test;
+
+/**
+ * Tests how {@link ListenerTable} lays out listeners per activity and status.
+ */
+public class ListenerTableTest {
+
+    private static final String[] NONE = new String[0];
+    private final ListenerTable<String> empty = ListenerTable.empty(NONE);
+
+    @Test
+    public void fansOutToEveryStatusWhenStatusIsNull() {
+        ListenerTable<String> table = empty.with(Activity.CLIPBOARD_COPY, null, "any");
+        for (Status status : Status.values()) {
+            assertArrayEquals(new String[] {"any"}, table.get(Activity.CLIPBOARD_COPY, status));
+        }
+        assertSame(NONE, table.get(Activity.TAB_SWITCH, Status.VIOLATION));
+    }
+
+    @Test
+    public void keepsRegistrationOrderWithinACell() {
+        ListenerTable<String> table = empty
+                .with(Activity.PROCESS_STARTED, Status.VIOLATION, "first")
+                .with(Activity.PROCESS_STARTED, null, "second")
+                .with(Activity.PROCESS_STARTED, Status.VIOLATION, "third");
+        assertArrayEquals(new String[] {"first", "second", "third"}, table.get(Activity.PROCESS_STARTED, Status.VIOLATION));
+        assertArrayEquals(new String[] {"second"}, table.get(Activity.PROCESS_STARTED, Status.INFO));
+    }
+
+    @Test
+    public void routesUnknownLikeAnyOtherActivity() {
+        ListenerTable<String> table = empty.with(Activity.UNKNOWN, Status.UNKNOWN, "unknown");
+        assertArrayEquals(new String[] {"unknown"}, table.get(Activity.UNKNOWN, Status.UNKNOWN));
+        assertSame(NONE, table.get(Activity.UNKNOWN, Status.INFO));
+        assertSame(NONE, table.get(Activity.CLIPBOARD_COPY, Status.UNKNOWN));
+    }
+
+    @Test
+    public void leavesEarlierTablesUnchanged() {
+        ListenerTable<String> before = empty.with(Activity.TAB_SWITCH, null, "a");
+        ListenerTable<String> after = before.with(Activity.TAB_SWITCH, Status.INFO, "b");
+        assertArrayEquals(new String[] {"a"}, before.get(Activity.TAB_SWITCH, Status.INFO));
+        assertArrayEquals(new String[] {"a", "b"}, after.get(Activity.TAB_SWITCH, Status.INFO));
+        assertSame(NONE, empty.get(Activity.TAB_SWITCH, Status.INFO));
+    }
+
+    @Test
+    public void removesAListenerFromEveryCell() {
+        String listener = new String("listener");
+        ListenerTable<String> table = empty
+                .with(Activity.TAB_SWITCH, null, listener)
+                .with(Activity.TAB_SWITCH, Status.INFO, "other")
+                .with(Activity.WINDOW_SWITCH, Status.VIOLATION, listener);
+        ListenerTable<String> removed = table.without(listener);
+
+        assertArrayEquals(new String[] {"other"}, removed.get(Activity.TAB_SWITCH, Status.INFO));
+        assertSame(NONE, removed.get(Activity.TAB_SWITCH, Status.VIOLATION));
+        assertSame(NONE, removed.get(Activity.WINDOW_SWITCH, Status.VIOLATION));
+        // The table a running dispatch may hold is not affected.
+        assertArrayEquals(new String[] {listener, "other"}, table.get(Activity.TAB_SWITCH, Status.INFO));
+        assertSame(removed, removed.without(listener));
+    }
+}
@@ -0,0 +1,210 @@
+package com.proctor.sdk.session;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.MessageTypes;
+import com.proctor.protocol.Status;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Tests how {@link ProctorSession} routes events to its listeners and turns binary camera frames back
+ * into events.
+ */
+public class ProctorSessionTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, 1, 2, 3, (byte) 0xFF, (byte) 0xD9};
+
+    private static ByteBuffer frame(String header) {
+        byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(3 + headerBytes.length + JPEG.length);
+        frame.put(MessageTypes.FRAME_JPEG).putShort((short) headerBytes.length).put(headerBytes).put(JPEG);
+        frame.flip();
+        return frame;
+    }
+
+    private static String header(Status status) {
+        return "{\"timestamp\":1,\"activity\":\"frameCapture\",\"status\":\"" + status.wireName()
+                + "\",\"details\":{\"message\":\"frame\"}}";
+    }
+
+    private static String event(String activity, String status) {
+        return "{\"timestamp\":1,\"activity\":\"" + activity + "\",\"status\":\"" + status
+                + "\",\"details\":{\"message\":\"m\"}}";
+    }
+
+    private static ProctorSession session() {
+        return new ProctorSession("s1", null, new SessionManager(s -> { }));
+    }
+
+    @Test
+    public void routesEventsByActivityAndStatus() {
+        ProctorSession session = session();
+        List<String> received = new ArrayList<>();
+        session.onActivity(Activity.CLIPBOARD_COPY, e -> received.add("any status"));
+        session.onActivity(Activity.CLIPBOARD_COPY, Status.VIOLATION, e -> received.add("violation"));
+        session.onActivity(Activity.TAB_SWITCH, e -> received.add("tab"));
+        session.onActivity(e -> received.add("all"));
+
+        session.handleMessage(event("clipboardCopy", "suspicious"));
+        session.handleMessage(event("clipboardCopy", "violation"));
+        assertEquals(Arrays.asList("all", "any status", "all", "any status", "violation"), received);
+    }
+
+    @Test
+    public void registersListenersByWireName() {
+        ProctorSession session = session();
+        List<JSONObject> received = new ArrayList<>();
+        session.onActivity("processStarted", received::add);
+        session.handleMessage(event("processStarted", "info"));
+        session.handleMessage(event("processExited", "info"));
+        assertEquals(1, received.size());
+        assertEquals("processStarted", received.get(0).getString("activity"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownActivityNames() {
+        session().onActivity("notAnActivity", e -> { });
+    }
+
+    @Test
+    public void routesUnknownActivitiesAndStatuses() {
+        ProctorSession session = session();
+        List<JSONObject> unknown = new ArrayList<>();
+        List<JSONObject> clipboard = new ArrayList<>();
+        List<JSONObject> all = new ArrayList<>();
+        session.onActivity(Activity.UNKNOWN, unknown::add);
+        session.onActivity(Activity.CLIPBOARD_COPY, Status.INFO, clipboard::add);
+        session.onActivity(all::add);
+
+        session.handleMessage(event("fromANewerClient", "info"));
+        session.handleMessage(event("clipboardCopy", "fromANewerClient"));
+        assertEquals(1, unknown.size());
+        assertEquals("fromANewerClient", unknown.get(0).getString("activity"));
+        assertEquals(0, clipboard.size());
+        assertEquals(2, all.size());
+    }
+
+    @Test
+    public void parsesOnlyEventsSomebodyListensFor() {
+        ProctorSession session = session();
+        List<JSONObject> received = new ArrayList<>();
+        // The envelope decodes, but building a JSONObject fails on the duplicate key, so a listener
+        // that receives nothing shows the event was parsed, and one that is never reached shows it was not.
+        String duplicateKey = "{\"timestamp\":1,\"activity\":\"tabSwitch\",\"status\":\"violation\",\"details\":{\"a\":1,\"a\":2}}";
+        session.onActivity(Activity.CLIPBOARD_COPY, received::add);
+        session.handleMessage(duplicateKey);
+        session.handleMessage(event("tabSwitch", "violation"));
+        assertEquals(0, received.size());
+        assertEquals(2, session.getEventCount());
+        assertEquals(2, session.getViolationCount());
+
+        session.onViolation(received::add);
+        session.handleMessage(duplicateKey);
+        session.handleMessage(event("tabSwitch", "violation"));
+        assertEquals(1, received.size());
+        assertEquals(4, session.getViolationCount());
+    }
+
+    @Test
+    public void removedListenersAreNotCalledAgain() {
+        ProctorSession session = session();
+        List<String> received = new ArrayList<>();
+        Consumer<JSONObject> removed = e -> received.add("removed");
+        session.onActivity(removed);
+        session.onActivity(Activity.TAB_SWITCH, removed);
+        session.onViolation(removed);
+        session.onActivity(Activity.TAB_SWITCH, e -> received.add("kept"));
+
+        session.removeListener(removed);
+        session.handleMessage(event("tabSwitch", "violation"));
+        assertEquals(Arrays.asList("kept"), received);
+    }
+
+    @Test
+    public void removingDuringADispatchAffectsOnlyLaterEvents() throws Exception {
+        ProctorSession session = session();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> received = new CopyOnWriteArrayList<>();
+        Consumer<JSONObject> blocking = e -> {
+            received.add("blocking");
+            entered.countDown();
+            try {
+                release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Consumer<JSONObject> later = e -> received.add("later");
+        session.onActivity(Activity.TAB_SWITCH, blocking);
+        session.onActivity(Activity.TAB_SWITCH, later);
+
+        Thread dispatcher = new Thread(() -> session.handleMessage(event("tabSwitch", "info")));
+        dispatcher.start();
+        assertTrue(entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // Does not wait for the running dispatch, which still calls everyone it started with.
+        session.removeListener(later);
+        session.removeListener(blocking);
+        release.countDown();
+        dispatcher.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertEquals(Arrays.asList("blocking", "later"), received);
+
+        session.handleMessage(event("tabSwitch", "info"));
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void countsViolationsOfFramesNobodyListensFor() {
+        ProctorSession session = new ProctorSession("s1", null, new SessionManager(s -> { }));
+        session.handleBinaryMessage(frame(header(Status.VIOLATION)));
+        session.handleBinaryMessage(frame(header(Status.INFO)));
+        assertEquals(1, session.getViolationCount());
+    }
+
+    @Test
+    public void deliversFramesWithTheImageAttached() {
+        ProctorSession session = new ProctorSession("s1", null, new SessionManager(s -> { }));
+        List<JSONObject> frames = new ArrayList<>();
+        List<JSONObject> others = new ArrayList<>();
+        session.onActivity(Activity.FRAME_CAPTURE, Status.SUSPICIOUS, frames::add);
+        session.onActivity(Activity.FACE_DETECTION, others::add);
+
+        ByteBuffer message = frame(header(Status.SUSPICIOUS));
+        session.handleBinaryMessage(message);
+        session.handleBinaryMessage(frame(header(Status.INFO)));
+
+        assertEquals(1, frames.size());
+        assertEquals(0, others.size());
+        assertEquals(0, message.position());
+        JSONObject details = frames.get(0).getJSONObject("details");
+        assertEquals("frame", details.getString("message"));
+        assertArrayEquals(JPEG, Base64.getDecoder().decode(details.getString("data")));
+    }
+
+    @Test
+    public void ignoresFramesWithMalformedHeaders() {
+        ProctorSession session = new ProctorSession("s1", null, new SessionManager(s -> { }));
+        List<JSONObject> frames = new ArrayList<>();
+        session.onActivity(frames::add);
+        session.handleBinaryMessage(frame("{\"status\":\"violation\""));
+        assertEquals(0, frames.size());
+        assertEquals(0, session.getViolationCount());
+    }
+}
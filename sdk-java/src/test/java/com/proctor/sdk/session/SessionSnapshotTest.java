@@ -0,0 +1,152 @@
+package com.proctor.sdk.session;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests saving sessions to a snapshot and restoring them, as across a warm restart.
+ */
+public class SessionSnapshotTest {
+
+    private static final long MAX_AGE_MILLIS = 60000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<ProctorSession> newSessions = new ArrayList<>();
+    private final List<ProctorSession> resumedSessions = new ArrayList<>();
+    private final SessionManager manager = new SessionManager(newSessions::add, resumedSessions::add);
+
+    private Path file() {
+        return folder.getRoot().toPath().resolve("sessions.snap");
+    }
+
+    private List<ProctorSession> sessions() {
+        return Arrays.asList(
+                new ProctorSession("s1", manager, 7, 2, new String[] {"exam", "room-1"}),
+                new ProctorSession("s2", manager, 0, 0, new String[0]));
+    }
+
+    /** Writes a snapshot by hand, with one session that has one group. */
+    private static byte[] snapshot(String magic, long savedAtMillis, int count, long eventCount) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeBytes(magic);
+        out.writeByte(1);
+        out.writeLong(savedAtMillis);
+        out.writeInt(count);
+        out.writeUTF("s1");
+        out.writeLong(eventCount);
+        out.writeInt(0);
+        out.writeInt(1);
+        out.writeUTF("exam");
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void roundTripsEverySession() throws IOException {
+        long before = System.currentTimeMillis();
+        SessionSnapshot.write(file(), sessions());
+        SessionSnapshot snapshot = SessionSnapshot.read(file());
+
+        assertTrue(snapshot.savedAtMillis >= before && snapshot.savedAtMillis <= System.currentTimeMillis());
+        assertEquals(2, snapshot.entries.size());
+        SessionSnapshot.Entry first = snapshot.entries.get(0);
+        assertEquals("s1", first.sessionId);
+        assertEquals(7, first.eventCount);
+        assertEquals(2, first.violationCount);
+        assertArrayEquals(new String[] {"exam", "room-1"}, first.groupIds);
+        assertEquals("s2", snapshot.entries.get(1).sessionId);
+        assertEquals(0, snapshot.entries.get(1).groupIds.length);
+        assertFalse(Files.exists(file().resolveSibling("sessions.snap.part")));
+    }
+
+    @Test
+    public void restoredSessionsGoToTheResumedHandlerOnly() throws IOException {
+        manager.saveSnapshot(file(), sessions());
+        SessionManager next = new SessionManager(newSessions::add, resumedSessions::add);
+
+        assertEquals(2, next.restoreSnapshot(file(), MAX_AGE_MILLIS));
+        assertTrue(newSessions.isEmpty());
+        assertEquals(2, resumedSessions.size());
+        ProctorSession restored = resumedSessions.get(0);
+        assertTrue(restored.isResumed());
+        assertEquals(7, restored.getEventCount());
+        assertEquals(2, restored.getViolationCount());
+        assertArrayEquals(new String[] {"exam", "room-1"}, restored.groupIdArray());
+        assertSame(restored, next.claimRestored("s1"));
+        assertFalse(Files.exists(file()));
+        assertEquals(0, next.getSessionCount());
+    }
+
+    @Test
+    public void adoptedSessionsGoToTheResumedHandlerOnly() {
+        ProctorSession adopted = manager.adoptSession("s3", 4, 1, new String[] {"exam"});
+        assertTrue(newSessions.isEmpty());
+        assertEquals(Arrays.asList(adopted), resumedSessions);
+        assertSame(adopted, manager.claimRestored("s3"));
+    }
+
+    @Test
+    public void ignoresAndDeletesAStaleSnapshot() throws IOException {
+        Files.write(file(), snapshot("PRSS", System.currentTimeMillis() - 2 * MAX_AGE_MILLIS, 1, 3));
+        assertEquals(0, manager.restoreSnapshot(file(), MAX_AGE_MILLIS));
+        assertFalse(Files.exists(file()));
+        assertNull(manager.claimRestored("s1"));
+        assertTrue(resumedSessions.isEmpty());
+    }
+
+    @Test
+    public void ignoresASnapshotSavedInTheFuture() throws IOException {
+        Files.write(file(), snapshot("PRSS", System.currentTimeMillis() + 2 * MAX_AGE_MILLIS, 1, 3));
+        assertEquals(0, manager.restoreSnapshot(file(), MAX_AGE_MILLIS));
+        assertNull(manager.claimRestored("s1"));
+    }
+
+    @Test
+    public void rejectsATamperedSnapshot() throws IOException {
+        long now = System.currentTimeMillis();
+        byte[] valid = snapshot("PRSS", now, 1, 3);
+        List<byte[]> tampered = Arrays.asList(
+                snapshot("PRSX", now, 1, 3),
+                snapshot("PRSS", now, -1, 3),
+                snapshot("PRSS", now, 2, 3),
+                snapshot("PRSS", now, 1, -3),
+                Arrays.copyOf(valid, valid.length - 2),
+                Arrays.copyOf(valid, valid.length + 1));
+        for (byte[] bytes : tampered) {
+            Files.write(file(), bytes);
+            try {
+                manager.restoreSnapshot(file(), MAX_AGE_MILLIS);
+                fail("Restored a tampered snapshot");
+            } catch (IOException expected) {
+                // Deleted either way, so the next start does not trip over it again.
+                assertFalse(Files.exists(file()));
+            }
+        }
+        assertNull(manager.claimRestored("s1"));
+        assertTrue(resumedSessions.isEmpty());
+
+        Files.write(file(), valid);
+        assertEquals(1, manager.restoreSnapshot(file(), MAX_AGE_MILLIS));
+    }
+}
@@ -0,0 +1,125 @@
+package com.proctor.sdk.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests the buckets of {@link LatencyHistogram} and the percentiles read from them.
+ */
+public class LatencyHistogramTest {
+
+    private static final int LAST_BUCKET = LatencyHistogram.indexOf(Long.MAX_VALUE);
+
+    @Test
+    public void smallValuesHaveABucketEach() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.indexOf(value));
+            assertEquals(value, LatencyHistogram.upperBoundOf(value));
+        }
+        assertEquals(16, LatencyHistogram.indexOf(16));
+    }
+
+    @Test
+    public void bucketsAreContiguousAndWithinAnEighthOfTheirValues() {
+        for (int i = 16; i < LAST_BUCKET; i++) {
+            long upper = LatencyHistogram.upperBoundOf(i);
+            long lower = LatencyHistogram.upperBoundOf(i - 1) + 1;
+            assertEquals(i, LatencyHistogram.indexOf(lower));
+            assertEquals(i, LatencyHistogram.indexOf(upper));
+            assertEquals(i + 1, LatencyHistogram.indexOf(upper + 1));
+            assertTrue("Bucket " + i + " spans " + lower + ".." + upper, upper - lower <= lower / 8);
+        }
+    }
+
+    @Test
+    public void hugeValuesShareTheLastBucket() {
+        long hours19 = 19L * 3600 * 1000 * 1000;
+        assertTrue(LatencyHistogram.indexOf(hours19) < LAST_BUCKET);
+        assertEquals(LAST_BUCKET, LatencyHistogram.indexOf(1L << 40));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LAST_BUCKET));
+    }
+
+    @Test
+    public void percentilesFallInTheBucketOfTheRankedValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1000; value >= 1; value--) {
+            histogram.record(value);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        assertEquals(1000, histogram.getMax());
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(10, histogram.getPercentile(1));
+        long p50 = histogram.getPercentile(50);
+        assertTrue("p50 " + p50, p50 >= 500 && p50 <= 500 + 500 / 8);
+        long p90 = histogram.getPercentile(90);
+        assertTrue("p90 " + p90, p90 >= 900 && p90 <= 900 + 900 / 8);
+        // Capped at the maximum rather than the end of its bucket.
+        assertEquals(1000, histogram.getPercentile(99.9));
+        assertEquals(1000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(3);
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(3, histogram.getPercentile(100));
+        assertEquals(1.5, histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(250);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPercentilesOutOfRange() {
+        new LatencyHistogram().getPercentile(100.5);
+    }
+
+    @Test
+    public void countsEveryValueRecordedConcurrently() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 4;
+        int perThread = 10000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> recorders = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread recorder = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    histogram.record(i % 100);
+                }
+            });
+            recorder.start();
+            recorders.add(recorder);
+        }
+        start.countDown();
+        for (Thread recorder : recorders) {
+            recorder.join();
+        }
+        assertEquals(threads * perThread, histogram.getCount());
+        assertEquals(99, histogram.getMax());
+        assertEquals(49.5, histogram.getMean(), 1e-9);
+        long p50 = histogram.getPercentile(50);
+        assertTrue("p50 " + p50, p50 >= 49 && p50 <= 49 + 49 / 8);
+    }
+}
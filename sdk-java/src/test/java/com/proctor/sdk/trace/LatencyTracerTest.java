@@ -0,0 +1,140 @@
+package com.proctor.sdk.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.DecodedEvent;
+import com.proctor.protocol.EventEncoder;
+import com.proctor.protocol.LatencyTrace;
+import com.proctor.protocol.Status;
+import com.proctor.sdk.session.ProctorSession;
+import com.proctor.sdk.session.SessionManager;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests which stages {@link LatencyTracer} records for an event, and what it records for each.
+ */
+public class LatencyTracerTest {
+
+    private static final long MILLIS = 1000;
+
+    private final LatencyTracer tracer = new LatencyTracer(1);
+
+    private static String trace(long enqueue, long dispatch, long send, long clockOffset, long rtt) {
+        return new JSONObject()
+                .put(LatencyTrace.ENQUEUE, enqueue)
+                .put(LatencyTrace.DISPATCH, dispatch)
+                .put(LatencyTrace.SEND, send)
+                .put(LatencyTrace.CLOCK_OFFSET, clockOffset)
+                .put(LatencyTrace.RTT, rtt)
+                .toString();
+    }
+
+    private long only(TraceStage stage) {
+        LatencyHistogram histogram = tracer.getHistogram(stage);
+        assertEquals(stage.getLabel(), 1, histogram.getCount());
+        return histogram.getMax();
+    }
+
+    private void assertEmpty(TraceStage stage) {
+        assertEquals(stage.getLabel(), 0, tracer.getHistogram(stage).getCount());
+    }
+
+    @Test
+    public void recordsOnlyServerStagesForUntracedEvents() {
+        long received = System.nanoTime();
+        tracer.record(null, 1, received, received + TimeUnit.MICROSECONDS.toNanos(120), 0);
+        assertEquals(120, only(TraceStage.PARSE));
+        // No listeners ran, so there is nothing to time.
+        assertEmpty(TraceStage.LISTENERS);
+        assertEmpty(TraceStage.QUEUE);
+        assertEmpty(TraceStage.END_TO_END);
+
+        tracer.record("{not json", 1, received, received, received + TimeUnit.MICROSECONDS.toNanos(40));
+        assertEquals(40, tracer.getHistogram(TraceStage.LISTENERS).getMax());
+        assertEmpty(TraceStage.QUEUE);
+    }
+
+    @Test
+    public void splitsATracedEventIntoItsStages() {
+        // The client's clock is 1 s behind the server's; each client stage takes a few milliseconds.
+        long offset = 1000;
+        long detected = System.currentTimeMillis() - offset - 50;
+        long received = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10);
+        long parsed = received + TimeUnit.MILLISECONDS.toNanos(2);
+        long listenersEnd = parsed + TimeUnit.MILLISECONDS.toNanos(3);
+        tracer.record(trace(detected + 4, detected + 9, detected + 15, offset, 20), detected, received, parsed, listenersEnd);
+
+        assertEquals(4 * MILLIS, only(TraceStage.DETECT_TO_ENQUEUE));
+        assertEquals(5 * MILLIS, only(TraceStage.QUEUE));
+        assertEquals(6 * MILLIS, only(TraceStage.DISPATCH_TO_SEND));
+        assertEquals(2 * MILLIS, only(TraceStage.PARSE));
+        assertEquals(3 * MILLIS, only(TraceStage.LISTENERS));
+        // Sent 35 ms after detection and received 10 ms ago; the test itself may add a few ms.
+        long network = only(TraceStage.NETWORK);
+        assertTrue("network " + network, network >= 25 * MILLIS - MILLIS && network <= 35 * MILLIS);
+        long total = only(TraceStage.END_TO_END);
+        assertTrue("total " + total, total >= 45 * MILLIS - MILLIS && total <= 55 * MILLIS);
+    }
+
+    @Test
+    public void skipsStagesAcrossClocksWithoutAnOffset() {
+        long received = System.nanoTime();
+        long detected = System.currentTimeMillis();
+        tracer.record(trace(detected + 1, detected + 2, detected + 3, 0, -1), detected, received, received, 0);
+        assertEquals(MILLIS, only(TraceStage.DETECT_TO_ENQUEUE));
+        assertEquals(MILLIS, only(TraceStage.QUEUE));
+        assertEmpty(TraceStage.NETWORK);
+        assertEmpty(TraceStage.END_TO_END);
+    }
+
+    @Test
+    public void skipsStagesFromDetectionWithoutATimestamp() {
+        long received = System.nanoTime();
+        long now = System.currentTimeMillis();
+        tracer.record(trace(now, now, now, 0, 5), DecodedEvent.NO_TIMESTAMP, received, received, 0);
+        assertEmpty(TraceStage.DETECT_TO_ENQUEUE);
+        assertEmpty(TraceStage.END_TO_END);
+        only(TraceStage.NETWORK);
+    }
+
+    @Test
+    public void resetClearsEveryStage() {
+        long received = System.nanoTime();
+        long now = System.currentTimeMillis();
+        tracer.record(trace(now, now, now, 0, 5), now, received, received, received);
+        tracer.reset();
+        for (TraceStage stage : TraceStage.values()) {
+            assertEmpty(stage);
+        }
+        assertTrue(tracer.toString().startsWith("Event latency (1 in 1 traced):"));
+    }
+
+    @Test
+    public void sessionsTraceTheEventsTheyReceive() {
+        SessionManager manager = new SessionManager(session -> { });
+        manager.setTracer(tracer);
+        ProctorSession session = new ProctorSession("s1", null, manager);
+        long now = System.currentTimeMillis();
+        String traced = LatencyTrace.append(EventEncoder.forCurrentThread().begin(Activity.TAB_SWITCH, Status.INFO).end(),
+                now, now + 1, now + 2, 0, 5);
+
+        session.handleMessage(traced);
+        assertEquals(MILLIS, only(TraceStage.QUEUE));
+        assertEmpty(TraceStage.LISTENERS);
+        session.onActivity(event -> { });
+        session.handleMessage(EventEncoder.forCurrentThread().begin(Activity.TAB_SWITCH, Status.INFO).end());
+        assertEquals(2, tracer.getHistogram(TraceStage.PARSE).getCount());
+        assertEquals(1, tracer.getHistogram(TraceStage.LISTENERS).getCount());
+        assertEquals(1, tracer.getHistogram(TraceStage.QUEUE).getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANonPositiveSamplingRate() {
+        new LatencyTracer(0);
+    }
+}
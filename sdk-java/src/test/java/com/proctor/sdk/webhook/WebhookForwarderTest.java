@@ -0,0 +1,257 @@
+package com.proctor.sdk.webhook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+
+/**
+ * Tests {@link WebhookForwarder} against a local stub endpoint.
+ */
+public class WebhookForwarderTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private URI uri;
+    private final List<JSONArray> batches = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private volatile IntSupplier status = () -> 200;
+    private volatile CountDownLatch release = new CountDownLatch(0);
+    private final List<WebhookForwarder> forwarders = new ArrayList<>();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/hook", exchange -> {
+            int now = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(now, Math::max);
+            requests.incrementAndGet();
+            try (InputStream in = exchange.getRequestBody()) {
+                String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                int code = status.getAsInt();
+                if (code >= 200 && code < 300) {
+                    batches.add(new JSONArray(body));
+                }
+                exchange.sendResponseHeaders(code, -1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+                exchange.close();
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/hook");
+    }
+
+    @After
+    public void stopServer() {
+        release.countDown();
+        for (WebhookForwarder forwarder : forwarders) {
+            forwarder.close();
+        }
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private WebhookForwarder forwarder(Path spool, int maxAttempts, WebhookEndpoint endpoint) throws IOException {
+        WebhookForwarder forwarder = new WebhookForwarder(spool, WebhookForwarder.DEFAULT_MAX_SPOOL_BYTES, maxAttempts, 10);
+        forwarder.addEndpoint(endpoint);
+        forwarders.add(forwarder);
+        return forwarder;
+    }
+
+    private WebhookEndpoint endpoint(int maxBatchSize, long lingerMillis, int maxInFlight) {
+        return new WebhookEndpoint(uri, Collections.singletonMap("Authorization", "Bearer test"), maxBatchSize, lingerMillis, maxInFlight);
+    }
+
+    private static String event(int n) {
+        return "{\"n\":" + n + "}";
+    }
+
+    private static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for " + what);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private int deliveredEvents() {
+        synchronized (batches) {
+            int count = 0;
+            for (JSONArray batch : batches) {
+                count += batch.length();
+            }
+            return count;
+        }
+    }
+
+    private List<Integer> deliveredNumbers() {
+        List<Integer> numbers = new ArrayList<>();
+        synchronized (batches) {
+            for (JSONArray batch : batches) {
+                for (int i = 0; i < batch.length(); i++) {
+                    numbers.add(batch.getJSONObject(i).getInt("n"));
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    @Test
+    public void sendsFullBatchesAtOnceAndTheRestOnFlush() throws Exception {
+        WebhookForwarder forwarder = forwarder(null, 1, endpoint(10, 60000, 4));
+        for (int i = 0; i < 25; i++) {
+            forwarder.forward(event(i));
+        }
+        await(() -> batches.size() == 2, "two full batches");
+        Thread.sleep(100);
+        assertEquals(2, batches.size());
+        assertEquals(10, batches.get(0).length());
+        assertEquals(10, batches.get(1).length());
+
+        forwarder.flush();
+        await(() -> batches.size() == 3, "the partial batch");
+        assertEquals(5, batches.get(2).length());
+        // The stub records a batch before its response reaches the forwarder.
+        await(() -> forwarder.getStats().get(0).getBatchesSent() == 3, "three answered requests");
+        assertEquals(25, forwarder.getStats().get(0).getEventsSent());
+    }
+
+    @Test
+    public void sendsPartialBatchAfterLinger() throws Exception {
+        WebhookForwarder forwarder = forwarder(null, 1, endpoint(100, 300, 4));
+        long start = System.nanoTime();
+        forwarder.forward(event(1));
+        forwarder.forward(event(2));
+        forwarder.forward(event(3));
+        Thread.sleep(100);
+        assertEquals(0, requests.get());
+        await(() -> batches.size() == 1, "the lingering batch");
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300);
+        assertEquals(3, batches.get(0).length());
+    }
+
+    @Test
+    public void capsRequestsInFlight() throws Exception {
+        release = new CountDownLatch(1);
+        WebhookForwarder forwarder = forwarder(null, 1, endpoint(1, 0, 2));
+        for (int i = 0; i < 8; i++) {
+            forwarder.forward(event(i));
+        }
+        await(() -> requests.get() == 2, "the first two requests");
+        Thread.sleep(300);
+        assertEquals(2, requests.get());
+        assertEquals(2, forwarder.getStats().get(0).getInFlight());
+
+        release.countDown();
+        await(() -> deliveredEvents() == 8, "all events");
+        assertEquals(2, maxConcurrent.get());
+        await(() -> forwarder.getStats().get(0).getInFlight() == 0, "no requests in flight");
+    }
+
+    @Test
+    public void retriesServiceUnavailable() throws Exception {
+        AtomicInteger failures = new AtomicInteger(2);
+        status = () -> failures.getAndDecrement() > 0 ? 503 : 200;
+        WebhookForwarder forwarder = forwarder(null, 5, endpoint(10, 0, 1));
+        forwarder.forward(event(1));
+        await(() -> forwarder.getStats().get(0).getBatchesSent() == 1, "the retried batch");
+        assertEquals(1, batches.size());
+        assertEquals(3, requests.get());
+        WebhookStats stats = forwarder.getStats().get(0);
+        assertEquals(2, stats.getRetries());
+        assertEquals(0, stats.getBatchesSpooled());
+    }
+
+    @Test
+    public void spoolsDuringOutageAndRedeliversOnRecovery() throws Exception {
+        status = () -> 503;
+        WebhookForwarder forwarder = forwarder(folder.newFolder().toPath(), 2, endpoint(10, 0, 1));
+        forwarder.forward(event(1));
+        await(() -> forwarder.getStats().get(0).getBatchesSpooled() == 1, "the first batch to be spooled");
+        forwarder.forward(event(2));
+        await(() -> forwarder.getStats().get(0).getBatchesSpooled() == 2, "the second batch to be spooled");
+        assertEquals(2, forwarder.getStats().get(0).getSpooledBatches());
+        assertEquals(0, batches.size());
+
+        // The next successful request drains the spool.
+        status = () -> 200;
+        forwarder.forward(event(3));
+        await(() -> deliveredEvents() == 3, "the spooled batches");
+        assertEquals(Arrays.asList(1, 2, 3), deliveredNumbers());
+        await(() -> forwarder.getStats().get(0).getSpooledBatches() == 0, "an empty spool");
+    }
+
+    @Test
+    public void redeliversSpoolAfterRestart() throws Exception {
+        Path spool = folder.newFolder().toPath();
+        status = () -> 503;
+        WebhookForwarder first = forwarder(spool, 1, endpoint(10, 60000, 1));
+        first.forward(event(1));
+        first.forward(event(2));
+        // Closing sends the pending batch once more and buffers it when that fails.
+        first.close();
+        forwarders.remove(first);
+        assertEquals(1, first.getStats().get(0).getSpooledBatches());
+        assertEquals(0, batches.size());
+
+        status = () -> 200;
+        WebhookForwarder second = forwarder(spool, 1, endpoint(10, 60000, 1));
+        await(() -> deliveredEvents() == 2, "the events spooled by the first forwarder");
+        assertEquals(Arrays.asList(1, 2), deliveredNumbers());
+        await(() -> second.getStats().get(0).getSpooledBatches() == 0, "an empty spool");
+    }
+
+    @Test
+    public void dropsBatchRejectedWithBadRequest() throws Exception {
+        status = () -> 400;
+        WebhookForwarder forwarder = forwarder(folder.newFolder().toPath(), 5, endpoint(10, 0, 1));
+        forwarder.forward(event(1));
+        await(() -> forwarder.getStats().get(0).getBatchesDropped() == 1, "the batch to be dropped");
+        Thread.sleep(100);
+        WebhookStats stats = forwarder.getStats().get(0);
+        assertEquals(1, requests.get());
+        assertEquals(0, stats.getRetries());
+        assertEquals(0, stats.getBatchesSpooled());
+        assertEquals(0, stats.getSpooledBatches());
+    }
+}
@@ -0,0 +1,151 @@
+package com.proctor.sdk.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.proctor.protocol.Activity;
+import com.proctor.protocol.EventEncoder;
+import com.proctor.protocol.ProtocolVersion;
+import com.proctor.protocol.SessionResume;
+import com.proctor.protocol.Status;
+import com.proctor.sdk.session.ProctorSession;
+import com.proctor.sdk.session.SessionManager;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Tests how a client resumes its session across a warm restart, through the handshake of a server on a local port.
+ */
+public class ProctorWebsocketServerTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<ProctorSession> newSessions = new CopyOnWriteArrayList<>();
+    private final List<ProctorSession> resumedSessions = new CopyOnWriteArrayList<>();
+    private final SessionManager sessionManager = new SessionManager(newSessions::add, resumedSessions::add);
+    private ProctorWebsocketServer server;
+    private WebSocketClient client;
+
+    @After
+    public void stop() throws InterruptedException {
+        if (client != null) {
+            client.closeBlocking();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for " + what, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /** Restores, in this test's manager, one session saved by a previous process after its seventh event. */
+    private void restoreSession(String sessionId) throws IOException {
+        Path file = folder.getRoot().toPath().resolve("sessions.snap");
+        SessionManager previous = new SessionManager(session -> { });
+        ProctorSession saved = previous.adoptSession(sessionId, 7, 1, new String[] {"exam"});
+        previous.saveSnapshot(file, Collections.singletonList(saved));
+        assertEquals(1, sessionManager.restoreSnapshot(file, TIMEOUT_MILLIS));
+    }
+
+    /** Connects like the client does and returns the handshake's resume header, or {@code null}. */
+    private String connect(String sessionId) throws Exception {
+        int port = freePort();
+        server = new ProctorWebsocketServer(new InetSocketAddress("localhost", port), sessionManager);
+        server.start();
+        String[] resume = new String[1];
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        do {
+            client = new WebSocketClient(URI.create("ws://localhost:" + port + "/" + sessionId),
+                    Collections.singletonMap(ProtocolVersion.HEADER, Integer.toString(ProtocolVersion.CURRENT))) {
+                @Override
+                public void onOpen(ServerHandshake handshake) {
+                    resume[0] = handshake.hasFieldValue(SessionResume.HEADER) ? handshake.getFieldValue(SessionResume.HEADER) : null;
+                }
+
+                @Override
+                public void onMessage(String message) {
+                }
+
+                @Override
+                public void onClose(int code, String reason, boolean remote) {
+                }
+
+                @Override
+                public void onError(Exception ex) {
+                }
+            };
+            // The server binds in the background; retry until it accepts.
+        } while (!client.connectBlocking(1, TimeUnit.SECONDS) && System.currentTimeMillis() < deadline);
+        assertTrue("Could not connect", client.isOpen());
+        return resume[0];
+    }
+
+    private void send(Status status) {
+        client.send(EventEncoder.forCurrentThread().begin(Activity.TAB_SWITCH, status).end());
+    }
+
+    @Test
+    public void resumesARestoredSessionAtItsLastEvent() throws Exception {
+        restoreSession("s1");
+        ProctorSession restored = resumedSessions.get(0);
+
+        assertEquals(7, SessionResume.parse(connect("s1")));
+        await(() -> sessionManager.getSessionCount() == 1, "the session to be attached");
+        assertTrue(restored.isConnected());
+        assertNull(sessionManager.claimRestored("s1"));
+        // Not a new student: the new-session handler is not called again.
+        assertTrue(newSessions.isEmpty());
+        assertEquals(1, resumedSessions.size());
+
+        // The client carries on numbering where the server left off.
+        send(Status.INFO);
+        send(Status.VIOLATION);
+        await(() -> restored.getEventCount() == 9, "the resent events");
+        assertEquals(2, restored.getViolationCount());
+    }
+
+    @Test
+    public void startsANewSessionWithoutResumeHeader() throws Exception {
+        restoreSession("s1");
+
+        assertNull(connect("s2"));
+        await(() -> newSessions.size() == 1, "the new session");
+        ProctorSession session = newSessions.get(0);
+        assertEquals("s2", session.getSessionId());
+        assertEquals(0, session.getEventCount());
+        // The restored session still waits for its own client.
+        assertSame(resumedSessions.get(0), sessionManager.claimRestored("s1"));
+    }
+}
@@ -1,5 +1,8 @@
 const EventEmitter = require('events');
 
+// Binary message types sent by the client (mirrors the agent's IPC frame types).
+const BINARY_TYPE_JPEG_FRAME = 2;
+
 /**
  * Represents a single, active proctoring session for one student.
  * It emits events that the developer can listen to.
@@ -52,17 +55,46 @@ class ProctorSession extends EventEmitter {
      */
     _handleEvent(eventJson) {
         try {
-            const event = JSON.parse(eventJson);
-            
-            // Emit a generic 'event' for all messages.
-            this.emit('event', event);
+            this._emitEvent(JSON.parse(eventJson));
+        } catch (error) {
+            console.error(`[Session ${this.sessionId}] Error parsing event JSON:`, error);
+        }
+    }
 
-            // Emit a specific 'violation' event if the status is 'violation'.
-            if (event.status === 'violation') {
-                this.emit('violation', event);
+    /**
+     * Internal method to handle a binary camera frame from the client:
+     * type byte (2), header length (uint16 BE), header JSON, then the raw JPEG bytes.
+     * The frame is re-emitted as a regular 'frameCapture' event with Base64 `details.data`.
+     * @param {Buffer} frame The binary message.
+     * @private
+     */
+    _handleBinaryFrame(frame) {
+        try {
+            if (frame[0] !== BINARY_TYPE_JPEG_FRAME) {
+                console.error(`[Session ${this.sessionId}] Ignoring binary message of unknown type ${frame[0]}`);
+                return;
             }
+            const headerLength = frame.readUInt16BE(1);
+            const event = JSON.parse(frame.toString('utf8', 3, 3 + headerLength));
+            event.details = event.details || {};
+            event.details.data = frame.subarray(3 + headerLength).toString('base64');
+            this._emitEvent(event);
         } catch (error) {
-            console.error(`[Session ${this.sessionId}] Error parsing event JSON:`, error);
+            console.error(`[Session ${this.sessionId}] Error parsing binary frame:`, error);
+        }
+    }
+
+    /**
+     * @param {object} event A parsed event.
+     * @private
+     */
+    _emitEvent(event) {
+        // Emit a generic 'event' for all messages.
+        this.emit('event', event);
+
+        // Emit a specific 'violation' event if the status is 'violation'.
+        if (event.status === 'violation') {
+            this.emit('violation', event);
         }
     }
 
@@ -28,9 +28,14 @@ class ProctorWebsocketServer {
 
             this.sessionManager.startSession(ws, sessionId);
 
-            ws.on('message', (message) => {
+            ws.on('message', (message, isBinary) => {
                 const session = this.sessionManager.getSession(ws);
-                if (session) {
+                if (!session) {
+                    return;
+                }
+                if (isBinary) {
+                    session._handleBinaryFrame(message);
+                } else {
                     session._handleEvent(message.toString());
                 }
             });